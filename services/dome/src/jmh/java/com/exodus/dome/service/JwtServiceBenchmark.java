@@ -0,0 +1,63 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.JwtKeyRing;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Access token signing on every login/refresh, verification on every authenticated request
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET = "KGSv3EblCTdoknqf5LznnLvct2BVq6hdzKIH0JZCAFV";
+
+    @Param({"HS256", "ES256"})
+    private String algorithm;
+
+    // with the cache on, validate measures the hit path: the same token every time
+    @Param({"false", "true"})
+    private boolean verifiedCache;
+
+    private JwtService jwtService;
+    private UUID userId;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtKeyRing keyRing = "ES256".equals(algorithm) ? JwtKeyRing.generate() : null;
+        jwtService = new JwtService(SECRET, "exodus-auth", 3600, verifiedCache, 10_000, algorithm, keyRing,
+                new SimpleMeterRegistry());
+        userId = UUID.randomUUID();
+        token = jwtService.generateAccessToken(userId, UserRole.RIDER);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtService.generateAccessToken(userId, UserRole.RIDER);
+    }
+
+    @Benchmark
+    public Jws<Claims> validate() {
+        return jwtService.validate(token);
+    }
+}
@@ -0,0 +1,79 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// The CPU side of a refresh: new token, its digest, the redis key and value, and parsing what
+// the rotate script hands back
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshTokenBenchmark {
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private String token;
+    private String tokenHash;
+    private UUID userId;
+    private UUID familyId;
+    private String userIdText;
+    private String cachedValue;
+
+    @Setup
+    public void setUp() {
+        token = AuthService.generateSecureRandomToken(secureRandom);
+        tokenHash = RefreshTokenHasher.hashKey(token);
+        userId = UUID.randomUUID();
+        familyId = UUID.randomUUID();
+        userIdText = userId.toString();
+        cachedValue = RefreshTokenCacheService.buildValue(userId, UserRole.RIDER, familyId, 7);
+    }
+
+    @Benchmark
+    public String generateSecureRandomToken() {
+        return AuthService.generateSecureRandomToken(secureRandom);
+    }
+
+    @Benchmark
+    public String hashKey() {
+        return RefreshTokenHasher.hashKey(token);
+    }
+
+    @Benchmark
+    public String buildKey() {
+        return RefreshTokenCacheService.buildKey(tokenHash);
+    }
+
+    @Benchmark
+    public String buildValue() {
+        return RefreshTokenCacheService.buildValue(userId, UserRole.RIDER, familyId, 7);
+    }
+
+    @Benchmark
+    public RefreshTokenRotation parseRotation() {
+        return RefreshTokenCacheService.parseRotation(cachedValue);
+    }
+
+    @Benchmark
+    public UUID parseUserId() {
+        return UUID.fromString(userIdText);
+    }
+}
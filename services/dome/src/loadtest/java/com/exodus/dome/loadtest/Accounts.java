@@ -0,0 +1,68 @@
+package com.exodus.dome.loadtest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Registered users the virtual users log in as. Each gets a rider row written straight into
+// wall's schema, there is no API that creates one yet.
+final class Accounts {
+
+    record Account(String email, String password, String phoneNumber) {
+    }
+
+    private static final String INSERT_RIDER = "INSERT INTO profile.riders "
+            + "(id, auth_user_id, full_name, phone_number, rating_avg, created_at) "
+            + "SELECT ?, id, ?, ?, NULL, now() FROM auth.users WHERE email = ?";
+
+    private final DataSource dataSource;
+    private final List<Account> accounts = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    Accounts(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    Account next() {
+        long n = sequence.incrementAndGet();
+        return new Account("loadtest-" + n + "-" + UUID.randomUUID() + "@exodus.test", "password-" + n,
+                String.format("+90%010d", n));
+    }
+
+    // Called once register succeeded
+    void add(Account account) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(INSERT_RIDER)) {
+            insert.setObject(1, UUID.randomUUID());
+            insert.setString(2, "Load Test " + account.phoneNumber());
+            insert.setString(3, account.phoneNumber());
+            insert.setString(4, account.email());
+            if (insert.executeUpdate() != 1) {
+                throw new IllegalStateException("No user row for " + account.email());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create rider for " + account.email(), e);
+        }
+        synchronized (accounts) {
+            accounts.add(account);
+        }
+    }
+
+    Account random() {
+        synchronized (accounts) {
+            return accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+        }
+    }
+
+    int size() {
+        synchronized (accounts) {
+            return accounts.size();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.exodus.dome.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency (microseconds) and outcomes per operation. Nothing is kept before start(),
+// so warmup traffic does not show up in the report.
+final class EndpointStats {
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    // "401", "503", "timeout"... per operation
+    private final Map<Operation, Map<String, LongAdder>> errorKinds = new EnumMap<>(Operation.class);
+    private volatile boolean recording;
+    private volatile long startedNanos;
+    private volatile long stoppedNanos;
+
+    EndpointStats() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+            errorKinds.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    void start() {
+        startedNanos = System.nanoTime();
+        recording = true;
+    }
+
+    void stop() {
+        recording = false;
+        stoppedNanos = System.nanoTime();
+    }
+
+    void success(Operation operation, long nanos) {
+        if (recording) {
+            latencies.get(operation).recordValue(Math.max(1, nanos / 1000));
+        }
+    }
+
+    // Failed calls count towards latency too, a slow 503 is still a slow request
+    void failure(Operation operation, long nanos, String kind) {
+        if (recording) {
+            latencies.get(operation).recordValue(Math.max(1, nanos / 1000));
+            errors.get(operation).increment();
+            errorKinds.get(operation).computeIfAbsent(kind, k -> new LongAdder()).increment();
+        }
+    }
+
+    String report() {
+        double seconds = (stoppedNanos - startedNanos) / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-15s %10s %8s %7s %10s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "error%", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            long requests = histogram.getTotalCount();
+            if (requests == 0) {
+                continue;
+            }
+            long failed = errors.get(operation).sum();
+            totalRequests += requests;
+            totalErrors += failed;
+            out.append(String.format("%-15s %10d %8d %7.2f %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.key(), requests, failed, 100.0 * failed / requests, requests / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+        }
+        out.append(String.format("%-15s %10d %8d %7.2f %10.1f%n", "total", totalRequests, totalErrors,
+                totalRequests == 0 ? 0.0 : 100.0 * totalErrors / totalRequests, totalRequests / seconds));
+
+        for (Operation operation : Operation.values()) {
+            Map<String, LongAdder> kinds = errorKinds.get(operation);
+            if (!kinds.isEmpty()) {
+                Map<String, Long> sorted = new TreeMap<>();
+                kinds.forEach((kind, count) -> sorted.put(kind, count.sum()));
+                out.append(String.format("%s errors: %s%n", operation.key(), sorted));
+            }
+        }
+        out.append(String.format("measured over %.1f s%n", seconds));
+        return out.toString();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
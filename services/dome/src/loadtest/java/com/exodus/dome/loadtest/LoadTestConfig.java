@@ -0,0 +1,101 @@
+package com.exodus.dome.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// key=value arguments of the harness. dome.<property>=<value> and wall.<property>=<value> are
+// handed to that service as --<property>=<value>, after the harness' own, so they win.
+final class LoadTestConfig {
+
+    static final String DEFAULT_MIX = "register:5,login:15,refresh:30,logout:5,profile:40,profile-update:5";
+
+    final int users;
+    final Duration warmup;
+    final Duration duration;
+    final int accounts;
+    final Map<Operation, Integer> mix;
+    final long thinkMillis;
+    final Duration requestTimeout;
+    // access tokens live 60 seconds, a user refreshes before calling wall with an older one
+    final Duration accessTokenMaxAge;
+    final int bcryptStrength;
+    final Path domeJar;
+    final Path wallJar;
+    final Path report;
+    final List<String> domeArgs;
+    final List<String> wallArgs;
+
+    private LoadTestConfig(Map<String, String> values, List<String> domeArgs, List<String> wallArgs) {
+        this.users = Integer.parseInt(values.getOrDefault("users", "32"));
+        this.warmup = Duration.ofSeconds(Long.parseLong(values.getOrDefault("warmup-seconds", "10")));
+        this.duration = Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration-seconds", "60")));
+        this.accounts = Integer.parseInt(values.getOrDefault("accounts", "100"));
+        this.mix = parseMix(values.getOrDefault("mix", DEFAULT_MIX));
+        this.thinkMillis = Long.parseLong(values.getOrDefault("think-millis", "0"));
+        this.requestTimeout = Duration.ofMillis(Long.parseLong(values.getOrDefault("timeout-millis", "5000")));
+        this.accessTokenMaxAge = Duration.ofSeconds(Long.parseLong(values.getOrDefault("access-token-max-age-seconds", "50")));
+        this.bcryptStrength = Integer.parseInt(values.getOrDefault("bcrypt-strength", "10"));
+        this.domeJar = Path.of(values.getOrDefault("dome-jar", "target/dome-0.0.1-SNAPSHOT.jar"));
+        this.wallJar = Path.of(values.getOrDefault("wall-jar", "../wall/target/wall-0.0.1-SNAPSHOT.jar"));
+        this.report = Path.of(values.getOrDefault("report", "target/loadtest-report.txt"));
+        this.domeArgs = domeArgs;
+        this.wallArgs = wallArgs;
+        if (users < 1 || accounts < 1) {
+            throw new IllegalArgumentException("users and accounts must be at least 1");
+        }
+    }
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        List<String> domeArgs = new ArrayList<>();
+        List<String> wallArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.startsWith("dome.")) {
+                domeArgs.add("--" + key.substring("dome.".length()) + "=" + value);
+            } else if (key.startsWith("wall.")) {
+                wallArgs.add("--" + key.substring("wall.".length()) + "=" + value);
+            } else {
+                values.put(key, value);
+            }
+        }
+        return new LoadTestConfig(values, domeArgs, wallArgs);
+    }
+
+    // register:5,login:15,... -> weights, operations left out are never picked
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight in mix, got " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + parts[0]);
+            }
+            weights.put(Operation.fromKey(parts[0].trim()), weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("mix has no positive weight");
+        }
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return "users=" + users + " warmup=" + warmup.toSeconds() + "s duration=" + duration.toSeconds()
+                + "s accounts=" + accounts + " think-millis=" + thinkMillis + " bcrypt-strength=" + bcryptStrength
+                + " mix=" + mix + " dome=" + domeArgs + " wall=" + wallArgs;
+    }
+}
@@ -0,0 +1,180 @@
+package com.exodus.dome.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//**
+// End to end load test of dome and wall without docker: postgres (zonky embedded binaries) and
+// redis (embedded binary) start in this JVM, dome and wall start from their jars in JVMs of their
+// own, then `users` virtual users drive the mix for warmup + duration and the report covers
+// the part after warmup.
+//
+// Closed loop: a user sends its next request only after the previous one answered, so when the
+// services slow down the offered load drops with them. Latencies are what a client with
+// `users` connections sees, not what an open arrival rate would see.
+//**
+public final class LoadTestHarness {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(120);
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        System.out.println("Load test: " + config);
+
+        int redisPort = freePort();
+        int domePort = freePort();
+        int domeManagementPort = freePort();
+        int wallPort = freePort();
+        RedisServer redis = new RedisServer(redisPort);
+        redis.start();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            createSchema(postgres);
+            String jdbcUrl = "jdbc:postgresql://localhost:" + postgres.getPort() + "/postgres";
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(2))
+                    .build();
+            URI dome = URI.create("http://localhost:" + domePort);
+            URI wall = URI.create("http://localhost:" + wallPort);
+
+            List<String> domeArgs = new ArrayList<>(commonArgs(domePort, jdbcUrl));
+            domeArgs.addAll(List.of(
+                    "--spring.data.redis.port=" + redisPort,
+                    "--management.server.port=" + domeManagementPort,
+                    "--auth.reactive.r2dbc.port=" + postgres.getPort(),
+                    "--auth.reactive.r2dbc.database=postgres",
+                    "--auth.password.bcrypt.strength=" + config.bcryptStrength));
+            domeArgs.addAll(config.domeArgs);
+            List<String> wallArgs = new ArrayList<>(commonArgs(wallPort, jdbcUrl));
+            wallArgs.add("--auth.jwt.jwks-uri=" + dome.resolve("/.well-known/jwks.json"));
+            wallArgs.add("--spring.data.redis.port=" + redisPort); // profile cache, when turned on
+            wallArgs.addAll(config.wallArgs);
+
+            try (ServiceProcess domeProcess = ServiceProcess.start("dome", config.domeJar, domeArgs)) {
+                domeProcess.awaitReady(http, dome.resolve("/.well-known/jwks.json"), STARTUP_TIMEOUT);
+                try (ServiceProcess wallProcess = ServiceProcess.start("wall", config.wallJar, wallArgs)) {
+                    wallProcess.awaitReady(http, wall.resolve("/actuator/health"), STARTUP_TIMEOUT);
+                    run(config, http, dome, wall, new Accounts(postgres.getPostgresDatabase()));
+                }
+            }
+        } finally {
+            redis.stop();
+        }
+    }
+
+    private static void run(LoadTestConfig config, HttpClient http, URI dome, URI wall, Accounts accounts)
+            throws Exception {
+        EndpointStats stats = new EndpointStats();
+        TrafficMix mix = new TrafficMix(config.mix);
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(config.users);
+        try {
+            seedAccounts(config, http, dome, wall, accounts, stats, running, executor);
+            System.out.printf("Seeded %d accounts, running %d users for %ds warmup + %ds%n",
+                    accounts.size(), config.users, config.warmup.toSeconds(), config.duration.toSeconds());
+
+            for (int i = 0; i < config.users; i++) {
+                executor.execute(new VirtualUser(http, dome, wall, config, mix, accounts, stats, running));
+            }
+            Thread.sleep(config.warmup.toMillis());
+            stats.start();
+            Thread.sleep(config.duration.toMillis());
+            stats.stop();
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            if (!executor.awaitTermination(config.requestTimeout.toMillis() + 5000, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+
+        String report = stats.report();
+        System.out.println();
+        System.out.println(config);
+        System.out.print(report);
+        Files.createDirectories(config.report.toAbsolutePath().getParent());
+        Files.writeString(config.report, config + System.lineSeparator() + report);
+        System.out.println("Report written to " + config.report);
+    }
+
+    // Registers the starting accounts through dome itself, nothing recorded yet
+    private static void seedAccounts(LoadTestConfig config, HttpClient http, URI dome, URI wall,
+                                     Accounts accounts, EndpointStats stats, AtomicBoolean running,
+                                     ExecutorService executor) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(config.accounts);
+        List<Future<?>> seeders = new ArrayList<>();
+        for (int i = 0; i < config.users; i++) {
+            VirtualUser seeder = new VirtualUser(http, dome, wall, config, null, accounts, stats, running);
+            seeders.add(executor.submit(() -> {
+                int failures = 0;
+                while (remaining.getAndDecrement() > 0) {
+                    if (!seeder.register()) {
+                        remaining.incrementAndGet();
+                        if (++failures > 10) {
+                            throw new IllegalStateException("Registering seed accounts keeps failing");
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> seeder : seeders) {
+            seeder.get();
+        }
+    }
+
+    private static List<String> commonArgs(int port, String jdbcUrl) {
+        return List.of(
+                "--server.port=" + port,
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                // both log every statement by default, that would be most of what gets measured
+                "--spring.jpa.show-sql=false",
+                "--logging.level.org.hibernate.SQL=INFO",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO");
+    }
+
+    private static void createSchema(EmbeddedPostgres postgres) throws IOException, SQLException {
+        String schema;
+        try (InputStream in = LoadTestHarness.class.getResourceAsStream("/loadtest-schema.sql")) {
+            if (in == null) {
+                throw new IllegalStateException("loadtest-schema.sql not on the classpath");
+            }
+            schema = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(schema);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
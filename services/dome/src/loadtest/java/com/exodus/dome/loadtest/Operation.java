@@ -0,0 +1,30 @@
+package com.exodus.dome.loadtest;
+
+import java.util.Arrays;
+
+// What a virtual user can do, keyed by the name used in mix=
+enum Operation {
+    REGISTER("register"),
+    LOGIN("login"),
+    REFRESH("refresh"),
+    LOGOUT("logout"),
+    PROFILE("profile"),
+    PROFILE_UPDATE("profile-update");
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    String key() {
+        return key;
+    }
+
+    static Operation fromKey(String key) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.key.equals(key))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + key + " in mix"));
+    }
+}
@@ -0,0 +1,180 @@
+package com.exodus.dome.loadtest;
+
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One client in a closed loop: picks an operation from the mix, calls it, waits think-millis,
+// repeats. Holds at most one session. Operations that need a session log in first and are
+// recorded as that login, the same for profile calls with a stale access token and refresh.
+final class VirtualUser implements Runnable {
+
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    private final HttpClient http;
+    private final URI dome;
+    private final URI wall;
+    private final LoadTestConfig config;
+    private final TrafficMix mix;
+    private final Accounts accounts;
+    private final EndpointStats stats;
+    private final AtomicBoolean running;
+
+    private String accessToken;
+    private String refreshToken;
+    private long accessTokenIssuedNanos;
+    // of the account the session belongs to, profile-update keeps it so it stays unique
+    private String phoneNumber;
+
+    VirtualUser(HttpClient http, URI dome, URI wall, LoadTestConfig config, TrafficMix mix,
+                Accounts accounts, EndpointStats stats, AtomicBoolean running) {
+        this.http = http;
+        this.dome = dome;
+        this.wall = wall;
+        this.config = config;
+        this.mix = mix;
+        this.accounts = accounts;
+        this.stats = stats;
+        this.running = running;
+    }
+
+    @Override
+    public void run() {
+        while (running.get()) {
+            try {
+                execute(mix.next());
+                if (config.thinkMillis > 0) {
+                    Thread.sleep(config.thinkMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void execute(Operation operation) throws InterruptedException {
+        switch (operation) {
+            case REGISTER -> register();
+            case LOGIN -> login();
+            case REFRESH -> {
+                if (refreshToken == null) {
+                    login();
+                } else {
+                    refresh();
+                }
+            }
+            case LOGOUT -> {
+                if (refreshToken == null) {
+                    login();
+                } else {
+                    logout();
+                }
+            }
+            case PROFILE, PROFILE_UPDATE -> {
+                if (refreshToken == null) {
+                    login();
+                } else if (System.nanoTime() - accessTokenIssuedNanos > config.accessTokenMaxAge.toNanos()) {
+                    refresh();
+                } else if (operation == Operation.PROFILE) {
+                    call(Operation.PROFILE, wallRequest().GET());
+                } else {
+                    call(Operation.PROFILE_UPDATE, wallRequest().PUT(json(Map.of(
+                            "fullName", "Load Test " + System.nanoTime(),
+                            "phoneNumber", phoneNumber))));
+                }
+            }
+        }
+    }
+
+    boolean register() throws InterruptedException {
+        Accounts.Account account = accounts.next();
+        JsonNode response = call(Operation.REGISTER, domeRequest("/api/auth/register").POST(json(Map.of(
+                "email", account.email(), "password", account.password()))));
+        if (response == null) {
+            return false;
+        }
+        accounts.add(account);
+        return true;
+    }
+
+    private void login() throws InterruptedException {
+        Accounts.Account account = accounts.random();
+        JsonNode response = call(Operation.LOGIN, domeRequest("/api/auth/login").POST(json(Map.of(
+                "email", account.email(), "password", account.password()))));
+        if (response != null) {
+            phoneNumber = account.phoneNumber();
+            startSession(response);
+        }
+    }
+
+    private void refresh() throws InterruptedException {
+        JsonNode response = call(Operation.REFRESH, domeRequest("/api/auth/refresh").POST(json(Map.of(
+                "refreshToken", refreshToken))));
+        if (response != null) {
+            startSession(response);
+        } else {
+            endSession();
+        }
+    }
+
+    private void logout() throws InterruptedException {
+        call(Operation.LOGOUT, domeRequest("/api/auth/logout").POST(json(Map.of(
+                "refreshToken", refreshToken))));
+        endSession();
+    }
+
+    private void startSession(JsonNode response) {
+        accessToken = response.get("accessToken").asString();
+        refreshToken = response.get("refreshToken").asString();
+        accessTokenIssuedNanos = System.nanoTime();
+    }
+
+    private void endSession() {
+        accessToken = null;
+        refreshToken = null;
+    }
+
+    // Response body as JSON (an empty object for empty bodies), null when the call failed
+    private JsonNode call(Operation operation, HttpRequest.Builder request) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = http.send(request.timeout(config.requestTimeout).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            long elapsed = System.nanoTime() - start;
+            if (response.statusCode() / 100 != 2) {
+                stats.failure(operation, elapsed, String.valueOf(response.statusCode()));
+                return null;
+            }
+            stats.success(operation, elapsed);
+            return response.body().isEmpty() ? JSON.createObjectNode() : JSON.readTree(response.body());
+        } catch (HttpTimeoutException e) {
+            stats.failure(operation, System.nanoTime() - start, "timeout");
+        } catch (IOException e) {
+            stats.failure(operation, System.nanoTime() - start, e.getClass().getSimpleName());
+        }
+        return null;
+    }
+
+    private HttpRequest.Builder domeRequest(String path) {
+        return HttpRequest.newBuilder(dome.resolve(path)).header("Content-Type", "application/json");
+    }
+
+    private HttpRequest.Builder wallRequest() {
+        return HttpRequest.newBuilder(wall.resolve("/api/rider/profile/me"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + accessToken);
+    }
+
+    private static HttpRequest.BodyPublisher json(Map<String, String> body) {
+        return HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body));
+    }
+}
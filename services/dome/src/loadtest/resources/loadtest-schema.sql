@@ -0,0 +1,55 @@
+-- Tables dome (auth) and wall (profile) need, created in the embedded postgres before they start.
+-- Mirrors the entities plus db/refresh_tokens_token_hash.sql and db/refresh_tokens_family.sql.
+
+CREATE SCHEMA auth;
+
+CREATE TABLE auth.users (
+    id            uuid         PRIMARY KEY,
+    email         varchar(255) NOT NULL UNIQUE,
+    password_hash varchar(255) NOT NULL,
+    role          varchar(32)  NOT NULL,
+    is_active     boolean      NOT NULL,
+    created_at    timestamptz  NOT NULL,
+    last_login_at timestamptz
+);
+
+CREATE TABLE auth.refresh_tokens (
+    id          uuid        PRIMARY KEY,
+    user_id     uuid        NOT NULL REFERENCES auth.users (id),
+    token_hash  bytea       NOT NULL UNIQUE,
+    family_id   uuid        NOT NULL,
+    generation  integer     NOT NULL DEFAULT 0,
+    expires_at  timestamptz NOT NULL,
+    created_at  timestamptz NOT NULL,
+    revoked_at  timestamptz
+);
+
+CREATE INDEX ON auth.refresh_tokens (user_id);
+CREATE INDEX ON auth.refresh_tokens (family_id) WHERE revoked_at IS NULL;
+
+CREATE SCHEMA profile;
+
+CREATE TABLE profile.riders (
+    id           uuid         PRIMARY KEY,
+    auth_user_id uuid         NOT NULL UNIQUE,
+    full_name    varchar(255) NOT NULL,
+    phone_number varchar(32)  NOT NULL UNIQUE,
+    rating_avg   double precision,
+    created_at   timestamptz  NOT NULL,
+    version      bigint       NOT NULL DEFAULT 0
+);
+
+CREATE INDEX ON profile.riders (auth_user_id) INCLUDE (version);
+
+CREATE TABLE profile.drivers (
+    id           uuid         PRIMARY KEY,
+    auth_user_id uuid         NOT NULL UNIQUE,
+    full_name    varchar(255) NOT NULL,
+    phone_number varchar(32)  NOT NULL UNIQUE,
+    rating_avg   double precision,
+    is_verified  boolean      NOT NULL DEFAULT false,
+    created_at   timestamptz  NOT NULL,
+    version      bigint       NOT NULL DEFAULT 0
+);
+
+CREATE INDEX ON profile.drivers (auth_user_id) INCLUDE (version);
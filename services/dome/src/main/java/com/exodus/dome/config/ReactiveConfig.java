@@ -0,0 +1,67 @@
+package com.exodus.dome.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionConfiguration;
+import io.r2dbc.postgresql.PostgresqlConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.Duration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+//**
+// R2DBC side of the reactive auth endpoints, only built with auth.reactive.enabled.
+// Neither the pool nor its transaction manager is a bean on purpose: boot drops the JDBC
+// DataSource (and with it JPA) once it sees a ConnectionFactory bean, and JPA's transaction
+// manager stays the only one, so every @Transactional keeps meaning what it meant.
+// Reactive code goes through DatabaseClient and the TransactionalOperator below.
+//**
+@Configuration
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveConfig implements DisposableBean {
+  private ConnectionPool connectionPool;
+
+  @Bean
+  public DatabaseClient databaseClient(
+      @Value("${auth.reactive.r2dbc.host:localhost}") String host,
+      @Value("${auth.reactive.r2dbc.port:5432}") int port,
+      @Value("${auth.reactive.r2dbc.database:exodus}") String database,
+      @Value("${spring.datasource.username}") String username,
+      @Value("${spring.datasource.password}") String password,
+      @Value("${spring.jpa.properties.hibernate.default_schema:auth}") String schema,
+      @Value("${auth.reactive.r2dbc.max-pool-size:10}") int maxPoolSize,
+      @Value("${auth.reactive.r2dbc.max-acquire-millis:3000}") long maxAcquireMillis) {
+    ConnectionFactory postgres = new PostgresqlConnectionFactory(PostgresqlConnectionConfiguration.builder()
+        .host(host)
+        .port(port)
+        .database(database)
+        .username(username)
+        .password(password)
+        .schema(schema)
+        .build());
+    // same idea as hikari's connection-timeout: past the pool, callers fail instead of queueing forever
+    connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(postgres)
+        .maxSize(maxPoolSize)
+        .maxAcquireTime(Duration.ofMillis(maxAcquireMillis))
+        .build());
+    return DatabaseClient.create(connectionPool);
+  }
+
+  @Bean
+  public TransactionalOperator reactiveTransactionalOperator(DatabaseClient databaseClient) {
+    return TransactionalOperator.create(new R2dbcTransactionManager(databaseClient.getConnectionFactory()));
+  }
+
+  @Override
+  public void destroy() {
+    if (connectionPool != null) {
+      connectionPool.dispose();
+    }
+  }
+}
@@ -1,18 +1,25 @@
 package com.exodus.dome.config;
 
+import com.exodus.dome.service.EmailBloomFilterService;
+import java.nio.charset.StandardCharsets;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 @Configuration
 public class RedisConfig {
 
+  // Lettuce serves both StringRedisTemplate and the reactive template of the reactive endpoints
   @Bean
-  public RedisConnectionFactory redisConnectionFactory(@Value("${spring.data.redis.host}") String host,
-                                                       @Value("${spring.data.redis.port}") int port) {
+  public LettuceConnectionFactory redisConnectionFactory(@Value("${spring.data.redis.host}") String host,
+                                                        @Value("${spring.data.redis.port}") int port) {
     return new LettuceConnectionFactory(host, port);
   }
 
@@ -21,4 +28,23 @@ public class RedisConfig {
   public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
     return new StringRedisTemplate(redisConnectionFactory);
   }
+
+  // Emails registered on other nodes, into this node's filter
+  @Bean
+  @ConditionalOnProperty(name = "auth.users.email-filter.enabled", havingValue = "true")
+  public RedisMessageListenerContainer emailFilterListener(RedisConnectionFactory redisConnectionFactory,
+                                                           EmailBloomFilterService emailBloomFilterService) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    container.addMessageListener((message, pattern) ->
+            emailBloomFilterService.onPeerAdd(new String(message.getBody(), StandardCharsets.UTF_8)),
+        new ChannelTopic(EmailBloomFilterService.ADD_CHANNEL));
+    return container;
+  }
+
+  @Bean
+  public ReactiveStringRedisTemplate reactiveStringRedisTemplate(
+      LettuceConnectionFactory redisConnectionFactory) {
+    return new ReactiveStringRedisTemplate(redisConnectionFactory);
+  }
 }
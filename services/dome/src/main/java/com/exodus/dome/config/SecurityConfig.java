@@ -1,19 +1,36 @@
 package com.exodus.dome.config;
 
+import com.exodus.dome.security.AccessTokenAuthenticationFilter;
+import com.exodus.dome.security.BoundedPasswordEncoder;
+import com.exodus.dome.security.JwtKeyRing;
+import com.exodus.dome.service.JwtService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.file.Path;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @Configuration
 public class SecurityConfig {
+  private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
 
   @Bean
-  public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+  public SecurityFilterChain filterChain(HttpSecurity http, JwtService jwtService,
+                                         @Value("${management.server.port:-1}") int managementPort)
+      throws Exception {
     http
         .csrf(csrf -> csrf.disable())
         .authorizeHttpRequests(auth -> auth
@@ -22,14 +39,64 @@ public class SecurityConfig {
             .requestMatchers(HttpMethod.POST, "/api/auth/refresh").permitAll()
             .requestMatchers(HttpMethod.POST, "/api/auth/logout").permitAll()
             .requestMatchers(HttpMethod.POST, "/api/auth/logout-all").permitAll()
+            .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
+            .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+            .requestMatchers(prometheusScrape(managementPort)).permitAll()
+            .requestMatchers("/api/admin/**").hasRole("ADMIN")
             .anyRequest().authenticated())
+        // not a bean, Boot would register it a second time as a plain servlet filter
+        .addFilterBefore(new AccessTokenAuthenticationFilter(jwtService), BasicAuthenticationFilter.class)
         .httpBasic(Customizer.withDefaults());
 
     return http.build();
   }
 
+  // The management port is only reachable from inside the cluster, prometheus scrapes it there.
+  // Without a management port nothing matches and the endpoint needs a caller like the rest
+  private static RequestMatcher prometheusScrape(int managementPort) {
+    return request -> managementPort > 0
+        && request.getLocalPort() == managementPort
+        && HttpMethod.GET.matches(request.getMethod())
+        && "/actuator/prometheus".equals(request.getRequestURI());
+  }
+
+  // BCrypt runs on its own bounded pool, see BoundedPasswordEncoder.
+  // New hashes are stored as {bcrypt}<hash> with the configured cost,
+  // old rows without the prefix still match and get upgraded on their next login.
+  @Bean
+  public PasswordEncoder passwordEncoder(
+      @Value("${auth.password.hashing.threads:0}") int threads,
+      @Value("${auth.password.hashing.queue-capacity:64}") int queueCapacity,
+      @Value("${auth.password.hashing.max-wait-millis:2000}") long maxWaitMillis,
+      @Value("${auth.password.hashing.retry-after-seconds:1}") long retryAfterSeconds,
+      @Value("${auth.password.bcrypt.strength:12}") int strength,
+      MeterRegistry meterRegistry) {
+    log.info("Using BCrypt strength {}", strength);
+    Gauge.builder("auth.password.bcrypt.strength", () -> strength).register(meterRegistry);
+
+    DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("bcrypt",
+        Map.of("bcrypt", new BCryptPasswordEncoder(strength)));
+    // hashes written before the {bcrypt} prefix, any cost
+    delegating.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    return new BoundedPasswordEncoder(delegating, poolSize, queueCapacity,
+        maxWaitMillis, retryAfterSeconds, meterRegistry);
+  }
+
+  // Only used with auth.jwt.algorithm ES256. Without a key directory a throwaway key is
+  // generated, fine for a single local instance only.
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public JwtKeyRing jwtKeyRing(
+      @Value("${auth.jwt.signing-keys.directory:}") String directory,
+      @Value("${auth.jwt.signing-keys.active-kid:}") String activeKid) {
+    if (directory.isBlank()) {
+      JwtKeyRing generated = JwtKeyRing.generate();
+      log.info("No JWT key directory configured, using in-memory key {}", generated.getActiveKid());
+      return generated;
+    }
+    JwtKeyRing keyRing = JwtKeyRing.fromDirectory(Path.of(directory), activeKid);
+    log.info("Signing access tokens with key {}", keyRing.getActiveKid());
+    return keyRing;
   }
 }
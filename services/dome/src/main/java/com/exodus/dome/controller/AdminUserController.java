@@ -0,0 +1,27 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.service.AuthService;
+import java.util.UUID;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// ADMIN access token only, see SecurityConfig
+@RestController
+@RequestMapping("/api/admin/users")
+public class AdminUserController {
+  private final AuthService authService;
+
+  public AdminUserController(AuthService authService) {
+    this.authService = authService;
+  }
+
+  // Blocks further logins and refreshes and revokes every session the user has, on every node
+  @PostMapping("/{userId}/deactivate")
+  public ResponseEntity<Void> deactivate(@PathVariable UUID userId) {
+    authService.deactivateUser(userId);
+    return ResponseEntity.noContent().build();
+  }
+}
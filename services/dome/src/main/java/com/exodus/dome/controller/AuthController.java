@@ -6,7 +6,9 @@ import com.exodus.dome.entity.dto.LogoutRequest;
 import com.exodus.dome.entity.dto.RefreshRequest;
 import com.exodus.dome.entity.dto.RegisterRequest;
 import com.exodus.dome.service.AuthService;
+import com.exodus.dome.service.RefreshCoalescingService;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,11 +17,14 @@ import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @RequestMapping("/api/auth")
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "false", matchIfMissing = true)
 public class AuthController {
   private final AuthService authService;
+  private final RefreshCoalescingService refreshCoalescingService;
 
-  public AuthController(AuthService authService) {
+  public AuthController(AuthService authService, RefreshCoalescingService refreshCoalescingService) {
     this.authService = authService;
+    this.refreshCoalescingService = refreshCoalescingService;
   }
 
   @PostMapping("/register")
@@ -34,9 +39,11 @@ public class AuthController {
     return ResponseEntity.ok(response);
   }
 
+  // Coalesced out here, so the shared response is only handed out once refresh has committed
   @PostMapping("/refresh")
     public ResponseEntity<AuthResponse> refresh(@Valid @RequestBody RefreshRequest request) {
-        AuthResponse response = authService.refresh(request);
+        AuthResponse response = refreshCoalescingService.coalesce(request.getRefreshToken(),
+            () -> authService.refresh(request));
         return ResponseEntity.ok(response);
   }
 
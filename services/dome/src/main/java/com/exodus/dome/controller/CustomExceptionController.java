@@ -8,9 +8,11 @@ import com.exodus.dome.exception.InvalidRefreshTokenException;
 import com.exodus.dome.exception.NotFoundException;
 import com.exodus.dome.exception.PasswordNotCorrectException;
 import com.exodus.dome.exception.RefreshTokenNotFoundException;
+import com.exodus.dome.exception.ServiceOverloadedException;
 import com.exodus.dome.exception.TokenExpiredException;
 import com.exodus.dome.exception.UserNotActiveException;
 import com.exodus.dome.exception.UserNotFoundException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -73,6 +75,14 @@ public class CustomExceptionController {
     return handleException(exception, HttpStatus.NOT_FOUND);
   }
 
+  @ExceptionHandler({ ServiceOverloadedException.class })
+  public ResponseEntity<Object> serviceOverloadedExceptionHandler(
+      ServiceOverloadedException exception) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()))
+        .body(new ResponseMessage(exception.getMessageWithParameters()));
+  }
+
   private ResponseEntity<Object> handleException(CustomException exception, HttpStatus httpStatus) {
     return ResponseEntity.status(httpStatus).body(new ResponseMessage(exception.getMessageWithParameters()));
   }
@@ -0,0 +1,30 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.service.JwtService;
+import java.time.Duration;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// Public keys for verifying access tokens locally in other services
+@RestController
+public class JwksController {
+  private final JwtService jwtService;
+  private final long maxAgeSeconds;
+
+  public JwksController(JwtService jwtService,
+                        @Value("${auth.jwt.jwks.max-age-seconds:300}") long maxAgeSeconds) {
+    this.jwtService = jwtService;
+    this.maxAgeSeconds = maxAgeSeconds;
+  }
+
+  @GetMapping("/.well-known/jwks.json")
+  public ResponseEntity<Map<String, Object>> jwks() {
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic())
+        .body(jwtService.jwks());
+  }
+}
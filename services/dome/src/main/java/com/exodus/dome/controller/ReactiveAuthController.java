@@ -0,0 +1,70 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.entity.dto.LoginRequest;
+import com.exodus.dome.entity.dto.LogoutRequest;
+import com.exodus.dome.entity.dto.RefreshRequest;
+import com.exodus.dome.entity.dto.RegisterRequest;
+import com.exodus.dome.service.AuthService;
+import com.exodus.dome.service.ReactiveAuthService;
+import com.exodus.dome.service.ReactiveRefreshCoalescingService;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+//**
+// Takes over /api/auth from AuthController when auth.reactive.enabled is true.
+// login, refresh and logout return a Mono, the servlet thread goes back to the pool right away
+// and the rest runs on the R2DBC and Lettuce event loops. register and logout-all are rare
+// and stay on the blocking AuthService.
+//**
+@RestController
+@RequestMapping("/api/auth")
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveAuthController {
+  private final AuthService authService;
+  private final ReactiveAuthService reactiveAuthService;
+  private final ReactiveRefreshCoalescingService refreshCoalescingService;
+
+  public ReactiveAuthController(AuthService authService, ReactiveAuthService reactiveAuthService,
+                                ReactiveRefreshCoalescingService refreshCoalescingService) {
+    this.authService = authService;
+    this.reactiveAuthService = reactiveAuthService;
+    this.refreshCoalescingService = refreshCoalescingService;
+  }
+
+  @PostMapping("/register")
+  public ResponseEntity<Void> register(@Valid @RequestBody RegisterRequest request) {
+    authService.register(request);
+    return ResponseEntity.ok().build();
+  }
+
+  @PostMapping("/login")
+  public Mono<ResponseEntity<AuthResponse>> login(@Valid @RequestBody LoginRequest request) {
+    return reactiveAuthService.login(request).map(ResponseEntity::ok);
+  }
+
+  @PostMapping("/refresh")
+  public Mono<ResponseEntity<AuthResponse>> refresh(@Valid @RequestBody RefreshRequest request) {
+    return refreshCoalescingService.coalesce(request.getRefreshToken(),
+            () -> reactiveAuthService.refresh(request))
+        .map(ResponseEntity::ok);
+  }
+
+  @PostMapping("/logout")
+  public Mono<ResponseEntity<Void>> logout(@Valid @RequestBody LogoutRequest logoutRequest) {
+    return reactiveAuthService.logout(logoutRequest)
+        .then(Mono.fromSupplier(() -> ResponseEntity.noContent().build()));
+  }
+
+  @PostMapping("/logout-all")
+  public ResponseEntity<Void> logoutAll(@Valid @RequestBody LogoutRequest logoutRequest) {
+    authService.logoutAllSessions(logoutRequest);
+    return ResponseEntity.noContent().build();
+  }
+}
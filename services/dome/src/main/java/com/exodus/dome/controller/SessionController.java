@@ -0,0 +1,28 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.service.AuthService;
+import java.security.Principal;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// Access token only, the caller is its subject (see AccessTokenAuthenticationFilter)
+@RestController
+@RequestMapping("/api/auth/sessions")
+public class SessionController {
+  private final AuthService authService;
+
+  public SessionController(AuthService authService) {
+    this.authService = authService;
+  }
+
+  // The caller's live refresh tokens by hash, soonest to expire first
+  @GetMapping
+  public ResponseEntity<List<RefreshSession>> list(Principal principal) {
+    return ResponseEntity.ok(authService.getActiveSessions(UUID.fromString(principal.getName())));
+  }
+}
@@ -1,5 +1,6 @@
 package com.exodus.dome.entity;
 
+import com.exodus.dome.security.RefreshTokenHasher;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -29,8 +30,17 @@ public class RefreshToken {
   @JoinColumn(name = "user_id", nullable = false, columnDefinition = "uuid")
   private UserEntity user;
 
-  @Column(nullable = false, unique = true)
-  private String token;
+  // SHA-256 of the token, the token itself is only ever known to the client
+  @Column(name = "token_hash", nullable = false, unique = true, columnDefinition = "bytea")
+  private byte[] tokenHash;
+
+  // Every rotation of one login stays in the same family, generation counts the rotations.
+  // A revoked generation coming back means the token leaked, and the whole family is revoked.
+  @Column(name = "family_id", nullable = false, columnDefinition = "uuid")
+  private UUID familyId;
+
+  @Column(name = "generation", nullable = false)
+  private int generation;
 
   @Column(name = "expires_at", nullable = false)
   private Instant expiresAt;
@@ -41,6 +51,26 @@ public class RefreshToken {
   @Column(name="revoked_at")
   private Instant revokedAt;
 
+  public RefreshToken(UUID id, UserEntity user, String token, UUID familyId, int generation,
+                      Instant expiresAt, Instant createdAt, Instant revokedAt) {
+    this(id, user, RefreshTokenHasher.hash(token), familyId, generation, expiresAt, createdAt, revokedAt);
+  }
+
+  // First token of a new family
+  public RefreshToken(UUID id, UserEntity user, String token, Instant expiresAt,
+                      Instant createdAt, Instant revokedAt) {
+    this(id, user, token, id, 0, expiresAt, createdAt, revokedAt);
+  }
+
+  public void setToken(String token) {
+    this.tokenHash = RefreshTokenHasher.hash(token);
+  }
+
+  // Same digest as text, how redis and the write-behind journal refer to the token
+  public String getTokenHashKey() {
+    return RefreshTokenHasher.toKey(tokenHash);
+  }
+
   public boolean isExpired() {
     return Instant.now().isAfter(expiresAt);
   }
@@ -0,0 +1,13 @@
+package com.exodus.dome.entity.valueObject;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// One live refresh token of a user, as kept in the per-user session index
+@Getter
+@AllArgsConstructor
+public class RefreshSession {
+  private String tokenHash;
+  private Instant expiresAt;
+}
@@ -0,0 +1,23 @@
+package com.exodus.dome.entity.valueObject;
+
+import com.exodus.dome.enums.UserRole;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// What a stateless refresh token carries, see RefreshTokenCodec
+@Getter
+@AllArgsConstructor
+public class RefreshTokenClaims {
+  private UUID userId;
+  // Stays the same across rotations of one login, a new login starts a new family
+  private UUID familyId;
+  private UserRole role;
+  private Instant issuedAt;
+  private Instant expiresAt;
+
+  public boolean isExpired(Instant now) {
+    return !expiresAt.isAfter(now);
+  }
+}
@@ -0,0 +1,27 @@
+package com.exodus.dome.entity.valueObject;
+
+import com.exodus.dome.enums.RefreshTokenRotationStatus;
+import com.exodus.dome.enums.UserRole;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class RefreshTokenRotation {
+  private RefreshTokenRotationStatus status;
+  private UUID userId;
+  private UserRole role;
+  // Family of the token, null for values cached before families existed
+  private UUID familyId;
+  // Generation of the new token when ROTATED
+  private int generation;
+
+  public static RefreshTokenRotation notFound() {
+    return new RefreshTokenRotation(RefreshTokenRotationStatus.NOT_FOUND, null, null, null, 0);
+  }
+
+  public static RefreshTokenRotation alreadyRotated(UUID userId, UUID familyId) {
+    return new RefreshTokenRotation(RefreshTokenRotationStatus.ALREADY_ROTATED, userId, null, familyId, 0);
+  }
+}
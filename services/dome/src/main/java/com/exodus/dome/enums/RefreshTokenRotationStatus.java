@@ -0,0 +1,7 @@
+package com.exodus.dome.enums;
+
+public enum RefreshTokenRotationStatus {
+  ROTATED,
+  NOT_FOUND,
+  ALREADY_ROTATED
+}
@@ -0,0 +1,10 @@
+package com.exodus.dome.exception;
+
+// A refresh token past its expiry. Same 401 and message as any invalid token,
+// the type is for the caller's bookkeeping.
+public class RefreshTokenExpiredException extends InvalidRefreshTokenException {
+
+  public RefreshTokenExpiredException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,10 @@
+package com.exodus.dome.exception;
+
+// A refresh token that was already rotated away or logged out came back.
+// Same 401 and message as any invalid token, the type is for the caller's bookkeeping.
+public class RefreshTokenRevokedException extends InvalidRefreshTokenException {
+
+  public RefreshTokenRevokedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,46 @@
+package com.exodus.dome.exception;
+
+import com.exodus.dome.contract.CustomException;
+import com.exodus.dome.entity.valueObject.ExceptionMessageParameter;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceOverloadedException extends RuntimeException implements CustomException {
+  private final String message;
+  private final long retryAfterSeconds;
+  private List<ExceptionMessageParameter> parameters;
+
+  public ServiceOverloadedException(String message, long retryAfterSeconds) {
+    super(message);
+    this.message = message;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public ServiceOverloadedException(String message, long retryAfterSeconds,
+                                    List<ExceptionMessageParameter> parameters) {
+    this.message = message;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.parameters = parameters;
+  }
+
+  public String getMessageWithParameters() {
+    if (parameters == null || parameters.isEmpty()) {
+      return message;
+    }
+
+    return parameters.stream().map(
+        exceptionMessageParameter -> " || " + exceptionMessageParameter.getKey() + " => " +
+            exceptionMessageParameter.getValue()).collect(Collectors.joining("", message, ""));
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
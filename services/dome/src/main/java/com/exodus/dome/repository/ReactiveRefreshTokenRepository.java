@@ -0,0 +1,95 @@
+package com.exodus.dome.repository;
+
+import com.exodus.dome.entity.RefreshToken;
+import io.r2dbc.spi.Readable;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//**
+// refresh_tokens over R2DBC for the reactive endpoints, same statements as RefreshTokenRepository.
+// Rows come back as detached RefreshToken/UserEntity, no session behind them.
+//**
+@Repository
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveRefreshTokenRepository {
+  private final DatabaseClient databaseClient;
+
+  public ReactiveRefreshTokenRepository(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  // The token with its user in one query, refresh needs both and there is no lazy loading here
+  public Mono<RefreshToken> findByTokenHash(byte[] tokenHash) {
+    return databaseClient.sql("SELECT t.id, t.token_hash, t.family_id, t.generation, t.expires_at, "
+            + "t.created_at, t.revoked_at, u.id AS u_id, u.email AS u_email, "
+            + "u.password_hash AS u_password_hash, u.role AS u_role, u.is_active AS u_is_active, "
+            + "u.created_at AS u_created_at, u.last_login_at AS u_last_login_at "
+            + "FROM refresh_tokens t JOIN users u ON u.id = t.user_id "
+            + "WHERE t.token_hash = :tokenHash")
+        .bind("tokenHash", tokenHash)
+        .map(ReactiveRefreshTokenRepository::toRefreshToken)
+        .one();
+  }
+
+  public Mono<Void> insert(RefreshToken refreshToken) {
+    DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO refresh_tokens "
+            + "(id, user_id, token_hash, family_id, generation, expires_at, created_at, revoked_at) "
+            + "VALUES (:id, :userId, :tokenHash, :familyId, :generation, :expiresAt, :createdAt, :revokedAt)")
+        .bind("id", refreshToken.getId())
+        .bind("userId", refreshToken.getUser().getId())
+        .bind("tokenHash", refreshToken.getTokenHash())
+        .bind("familyId", refreshToken.getFamilyId())
+        .bind("generation", refreshToken.getGeneration())
+        .bind("expiresAt", refreshToken.getExpiresAt())
+        .bind("createdAt", refreshToken.getCreatedAt());
+    insert = refreshToken.getRevokedAt() != null
+        ? insert.bind("revokedAt", refreshToken.getRevokedAt())
+        : insert.bindNull("revokedAt", Instant.class);
+    return insert.then();
+  }
+
+  // 0 when the token was revoked in the meantime, by a concurrent refresh or a logout
+  public Mono<Long> revoke(byte[] tokenHash, Instant now) {
+    return databaseClient.sql("UPDATE refresh_tokens SET revoked_at = :now "
+            + "WHERE token_hash = :tokenHash AND revoked_at IS NULL")
+        .bind("now", now)
+        .bind("tokenHash", tokenHash)
+        .fetch()
+        .rowsUpdated();
+  }
+
+  // Kills a token family on reuse, returns the hashes that were still live
+  public Flux<byte[]> revokeFamily(UUID familyId, Instant now) {
+    return databaseClient.sql("UPDATE refresh_tokens SET revoked_at = :now "
+            + "WHERE family_id = :familyId AND revoked_at IS NULL "
+            + "RETURNING token_hash")
+        .bind("now", now)
+        .bind("familyId", familyId)
+        .map(row -> toBytes(row.get("token_hash", ByteBuffer.class)))
+        .all();
+  }
+
+  private static RefreshToken toRefreshToken(Readable row) {
+    return new RefreshToken(
+        row.get("id", UUID.class),
+        ReactiveUserRepository.toUser(row, "u_"),
+        toBytes(row.get("token_hash", ByteBuffer.class)),
+        row.get("family_id", UUID.class),
+        row.get("generation", Integer.class),
+        row.get("expires_at", Instant.class),
+        row.get("created_at", Instant.class),
+        row.get("revoked_at", Instant.class));
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,53 @@
+package com.exodus.dome.repository;
+
+import com.exodus.dome.entity.UserEntity;
+import com.exodus.dome.enums.UserRole;
+import io.r2dbc.spi.Readable;
+import java.time.Instant;
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+// users over R2DBC for the reactive endpoints, same queries as UserRepository
+@Repository
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveUserRepository {
+  private final DatabaseClient databaseClient;
+
+  public ReactiveUserRepository(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  public Mono<UserEntity> findByEmail(String email) {
+    return databaseClient.sql("SELECT id, email, password_hash, role, is_active, created_at, last_login_at "
+            + "FROM users WHERE email = :email")
+        .bind("email", email)
+        .map(row -> toUser(row, ""))
+        .one();
+  }
+
+  // Only replaces the hash we verified, a password changed in the meantime wins
+  public Mono<Long> updatePasswordHash(UUID id, String oldHash, String newHash) {
+    return databaseClient.sql("UPDATE users SET password_hash = :newHash "
+            + "WHERE id = :id AND password_hash = :oldHash")
+        .bind("newHash", newHash)
+        .bind("id", id)
+        .bind("oldHash", oldHash)
+        .fetch()
+        .rowsUpdated();
+  }
+
+  // prefix for joins where the user's columns are aliased, see ReactiveRefreshTokenRepository
+  static UserEntity toUser(Readable row, String prefix) {
+    return new UserEntity(
+        row.get(prefix + "id", UUID.class),
+        row.get(prefix + "email", String.class),
+        row.get(prefix + "password_hash", String.class),
+        UserRole.valueOf(row.get(prefix + "role", String.class)),
+        Boolean.TRUE.equals(row.get(prefix + "is_active", Boolean.class)),
+        row.get(prefix + "created_at", Instant.class),
+        row.get(prefix + "last_login_at", Instant.class));
+  }
+}
@@ -1,16 +1,48 @@
 package com.exodus.dome.repository;
 
 import com.exodus.dome.entity.RefreshToken;
+import com.exodus.dome.security.RefreshTokenHasher;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID> {
 
-  Optional<RefreshToken> findByToken(String token);
+  Optional<RefreshToken> findByTokenHash(byte[] tokenHash);
+
+  default Optional<RefreshToken> findByToken(String token) {
+    return findByTokenHash(RefreshTokenHasher.hash(token));
+  }
 
   List<RefreshToken> findAllByUserId(UUID userId);
+
+  // Revokes every live token of the user in one statement and returns their hashes,
+  // so the caller can drop them from redis. Expired and already revoked rows are not touched.
+  @Transactional
+  @Query(value = "UPDATE {h-schema}refresh_tokens SET revoked_at = :now "
+      + "WHERE user_id = :userId AND revoked_at IS NULL AND expires_at > :now "
+      + "RETURNING token_hash", nativeQuery = true)
+  List<byte[]> revokeAllActiveByUserId(@Param("userId") UUID userId, @Param("now") Instant now);
+
+  // Kills a token family on reuse, one statement on the partial family_id index.
+  // Returns the hashes that were still live so they can be dropped from redis too.
+  @Transactional
+  @Query(value = "UPDATE {h-schema}refresh_tokens SET revoked_at = :now "
+      + "WHERE family_id = :familyId AND revoked_at IS NULL "
+      + "RETURNING token_hash", nativeQuery = true)
+  List<byte[]> revokeFamily(@Param("familyId") UUID familyId, @Param("now") Instant now);
+
+  @Transactional
+  @Modifying
+  @Query("update RefreshToken t set t.revokedAt = :now "
+      + "where t.tokenHash in :tokenHashes and t.revokedAt is null")
+  int revokeByTokenHashes(@Param("tokenHashes") List<byte[]> tokenHashes, @Param("now") Instant now);
 }
@@ -4,7 +4,24 @@ import com.exodus.dome.entity.UserEntity;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface UserRepository extends JpaRepository<UserEntity, UUID> {
   Optional<UserEntity> findByEmail(String email);
+
+  // Only replaces the hash we verified, a password changed in the meantime wins
+  @Transactional
+  @Modifying
+  @Query("update UserEntity u set u.passwordHash = :newHash "
+      + "where u.id = :id and u.passwordHash = :oldHash")
+  int updatePasswordHash(@Param("id") UUID id, @Param("oldHash") String oldHash,
+                         @Param("newHash") String newHash);
+
+  @Transactional
+  @Modifying
+  @Query("update UserEntity u set u.active = false where u.id = :id")
+  int deactivate(@Param("id") UUID id);
 }
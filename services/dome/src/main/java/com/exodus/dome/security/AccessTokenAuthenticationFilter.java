@@ -0,0 +1,50 @@
+package com.exodus.dome.security;
+
+import com.exodus.dome.service.JwtService;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+//**
+// Authenticates requests carrying one of our own access tokens, for the few endpoints
+// (admin ones) that need a caller. The role claim becomes ROLE_<role>.
+// A missing or bad token is not rejected here: the public /api/auth endpoints must keep
+// working with a stale Authorization header, the protected ones fail with 401 further down.
+//**
+public class AccessTokenAuthenticationFilter extends OncePerRequestFilter {
+  private static final String BEARER_PREFIX = "Bearer ";
+
+  private final JwtService jwtService;
+
+  public AccessTokenAuthenticationFilter(JwtService jwtService) {
+    this.jwtService = jwtService;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                  FilterChain filterChain) throws ServletException, IOException {
+    String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+    if (header != null && header.startsWith(BEARER_PREFIX)) {
+      try {
+        Claims claims = jwtService.validate(header.substring(BEARER_PREFIX.length()).trim()).getBody();
+        String role = claims.get("role", String.class);
+        if (claims.getSubject() != null && role != null) {
+          SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+              claims.getSubject(), null, List.of(new SimpleGrantedAuthority("ROLE_" + role))));
+        }
+      } catch (IllegalArgumentException e) {
+        // invalid or expired, stays anonymous
+      }
+    }
+    filterChain.doFilter(request, response);
+  }
+}
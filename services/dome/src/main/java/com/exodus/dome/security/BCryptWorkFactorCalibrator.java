@@ -0,0 +1,59 @@
+package com.exodus.dome.security;
+
+import java.util.Arrays;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+//**
+// Picks the BCrypt cost for this machine. Every extra point doubles the work, so we
+// walk up from the minimum and keep the highest cost whose hash still fits the target.
+// A one-off tool, run it on the production hardware and put the result in
+// auth.password.bcrypt.strength:
+//   java -cp dome.jar -Dloader.main=com.exodus.dome.security.BCryptWorkFactorCalibrator \
+//       org.springframework.boot.loader.launch.PropertiesLauncher [target-millis] [min] [max]
+//**
+public final class BCryptWorkFactorCalibrator {
+  private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+  private static final int SAMPLES = 3;
+
+  private BCryptWorkFactorCalibrator() {
+  }
+
+  public static void main(String[] args) {
+    long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : 250;
+    int minStrength = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int maxStrength = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+    int strength = calibrate(targetMillis, minStrength, maxStrength);
+    System.out.printf("auth.password.bcrypt.strength: %d (one hash takes about %d ms here, target %d ms)%n",
+        strength, medianHashMillis(strength), targetMillis);
+  }
+
+  public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+    int chosen = minStrength;
+    for (int strength = minStrength; strength <= maxStrength; strength++) {
+      long millis = medianHashMillis(strength);
+      if (millis > targetMillis) {
+        break;
+      }
+      chosen = strength;
+      // next step would take about twice as long, no need to measure it
+      if (millis * 2 > targetMillis) {
+        break;
+      }
+    }
+    return chosen;
+  }
+
+  public static long medianHashMillis(int strength) {
+    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+    encoder.encode(SAMPLE_PASSWORD); // warm up
+
+    long[] samples = new long[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      long start = System.nanoTime();
+      encoder.encode(SAMPLE_PASSWORD);
+      samples[i] = (System.nanoTime() - start) / 1_000_000;
+    }
+    Arrays.sort(samples);
+    return samples[SAMPLES / 2];
+  }
+}
@@ -0,0 +1,162 @@
+package com.exodus.dome.security;
+
+import com.exodus.dome.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+//**
+// Runs the CPU heavy hashing on its own small pool instead of the request threads.
+// Pool is as big as the core count, queue is bounded, and when it is full the caller
+// gets a ServiceOverloadedException (503 + Retry-After) right away instead of waiting.
+//**
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+  private final PasswordEncoder delegate;
+  private final ThreadPoolExecutor executor;
+  private final long maxWaitMillis;
+  private final long retryAfterSeconds;
+  private final Timer matchesTimer;
+  private final Timer encodeTimer;
+  private final Timer queueWaitTimer;
+  private final Counter rejectedCounter;
+
+  public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity,
+                                long maxWaitMillis, long retryAfterSeconds,
+                                MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.maxWaitMillis = maxWaitMillis;
+    this.retryAfterSeconds = retryAfterSeconds;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+
+    this.matchesTimer = Timer.builder("auth.password.hash")
+        .tag("operation", "matches")
+        .register(meterRegistry);
+    this.encodeTimer = Timer.builder("auth.password.hash")
+        .tag("operation", "encode")
+        .register(meterRegistry);
+    this.queueWaitTimer = Timer.builder("auth.password.queue.wait").register(meterRegistry);
+    this.rejectedCounter = Counter.builder("auth.password.rejected").register(meterRegistry);
+    Gauge.builder("auth.password.queue.size", executor, pool -> pool.getQueue().size())
+        .register(meterRegistry);
+    Gauge.builder("auth.password.active", executor, ThreadPoolExecutor::getActiveCount)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return submit(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return submit(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+  }
+
+  // Same pool and limits, but nobody waits on a thread for the result (reactive endpoints).
+  // Fails with ServiceOverloadedException when the queue is full or max-wait runs out.
+  public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+    return submitAsync(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+  }
+
+  public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+    return submitAsync(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+  }
+
+  // Cheap string inspection, no need to queue it
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+
+  private <T> T submit(Callable<T> task) {
+    long queuedAt = System.nanoTime();
+    Future<T> future;
+    try {
+      future = executor.submit(() -> {
+        queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        return task.call();
+      });
+    } catch (RejectedExecutionException e) {
+      throw overloaded();
+    }
+
+    try {
+      return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw overloaded();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw overloaded();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private <T> CompletableFuture<T> submitAsync(Supplier<T> task) {
+    long queuedAt = System.nanoTime();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        if (result.isDone()) {
+          return; // timed out while queued, nobody wants the hash anymore
+        }
+        queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        try {
+          result.complete(task.get());
+        } catch (RuntimeException e) {
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(overloaded());
+    }
+
+    return result.orTimeout(maxWaitMillis, TimeUnit.MILLISECONDS)
+        .exceptionallyCompose(e -> CompletableFuture.failedFuture(
+            unwrap(e) instanceof TimeoutException ? overloaded() : unwrap(e)));
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  private ServiceOverloadedException overloaded() {
+    rejectedCounter.increment();
+    return new ServiceOverloadedException("Too many password checks in progress, try again later.",
+        retryAfterSeconds);
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+}
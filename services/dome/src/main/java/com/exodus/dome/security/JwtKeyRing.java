@@ -0,0 +1,158 @@
+package com.exodus.dome.security;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+//**
+// ES256 keys for access tokens, identified by kid. One key signs, every key with a public
+// half is published in JWKS and accepted on validate.
+// Directory layout: <kid>.pub (X.509 PEM) and, for keys that may sign, <kid>.key (PKCS#8 PEM).
+// Rotation without rejecting live tokens:
+//   1. add the new <kid>.pub/.key everywhere, so JWKS already has it
+//   2. point active-kid at it
+//   3. once the old kid's tokens expired (access-token-validity + JWKS max-age), delete its files
+//**
+public class JwtKeyRing {
+  private static final String PRIVATE_SUFFIX = ".key";
+  private static final String PUBLIC_SUFFIX = ".pub";
+  private static final int P256_FIELD_SIZE = 256;
+
+  private final String activeKid;
+  private final PrivateKey activeKey;
+  private final Map<String, ECPublicKey> publicKeys;
+
+  public JwtKeyRing(String activeKid, PrivateKey activeKey, Map<String, ECPublicKey> publicKeys) {
+    if (!publicKeys.containsKey(activeKid)) {
+      throw new IllegalArgumentException("No public key for active kid " + activeKid);
+    }
+    this.activeKid = activeKid;
+    this.activeKey = activeKey;
+    this.publicKeys = Collections.unmodifiableMap(new LinkedHashMap<>(publicKeys));
+  }
+
+  public static JwtKeyRing fromDirectory(Path directory, String activeKid) {
+    Map<String, ECPublicKey> publicKeys = new LinkedHashMap<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.sorted().toList()) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(PUBLIC_SUFFIX)) {
+          publicKeys.put(name.substring(0, name.length() - PUBLIC_SUFFIX.length()),
+              readPublicKey(file));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read JWT keys from " + directory, e);
+    }
+
+    Path privateFile = directory.resolve(activeKid + PRIVATE_SUFFIX);
+    if (!Files.exists(privateFile)) {
+      throw new IllegalStateException("No private key for active kid " + activeKid + " in " + directory);
+    }
+    return new JwtKeyRing(activeKid, readPrivateKey(privateFile), publicKeys);
+  }
+
+  // In-memory key for local runs and tests. Tokens die with the process and other
+  // instances will not know the key, so never use it with more than one dome.
+  public static JwtKeyRing generate() {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+      generator.initialize(new ECGenParameterSpec("secp256r1"));
+      KeyPair keyPair = generator.generateKeyPair();
+      String kid = UUID.randomUUID().toString();
+      return new JwtKeyRing(kid, keyPair.getPrivate(), Map.of(kid, (ECPublicKey) keyPair.getPublic()));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not generate ES256 key", e);
+    }
+  }
+
+  public String getActiveKid() {
+    return activeKid;
+  }
+
+  public PrivateKey getActiveKey() {
+    return activeKey;
+  }
+
+  public Optional<ECPublicKey> findPublicKey(String kid) {
+    return Optional.ofNullable(kid).map(publicKeys::get);
+  }
+
+  // RFC 7517 key set, only public parts
+  public Map<String, Object> toJwks() {
+    List<Map<String, Object>> keys = new ArrayList<>();
+    publicKeys.forEach((kid, key) -> {
+      Map<String, Object> jwk = new LinkedHashMap<>();
+      jwk.put("kty", "EC");
+      jwk.put("crv", "P-256");
+      jwk.put("use", "sig");
+      jwk.put("alg", "ES256");
+      jwk.put("kid", kid);
+      jwk.put("x", coordinate(key.getW().getAffineX()));
+      jwk.put("y", coordinate(key.getW().getAffineY()));
+      keys.add(jwk);
+    });
+    return Map.of("keys", keys);
+  }
+
+  // Unsigned, left padded to 32 bytes, base64url without padding
+  private static String coordinate(BigInteger value) {
+    byte[] raw = value.toByteArray();
+    byte[] fixed = new byte[32];
+    int length = Math.min(raw.length, 32);
+    System.arraycopy(raw, raw.length - length, fixed, 32 - length, length);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+  }
+
+  private static ECPublicKey readPublicKey(Path file) {
+    try {
+      ECPublicKey key = (ECPublicKey) KeyFactory.getInstance("EC")
+          .generatePublic(new X509EncodedKeySpec(readPem(file)));
+      if (key.getParams().getCurve().getField().getFieldSize() != P256_FIELD_SIZE) {
+        throw new IllegalStateException("Not a P-256 key: " + file);
+      }
+      return key;
+    } catch (GeneralSecurityException | ClassCastException e) {
+      throw new IllegalStateException("Invalid EC public key: " + file, e);
+    }
+  }
+
+  private static PrivateKey readPrivateKey(Path file) {
+    try {
+      return KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(readPem(file)));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Invalid EC private key: " + file, e);
+    }
+  }
+
+  private static byte[] readPem(Path file) {
+    try {
+      String body = Files.readString(file)
+          .replaceAll("-----(BEGIN|END) [A-Z ]+-----", "")
+          .replaceAll("\\s", "");
+      return Base64.getDecoder().decode(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read " + file, e);
+    }
+  }
+}
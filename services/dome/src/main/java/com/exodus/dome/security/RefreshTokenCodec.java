@@ -0,0 +1,122 @@
+package com.exodus.dome.security;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+//**
+// Self-validating refresh token: base64url(payload) "." base64url(HMAC-SHA256(payload)).
+// Payload is 50 bytes: version, user id, family id, role ordinal, issued at and
+// expires at (epoch millis). Forged, truncated or expired tokens are rejected without I/O.
+// Opaque tokens are plain base64url and never contain a dot, so both formats can live side by side.
+//**
+public final class RefreshTokenCodec {
+  private static final byte VERSION = 1;
+  private static final int PAYLOAD_LENGTH = 1 + 16 + 16 + 1 + 8 + 8;
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  private static final int MIN_SECRET_LENGTH = 32;
+  private static final char SEPARATOR = '.';
+
+  private final SecretKeySpec key;
+  // Mac is not thread safe and getInstance is not free. A ThreadLocal would be a new Mac per
+  // request on virtual threads, so every call clones this one, which is never used itself.
+  private final Mac prototype;
+
+  public RefreshTokenCodec(byte[] secret) {
+    if (secret.length < MIN_SECRET_LENGTH) {
+      throw new IllegalArgumentException("Refresh token secret must be at least "
+          + MIN_SECRET_LENGTH + " bytes");
+    }
+    this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+    this.prototype = newMac();
+  }
+
+  public static boolean isStateless(String token) {
+    return token != null && token.indexOf(SEPARATOR) >= 0;
+  }
+
+  public String encode(RefreshTokenClaims claims) {
+    ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH)
+        .put(VERSION)
+        .putLong(claims.getUserId().getMostSignificantBits())
+        .putLong(claims.getUserId().getLeastSignificantBits())
+        .putLong(claims.getFamilyId().getMostSignificantBits())
+        .putLong(claims.getFamilyId().getLeastSignificantBits())
+        // new roles have to be appended to UserRole, never inserted
+        .put((byte) claims.getRole().ordinal())
+        .putLong(claims.getIssuedAt().toEpochMilli())
+        .putLong(claims.getExpiresAt().toEpochMilli());
+
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    return encoder.encodeToString(payload.array()) + SEPARATOR + encoder.encodeToString(mac(payload.array()));
+  }
+
+  // Checks format and MAC only, expiry and revocation are up to the caller
+  public RefreshTokenClaims decode(String token) {
+    int separator = token.indexOf(SEPARATOR);
+    if (separator < 0) {
+      throw invalid();
+    }
+
+    byte[] payload;
+    byte[] signature;
+    try {
+      payload = Base64.getUrlDecoder().decode(token.substring(0, separator));
+      signature = Base64.getUrlDecoder().decode(token.substring(separator + 1));
+    } catch (IllegalArgumentException e) {
+      throw invalid();
+    }
+
+    // constant time, a timing oracle on the MAC would let someone forge byte by byte
+    if (payload.length != PAYLOAD_LENGTH || !MessageDigest.isEqual(mac(payload), signature)) {
+      throw invalid();
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(payload);
+    if (buffer.get() != VERSION) {
+      throw invalid();
+    }
+    UUID userId = new UUID(buffer.getLong(), buffer.getLong());
+    UUID familyId = new UUID(buffer.getLong(), buffer.getLong());
+    int role = buffer.get();
+    if (role < 0 || role >= UserRole.values().length) {
+      throw invalid();
+    }
+    return new RefreshTokenClaims(userId, familyId, UserRole.values()[role],
+        Instant.ofEpochMilli(buffer.getLong()), Instant.ofEpochMilli(buffer.getLong()));
+  }
+
+  private byte[] mac(byte[] payload) {
+    return copyOfPrototype().doFinal(payload);
+  }
+
+  private Mac copyOfPrototype() {
+    try {
+      return (Mac) prototype.clone();
+    } catch (CloneNotSupportedException e) {
+      return newMac(); // provider without clone support, slower but correct
+    }
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(MAC_ALGORITHM + " not available", e);
+    }
+  }
+
+  private static InvalidRefreshTokenException invalid() {
+    return new InvalidRefreshTokenException("Refresh token is malformed or forged");
+  }
+}
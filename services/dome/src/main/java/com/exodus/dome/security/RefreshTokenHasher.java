@@ -0,0 +1,38 @@
+package com.exodus.dome.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+//**
+// Refresh tokens are never stored as issued. DB keeps the 32 byte SHA-256 digest (bytea),
+// redis keys, the session index and the write-behind journal keep it as 43 chars base64url.
+// The token is 64 random bytes, so a plain unsalted hash is enough: nothing to brute force.
+//**
+public final class RefreshTokenHasher {
+
+  private RefreshTokenHasher() {
+  }
+
+  public static byte[] hash(String token) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  // Text form of the digest, for redis and the journal
+  public static String hashKey(String token) {
+    return toKey(hash(token));
+  }
+
+  public static String toKey(byte[] hash) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+  }
+
+  public static byte[] fromKey(String key) {
+    return Base64.getUrlDecoder().decode(key);
+  }
+}
@@ -7,30 +7,57 @@ import com.exodus.dome.entity.dto.LoginRequest;
 import com.exodus.dome.entity.dto.LogoutRequest;
 import com.exodus.dome.entity.dto.RefreshRequest;
 import com.exodus.dome.entity.dto.RegisterRequest;
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
 import com.exodus.dome.enums.UserRole;
 import com.exodus.dome.exception.DuplicateValueException;
 import com.exodus.dome.exception.InvalidRefreshTokenException;
 import com.exodus.dome.exception.PasswordNotCorrectException;
+import com.exodus.dome.exception.RefreshTokenExpiredException;
 import com.exodus.dome.exception.RefreshTokenNotFoundException;
+import com.exodus.dome.exception.RefreshTokenRevokedException;
+import com.exodus.dome.exception.ServiceOverloadedException;
 import com.exodus.dome.exception.UserNotActiveException;
 import com.exodus.dome.exception.UserNotFoundException;
 import com.exodus.dome.repository.RefreshTokenRepository;
 import com.exodus.dome.repository.UserRepository;
+import com.exodus.dome.security.RefreshTokenCodec;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.apache.catalina.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class AuthService {
+  private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
+  // auth.refresh{outcome}: hit and miss are successful refreshes found (or not) in redis first,
+  // everything else is why a refresh failed. hit / (hit + miss) is the cache hit ratio.
+  static final List<String> REFRESH_OUTCOMES = List.of("hit", "miss", "stateless", "revoked",
+      "expired", "not-found", "inactive", "invalid", "error");
+  static final List<String> LOGIN_OUTCOMES = List.of("success", "unknown-email", "inactive",
+      "bad-password", "overloaded", "error");
+
   private final UserRepository userRepository;
   private final RefreshTokenRepository refreshTokenRepository;
   private final PasswordEncoder passwordEncoder;
@@ -38,24 +65,49 @@ public class AuthService {
   private final long refreshTokenValiditySeconds;
   private final SecureRandom secureRandom = new SecureRandom();
   private RefreshTokenCacheService refreshTokenCacheService;
-  // For generating secure random values
+  private final RefreshTokenPersistenceService refreshTokenPersistenceService;
+  // When true, redis is the source of truth for refresh and DB is updated in background
+  private final boolean cacheAuthoritativeRefresh;
+  private final EmailBloomFilterService emailBloomFilterService;
+  private final StatelessRefreshTokenService statelessRefreshTokenService;
+  private final Map<String, Timer> refreshTimers;
+  private final Map<String, Timer> loginTimers;
 
   @Autowired
   public AuthService(UserRepository userRepository, RefreshTokenRepository refreshTokenRepository,
                      PasswordEncoder passwordEncoder,
                      JwtService jwtService, @Value("${auth.jwt.refresh-token-validity-seconds}")
                      long refreshTokenValiditySeconds,
-                     RefreshTokenCacheService refreshTokenCacheService) {
+                     RefreshTokenCacheService refreshTokenCacheService,
+                     RefreshTokenPersistenceService refreshTokenPersistenceService,
+                     @Value("${auth.refresh.cache-authoritative:false}")
+                     boolean cacheAuthoritativeRefresh,
+                     EmailBloomFilterService emailBloomFilterService,
+                     StatelessRefreshTokenService statelessRefreshTokenService,
+                     MeterRegistry meterRegistry) {
     this.refreshTokenRepository = refreshTokenRepository;
     this.userRepository = userRepository;
     this.passwordEncoder = passwordEncoder;
     this.jwtService = jwtService;
     this.refreshTokenValiditySeconds = refreshTokenValiditySeconds;
     this.refreshTokenCacheService = refreshTokenCacheService;
+    this.refreshTokenPersistenceService = refreshTokenPersistenceService;
+    this.cacheAuthoritativeRefresh = cacheAuthoritativeRefresh;
+    this.emailBloomFilterService = emailBloomFilterService;
+    this.statelessRefreshTokenService = statelessRefreshTokenService;
+    this.refreshTimers = timers("auth.refresh", REFRESH_OUTCOMES, meterRegistry);
+    this.loginTimers = timers("auth.login", LOGIN_OUTCOMES, meterRegistry);
+  }
+
+  static Map<String, Timer> timers(String name, List<String> outcomes, MeterRegistry meterRegistry) {
+    return outcomes.stream().collect(Collectors.toUnmodifiableMap(Function.identity(),
+        outcome -> Timer.builder(name).tag("outcome", outcome).register(meterRegistry)));
   }
 
   public void register(RegisterRequest request) {
-    if (userRepository.findByEmail(request.getEmail()).isPresent()) {
+    // A definitely-absent email needs no duplicate check in DB
+    if (emailBloomFilterService.mightContain(request.getEmail())
+        && userRepository.findByEmail(request.getEmail()).isPresent()) {
       throw new DuplicateValueException("Email already in use by another account.");
     }
 
@@ -72,10 +124,52 @@ public class AuthService {
         null
     );
 
-    userRepository.save(user);
+    try {
+      userRepository.save(user);
+    } catch (DataIntegrityViolationException e) {
+      // the filter skipped the lookup for an email another node registered a moment ago
+      throw new DuplicateValueException("Email already in use by another account.");
+    }
+    emailBloomFilterService.add(user.getEmail());
   }
 
   public AuthResponse login(LoginRequest request) {
+    long start = System.nanoTime();
+    String outcome = "error";
+    try {
+      AuthResponse response = authenticate(request);
+      outcome = "success";
+      return response;
+    } catch (RuntimeException e) {
+      outcome = loginFailure(e);
+      throw e;
+    } finally {
+      loginTimers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  static String loginFailure(Throwable e) {
+    if (e instanceof UserNotFoundException) {
+      return "unknown-email";
+    }
+    if (e instanceof UserNotActiveException) {
+      return "inactive";
+    }
+    if (e instanceof PasswordNotCorrectException) {
+      return "bad-password";
+    }
+    if (e instanceof ServiceOverloadedException) {
+      return "overloaded";
+    }
+    return "error";
+  }
+
+  private AuthResponse authenticate(LoginRequest request) {
+    // Unknown emails (mostly credential stuffing) are rejected without any SQL
+    if (!emailBloomFilterService.mightContain(request.getEmail())) {
+      throw new UserNotFoundException("User with given email not found.");
+    }
+
     UserEntity user = userRepository.findByEmail(request.getEmail())
         .orElseThrow(() -> new UserNotFoundException("User with given email not found."));
 
@@ -87,16 +181,106 @@ public class AuthService {
       throw new PasswordNotCorrectException("Provided password is not correct.");
     }
 
+    upgradePasswordHashIfNeeded(user, request.getPassword());
+
     String accessToken = jwtService.generateAccessToken(user);
-    String refreshToken = generateAndStoreRefreshToken(user);
+    // Stateless tokens are not stored anywhere, the max-sessions cap does not apply to them
+    String refreshToken = statelessRefreshTokenService.isEnabled()
+        ? statelessRefreshTokenService.issue(user.getId(), user.getRole())
+        : generateAndStoreRefreshToken(user, UUID.randomUUID(), 0);
 
     return new AuthResponse(accessToken, refreshToken, refreshTokenValiditySeconds);
   }
 
-  @Transactional
+  // Only moment we have the plain password, so hashes with an old cost or without
+  // algorithm id are re-encoded here. Skipped when the hashing pool is busy, next login retries.
+  private void upgradePasswordHashIfNeeded(UserEntity user, String rawPassword) {
+    if (!passwordEncoder.upgradeEncoding(user.getPasswordHash())) {
+      return;
+    }
+
+    try {
+      String upgradedHash = passwordEncoder.encode(rawPassword);
+      userRepository.updatePasswordHash(user.getId(), user.getPasswordHash(), upgradedHash);
+      user.setPasswordHash(upgradedHash);
+    } catch (ServiceOverloadedException e) {
+      // login itself already succeeded
+    }
+  }
+
+  //**
+  // Connection is acquired lazily (see hikari auto-commit in application.yaml),
+  // so a cache-authoritative hit never borrows one from the pool.
+  // A reused token still commits its family revoke before the 401 goes out.
+  // Timed inside the transaction, the commit is not part of auth.refresh.
+  //**
+  @Transactional(noRollbackFor = InvalidRefreshTokenException.class)
   public AuthResponse refresh(RefreshRequest request) {
+    long start = System.nanoTime();
+    String outcome = "error";
+    try {
+      Refreshed refreshed = rotate(request);
+      outcome = refreshed.outcome();
+      return refreshed.response();
+    } catch (RuntimeException e) {
+      outcome = refreshFailure(e);
+      throw e;
+    } finally {
+      refreshTimers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private record Refreshed(AuthResponse response, String outcome) {
+  }
+
+  static String refreshFailure(Throwable e) {
+    if (e instanceof RefreshTokenRevokedException) {
+      return "revoked";
+    }
+    if (e instanceof RefreshTokenExpiredException) {
+      return "expired";
+    }
+    if (e instanceof InvalidRefreshTokenException) {
+      return "invalid"; // malformed or forged stateless token
+    }
+    if (e instanceof RefreshTokenNotFoundException) {
+      return "not-found";
+    }
+    if (e instanceof UserNotActiveException) {
+      return "inactive";
+    }
+    return "error";
+  }
+
+  private Refreshed rotate(RefreshRequest request) {
     String tokenValue = request.getRefreshToken();
 
+    if (isStatelessToken(tokenValue)) {
+      return new Refreshed(refreshStateless(tokenValue), "stateless");
+    }
+
+    // 0) Cache-authoritative mode: one script validates, deletes and re-issues the token
+    if (cacheAuthoritativeRefresh) {
+      String newRefreshToken = generateSecureRandomToken();
+      RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken(
+          tokenValue, newRefreshToken, refreshTokenValiditySeconds);
+
+      switch (rotation.getStatus()) {
+        case ROTATED:
+          return new Refreshed(completeCachedRotation(tokenValue, newRefreshToken, rotation), "hit");
+        case ALREADY_ROTATED:
+          // the script already dropped the family from redis, DB and the write-behind queue follow
+          if (rotation.getFamilyId() != null) {
+            log.warn("Rotated refresh token reused, revoking family {} of user {}",
+                rotation.getFamilyId(), rotation.getUserId());
+            revokeFamilyInDatabase(rotation.getFamilyId(), Instant.now());
+          }
+          throw new RefreshTokenRevokedException("Refresh token is expired or revoked");
+        default:
+          break; // not in cache or written without role, DB decides below
+      }
+    }
+
     // 1) First check redis if token exists
     Optional<UUID> userIdFromCache = refreshTokenCacheService.getUserIdForToken(tokenValue);
 
@@ -104,18 +288,16 @@ public class AuthService {
 
     if (userIdFromCache.isEmpty()) {
       // 2) If not in cache, check DB
-      storedToken = refreshTokenRepository.findByToken(request.getRefreshToken())
+      storedToken = findStoredToken(tokenValue)
           .orElseThrow(() -> new RefreshTokenNotFoundException("Refresh Token not found!"));
 
       // if token is suspicious, throw error
-      if (storedToken.isRevoked() || storedToken.isExpired()) {
-        throw new InvalidRefreshTokenException("Refresh token is expired or revoked");
-      }
+      rejectIfRevokedOrExpired(storedToken);
 
       // cache miss :///
     } else {
       // cache hit :)
-      storedToken = refreshTokenRepository.findByToken(request.getRefreshToken())
+      storedToken = findStoredToken(tokenValue)
           .orElseThrow(() -> new RefreshTokenNotFoundException("Refresh Token not found!"));
     }
 
@@ -123,9 +305,7 @@ public class AuthService {
     refreshTokenCacheService.deleteToken(tokenValue);
 
     // if cache hit, then check db for suspicious token
-    if (storedToken.isRevoked() || storedToken.isExpired()) {
-      throw new InvalidRefreshTokenException("Refresh token is expired or revoked");
-    }
+    rejectIfRevokedOrExpired(storedToken);
 
     //**
     // Because I made user lazy loading, need to fetch user to check active status
@@ -140,22 +320,36 @@ public class AuthService {
     // Refresh Token Generation
     // 1) Revoke the old refresh token
     storedToken.setRevokedAt(Instant.now());
-    refreshTokenRepository.save(storedToken); // Revoked so the deadline is over
+    if (refreshTokenPersistenceService.isWriteBehindEnabled()) {
+      refreshTokenPersistenceService.enqueueRevoke(storedToken.getTokenHashKey(),
+          storedToken.getRevokedAt());
+    } else {
+      refreshTokenRepository.save(storedToken); // Revoked so the deadline is over
+    }
 
     // 2) Generate new tokens (access + refresh)
     String accessToken = jwtService.generateAccessToken(user);
-    String newRefreshToken = generateAndStoreRefreshToken(user);
+    String newRefreshToken = generateAndStoreRefreshToken(user, storedToken.getFamilyId(),
+        storedToken.getGeneration() + 1);
 
-    return new AuthResponse(accessToken,
+    return new Refreshed(new AuthResponse(accessToken,
         newRefreshToken,
-        refreshTokenValiditySeconds);
+        refreshTokenValiditySeconds), userIdFromCache.isPresent() ? "hit" : "miss");
   }
 
   public void logout(LogoutRequest logoutRequest) {
     String tokenValue = logoutRequest.getRefreshToken();
 
+    if (isStatelessToken(tokenValue)) {
+      RefreshTokenClaims claims = statelessRefreshTokenService.decode(tokenValue);
+      if (!claims.isExpired(Instant.now())) {
+        statelessRefreshTokenService.revokeFamily(claims.getFamilyId(), Instant.now());
+      }
+      return;
+    }
+
     // 1) Find token in DB
-    RefreshToken storedToken = refreshTokenRepository.findByToken(tokenValue)
+    RefreshToken storedToken = findStoredToken(tokenValue)
         .orElseThrow(() -> new RefreshTokenNotFoundException("Refresh Token not found!"));
 
     if (storedToken != null) {
@@ -164,7 +358,12 @@ public class AuthService {
         return; // already revoked or expired
       } else {
         storedToken.setRevokedAt(Instant.now());
-        refreshTokenRepository.save(storedToken);
+        if (refreshTokenPersistenceService.isWriteBehindEnabled()) {
+          refreshTokenPersistenceService.enqueueRevoke(storedToken.getTokenHashKey(),
+              storedToken.getRevokedAt());
+        } else {
+          refreshTokenRepository.save(storedToken);
+        }
       }
     }
 
@@ -175,28 +374,117 @@ public class AuthService {
   public void logoutAllSessions(LogoutRequest request) {
     String tokenValue = request.getRefreshToken();
 
-    RefreshToken currentToken = refreshTokenRepository.findByToken(tokenValue)
-        .orElseThrow(() -> new RefreshTokenNotFoundException("Refresh Token not found!"));
+    UUID userId;
+    if (isStatelessToken(tokenValue)) {
+      userId = statelessRefreshTokenService.decode(tokenValue).getUserId();
+    } else {
+      RefreshToken currentToken = findStoredToken(tokenValue)
+          .orElseThrow(() -> new RefreshTokenNotFoundException("Refresh Token not found!"));
+      userId = currentToken.getUser().getId();
+    }
+    revokeAllSessions(userId, Instant.now());
+  }
+
+  // Live sessions of the user straight from the redis session index. Stateless refresh tokens
+  // are not indexed anywhere, they do not show up here.
+  public List<RefreshSession> getActiveSessions(UUID userId) {
+    return refreshTokenCacheService.getActiveSessions(userId);
+  }
+
+  //**
+  // The only supported way to turn an account off. A cache-authoritative or stateless refresh
+  // issues tokens without loading the user, so deactivation has to end the sessions here
+  // rather than rely on the active check of the DB refresh path. Evicting was chosen over an
+  // active flag in the cached value: that flag would have to be rewritten on every live token
+  // anyway, which is exactly what revoking them does, and DB rows get revoked on the way.
+  // Access tokens already out stay valid until they expire.
+  //**
+  @Transactional
+  public void deactivateUser(UUID userId) {
+    if (userRepository.deactivate(userId) == 0) {
+      throw new UserNotFoundException("User with given id not found.");
+    }
+    revokeAllSessions(userId, Instant.now());
+  }
+
+  private void revokeAllSessions(UUID userId, Instant now) {
+    // Every stateless token of the user issued up to now, whatever family
+    if (statelessRefreshTokenService.isEnabled()) {
+      statelessRefreshTokenService.revokeUser(userId, now);
+    }
+
+    // One UPDATE for the live rows, plus whatever is still queued for write-behind
+    List<String> revokedTokens = new ArrayList<>();
+    refreshTokenRepository.revokeAllActiveByUserId(userId, now)
+        .forEach(tokenHash -> revokedTokens.add(RefreshTokenHasher.toKey(tokenHash)));
+    revokedTokens.addAll(refreshTokenPersistenceService.revokePendingForUser(userId, now));
 
-    UserEntity user = currentToken.getUser();
-    UUID userId = user.getId();
+    // One script drops the user's session index and every token in it, plus the ones
+    // DB knows about that were cached before the index existed
+    refreshTokenCacheService.revokeAllSessions(userId, revokedTokens);
+  }
+
+  // A token issued a moment ago may still sit in the write-behind queue (write-behind on, or
+  // a cache-authoritative rotation), its row is written first so DB does not answer "not found"
+  private Optional<RefreshToken> findStoredToken(String tokenValue) {
+    refreshTokenPersistenceService.flushPending(RefreshTokenHasher.hashKey(tokenValue));
+    return refreshTokenRepository.findByToken(tokenValue);
+  }
 
-    List<RefreshToken> allTokens = refreshTokenRepository.findAllByUserId(userId);
+  private boolean isStatelessToken(String tokenValue) {
+    return statelessRefreshTokenService.isEnabled() && RefreshTokenCodec.isStateless(tokenValue);
+  }
+
+  // Forged, expired and known revoked tokens never leave the process,
+  // a live one costs a single redis script and no DB at all
+  private AuthResponse refreshStateless(String tokenValue) {
+    RefreshTokenClaims claims = statelessRefreshTokenService.verify(tokenValue);
+    String newRefreshToken = statelessRefreshTokenService.rotate(claims);
+    String accessToken = jwtService.generateAccessToken(claims.getUserId(), claims.getRole());
+    return new AuthResponse(accessToken, newRefreshToken, refreshTokenValiditySeconds);
+  }
 
+  private AuthResponse completeCachedRotation(String oldToken, String newToken,
+                                              RefreshTokenRotation rotation) {
     Instant now = Instant.now();
 
-    for (RefreshToken rt : allTokens) {
-      if (!rt.isRevoked() && !rt.isExpired()) {
-        rt.setRevokedAt(now);
-      }
+    // DB revoke + insert happen in background, request is already answered
+    refreshTokenPersistenceService.persistRotation(RefreshTokenHasher.hashKey(oldToken),
+        RefreshTokenHasher.hashKey(newToken), rotation.getUserId(), rotation.getFamilyId(),
+        rotation.getGeneration(), now, now.plusSeconds(refreshTokenValiditySeconds));
+
+    String accessToken = jwtService.generateAccessToken(rotation.getUserId(), rotation.getRole());
+    return new AuthResponse(accessToken, newToken, refreshTokenValiditySeconds);
+  }
 
-      refreshTokenCacheService.deleteToken(rt.getToken());
+  //**
+  // Only the newest generation of a family is ever live. A revoked one coming back means two
+  // parties hold the chain (leaked token or stolen device), so the whole family goes:
+  // one UPDATE on family_id, one redis script on the family key. No scan of the user's tokens.
+  //**
+  private void rejectIfRevokedOrExpired(RefreshToken storedToken) {
+    if (storedToken.isRevoked()) {
+      log.warn("Revoked refresh token reused, revoking family {} (generation {} presented)",
+          storedToken.getFamilyId(), storedToken.getGeneration());
+      List<String> revoked = revokeFamilyInDatabase(storedToken.getFamilyId(), Instant.now());
+      refreshTokenCacheService.revokeFamily(storedToken.getFamilyId(), storedToken.getUser().getId(),
+          revoked);
+      throw new RefreshTokenRevokedException("Refresh token is expired or revoked");
     }
+    if (storedToken.isExpired()) {
+      throw new RefreshTokenExpiredException("Refresh token is expired or revoked");
+    }
+  }
 
-    refreshTokenRepository.saveAll(allTokens);
+  private List<String> revokeFamilyInDatabase(UUID familyId, Instant now) {
+    List<String> revoked = new ArrayList<>();
+    refreshTokenRepository.revokeFamily(familyId, now)
+        .forEach(tokenHash -> revoked.add(RefreshTokenHasher.toKey(tokenHash)));
+    revoked.addAll(refreshTokenPersistenceService.revokePendingForFamily(familyId, now));
+    return revoked;
   }
 
-  private String generateAndStoreRefreshToken(UserEntity user) {
+  private String generateAndStoreRefreshToken(UserEntity user, UUID familyId, int generation) {
     String tokenValue = generateSecureRandomToken();
     Instant now = Instant.now();
     Instant expiry = now.plusSeconds(refreshTokenValiditySeconds);
@@ -206,20 +494,47 @@ public class AuthService {
         UUID.randomUUID(),
         user,
         tokenValue,
+        familyId,
+        generation,
         expiry,
         now,
         null
     );
 
-    refreshTokenRepository.save(refreshToken);
+    if (refreshTokenPersistenceService.isWriteBehindEnabled()) {
+      // journaled locally, reaches DB with the next batch
+      refreshTokenPersistenceService.enqueueInsert(refreshToken);
+    } else {
+      refreshTokenRepository.save(refreshToken);
+    }
 
     // 2) Also store it in cache for fast validation
-    refreshTokenCacheService.storeToken(tokenValue, user.getId(), refreshTokenValiditySeconds);
+    List<String> evicted = refreshTokenCacheService.storeToken(tokenValue, user.getId(),
+        user.getRole(), familyId, generation, refreshTokenValiditySeconds);
+
+    // 3) Over the max-sessions cap the oldest sessions were dropped from cache, revoke them in DB too
+    if (!evicted.isEmpty()) {
+      revokeEvictedSessions(evicted, now);
+    }
 
     return tokenValue;
   }
 
+  private void revokeEvictedSessions(List<String> evictedHashes, Instant now) {
+    if (refreshTokenPersistenceService.isWriteBehindEnabled()) {
+      evictedHashes.forEach(tokenHash -> refreshTokenPersistenceService.enqueueRevoke(tokenHash, now));
+    } else {
+      refreshTokenRepository.revokeByTokenHashes(
+          evictedHashes.stream().map(RefreshTokenHasher::fromKey).toList(), now);
+    }
+  }
+
   private String generateSecureRandomToken() {
+    return generateSecureRandomToken(secureRandom);
+  }
+
+  // Shared with ReactiveAuthService and the benchmarks, 64 random bytes as 86 chars base64url
+  static String generateSecureRandomToken(SecureRandom secureRandom) {
     byte[] bytes = new byte[64]; // 64 byte
     secureRandom.nextBytes(bytes);
     return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
@@ -0,0 +1,168 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//**
+// In-memory Bloom filter over users.email, so unknown emails (mostly credential stuffing)
+// are answered without any SQL. Rebuilt from DB periodically, register adds to it directly.
+// Until the first build is done every email "might exist" and goes to DB as before.
+// Every node has its own filter, so add() also publishes the email on auth:email-filter:add
+// and every other node puts it into theirs (see RedisConfig). A node only misses an email while
+// that message is on its way, or if redis dropped it, then until its next rebuild: a login there
+// is a 404 meanwhile, and register falls back to the unique constraint on users.email.
+//**
+@Service
+public class EmailBloomFilterService {
+  private static final Logger log = LoggerFactory.getLogger(EmailBloomFilterService.class);
+
+  public static final String ADD_CHANNEL = "auth:email-filter:add";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final StringRedisTemplate redisTemplate;
+  private final TransactionTemplate readOnlyTransaction;
+  private final boolean enabled;
+  private final double falsePositiveRate;
+  private final long minExpectedInsertions;
+  private final int fetchSize;
+  private final String countSql;
+  private final String emailsSql;
+  private final Timer rebuildTimer;
+  private final Counter negativeLookups;
+
+  //**
+  // The filter in use plus, while a rebuild scans the table, the one being built; register
+  // writes into both meanwhile. One volatile holder so add() sees both from the same moment:
+  // read separately, an add racing the swap could land only in the filter being dropped.
+  //**
+  private volatile Filters filters = new Filters(null, null);
+
+  private record Filters(BloomFilter current, BloomFilter building) {
+  }
+
+  public EmailBloomFilterService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 StringRedisTemplate redisTemplate,
+                                 @Value("${auth.users.email-filter.enabled:false}") boolean enabled,
+                                 @Value("${auth.users.email-filter.false-positive-rate:0.01}")
+                                 double falsePositiveRate,
+                                 @Value("${auth.users.email-filter.min-expected-insertions:100000}")
+                                 long minExpectedInsertions,
+                                 @Value("${auth.users.email-filter.fetch-size:10000}") int fetchSize,
+                                 @Value("${spring.jpa.properties.hibernate.default_schema:auth}")
+                                 String schema) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.redisTemplate = redisTemplate;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.enabled = enabled;
+    this.falsePositiveRate = falsePositiveRate;
+    this.minExpectedInsertions = minExpectedInsertions;
+    this.fetchSize = fetchSize;
+    this.countSql = "SELECT count(*) FROM " + schema + ".users";
+    this.emailsSql = "SELECT email FROM " + schema + ".users";
+
+    this.rebuildTimer = Timer.builder("auth.users.email_filter.rebuild").register(meterRegistry);
+    this.negativeLookups = Counter.builder("auth.users.email_filter.negative").register(meterRegistry);
+    Gauge.builder("auth.users.email_filter.size", this,
+        service -> service.filters.current() != null ? service.filters.current().getInsertions() : 0)
+        .register(meterRegistry);
+    Gauge.builder("auth.users.email_filter.bits", this,
+        service -> service.filters.current() != null ? service.filters.current().getBitCount() : 0)
+        .register(meterRegistry);
+    Gauge.builder("auth.users.email_filter.false_positive_rate", this,
+        service -> service.filters.current() != null ? service.filters.current().expectedFalsePositiveRate() : 1.0)
+        .register(meterRegistry);
+  }
+
+  // false means the email is definitely not in users
+  public boolean mightContain(String email) {
+    BloomFilter filter = filters.current();
+    if (filter == null || filter.mightContain(email)) {
+      return true;
+    }
+    negativeLookups.increment();
+    return false;
+  }
+
+  // Call after the user row is committed
+  public void add(String email) {
+    put(email);
+    if (!enabled) {
+      return;
+    }
+    try {
+      redisTemplate.convertAndSend(ADD_CHANNEL, email);
+    } catch (DataAccessException e) {
+      log.warn("Could not publish a new email to the other nodes, they learn it at their next rebuild", e);
+    }
+  }
+
+  // Message from auth:email-filter:add, our own adds come back too and are simply put again
+  public void onPeerAdd(String email) {
+    put(email);
+  }
+
+  private void put(String email) {
+    Filters snapshot = filters;
+    if (snapshot.current() != null) {
+      snapshot.current().put(email);
+    }
+    if (snapshot.building() != null) {
+      snapshot.building().put(email);
+    }
+  }
+
+  @Scheduled(initialDelayString = "${auth.users.email-filter.initial-delay-millis:0}",
+      fixedDelayString = "${auth.users.email-filter.rebuild-interval-millis:3600000}")
+  public void scheduledRebuild() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      rebuild();
+    } catch (RuntimeException e) {
+      // keep serving with the previous filter (or none)
+      log.error("Could not rebuild email filter", e);
+    }
+  }
+
+  // Sized with 25% headroom for registrations until the next rebuild
+  public void rebuild() {
+    rebuildTimer.record(() -> readOnlyTransaction.executeWithoutResult(status -> {
+      Long count = jdbcTemplate.queryForObject(countSql, Long.class);
+      long expected = Math.max(minExpectedInsertions, (long) ((count != null ? count : 0) * 1.25));
+
+      BloomFilter filter = BloomFilter.create(expected, falsePositiveRate);
+      filters = new Filters(filters.current(), filter);
+      boolean built = false;
+      try {
+        jdbcTemplate.query(connection -> {
+          var statement = connection.prepareStatement(emailsSql);
+          statement.setFetchSize(fetchSize);
+          return statement;
+        }, resultSet -> {
+          filter.put(resultSet.getString(1));
+        });
+        built = true;
+      } finally {
+        filters = new Filters(built ? filter : filters.current(), null);
+      }
+    }));
+    log.info("Email filter rebuilt with {} entries", filters.current().getInsertions());
+  }
+}
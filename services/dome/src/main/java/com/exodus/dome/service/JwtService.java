@@ -1,17 +1,34 @@
 package com.exodus.dome.service;
 
 import com.exodus.dome.entity.UserEntity;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.JwtKeyRing;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.time.OffsetDateTime;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.crypto.SecretKey;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -21,43 +38,182 @@ public class JwtService {
   private final SecretKey secretKey;
   private final String issuer;
   private final long accessTokenValiditySeconds;
+  // HS256 signs with the shared secret (legacy), ES256 with the active key of the key ring
+  private final SignatureAlgorithm algorithm;
+  private final JwtKeyRing keyRing;
+  // Immutable and thread safe, built once instead of on every validate
+  private final JwtParser parser;
+  // Digest of token -> verified claims, each entry lives until the token's exp. Null when disabled.
+  private final Cache<ByteBuffer, Jws<Claims>> verifiedTokens;
+  // auth.jwt.sign and auth.jwt.verify{outcome: valid, invalid, cached}, tagged by algorithm
+  private final Timer signTimer;
+  private final Timer verifyValidTimer;
+  private final Timer verifyInvalidTimer;
+  private final Timer verifyCachedTimer;
 
   public JwtService(
       @Value("${auth.jwt.secret}") String secret,
       @Value("${auth.jwt.issuer}") String issuer,
-      @Value("${auth.jwt.access-token-validity-seconds}") long accessTokenValiditySeconds
+      @Value("${auth.jwt.access-token-validity-seconds}") long accessTokenValiditySeconds,
+      @Value("${auth.jwt.verified-cache.enabled:false}") boolean verifiedCacheEnabled,
+      @Value("${auth.jwt.verified-cache.max-size:10000}") long verifiedCacheMaxSize,
+      @Value("${auth.jwt.algorithm:HS256}") String algorithm,
+      JwtKeyRing keyRing,
+      MeterRegistry meterRegistry
   ) {
     this.secretKey = Keys.hmacShaKeyFor(secret.getBytes());
     this.issuer = issuer;
     this.accessTokenValiditySeconds = accessTokenValiditySeconds;
+    this.algorithm = SignatureAlgorithm.forName(algorithm);
+    if (this.algorithm != SignatureAlgorithm.HS256 && this.algorithm != SignatureAlgorithm.ES256) {
+      throw new IllegalArgumentException("auth.jwt.algorithm must be HS256 or ES256, got " + algorithm);
+    }
+    if (this.algorithm == SignatureAlgorithm.ES256 && keyRing == null) {
+      throw new IllegalArgumentException("ES256 needs a JWT key ring");
+    }
+    this.keyRing = this.algorithm == SignatureAlgorithm.ES256 ? keyRing : null;
+    this.parser = this.keyRing == null
+        ? Jwts.parserBuilder().setSigningKey(secretKey).requireIssuer(issuer).build()
+        : Jwts.parserBuilder().setSigningKeyResolver(new KeyRingResolver(this.keyRing))
+            .requireIssuer(issuer).build();
+    this.verifiedTokens = verifiedCacheEnabled
+        ? Caffeine.newBuilder()
+            .maximumSize(verifiedCacheMaxSize)
+            .expireAfter(new UntilTokenExpiry())
+            .build()
+        : null;
+    this.signTimer = Timer.builder("auth.jwt.sign").tag("algorithm", this.algorithm.getValue())
+        .register(meterRegistry);
+    this.verifyValidTimer = verifyTimer("valid", meterRegistry);
+    this.verifyInvalidTimer = verifyTimer("invalid", meterRegistry);
+    this.verifyCachedTimer = verifyTimer("cached", meterRegistry);
+  }
+
+  private Timer verifyTimer(String outcome, MeterRegistry meterRegistry) {
+    return Timer.builder("auth.jwt.verify")
+        .tag("algorithm", algorithm.getValue())
+        .tag("outcome", outcome)
+        .register(meterRegistry);
   }
 
   public String generateAccessToken(UserEntity user) {
+    return generateAccessToken(user.getId(), user.getRole());
+  }
+
+  // For callers that only have the cached user id and role, no entity needed
+  public String generateAccessToken(UUID userId, UserRole role) {
+    return signTimer.record(() -> sign(userId, role));
+  }
+
+  private String sign(UUID userId, UserRole role) {
     Instant now = Instant.now();
     Instant expiry = now.plusSeconds(accessTokenValiditySeconds);
 
     Map<String, Object> claims = new HashMap<>();
-    claims.put("role", user.getRole().name());
+    claims.put("role", role.name());
 
-    return Jwts.builder()
-        .setSubject(user.getId().toString())
+    var builder = Jwts.builder()
+        .setSubject(userId.toString())
         .setIssuer(issuer)
         .setIssuedAt(Date.from(now))
         .setExpiration(Date.from(expiry))
-        .addClaims(claims)
-        .signWith(secretKey, SignatureAlgorithm.HS256)
+        .addClaims(claims);
+
+    if (keyRing == null) {
+      return builder.signWith(secretKey, SignatureAlgorithm.HS256).compact();
+    }
+    return builder
+        .setHeaderParam(JwsHeader.KEY_ID, keyRing.getActiveKid())
+        .signWith(keyRing.getActiveKey(), SignatureAlgorithm.ES256)
         .compact();
   }
 
+  // Public keys for /.well-known/jwks.json, empty with HS256 since the secret is never published
+  public Map<String, Object> jwks() {
+    return keyRing != null ? keyRing.toJwks() : Map.of("keys", List.of());
+  }
+
+  // Returned claims may be shared between callers when the cache is on, do not modify them
   public Jws<Claims> validate(String token) {
+    long start = System.nanoTime();
+    Timer timer = verifyInvalidTimer;
+    try {
+      if (verifiedTokens == null) {
+        Jws<Claims> verified = parse(token);
+        timer = verifyValidTimer;
+        return verified;
+      }
+
+      ByteBuffer key = digest(token);
+      Jws<Claims> cached = verifiedTokens.getIfPresent(key);
+      if (cached != null) {
+        timer = verifyCachedTimer;
+        return cached;
+      }
+
+      Jws<Claims> verified = parse(token);
+      timer = verifyValidTimer;
+      // tokens without exp are not cached, nothing would ever evict them
+      if (verified.getBody().getExpiration() != null) {
+        verifiedTokens.put(key, verified);
+      }
+      return verified;
+    } finally {
+      timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private Jws<Claims> parse(String token) {
     try {
-      return Jwts.parserBuilder()
-          .setSigningKey(secretKey)
-          .requireIssuer(issuer)
-          .build()
-          .parseClaimsJws(token);
+      return parser.parseClaimsJws(token);
     } catch (JwtException e) {
       throw new IllegalArgumentException("Invalid JWT", e);
     }
   }
+
+  // Digest instead of the token itself, so the cache does not hold usable credentials
+  private static ByteBuffer digest(String token) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      return ByteBuffer.wrap(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  // Picks the verification key by the kid header. A token signed with any other
+  // algorithm fails in jjwt because the key type does not match.
+  private static class KeyRingResolver extends SigningKeyResolverAdapter {
+    private final JwtKeyRing keyRing;
+
+    KeyRingResolver(JwtKeyRing keyRing) {
+      this.keyRing = keyRing;
+    }
+
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+      return keyRing.findPublicKey(header.getKeyId())
+          .orElseThrow(() -> new JwtException("Unknown key id " + header.getKeyId()));
+    }
+  }
+
+  private static class UntilTokenExpiry implements Expiry<ByteBuffer, Jws<Claims>> {
+    @Override
+    public long expireAfterCreate(ByteBuffer key, Jws<Claims> value, long currentTime) {
+      long millisLeft = value.getBody().getExpiration().getTime() - System.currentTimeMillis();
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisLeft));
+    }
+
+    @Override
+    public long expireAfterUpdate(ByteBuffer key, Jws<Claims> value, long currentTime,
+                                  long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(ByteBuffer key, Jws<Claims> value, long currentTime,
+                                long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
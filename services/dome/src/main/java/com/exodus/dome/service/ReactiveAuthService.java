@@ -0,0 +1,384 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.RefreshToken;
+import com.exodus.dome.entity.UserEntity;
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.entity.dto.LoginRequest;
+import com.exodus.dome.entity.dto.LogoutRequest;
+import com.exodus.dome.entity.dto.RefreshRequest;
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import com.exodus.dome.exception.PasswordNotCorrectException;
+import com.exodus.dome.exception.RefreshTokenExpiredException;
+import com.exodus.dome.exception.RefreshTokenNotFoundException;
+import com.exodus.dome.exception.RefreshTokenRevokedException;
+import com.exodus.dome.exception.ServiceOverloadedException;
+import com.exodus.dome.exception.UserNotActiveException;
+import com.exodus.dome.exception.UserNotFoundException;
+import com.exodus.dome.repository.ReactiveRefreshTokenRepository;
+import com.exodus.dome.repository.ReactiveUserRepository;
+import com.exodus.dome.security.BoundedPasswordEncoder;
+import com.exodus.dome.security.RefreshTokenCodec;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+//**
+// login, refresh and logout of AuthService as Mono pipelines: R2DBC for users/refresh_tokens,
+// reactive Lettuce for the cache, BCrypt on BoundedPasswordEncoder's pool without a thread
+// waiting for it. Same rules, same redis keys and same rows, so both can run side by side.
+// What is still blocking underneath (the write-behind journal, the stateless revocation script)
+// goes to boundedElastic, never to the event loop.
+// Timed with AuthService's auth.login and auth.refresh, from subscribe to the last signal.
+//**
+@Service
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveAuthService {
+  private static final Logger log = LoggerFactory.getLogger(ReactiveAuthService.class);
+
+  private final ReactiveUserRepository userRepository;
+  private final ReactiveRefreshTokenRepository refreshTokenRepository;
+  private final ReactiveRefreshTokenCacheService refreshTokenCacheService;
+  private final PasswordEncoder passwordEncoder;
+  private final JwtService jwtService;
+  private final long refreshTokenValiditySeconds;
+  private final RefreshTokenPersistenceService refreshTokenPersistenceService;
+  private final boolean cacheAuthoritativeRefresh;
+  private final EmailBloomFilterService emailBloomFilterService;
+  private final StatelessRefreshTokenService statelessRefreshTokenService;
+  private final TransactionalOperator transactionalOperator;
+  private final SecureRandom secureRandom = new SecureRandom();
+  private final Map<String, Timer> refreshTimers;
+  private final Map<String, Timer> loginTimers;
+
+  public ReactiveAuthService(ReactiveUserRepository userRepository,
+                             ReactiveRefreshTokenRepository refreshTokenRepository,
+                             ReactiveRefreshTokenCacheService refreshTokenCacheService,
+                             PasswordEncoder passwordEncoder,
+                             JwtService jwtService,
+                             @Value("${auth.jwt.refresh-token-validity-seconds}")
+                             long refreshTokenValiditySeconds,
+                             RefreshTokenPersistenceService refreshTokenPersistenceService,
+                             @Value("${auth.refresh.cache-authoritative:false}")
+                             boolean cacheAuthoritativeRefresh,
+                             EmailBloomFilterService emailBloomFilterService,
+                             StatelessRefreshTokenService statelessRefreshTokenService,
+                             TransactionalOperator reactiveTransactionalOperator,
+                             MeterRegistry meterRegistry) {
+    this.userRepository = userRepository;
+    this.refreshTokenRepository = refreshTokenRepository;
+    this.refreshTokenCacheService = refreshTokenCacheService;
+    this.passwordEncoder = passwordEncoder;
+    this.jwtService = jwtService;
+    this.refreshTokenValiditySeconds = refreshTokenValiditySeconds;
+    this.refreshTokenPersistenceService = refreshTokenPersistenceService;
+    this.cacheAuthoritativeRefresh = cacheAuthoritativeRefresh;
+    this.emailBloomFilterService = emailBloomFilterService;
+    this.statelessRefreshTokenService = statelessRefreshTokenService;
+    this.transactionalOperator = reactiveTransactionalOperator;
+    this.refreshTimers = AuthService.timers("auth.refresh", AuthService.REFRESH_OUTCOMES, meterRegistry);
+    this.loginTimers = AuthService.timers("auth.login", AuthService.LOGIN_OUTCOMES, meterRegistry);
+  }
+
+  public Mono<AuthResponse> login(LoginRequest request) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return authenticate(request)
+          .doOnSuccess(response -> record(loginTimers, "success", start))
+          .doOnError(e -> record(loginTimers, AuthService.loginFailure(e), start));
+    });
+  }
+
+  private static void record(Map<String, Timer> timers, String outcome, long start) {
+    timers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private Mono<AuthResponse> authenticate(LoginRequest request) {
+    // Unknown emails (mostly credential stuffing) are rejected without any SQL
+    if (!emailBloomFilterService.mightContain(request.getEmail())) {
+      return Mono.error(new UserNotFoundException("User with given email not found."));
+    }
+
+    return userRepository.findByEmail(request.getEmail())
+        .switchIfEmpty(Mono.error(() -> new UserNotFoundException("User with given email not found.")))
+        .flatMap(user -> {
+          if (!user.isActive()) {
+            return Mono.error(new UserNotActiveException("User account is not active."));
+          }
+          return passwordMatches(request.getPassword(), user.getPasswordHash())
+              .flatMap(matches -> matches
+                  ? upgradePasswordHashIfNeeded(user, request.getPassword())
+                  : Mono.error(new PasswordNotCorrectException("Provided password is not correct.")));
+        })
+        .flatMap(user -> {
+          String accessToken = jwtService.generateAccessToken(user);
+          // Stateless tokens are not stored anywhere, the max-sessions cap does not apply to them
+          Mono<String> refreshToken = statelessRefreshTokenService.isEnabled()
+              ? Mono.just(statelessRefreshTokenService.issue(user.getId(), user.getRole()))
+              : storeNewRefreshToken(user, UUID.randomUUID(), 0);
+          return refreshToken.map(token -> new AuthResponse(accessToken, token, refreshTokenValiditySeconds));
+        });
+  }
+
+  // Skipped when the hashing pool is busy, next login retries
+  private Mono<UserEntity> upgradePasswordHashIfNeeded(UserEntity user, String rawPassword) {
+    if (!passwordEncoder.upgradeEncoding(user.getPasswordHash())) {
+      return Mono.just(user);
+    }
+    return passwordEncode(rawPassword)
+        .flatMap(upgradedHash -> userRepository.updatePasswordHash(user.getId(), user.getPasswordHash(),
+                upgradedHash)
+            .doOnNext(updated -> user.setPasswordHash(upgradedHash)))
+        .thenReturn(user)
+        .onErrorResume(ServiceOverloadedException.class, e -> Mono.just(user));
+  }
+
+  public Mono<AuthResponse> refresh(RefreshRequest request) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return rotate(request)
+          .doOnSuccess(refreshed -> record(refreshTimers, refreshed.outcome(), start))
+          .doOnError(e -> record(refreshTimers, AuthService.refreshFailure(e), start))
+          .map(Refreshed::response);
+    });
+  }
+
+  private record Refreshed(AuthResponse response, String outcome) {
+  }
+
+  private Mono<Refreshed> rotate(RefreshRequest request) {
+    String tokenValue = request.getRefreshToken();
+
+    if (isStatelessToken(tokenValue)) {
+      // verify is in-process, rotate is one blocking redis script
+      return blocking(() -> {
+        RefreshTokenClaims claims = statelessRefreshTokenService.verify(tokenValue);
+        String newRefreshToken = statelessRefreshTokenService.rotate(claims);
+        return new Refreshed(new AuthResponse(jwtService.generateAccessToken(claims.getUserId(),
+            claims.getRole()), newRefreshToken, refreshTokenValiditySeconds), "stateless");
+      });
+    }
+
+    if (!cacheAuthoritativeRefresh) {
+      return refreshFromDatabase(tokenValue);
+    }
+
+    String newRefreshToken = generateSecureRandomToken();
+    return refreshTokenCacheService.rotateToken(tokenValue, newRefreshToken, refreshTokenValiditySeconds)
+        .flatMap(rotation -> switch (rotation.getStatus()) {
+          case ROTATED -> completeCachedRotation(tokenValue, newRefreshToken, rotation)
+              .map(response -> new Refreshed(response, "hit"));
+          case ALREADY_ROTATED -> {
+            if (rotation.getFamilyId() == null) {
+              yield Mono.error(new RefreshTokenRevokedException("Refresh token is expired or revoked"));
+            }
+            // the script already dropped the family from redis, DB and the write-behind queue follow
+            log.warn("Rotated refresh token reused, revoking family {} of user {}",
+                rotation.getFamilyId(), rotation.getUserId());
+            yield revokeFamilyInDatabase(rotation.getFamilyId(), Instant.now())
+                .then(Mono.error(new RefreshTokenRevokedException("Refresh token is expired or revoked")));
+          }
+          default -> refreshFromDatabase(tokenValue); // not in cache or written without role
+        });
+  }
+
+  //**
+  // The old token is revoked and the new one inserted in one R2DBC transaction. The revoke is
+  // conditional, of two refreshes racing on the same token only one gets a new token. With
+  // write-behind only the insert is queued, the revoke still goes to DB right away: queued, both
+  // racing refreshes would get through.
+  //**
+  private Mono<Refreshed> refreshFromDatabase(String tokenValue) {
+    return findStoredToken(tokenValue)
+        .switchIfEmpty(Mono.error(() -> new RefreshTokenNotFoundException("Refresh Token not found!")))
+        .flatMap(storedToken -> rejectIfRevokedOrExpired(storedToken)
+            .then(refreshTokenCacheService.deleteToken(tokenValue))
+            .thenReturn(storedToken))
+        .flatMap(storedToken -> {
+          UserEntity user = storedToken.getUser();
+          if (!user.isActive()) {
+            return Mono.error(new UserNotActiveException("User account is not active."));
+          }
+
+          Instant now = Instant.now();
+          String newRefreshToken = generateSecureRandomToken();
+          RefreshToken next = newRefreshToken(user, newRefreshToken, storedToken.getFamilyId(),
+              storedToken.getGeneration() + 1, now);
+
+          boolean writeBehind = refreshTokenPersistenceService.isWriteBehindEnabled();
+          Mono<Void> persisted = transactionalOperator.transactional(
+                  refreshTokenRepository.revoke(storedToken.getTokenHash(), now)
+                      .flatMap(revoked -> revoked == 0
+                          ? Mono.error(new InvalidRefreshTokenException("Refresh token is expired or revoked"))
+                          : writeBehind ? Mono.<Void>empty() : refreshTokenRepository.insert(next)))
+              .then(writeBehind ? blockingRun(() -> refreshTokenPersistenceService.enqueueInsert(next))
+                  : Mono.empty());
+
+          return persisted
+              .then(cacheNewRefreshToken(newRefreshToken, next, now))
+              .thenReturn(new Refreshed(new AuthResponse(jwtService.generateAccessToken(user),
+                  newRefreshToken, refreshTokenValiditySeconds), "miss"));
+        });
+  }
+
+  private Mono<AuthResponse> completeCachedRotation(String oldToken, String newToken,
+                                                    RefreshTokenRotation rotation) {
+    Instant now = Instant.now();
+    // DB revoke + insert happen in background, only the journal append is waited for
+    return blockingRun(() -> refreshTokenPersistenceService.persistRotation(
+            RefreshTokenHasher.hashKey(oldToken), RefreshTokenHasher.hashKey(newToken), rotation.getUserId(),
+            rotation.getFamilyId(), rotation.getGeneration(), now, now.plusSeconds(refreshTokenValiditySeconds)))
+        .thenReturn(new AuthResponse(jwtService.generateAccessToken(rotation.getUserId(), rotation.getRole()),
+            newToken, refreshTokenValiditySeconds));
+  }
+
+  public Mono<Void> logout(LogoutRequest logoutRequest) {
+    String tokenValue = logoutRequest.getRefreshToken();
+
+    if (isStatelessToken(tokenValue)) {
+      return blockingRun(() -> {
+        RefreshTokenClaims claims = statelessRefreshTokenService.decode(tokenValue);
+        if (!claims.isExpired(Instant.now())) {
+          statelessRefreshTokenService.revokeFamily(claims.getFamilyId(), Instant.now());
+        }
+      });
+    }
+
+    return findStoredToken(tokenValue)
+        .switchIfEmpty(Mono.error(() -> new RefreshTokenNotFoundException("Refresh Token not found!")))
+        .flatMap(storedToken -> {
+          if (storedToken.isRevoked() || storedToken.isExpired()) {
+            return Mono.empty(); // already revoked or expired
+          }
+          return revoke(storedToken.getTokenHash(), Instant.now())
+              .then(refreshTokenCacheService.deleteToken(tokenValue));
+        });
+  }
+
+  // A token issued a few ms ago may still be in the write-behind queue, its row is written first.
+  // Only then does the lookup leave the event loop.
+  private Mono<RefreshToken> findStoredToken(String tokenValue) {
+    String tokenHash = RefreshTokenHasher.hashKey(tokenValue);
+    Mono<RefreshToken> lookup = Mono.defer(() ->
+        refreshTokenRepository.findByTokenHash(RefreshTokenHasher.fromKey(tokenHash)));
+    return Mono.defer(() -> refreshTokenPersistenceService.isPending(tokenHash)
+        ? blockingRun(() -> refreshTokenPersistenceService.flushPending(tokenHash)).then(lookup)
+        : lookup);
+  }
+
+  private boolean isStatelessToken(String tokenValue) {
+    return statelessRefreshTokenService.isEnabled() && RefreshTokenCodec.isStateless(tokenValue);
+  }
+
+  // Same reuse rule as AuthService: a revoked token coming back kills its whole family.
+  // The family UPDATE runs outside any transaction, so it stays even though the caller gets a 401.
+  private Mono<Void> rejectIfRevokedOrExpired(RefreshToken storedToken) {
+    if (storedToken.isRevoked()) {
+      log.warn("Revoked refresh token reused, revoking family {} (generation {} presented)",
+          storedToken.getFamilyId(), storedToken.getGeneration());
+      return revokeFamilyInDatabase(storedToken.getFamilyId(), Instant.now())
+          .flatMap(revoked -> refreshTokenCacheService.revokeFamily(storedToken.getFamilyId(),
+              storedToken.getUser().getId(), revoked))
+          .then(Mono.error(new RefreshTokenRevokedException("Refresh token is expired or revoked")));
+    }
+    if (storedToken.isExpired()) {
+      return Mono.error(new RefreshTokenExpiredException("Refresh token is expired or revoked"));
+    }
+    return Mono.empty();
+  }
+
+  private Mono<List<String>> revokeFamilyInDatabase(UUID familyId, Instant now) {
+    return refreshTokenRepository.revokeFamily(familyId, now)
+        .map(RefreshTokenHasher::toKey)
+        .collectList()
+        .zipWith(blocking(() -> refreshTokenPersistenceService.revokePendingForFamily(familyId, now)),
+            (revoked, pending) -> {
+              List<String> all = new ArrayList<>(revoked);
+              all.addAll(pending);
+              return all;
+            });
+  }
+
+  private Mono<String> storeNewRefreshToken(UserEntity user, UUID familyId, int generation) {
+    Instant now = Instant.now();
+    String tokenValue = generateSecureRandomToken();
+    RefreshToken refreshToken = newRefreshToken(user, tokenValue, familyId, generation, now);
+
+    Mono<Void> persisted = refreshTokenPersistenceService.isWriteBehindEnabled()
+        ? blockingRun(() -> refreshTokenPersistenceService.enqueueInsert(refreshToken))
+        : refreshTokenRepository.insert(refreshToken);
+    return persisted
+        .then(cacheNewRefreshToken(tokenValue, refreshToken, now))
+        .thenReturn(tokenValue);
+  }
+
+  private RefreshToken newRefreshToken(UserEntity user, String tokenValue, UUID familyId, int generation,
+                                       Instant now) {
+    return new RefreshToken(UUID.randomUUID(), user, tokenValue, familyId, generation,
+        now.plusSeconds(refreshTokenValiditySeconds), now, null);
+  }
+
+  // Over the max-sessions cap the oldest sessions were dropped from cache, revoke them in DB too
+  private Mono<Void> cacheNewRefreshToken(String tokenValue, RefreshToken refreshToken, Instant now) {
+    UserEntity user = refreshToken.getUser();
+    return refreshTokenCacheService.storeToken(tokenValue, user.getId(), user.getRole(),
+            refreshToken.getFamilyId(), refreshToken.getGeneration(), refreshTokenValiditySeconds)
+        .flatMapMany(Flux::fromIterable)
+        .concatMap(evictedHash -> revoke(RefreshTokenHasher.fromKey(evictedHash), now))
+        .then();
+  }
+
+  private Mono<Void> revoke(byte[] tokenHash, Instant now) {
+    if (refreshTokenPersistenceService.isWriteBehindEnabled()) {
+      return blockingRun(() -> refreshTokenPersistenceService.enqueueRevoke(RefreshTokenHasher.toKey(tokenHash),
+          now));
+    }
+    return refreshTokenRepository.revoke(tokenHash, now).then();
+  }
+
+  // BoundedPasswordEncoder hands back a future, no thread waits for the hash
+  private Mono<Boolean> passwordMatches(String rawPassword, String encodedPassword) {
+    if (passwordEncoder instanceof BoundedPasswordEncoder bounded) {
+      return Mono.fromFuture(() -> bounded.matchesAsync(rawPassword, encodedPassword));
+    }
+    return blocking(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+  }
+
+  private Mono<String> passwordEncode(String rawPassword) {
+    if (passwordEncoder instanceof BoundedPasswordEncoder bounded) {
+      return Mono.fromFuture(() -> bounded.encodeAsync(rawPassword));
+    }
+    return blocking(() -> passwordEncoder.encode(rawPassword));
+  }
+
+  private static <T> Mono<T> blocking(Callable<T> call) {
+    return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private static Mono<Void> blockingRun(Runnable run) {
+    return Mono.<Void>fromRunnable(run).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private String generateSecureRandomToken() {
+    return AuthService.generateSecureRandomToken(secureRandom);
+  }
+}
@@ -0,0 +1,168 @@
+package com.exodus.dome.service;
+
+import static com.exodus.dome.service.RefreshCoalescingService.ACQUIRE_SCRIPT;
+import static com.exodus.dome.service.RefreshCoalescingService.LEASE_ACQUIRED;
+import static com.exodus.dome.service.RefreshCoalescingService.LEASE_KEY_PREFIX;
+import static com.exodus.dome.service.RefreshCoalescingService.RELEASE_SCRIPT;
+import static com.exodus.dome.service.RefreshCoalescingService.RESULT_KEY_PREFIX;
+import static com.exodus.dome.service.RefreshCoalescingService.decrypt;
+import static com.exodus.dome.service.RefreshCoalescingService.encrypt;
+
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.exception.ServiceOverloadedException;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+//**
+// RefreshCoalescingService on ReactiveStringRedisTemplate: same lease and result keys, same
+// scripts, same encrypted result, so a refresh coalesces with one running on a servlet node.
+// Waiting for the lease is a Mono.delay poll, no thread is held while another caller refreshes.
+//**
+@Service
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveRefreshCoalescingService {
+  private static final Logger log = LoggerFactory.getLogger(ReactiveRefreshCoalescingService.class);
+
+  private final ReactiveStringRedisTemplate redisTemplate;
+  private final boolean enabled;
+  private final long leaseMillis;
+  private final long graceMillis;
+  private final long waitMillis;
+  private final long pollMillis;
+  private final long retryAfterSeconds;
+  private final Counter localJoins;
+  private final Counter remoteJoins;
+
+  // token hash -> response of the refresh running on this node
+  private final Map<String, CompletableFuture<AuthResponse>> inFlight = new ConcurrentHashMap<>();
+
+  public ReactiveRefreshCoalescingService(ReactiveStringRedisTemplate redisTemplate,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${auth.refresh.coalescing.enabled:true}") boolean enabled,
+                                          @Value("${auth.refresh.coalescing.lease-millis:5000}") long leaseMillis,
+                                          @Value("${auth.refresh.coalescing.grace-millis:10000}") long graceMillis,
+                                          @Value("${auth.refresh.coalescing.wait-millis:3000}") long waitMillis,
+                                          @Value("${auth.refresh.coalescing.poll-millis:20}") long pollMillis,
+                                          @Value("${auth.refresh.coalescing.retry-after-seconds:1}")
+                                          long retryAfterSeconds) {
+    this.redisTemplate = redisTemplate;
+    this.enabled = enabled;
+    this.leaseMillis = leaseMillis;
+    this.graceMillis = graceMillis;
+    this.waitMillis = waitMillis;
+    this.pollMillis = pollMillis;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.localJoins = Counter.builder("auth.refresh.coalesced").tag("source", "local")
+        .register(meterRegistry);
+    this.remoteJoins = Counter.builder("auth.refresh.coalesced").tag("source", "remote")
+        .register(meterRegistry);
+  }
+
+  // Subscribes to refresh once per token, every concurrent caller with the same token gets its
+  // response (or its error). refresh has to commit before it emits.
+  public Mono<AuthResponse> coalesce(String refreshToken, Supplier<Mono<AuthResponse>> refresh) {
+    if (!enabled || refreshToken == null) {
+      return Mono.defer(refresh);
+    }
+
+    return Mono.defer(() -> {
+      String tokenHash = RefreshTokenHasher.hashKey(refreshToken);
+      CompletableFuture<AuthResponse> mine = new CompletableFuture<>();
+      CompletableFuture<AuthResponse> running = inFlight.putIfAbsent(tokenHash, mine);
+      if (running != null) {
+        localJoins.increment();
+        // a waiter giving up must not cancel the refresh the others are waiting for
+        return Mono.fromFuture(running, true)
+            .timeout(Duration.ofMillis(waitMillis), Mono.error(this::alreadyInProgress));
+      }
+
+      return refreshOnce(refreshToken, tokenHash, refresh)
+          .doOnSuccess(mine::complete)
+          .doOnError(mine::completeExceptionally)
+          .doOnCancel(() -> mine.completeExceptionally(alreadyInProgress()))
+          .doFinally(signal -> inFlight.remove(tokenHash, mine));
+    });
+  }
+
+  private Mono<AuthResponse> refreshOnce(String refreshToken, String tokenHash,
+                                         Supplier<Mono<AuthResponse>> refresh) {
+    List<String> keys = List.of(RESULT_KEY_PREFIX + tokenHash, LEASE_KEY_PREFIX + tokenHash);
+    String owner = UUID.randomUUID().toString();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    return attempt(refreshToken, keys, owner, deadline, refresh);
+  }
+
+  private Mono<AuthResponse> attempt(String refreshToken, List<String> keys, String owner, long deadline,
+                                     Supplier<Mono<AuthResponse>> refresh) {
+    return acquire(keys, owner)
+        .flatMap(acquired -> {
+          if (acquired.isEmpty()) {
+            if (System.nanoTime() > deadline) {
+              return Mono.error(alreadyInProgress());
+            }
+            return Mono.delay(Duration.ofMillis(pollMillis))
+                .then(Mono.defer(() -> attempt(refreshToken, keys, owner, deadline, refresh)));
+          }
+          if (LEASE_ACQUIRED.equals(acquired.get())) {
+            return refreshUnderLease(refreshToken, keys, owner, refresh);
+          }
+          remoteJoins.increment();
+          return Mono.fromCallable(() -> decrypt(refreshToken, acquired.get()));
+        })
+        // empty only when redis failed: coalescing is best effort, every caller refreshes on its own
+        .switchIfEmpty(Mono.defer(refresh));
+  }
+
+  // The published result, "" if the lease was taken, empty Optional if someone else holds it
+  private Mono<Optional<String>> acquire(List<String> keys, String owner) {
+    return redisTemplate.execute(ACQUIRE_SCRIPT, keys, List.of(owner, String.valueOf(leaseMillis)))
+        .next()
+        .map(Optional::of)
+        .defaultIfEmpty(Optional.empty())
+        .onErrorResume(DataAccessException.class, e -> {
+          log.warn("Could not take refresh lease, refreshing without coalescing", e);
+          return Mono.empty();
+        });
+  }
+
+  private Mono<AuthResponse> refreshUnderLease(String refreshToken, List<String> keys, String owner,
+                                               Supplier<Mono<AuthResponse>> refresh) {
+    // on failure only the lease goes, the next waiter takes it and gets its own answer
+    return Mono.defer(refresh)
+        .flatMap(response -> release(keys, List.of(owner, String.valueOf(graceMillis),
+            encrypt(refreshToken, response))).thenReturn(response))
+        .onErrorResume(e -> release(keys, List.of(owner, String.valueOf(graceMillis)))
+            .then(Mono.error(e)));
+  }
+
+  private Mono<Void> release(List<String> keys, List<String> args) {
+    return redisTemplate.execute(RELEASE_SCRIPT, keys, args)
+        .then()
+        .onErrorResume(DataAccessException.class, e -> {
+          log.warn("Could not publish coalesced refresh, lease runs out in {} ms", leaseMillis, e);
+          return Mono.empty();
+        });
+  }
+
+  private ServiceOverloadedException alreadyInProgress() {
+    return new ServiceOverloadedException("Refresh of this token is already in progress", retryAfterSeconds);
+  }
+}
@@ -0,0 +1,100 @@
+package com.exodus.dome.service;
+
+import static com.exodus.dome.service.RefreshTokenCacheService.DELETE_SCRIPT;
+import static com.exodus.dome.service.RefreshTokenCacheService.FAMILY_KEY_PREFIX;
+import static com.exodus.dome.service.RefreshTokenCacheService.REVOKE_FAMILY_SCRIPT;
+import static com.exodus.dome.service.RefreshTokenCacheService.ROTATED_MARKER;
+import static com.exodus.dome.service.RefreshTokenCacheService.ROTATE_SCRIPT;
+import static com.exodus.dome.service.RefreshTokenCacheService.STORE_SCRIPT;
+import static com.exodus.dome.service.RefreshTokenCacheService.TOKEN_KEY_PREFIX;
+import static com.exodus.dome.service.RefreshTokenCacheService.USER_KEY_PREFIX;
+import static com.exodus.dome.service.RefreshTokenCacheService.buildFamilyKey;
+import static com.exodus.dome.service.RefreshTokenCacheService.buildKey;
+import static com.exodus.dome.service.RefreshTokenCacheService.buildUserKey;
+import static com.exodus.dome.service.RefreshTokenCacheService.buildValue;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+//**
+// RefreshTokenCacheService on ReactiveStringRedisTemplate: same keys, same scripts, same value
+// format, so both can serve the same redis at once. Only what the reactive endpoints need.
+//**
+@Service
+@ConditionalOnProperty(name = "auth.reactive.enabled", havingValue = "true")
+public class ReactiveRefreshTokenCacheService {
+  private final ReactiveStringRedisTemplate redisTemplate;
+  private final long rotatedMarkerTtlSeconds;
+  private final int maxSessionsPerUser;
+
+  public ReactiveRefreshTokenCacheService(ReactiveStringRedisTemplate redisTemplate,
+                                          @Value("${auth.refresh.rotated-marker-ttl-seconds:300}")
+                                          long rotatedMarkerTtlSeconds,
+                                          @Value("${auth.refresh.max-sessions-per-user:0}")
+                                          int maxSessionsPerUser) {
+    this.redisTemplate = redisTemplate;
+    this.rotatedMarkerTtlSeconds = rotatedMarkerTtlSeconds;
+    this.maxSessionsPerUser = maxSessionsPerUser;
+  }
+
+  // Emits the hashes of the user's oldest tokens dropped by the max-sessions cap
+  @SuppressWarnings("unchecked")
+  public Mono<List<String>> storeToken(String token, UUID userId, UserRole role, UUID familyId,
+                                       int generation, long ttlInSeconds) {
+    String tokenHash = RefreshTokenHasher.hashKey(token);
+    long now = System.currentTimeMillis();
+    return redisTemplate.execute(STORE_SCRIPT,
+            List.of(buildKey(tokenHash), buildUserKey(userId), buildFamilyKey(familyId)),
+            List.of(buildValue(userId, role, familyId, generation), String.valueOf(ttlInSeconds), tokenHash,
+                String.valueOf(now + ttlInSeconds * 1000), String.valueOf(now),
+                String.valueOf(maxSessionsPerUser), TOKEN_KEY_PREFIX))
+        .next()
+        .map(evicted -> (List<String>) evicted)
+        .defaultIfEmpty(List.of());
+  }
+
+  public Mono<RefreshTokenRotation> rotateToken(String oldToken, String newToken, long ttlInSeconds) {
+    String oldHash = RefreshTokenHasher.hashKey(oldToken);
+    String newHash = RefreshTokenHasher.hashKey(newToken);
+    return redisTemplate.execute(ROTATE_SCRIPT,
+            List.of(buildKey(oldHash), buildKey(newHash)),
+            List.of(String.valueOf(ttlInSeconds), ROTATED_MARKER, String.valueOf(rotatedMarkerTtlSeconds),
+                USER_KEY_PREFIX, oldHash, newHash,
+                String.valueOf(System.currentTimeMillis() + ttlInSeconds * 1000),
+                FAMILY_KEY_PREFIX, TOKEN_KEY_PREFIX))
+        .next()
+        .flatMap(value -> {
+          try {
+            return Mono.just(RefreshTokenCacheService.parseRotation(value));
+          } catch (IllegalArgumentException e) {
+            return redisTemplate.delete(buildKey(newHash)).thenReturn(RefreshTokenRotation.notFound());
+          }
+        })
+        .defaultIfEmpty(RefreshTokenRotation.notFound());
+  }
+
+  public Mono<Void> deleteToken(String token) {
+    String tokenHash = RefreshTokenHasher.hashKey(token);
+    return redisTemplate.execute(DELETE_SCRIPT, List.of(buildKey(tokenHash)),
+            List.of(tokenHash, USER_KEY_PREFIX, ROTATED_MARKER))
+        .then();
+  }
+
+  public Mono<Void> revokeFamily(UUID familyId, UUID userId, Collection<String> knownTokenHashes) {
+    List<String> args = new ArrayList<>(knownTokenHashes.size() + 2);
+    args.add(buildUserKey(userId));
+    args.add(TOKEN_KEY_PREFIX);
+    args.addAll(knownTokenHashes);
+    return redisTemplate.execute(REVOKE_FAMILY_SCRIPT, List.of(buildFamilyKey(familyId)), args).then();
+  }
+}
@@ -0,0 +1,270 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.exception.ServiceOverloadedException;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+//**
+// Single flight for refresh. When the 60 second access token runs out, mobile clients fire
+// several requests at once, all with the same refresh token. Without this one of them rotates
+// and the others present a rotated token, which now revokes the whole family.
+// On one node, callers with the same token wait for the first one's future. Across nodes the
+// first caller takes refresh:lease:<hash> and publishes its response under refresh:result:<hash>
+// for grace-millis, the others pick it up from there.
+// The published response is AES-GCM encrypted with a key derived from the old token, so a redis
+// dump gives nothing away. Whoever presents the old token inside the grace window gets the same
+// response, which is the point, and also why the window is kept short.
+// On by default for that reason; without redis every caller just refreshes on its own.
+//**
+@Service
+public class RefreshCoalescingService {
+  private static final Logger log = LoggerFactory.getLogger(RefreshCoalescingService.class);
+
+  static final String LEASE_KEY_PREFIX = "refresh:lease:";
+  static final String RESULT_KEY_PREFIX = "refresh:result:";
+  static final String LEASE_ACQUIRED = "";
+  private static final String CIPHER = "AES/GCM/NoPadding";
+  private static final int IV_LENGTH = 12;
+  private static final int TAG_BITS = 128;
+  private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+  // KEYS[1] = result key, KEYS[2] = lease key
+  // ARGV[1] = lease owner, ARGV[2] = lease ttl (millis)
+  // Returns the published result, "" if the lease was taken, nil if someone else holds it.
+  static final RedisScript<String> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+      local result = redis.call('GET', KEYS[1])
+      if result then
+        return result
+      end
+      if redis.call('SET', KEYS[2], ARGV[1], 'NX', 'PX', ARGV[2]) then
+        return ''
+      end
+      return nil
+      """, String.class);
+
+  // KEYS[1] = result key, KEYS[2] = lease key
+  // ARGV[1] = lease owner, ARGV[2] = result ttl (millis), ARGV[3] = result (absent when the refresh failed)
+  // The lease is only dropped if it is still ours, it may have run out and moved on.
+  static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+      if ARGV[3] then
+        redis.call('SET', KEYS[1], ARGV[3], 'PX', ARGV[2])
+      end
+      if redis.call('GET', KEYS[2]) == ARGV[1] then
+        return redis.call('DEL', KEYS[2])
+      end
+      return 0
+      """, Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final boolean enabled;
+  private final long leaseMillis;
+  private final long graceMillis;
+  private final long waitMillis;
+  private final long pollMillis;
+  private final long retryAfterSeconds;
+  private final Counter localJoins;
+  private final Counter remoteJoins;
+
+  // token hash -> response of the refresh running on this node
+  private final Map<String, CompletableFuture<AuthResponse>> inFlight = new ConcurrentHashMap<>();
+
+  public RefreshCoalescingService(StringRedisTemplate redisTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${auth.refresh.coalescing.enabled:true}") boolean enabled,
+                                  @Value("${auth.refresh.coalescing.lease-millis:5000}") long leaseMillis,
+                                  @Value("${auth.refresh.coalescing.grace-millis:10000}") long graceMillis,
+                                  @Value("${auth.refresh.coalescing.wait-millis:3000}") long waitMillis,
+                                  @Value("${auth.refresh.coalescing.poll-millis:20}") long pollMillis,
+                                  @Value("${auth.refresh.coalescing.retry-after-seconds:1}")
+                                  long retryAfterSeconds) {
+    this.redisTemplate = redisTemplate;
+    this.enabled = enabled;
+    this.leaseMillis = leaseMillis;
+    this.graceMillis = graceMillis;
+    this.waitMillis = waitMillis;
+    this.pollMillis = pollMillis;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.localJoins = Counter.builder("auth.refresh.coalesced").tag("source", "local")
+        .register(meterRegistry);
+    this.remoteJoins = Counter.builder("auth.refresh.coalesced").tag("source", "remote")
+        .register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  // Runs refresh once per token, every concurrent caller with the same token gets its response
+  // (or its exception). refresh has to commit before it returns, call it through the service proxy.
+  public AuthResponse coalesce(String refreshToken, Supplier<AuthResponse> refresh) {
+    if (!enabled || refreshToken == null) {
+      return refresh.get();
+    }
+
+    String tokenHash = RefreshTokenHasher.hashKey(refreshToken);
+    CompletableFuture<AuthResponse> mine = new CompletableFuture<>();
+    CompletableFuture<AuthResponse> running = inFlight.putIfAbsent(tokenHash, mine);
+    if (running != null) {
+      localJoins.increment();
+      return await(running);
+    }
+
+    try {
+      AuthResponse response = refreshOnce(refreshToken, tokenHash, refresh);
+      mine.complete(response);
+      return response;
+    } catch (RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(tokenHash, mine);
+    }
+  }
+
+  private AuthResponse refreshOnce(String refreshToken, String tokenHash, Supplier<AuthResponse> refresh) {
+    List<String> keys = List.of(RESULT_KEY_PREFIX + tokenHash, LEASE_KEY_PREFIX + tokenHash);
+    String owner = UUID.randomUUID().toString();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+
+    while (true) {
+      String acquired;
+      try {
+        acquired = redisTemplate.execute(ACQUIRE_SCRIPT, keys, owner, String.valueOf(leaseMillis));
+      } catch (DataAccessException e) {
+        // coalescing is best effort, without redis every caller refreshes on its own
+        log.warn("Could not take refresh lease, refreshing without coalescing", e);
+        return refresh.get();
+      }
+
+      if (LEASE_ACQUIRED.equals(acquired)) {
+        return refreshUnderLease(refreshToken, keys, owner, refresh);
+      }
+      if (acquired != null) {
+        remoteJoins.increment();
+        return decrypt(refreshToken, acquired);
+      }
+      if (System.nanoTime() > deadline) {
+        throw new ServiceOverloadedException("Refresh of this token is already in progress",
+            retryAfterSeconds);
+      }
+      sleep(pollMillis);
+    }
+  }
+
+  private AuthResponse refreshUnderLease(String refreshToken, List<String> keys, String owner,
+                                         Supplier<AuthResponse> refresh) {
+    AuthResponse response = null;
+    try {
+      response = refresh.get();
+      return response;
+    } finally {
+      // on failure only the lease goes, the next waiter takes it and gets its own answer
+      try {
+        if (response != null) {
+          redisTemplate.execute(RELEASE_SCRIPT, keys, owner, String.valueOf(graceMillis),
+              encrypt(refreshToken, response));
+        } else {
+          redisTemplate.execute(RELEASE_SCRIPT, keys, owner, String.valueOf(graceMillis));
+        }
+      } catch (DataAccessException e) {
+        log.warn("Could not publish coalesced refresh, lease runs out in {} ms", leaseMillis, e);
+      }
+    }
+  }
+
+  private AuthResponse await(CompletableFuture<AuthResponse> running) {
+    try {
+      return running.get(waitMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new ServiceOverloadedException("Refresh of this token is already in progress",
+          retryAfterSeconds);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for refresh", e);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for refresh", e);
+    }
+  }
+
+  // base64(iv | AES-GCM(accessToken \n refreshToken \n expiresIn))
+  static String encrypt(String refreshToken, AuthResponse response) {
+    byte[] plain = String.join("\n", response.getAccessToken(), response.getRefreshToken(),
+        String.valueOf(response.getExpiresIn())).getBytes(StandardCharsets.UTF_8);
+    byte[] iv = new byte[IV_LENGTH];
+    SECURE_RANDOM.nextBytes(iv);
+    try {
+      Cipher cipher = Cipher.getInstance(CIPHER);
+      cipher.init(Cipher.ENCRYPT_MODE, resultKey(refreshToken), new GCMParameterSpec(TAG_BITS, iv));
+      byte[] sealed = cipher.doFinal(plain);
+      return Base64.getEncoder().encodeToString(
+          ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array());
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not encrypt coalesced refresh", e);
+    }
+  }
+
+  static AuthResponse decrypt(String refreshToken, String published) {
+    byte[] sealed = Base64.getDecoder().decode(published);
+    try {
+      Cipher cipher = Cipher.getInstance(CIPHER);
+      cipher.init(Cipher.DECRYPT_MODE, resultKey(refreshToken),
+          new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+      String[] parts = new String(cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH),
+          StandardCharsets.UTF_8).split("\n");
+      return new AuthResponse(parts[0], parts[1], Long.parseLong(parts[2]));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not decrypt coalesced refresh", e);
+    }
+  }
+
+  // Different input than RefreshTokenHasher, the lookup key never opens the result
+  private static SecretKeySpec resultKey(String refreshToken) {
+    try {
+      byte[] key = MessageDigest.getInstance("SHA-256")
+          .digest(("refresh-result|" + refreshToken).getBytes(StandardCharsets.US_ASCII));
+      return new SecretKeySpec(key, "AES");
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
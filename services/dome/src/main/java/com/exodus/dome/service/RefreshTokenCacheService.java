@@ -1,53 +1,336 @@
 package com.exodus.dome.service;
 
-import java.time.Duration;
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.RefreshTokenRotationStatus;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Pattern;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RefreshTokenCacheService {
+  private static final String VALUE_SEPARATOR = "|";
+  // Keys, scripts and value format below are shared with ReactiveRefreshTokenCacheService
+  static final String TOKEN_KEY_PREFIX = "refresh:token:";
+  static final String USER_KEY_PREFIX = "refresh:user:";
+  static final String FAMILY_KEY_PREFIX = "refresh:family:";
+
+  // Left on the old key after a rotation as rotated|<userId>|<familyId>, so replaying the
+  // old token is rejected even before the async DB revoke lands, and its family is known
+  static final String ROTATED_MARKER = "rotated";
+
+  //**
+  // Next to refresh:token:<token> every user has refresh:user:<userId>, a sorted set of
+  // their live token hashes scored by expiry (epoch millis). All scripts below keep both in step.
+  // And every token family has refresh:family:<familyId> holding the hash of its one live
+  // token, so a reused old generation kills the family with a single key lookup.
+  // The user and family keys are derived inside the scripts from the cached value, fine on
+  // a single redis; on a cluster the keys would need a common hash tag.
+  //**
+
+  // KEYS[1] = token key, KEYS[2] = user index key, KEYS[3] = family key (optional)
+  // ARGV[1] = value, ARGV[2] = ttl, ARGV[3] = token hash, ARGV[4] = expires at, ARGV[5] = now,
+  // ARGV[6] = max sessions (0 = no cap), ARGV[7] = token key prefix
+  // Returns the token hashes evicted by the cap, oldest first.
+  @SuppressWarnings("rawtypes")
+  static final RedisScript<List> STORE_SCRIPT = new DefaultRedisScript<>("""
+      redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])
+      if KEYS[3] then
+        redis.call('SET', KEYS[3], ARGV[3], 'EX', ARGV[2])
+      end
+      redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[5])
+      redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+      local evicted = {}
+      local excess = redis.call('ZCARD', KEYS[2]) - tonumber(ARGV[6])
+      if tonumber(ARGV[6]) > 0 and excess > 0 then
+        evicted = redis.call('ZRANGE', KEYS[2], 0, excess - 1)
+        redis.call('ZREMRANGEBYRANK', KEYS[2], 0, excess - 1)
+        for _, token in ipairs(evicted) do
+          redis.call('UNLINK', ARGV[7] .. token)
+        end
+      end
+      local last = redis.call('ZRANGE', KEYS[2], -1, -1, 'WITHSCORES')
+      redis.call('PEXPIREAT', KEYS[2], last[2])
+      return evicted
+      """, List.class);
+
+  // KEYS[1] = token key
+  // ARGV[1] = token hash, ARGV[2] = user key prefix, ARGV[3] = rotated marker
+  static final RedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>("""
+      local value = redis.call('GET', KEYS[1])
+      if value and string.sub(value, 1, #ARGV[3]) ~= ARGV[3] then
+        redis.call('ZREM', ARGV[2] .. string.match(value, '^[^|]+'), ARGV[1])
+      end
+      return redis.call('DEL', KEYS[1])
+      """, Long.class);
+
+  // KEYS[1] = old token key, KEYS[2] = new token key
+  // ARGV[1] = new token ttl, ARGV[2] = rotated marker, ARGV[3] = marker ttl,
+  // ARGV[4] = user key prefix, ARGV[5] = old token hash, ARGV[6] = new token hash, ARGV[7] = new expires at,
+  // ARGV[8] = family key prefix, ARGV[9] = token key prefix
+  // Returns the new value (userId|role|familyId|generation), the marker if the old token was
+  // already rotated, or nil. On a marker the family's live token is dropped right here.
+  // Values without a family are returned untouched, the caller has to go through DB for them.
+  static final RedisScript<String> ROTATE_SCRIPT = new DefaultRedisScript<>("""
+      local value = redis.call('GET', KEYS[1])
+      if not value then
+        return nil
+      end
+      if string.sub(value, 1, #ARGV[2]) == ARGV[2] then
+        local userId, family = string.match(value, '^[^|]+|([^|]+)|([^|]+)$')
+        if family then
+          local live = redis.call('GET', ARGV[8] .. family)
+          if live then
+            redis.call('UNLINK', ARGV[9] .. live)
+            redis.call('ZREM', ARGV[4] .. userId, live)
+          end
+          redis.call('UNLINK', ARGV[8] .. family)
+        end
+        return value
+      end
+      local userId, role, family, generation = string.match(value, '^([^|]+)|([^|]+)|([^|]+)|(%d+)$')
+      if not family then
+        return value
+      end
+      local newValue = userId .. '|' .. role .. '|' .. family .. '|' .. (tonumber(generation) + 1)
+      redis.call('SET', KEYS[1], ARGV[2] .. '|' .. userId .. '|' .. family, 'EX', ARGV[3])
+      redis.call('SET', KEYS[2], newValue, 'EX', ARGV[1])
+      redis.call('SET', ARGV[8] .. family, ARGV[6], 'EX', ARGV[1])
+      local userKey = ARGV[4] .. userId
+      redis.call('ZREM', userKey, ARGV[5])
+      redis.call('ZADD', userKey, ARGV[7], ARGV[6])
+      redis.call('PEXPIREAT', userKey, ARGV[7])
+      return newValue
+      """, String.class);
+
+  // KEYS[1] = family key
+  // ARGV[1] = user index key, ARGV[2] = token key prefix, ARGV[3..] = hashes DB still had live
+  static final RedisScript<Long> REVOKE_FAMILY_SCRIPT = new DefaultRedisScript<>("""
+      local live = redis.call('GET', KEYS[1])
+      if live then
+        redis.call('UNLINK', ARGV[2] .. live)
+        redis.call('ZREM', ARGV[1], live)
+      end
+      for i = 3, #ARGV do
+        redis.call('UNLINK', ARGV[2] .. ARGV[i])
+        redis.call('ZREM', ARGV[1], ARGV[i])
+      end
+      return redis.call('UNLINK', KEYS[1])
+      """, Long.class);
+
+  // KEYS[1] = user index key
+  // ARGV[1] = token key prefix, ARGV[2..] = extra token hashes to drop (known to DB but not indexed)
+  // Returns how many indexed sessions were dropped.
+  private static final RedisScript<Long> REVOKE_ALL_SCRIPT = new DefaultRedisScript<>("""
+      local tokens = redis.call('ZRANGE', KEYS[1], 0, -1)
+      for _, token in ipairs(tokens) do
+        redis.call('UNLINK', ARGV[1] .. token)
+      end
+      for i = 2, #ARGV do
+        redis.call('UNLINK', ARGV[1] .. ARGV[i])
+      end
+      redis.call('UNLINK', KEYS[1])
+      return #tokens
+      """, Long.class);
+
   private final StringRedisTemplate redisTemplate;
+  private final long rotatedMarkerTtlSeconds;
+  private final int maxSessionsPerUser;
+  // auth.refresh.cache{operation}, one round trip each, failures included
+  private final Timer storeTimer;
+  private final Timer getTimer;
+  private final Timer rotateTimer;
+  private final Timer deleteTimer;
+  private final Timer sessionsTimer;
+  private final Timer revokeFamilyTimer;
+  private final Timer revokeAllTimer;
 
   @Autowired
-  public RefreshTokenCacheService(StringRedisTemplate redisTemplate) {
+  public RefreshTokenCacheService(StringRedisTemplate redisTemplate,
+                                  @Value("${auth.refresh.rotated-marker-ttl-seconds:300}")
+                                  long rotatedMarkerTtlSeconds,
+                                  @Value("${auth.refresh.max-sessions-per-user:0}")
+                                  int maxSessionsPerUser,
+                                  MeterRegistry meterRegistry) {
     this.redisTemplate = redisTemplate;
+    this.rotatedMarkerTtlSeconds = rotatedMarkerTtlSeconds;
+    this.maxSessionsPerUser = maxSessionsPerUser;
+    this.storeTimer = timer("store", meterRegistry);
+    this.getTimer = timer("get", meterRegistry);
+    this.rotateTimer = timer("rotate", meterRegistry);
+    this.deleteTimer = timer("delete", meterRegistry);
+    this.sessionsTimer = timer("sessions", meterRegistry);
+    this.revokeFamilyTimer = timer("revoke_family", meterRegistry);
+    this.revokeAllTimer = timer("revoke_all", meterRegistry);
+  }
+
+  private static Timer timer(String operation, MeterRegistry meterRegistry) {
+    return Timer.builder("auth.refresh.cache").tag("operation", operation).register(meterRegistry);
   }
 
-  // Our key value pair will be looks like: refresh:token:<tokenValue> → userId
-  private String buildKey(String token) {
-    return "refresh:token:" + token;
+  // Our key value pair will be looks like: refresh:token:<tokenHash> → userId|role
+  // The hash is RefreshTokenHasher's 43 chars instead of the 86 chars token, and redis
+  // never sees a usable token.
+  static String buildKey(String tokenHash) {
+    return TOKEN_KEY_PREFIX + tokenHash;
+  }
+
+  // refresh:user:<userId> → sorted set of token hashes, score = expiry
+  static String buildUserKey(UUID userId) {
+    return USER_KEY_PREFIX + userId;
+  }
+
+  // refresh:family:<familyId> → hash of the family's live token
+  static String buildFamilyKey(UUID familyId) {
+    return FAMILY_KEY_PREFIX + familyId;
   }
 
   // TTL is 14 days
-  public void storeToken(String token, UUID userId, long ttlInSeconds) {
-    String key = buildKey(token);
-    redisTemplate.opsForValue().set(key, userId.toString(), Duration.ofSeconds(ttlInSeconds));
+  public List<String> storeToken(String token, UUID userId, long ttlInSeconds) {
+    return store(RefreshTokenHasher.hashKey(token), List.of(buildKey(RefreshTokenHasher.hashKey(token)),
+        buildUserKey(userId)), userId.toString(), ttlInSeconds);
+  }
+
+  // Same as above, but keeps role, family and generation next to the user id so a rotation
+  // can issue the access token without loading the user, and becomes the family's live token.
+  // Returns hashes of the user's oldest tokens dropped by the max-sessions cap,
+  // they still need a DB revoke.
+  public List<String> storeToken(String token, UUID userId, UserRole role, UUID familyId,
+                                 int generation, long ttlInSeconds) {
+    String tokenHash = RefreshTokenHasher.hashKey(token);
+    return store(tokenHash, List.of(buildKey(tokenHash), buildUserKey(userId), buildFamilyKey(familyId)),
+        buildValue(userId, role, familyId, generation), ttlInSeconds);
+  }
+
+  static String buildValue(UUID userId, UserRole role, UUID familyId, int generation) {
+    return String.join(VALUE_SEPARATOR, userId.toString(), role.name(), familyId.toString(),
+        String.valueOf(generation));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> store(String tokenHash, List<String> keys, String value, long ttlInSeconds) {
+    long now = System.currentTimeMillis();
+    List<String> evicted = storeTimer.record(() -> redisTemplate.execute(STORE_SCRIPT, keys,
+        value, String.valueOf(ttlInSeconds), tokenHash, String.valueOf(now + ttlInSeconds * 1000),
+        String.valueOf(now), String.valueOf(maxSessionsPerUser), TOKEN_KEY_PREFIX));
+    return evicted != null ? evicted : List.of();
+  }
+
+  // Live sessions of the user, soonest to expire first. No DB involved.
+  public List<RefreshSession> getActiveSessions(UUID userId) {
+    Set<ZSetOperations.TypedTuple<String>> sessions = sessionsTimer.record(() ->
+        redisTemplate.opsForZSet().rangeByScoreWithScores(buildUserKey(userId), System.currentTimeMillis(),
+            Double.POSITIVE_INFINITY));
+    if (sessions == null) {
+      return List.of();
+    }
+    return sessions.stream()
+        .map(session -> new RefreshSession(session.getValue(),
+            Instant.ofEpochMilli(session.getScore().longValue())))
+        .toList();
   }
 
   // Returns Optional.empty() if token not found or invalid UUID
   // Returns userId if token being found
   public Optional<UUID> getUserIdForToken(String token) {
-    String key = buildKey(token);
-    String value = redisTemplate.opsForValue().get(key);
+    String key = buildKey(RefreshTokenHasher.hashKey(token));
+    String value = getTimer.record(() -> redisTemplate.opsForValue().get(key));
 
     if (value == null) {
       return Optional.empty();
     }
 
+    int separator = value.indexOf(VALUE_SEPARATOR);
     try {
-      return Optional.of(UUID.fromString(value));
+      return Optional.of(UUID.fromString(separator < 0 ? value : value.substring(0, separator)));
     } catch (IllegalArgumentException e) {
       return Optional.empty();
     }
   }
 
+  // Validates, invalidates and re-issues in one round trip. The new token gets the
+  // same user id, role and family as the old one and the next generation.
+  // A token that was already rotated away kills its family inside the same script.
+  public RefreshTokenRotation rotateToken(String oldToken, String newToken, long ttlInSeconds) {
+    String oldHash = RefreshTokenHasher.hashKey(oldToken);
+    String newHash = RefreshTokenHasher.hashKey(newToken);
+    String value = rotateTimer.record(() -> redisTemplate.execute(ROTATE_SCRIPT,
+        List.of(buildKey(oldHash), buildKey(newHash)),
+        String.valueOf(ttlInSeconds), ROTATED_MARKER, String.valueOf(rotatedMarkerTtlSeconds),
+        USER_KEY_PREFIX, oldHash, newHash,
+        String.valueOf(System.currentTimeMillis() + ttlInSeconds * 1000),
+        FAMILY_KEY_PREFIX, TOKEN_KEY_PREFIX));
+
+    if (value == null) {
+      return RefreshTokenRotation.notFound();
+    }
+
+    try {
+      return parseRotation(value);
+    } catch (IllegalArgumentException e) {
+      redisTemplate.delete(buildKey(newHash));
+      return RefreshTokenRotation.notFound();
+    }
+  }
+
+  // What ROTATE_SCRIPT returned, IllegalArgumentException if the cached value was corrupt
+  static RefreshTokenRotation parseRotation(String value) {
+    String[] parts = value.split(Pattern.quote(VALUE_SEPARATOR));
+    if (ROTATED_MARKER.equals(parts[0])) {
+      // plain "rotated" was written before families, nothing to kill
+      return parts.length == 3
+          ? RefreshTokenRotation.alreadyRotated(UUID.fromString(parts[1]), UUID.fromString(parts[2]))
+          : RefreshTokenRotation.alreadyRotated(null, null);
+    }
+    if (parts.length != 4) {
+      return RefreshTokenRotation.notFound();
+    }
+    return new RefreshTokenRotation(RefreshTokenRotationStatus.ROTATED, UUID.fromString(parts[0]),
+        UserRole.valueOf(parts[1]), UUID.fromString(parts[2]), Integer.parseInt(parts[3]));
+  }
+
   // If token exists, gets user in getUserIdForToken function,
   // then call it to delete token from redis
   public void deleteToken(String token) {
-    String key = buildKey(token);
-    redisTemplate.delete(key);
+    String tokenHash = RefreshTokenHasher.hashKey(token);
+    deleteTimer.record(() -> redisTemplate.execute(DELETE_SCRIPT, List.of(buildKey(tokenHash)),
+        tokenHash, USER_KEY_PREFIX, ROTATED_MARKER));
+  }
+
+  // Drops the family's live token plus the given hashes DB still had live, keyed by family,
+  // no scan over the user's sessions
+  public void revokeFamily(UUID familyId, UUID userId, Collection<String> knownTokenHashes) {
+    List<String> args = new ArrayList<>(knownTokenHashes.size() + 2);
+    args.add(buildUserKey(userId));
+    args.add(TOKEN_KEY_PREFIX);
+    args.addAll(knownTokenHashes);
+    revokeFamilyTimer.record(() -> redisTemplate.execute(REVOKE_FAMILY_SCRIPT,
+        List.of(buildFamilyKey(familyId)), args.toArray()));
+  }
+
+  // Drops every indexed session of the user plus the given token hashes in one script,
+  // keys are UNLINKed so redis frees the memory in the background
+  public void revokeAllSessions(UUID userId, Collection<String> knownTokenHashes) {
+    List<String> args = new ArrayList<>(knownTokenHashes.size() + 1);
+    args.add(TOKEN_KEY_PREFIX);
+    args.addAll(knownTokenHashes);
+    revokeAllTimer.record(() -> redisTemplate.execute(REVOKE_ALL_SCRIPT, List.of(buildUserKey(userId)),
+        args.toArray()));
   }
 }
@@ -0,0 +1,146 @@
+package com.exodus.dome.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Append-only local file for refresh token writes that are not in DB yet.
+// One line per state change of a token, the last line of a token wins on replay.
+// Lines carry the token hash only, a copied journal gives no usable tokens.
+// Not thread safe, RefreshTokenPersistenceService calls it under its own lock.
+public class RefreshTokenJournal {
+  private static final String SEPARATOR = ",";
+  private static final String NONE = "-";
+  private static final int FIELDS = 9;
+
+  private final Path path;
+  private final boolean fsync;
+  private FileChannel channel;
+
+  public RefreshTokenJournal(Path path, boolean fsync) {
+    this.path = path;
+    this.fsync = fsync;
+  }
+
+  public void append(RefreshTokenPersistenceService.PendingWrite write) {
+    try {
+      openIfNeeded();
+      channel.write(ByteBuffer.wrap(encode(write).getBytes(StandardCharsets.UTF_8)));
+      if (fsync) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not append to refresh token journal " + path, e);
+    }
+  }
+
+  // Replaces the whole journal with what is still pending, temp file + atomic move
+  // so a crash in the middle leaves either the old or the new journal
+  public void rewrite(Collection<RefreshTokenPersistenceService.PendingWrite> writes) {
+    try {
+      close();
+      if (writes.isEmpty()) {
+        Files.deleteIfExists(path);
+        return;
+      }
+
+      Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+      try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        StringBuilder content = new StringBuilder();
+        writes.forEach(write -> content.append(encode(write)));
+        tempChannel.write(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)));
+        tempChannel.force(true);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not rewrite refresh token journal " + path, e);
+    }
+  }
+
+  public List<RefreshTokenPersistenceService.PendingWrite> replay() {
+    if (!Files.exists(path)) {
+      return List.of();
+    }
+
+    try {
+      Map<String, RefreshTokenPersistenceService.PendingWrite> latest = new LinkedHashMap<>();
+      for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+        RefreshTokenPersistenceService.PendingWrite write = decode(line);
+        // a torn last line after a crash is simply skipped
+        if (write != null) {
+          latest.put(write.tokenHash(), write);
+        }
+      }
+      return new ArrayList<>(latest.values());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read refresh token journal " + path, e);
+    }
+  }
+
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  private void openIfNeeded() throws IOException {
+    if (channel == null) {
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+  }
+
+  private String encode(RefreshTokenPersistenceService.PendingWrite write) {
+    return String.join(SEPARATOR,
+        write.insert() ? "I" : "R",
+        write.tokenHash(),
+        write.id() != null ? write.id().toString() : NONE,
+        write.userId() != null ? write.userId().toString() : NONE,
+        write.familyId() != null ? write.familyId().toString() : NONE,
+        String.valueOf(write.generation()),
+        write.expiresAt() != null ? String.valueOf(write.expiresAt().toEpochMilli()) : NONE,
+        write.createdAt() != null ? String.valueOf(write.createdAt().toEpochMilli()) : NONE,
+        write.revokedAt() != null ? String.valueOf(write.revokedAt().toEpochMilli()) : NONE)
+        + "\n";
+  }
+
+  private RefreshTokenPersistenceService.PendingWrite decode(String line) {
+    String[] parts = line.split(SEPARATOR);
+    if (parts.length != FIELDS) {
+      return null;
+    }
+
+    try {
+      return new RefreshTokenPersistenceService.PendingWrite(
+          "I".equals(parts[0]),
+          parts[1],
+          NONE.equals(parts[2]) ? null : UUID.fromString(parts[2]),
+          NONE.equals(parts[3]) ? null : UUID.fromString(parts[3]),
+          NONE.equals(parts[4]) ? null : UUID.fromString(parts[4]),
+          Integer.parseInt(parts[5]),
+          NONE.equals(parts[6]) ? null : Instant.ofEpochMilli(Long.parseLong(parts[6])),
+          NONE.equals(parts[7]) ? null : Instant.ofEpochMilli(Long.parseLong(parts[7])),
+          NONE.equals(parts[8]) ? null : Instant.ofEpochMilli(Long.parseLong(parts[8])));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
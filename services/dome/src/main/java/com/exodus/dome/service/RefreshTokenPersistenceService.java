@@ -0,0 +1,384 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.RefreshToken;
+import com.exodus.dome.security.RefreshTokenHasher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//**
+// Write-behind stage for refresh_tokens. Inserts and revocations are journaled locally,
+// coalesced per token and flushed in JDBC batches by one background thread.
+// Cache-authoritative refresh always goes through here, login/logout/DB refresh only
+// when auth.refresh.write-behind.enabled is true.
+//**
+@Service
+public class RefreshTokenPersistenceService {
+  private static final Logger log = LoggerFactory.getLogger(RefreshTokenPersistenceService.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean writeBehindEnabled;
+  private final int batchSize;
+  private final int maxPending;
+  private final long flushIntervalMillis;
+  private final RefreshTokenJournal journal;
+  private final String insertSql;
+  private final String revokeSql;
+  private final ScheduledExecutorService flusher;
+
+  // One pending write per token hash, in arrival order. Guarded by lock.
+  private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+  // Not synchronized: the journal fsyncs under it, which would pin a virtual thread's carrier
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public RefreshTokenPersistenceService(JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        @Value("${auth.refresh.write-behind.enabled:false}")
+                                        boolean writeBehindEnabled,
+                                        @Value("${auth.refresh.write-behind.batch-size:500}")
+                                        int batchSize,
+                                        @Value("${auth.refresh.write-behind.max-pending:10000}")
+                                        int maxPending,
+                                        @Value("${auth.refresh.write-behind.flush-interval-millis:50}")
+                                        long flushIntervalMillis,
+                                        @Value("${auth.refresh.write-behind.journal-path:}")
+                                        String journalPath,
+                                        @Value("${auth.refresh.write-behind.journal-fsync:true}")
+                                        boolean journalFsync,
+                                        @Value("${spring.jpa.properties.hibernate.default_schema:auth}")
+                                        String schema) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.writeBehindEnabled = writeBehindEnabled;
+    this.batchSize = batchSize;
+    this.maxPending = maxPending;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.journal = journalPath.isBlank() ? null : new RefreshTokenJournal(Path.of(journalPath), journalFsync);
+    // ON CONFLICT makes journal replay idempotent
+    this.insertSql = "INSERT INTO " + schema + ".refresh_tokens "
+        + "(id, user_id, token_hash, family_id, generation, expires_at, created_at, revoked_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT DO NOTHING";
+    this.revokeSql = "UPDATE " + schema + ".refresh_tokens SET revoked_at = ? "
+        + "WHERE token_hash = ? AND revoked_at IS NULL";
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "refresh-token-write-behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  // Whatever survived the last crash goes back into the queue before anything new
+  @PostConstruct
+  public void start() {
+    if (journal != null) {
+      List<PendingWrite> replayed = journal.replay();
+      lock.lock();
+      try {
+        replayed.forEach(write -> pending.put(write.tokenHash(), write));
+      } finally {
+        lock.unlock();
+      }
+      if (!replayed.isEmpty()) {
+        log.info("Replaying {} refresh token writes from journal", replayed.size());
+      }
+    }
+    flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public boolean isWriteBehindEnabled() {
+    return writeBehindEnabled;
+  }
+
+  public void enqueueInsert(RefreshToken refreshToken) {
+    enqueue(new PendingWrite(true, refreshToken.getTokenHashKey(), refreshToken.getId(),
+        refreshToken.getUser().getId(), refreshToken.getFamilyId(), refreshToken.getGeneration(),
+        refreshToken.getExpiresAt(), refreshToken.getCreatedAt(), refreshToken.getRevokedAt()));
+  }
+
+  public void enqueueRevoke(String tokenHash, Instant revokedAt) {
+    enqueue(PendingWrite.revoke(tokenHash, revokedAt));
+  }
+
+  public void persistRotation(String oldTokenHash, String newTokenHash, UUID userId, UUID familyId,
+                              int generation, Instant issuedAt, Instant expiresAt) {
+    enqueue(PendingWrite.revoke(oldTokenHash, issuedAt));
+    enqueue(new PendingWrite(true, newTokenHash, UUID.randomUUID(), userId, familyId, generation,
+        expiresAt, issuedAt, null));
+  }
+
+  // Revokes queued inserts of the user that did not reach DB yet, so a set-based UPDATE
+  // there does not miss them. Returns their token hashes.
+  public List<String> revokePendingForUser(UUID userId, Instant revokedAt) {
+    return revokePending(queued -> userId.equals(queued.userId()), revokedAt);
+  }
+
+  // Same for one token family, on reuse detection
+  public List<String> revokePendingForFamily(UUID familyId, Instant revokedAt) {
+    return revokePending(queued -> familyId.equals(queued.familyId()), revokedAt);
+  }
+
+  private List<String> revokePending(Predicate<PendingWrite> matches, Instant revokedAt) {
+    List<String> revoked = new ArrayList<>();
+    lock.lock();
+    try {
+      for (PendingWrite queued : List.copyOf(pending.values())) {
+        if (!queued.insert() || !matches.test(queued) || queued.revokedAt() != null) {
+          continue;
+        }
+        PendingWrite merged = PendingWrite.revoke(queued.tokenHash(), revokedAt).mergeInto(queued);
+        if (journal != null) {
+          journal.append(merged);
+        }
+        pending.put(merged.tokenHash(), merged);
+        revoked.add(merged.tokenHash());
+      }
+    } finally {
+      lock.unlock();
+    }
+    return revoked;
+  }
+
+  // Whether flushPending would have anything to write, cheap enough for an event loop
+  public boolean isPending(String tokenHash) {
+    lock.lock();
+    try {
+      return pending.containsKey(tokenHash);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int pendingCount() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Returns once the write is journaled (if a journal is configured), not when it is in DB
+  private void enqueue(PendingWrite write) {
+    boolean queueFull;
+    boolean flushNow = false;
+    lock.lock();
+    try {
+      PendingWrite queued = pending.get(write.tokenHash());
+      queueFull = queued == null && pending.size() >= maxPending;
+      if (!queueFull) {
+        PendingWrite merged = write.mergeInto(queued);
+        if (journal != null) {
+          journal.append(merged);
+        }
+        pending.put(merged.tokenHash(), merged);
+        flushNow = pending.size() >= batchSize;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (queueFull) {
+      // new token while the queue is full: write it ourselves, slower but nothing is lost
+      writeBatch(List.of(write));
+    } else if (flushNow) {
+      flusher.execute(this::flushSafely);
+    }
+  }
+
+  // Writes up to one batch. Entries are only dropped from the queue after the commit,
+  // and only if nothing new arrived for the same token in the meantime.
+  public void flush() {
+    List<PendingWrite> batch;
+    lock.lock();
+    try {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+      for (PendingWrite write : pending.values()) {
+        if (batch.size() == batchSize) {
+          break;
+        }
+        batch.add(write);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    writeBatch(batch);
+
+    lock.lock();
+    try {
+      settle(batch);
+      if (journal != null) {
+        journal.rewrite(pending.values());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  //**
+  // Writes what is queued for this one token right away, so a DB lookup that follows sees it
+  // (a token issued a few ms ago is refreshed or logged out). A no-op when nothing is queued.
+  // The journal is not rewritten, replaying an entry that already reached DB changes nothing.
+  // Inside a transaction the write joins it and the entry leaves the queue only once that has
+  // committed: if it rolls back, the insert is still queued and the next flush writes it.
+  //**
+  public void flushPending(String tokenHash) {
+    PendingWrite write;
+    lock.lock();
+    try {
+      write = pending.get(tokenHash);
+    } finally {
+      lock.unlock();
+    }
+    if (write == null) {
+      return;
+    }
+
+    writeBatch(List.of(write));
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          settleOne(write);
+        }
+      });
+    } else {
+      settleOne(write);
+    }
+  }
+
+  private void settleOne(PendingWrite write) {
+    lock.lock();
+    try {
+      settle(List.of(write));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Drops written entries, unless something new arrived for the same token meanwhile. Under lock.
+  private void settle(List<PendingWrite> written) {
+    for (PendingWrite write : written) {
+      PendingWrite current = pending.get(write.tokenHash());
+      if (current == write) {
+        pending.remove(write.tokenHash());
+      } else if (current != null && write.insert()) {
+        // row exists now, only the later revoke is left to do
+        pending.put(current.tokenHash(), current.withoutInsert());
+      }
+    }
+  }
+
+  private void flushSafely() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      // stays in the queue and journal, next run retries
+      log.error("Could not flush refresh token writes, {} pending", pendingCount(), e);
+    }
+  }
+
+  private void writeBatch(List<PendingWrite> batch) {
+    List<Object[]> inserts = new ArrayList<>();
+    List<Object[]> revokes = new ArrayList<>();
+    for (PendingWrite write : batch) {
+      if (write.insert()) {
+        inserts.add(new Object[] { write.id(), write.userId(), RefreshTokenHasher.fromKey(write.tokenHash()),
+            write.familyId(), write.generation(), toTimestamp(write.expiresAt()),
+            toTimestamp(write.createdAt()), toTimestamp(write.revokedAt()) });
+      } else {
+        revokes.add(new Object[] { toTimestamp(write.revokedAt()),
+            RefreshTokenHasher.fromKey(write.tokenHash()) });
+      }
+    }
+
+    transactionTemplate.executeWithoutResult(status -> {
+      if (!inserts.isEmpty()) {
+        jdbcTemplate.batchUpdate(insertSql, inserts);
+      }
+      if (!revokes.isEmpty()) {
+        jdbcTemplate.batchUpdate(revokeSql, revokes);
+      }
+    });
+  }
+
+  private static OffsetDateTime toTimestamp(Instant instant) {
+    return instant != null ? OffsetDateTime.ofInstant(instant, ZoneOffset.UTC) : null;
+  }
+
+  // Drain what is left before the context goes down
+  @PreDestroy
+  public void shutdown() throws Exception {
+    flusher.shutdown();
+    flusher.awaitTermination(10, TimeUnit.SECONDS);
+    try {
+      while (pendingCount() > 0) {
+        flush();
+      }
+    } catch (RuntimeException e) {
+      log.warn("{} refresh token writes left in journal at shutdown", pendingCount(), e);
+    }
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  // tokenHash is RefreshTokenHasher's text form of the digest, never the token itself
+  public record PendingWrite(boolean insert, String tokenHash, UUID id, UUID userId, UUID familyId,
+                             int generation, Instant expiresAt, Instant createdAt, Instant revokedAt) {
+
+    static PendingWrite revoke(String tokenHash, Instant revokedAt) {
+      return new PendingWrite(false, tokenHash, null, null, null, 0, null, null, revokedAt);
+    }
+
+    // Folds this write into what is already queued for the same token
+    PendingWrite mergeInto(PendingWrite queued) {
+      if (queued == null) {
+        return this;
+      }
+      if (queued.insert() && !insert) {
+        // revoke of a row that is not even inserted yet: insert it revoked
+        Instant revoked = queued.revokedAt() != null ? queued.revokedAt() : revokedAt;
+        return new PendingWrite(true, tokenHash, queued.id(), queued.userId(), queued.familyId(),
+            queued.generation(), queued.expiresAt(), queued.createdAt(), revoked);
+      }
+      if (!queued.insert() && !insert) {
+        return queued; // first revoke wins, the UPDATE would skip later ones anyway
+      }
+      return this;
+    }
+
+    PendingWrite withoutInsert() {
+      return revoke(tokenHash, revokedAt);
+    }
+  }
+}
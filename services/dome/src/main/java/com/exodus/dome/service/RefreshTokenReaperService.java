@@ -0,0 +1,189 @@
+package com.exodus.dome.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//**
+// Deletes refresh_tokens rows that can never be used again: expired, or revoked for longer
+// than the retention (kept a while so a replayed token is still recognised as revoked).
+// Deletes go in small chunks, each in its own short transaction with a pause in between,
+// so the reaper never holds many row locks or floods WAL and replicas.
+// With the partitioned layout (db/refresh_tokens_partitioned.sql) it also creates upcoming
+// daily partitions and drops whole expired ones, which is far cheaper than row deletes.
+//**
+@Service
+public class RefreshTokenReaperService {
+  private static final Logger log = LoggerFactory.getLogger(RefreshTokenReaperService.class);
+  private static final String PARTITION_PREFIX = "refresh_tokens_p";
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long pauseMillis;
+  private final int maxBatchesPerRun;
+  private final long retentionSeconds;
+  private final boolean partitioned;
+  private final int partitionDaysAhead;
+  private final String schema;
+  private final String deleteSql;
+  private final Counter deletedRows;
+  private final Counter droppedPartitions;
+  private final Timer runTimer;
+
+  public RefreshTokenReaperService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${auth.refresh.reaper.enabled:false}") boolean enabled,
+                                   @Value("${auth.refresh.reaper.batch-size:1000}") int batchSize,
+                                   @Value("${auth.refresh.reaper.pause-millis:100}") long pauseMillis,
+                                   @Value("${auth.refresh.reaper.max-batches-per-run:1000}")
+                                   int maxBatchesPerRun,
+                                   @Value("${auth.refresh.reaper.retention-seconds:86400}")
+                                   long retentionSeconds,
+                                   @Value("${auth.refresh.reaper.partitioned:false}") boolean partitioned,
+                                   @Value("${auth.jwt.refresh-token-validity-seconds}")
+                                   long refreshTokenValiditySeconds,
+                                   @Value("${spring.jpa.properties.hibernate.default_schema:auth}")
+                                   String schema) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.pauseMillis = pauseMillis;
+    this.maxBatchesPerRun = maxBatchesPerRun;
+    this.retentionSeconds = retentionSeconds;
+    this.partitioned = partitioned;
+    // every token issued today must find its partition, plus a spare day
+    this.partitionDaysAhead = (int) Math.ceil(refreshTokenValiditySeconds / 86400.0) + 1;
+    this.schema = schema;
+    this.deleteSql = "DELETE FROM " + schema + ".refresh_tokens WHERE id IN ("
+        + "SELECT id FROM " + schema + ".refresh_tokens "
+        + "WHERE expires_at < ? OR revoked_at < ? LIMIT ?)";
+
+    this.deletedRows = Counter.builder("auth.refresh.reaper.deleted").register(meterRegistry);
+    this.droppedPartitions = Counter.builder("auth.refresh.reaper.partitions.dropped")
+        .register(meterRegistry);
+    this.runTimer = Timer.builder("auth.refresh.reaper.run").register(meterRegistry);
+  }
+
+  @Scheduled(initialDelayString = "${auth.refresh.reaper.initial-delay-millis:60000}",
+      fixedDelayString = "${auth.refresh.reaper.interval-millis:600000}")
+  public void scheduledRun() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      runTimer.record(() -> {
+        if (partitioned) {
+          maintainPartitions(LocalDate.now(ZoneOffset.UTC));
+        }
+        reap();
+      });
+    } catch (RuntimeException e) {
+      // next run picks up where this one stopped
+      log.error("Refresh token reaper failed", e);
+    }
+  }
+
+  // Returns how many rows were deleted. Stops early when a chunk comes back short
+  // (nothing left) or after maxBatchesPerRun chunks.
+  public int reap() {
+    OffsetDateTime cutoff = OffsetDateTime.now(ZoneOffset.UTC).minusSeconds(retentionSeconds);
+    int total = 0;
+    for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+      Integer deleted = transactionTemplate.execute(
+          status -> jdbcTemplate.update(deleteSql, cutoff, cutoff, batchSize));
+      int count = deleted != null ? deleted : 0;
+      total += count;
+      deletedRows.increment(count);
+      if (count < batchSize || !pause()) {
+        break;
+      }
+    }
+    if (total > 0) {
+      log.info("Reaped {} refresh tokens", total);
+    }
+    return total;
+  }
+
+  //**
+  // Creates partitions for the coming days and drops the ones whose whole range
+  // expired more than the retention ago.
+  // Every statement runs in a transaction of its own: connections come out of the pool with
+  // auto-commit off, DDL outside a transaction would be rolled back when they go back.
+  //**
+  public void maintainPartitions(LocalDate today) {
+    for (int day = 0; day <= partitionDaysAhead; day++) {
+      LocalDate from = today.plusDays(day);
+      String createSql = "CREATE TABLE IF NOT EXISTS " + partitionName(from)
+          + " PARTITION OF " + schema + ".refresh_tokens"
+          + " FOR VALUES FROM ('" + from + " 00:00:00+00') TO ('" + from.plusDays(1) + " 00:00:00+00')";
+      transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute(createSql));
+    }
+
+    LocalDate dropBefore = today.minusDays((long) Math.ceil(retentionSeconds / 86400.0));
+    List<String> partitions = jdbcTemplate.queryForList(
+        "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid "
+            + "JOIN pg_class p ON p.oid = i.inhparent "
+            + "JOIN pg_namespace n ON n.oid = p.relnamespace "
+            + "WHERE n.nspname = ? AND p.relname = 'refresh_tokens'",
+        String.class, schema);
+
+    for (String partition : partitions) {
+      LocalDate day = partitionDay(partition);
+      // rows of a partition expire before day + 1, so it can go once day + 1 <= dropBefore
+      if (day != null && day.isBefore(dropBefore)) {
+        String table = schema + "." + partition;
+        transactionTemplate.executeWithoutResult(status -> {
+          jdbcTemplate.execute("ALTER TABLE " + schema + ".refresh_tokens DETACH PARTITION " + table);
+          jdbcTemplate.execute("DROP TABLE " + table);
+        });
+        droppedPartitions.increment();
+        log.info("Dropped expired refresh token partition {}", table);
+      }
+    }
+  }
+
+  private String partitionName(LocalDate day) {
+    return schema + "." + PARTITION_PREFIX + PARTITION_SUFFIX.format(day);
+  }
+
+  private LocalDate partitionDay(String partition) {
+    if (!partition.startsWith(PARTITION_PREFIX)) {
+      return null; // default partition or something created by hand
+    }
+    try {
+      return LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private boolean pause() {
+    try {
+      Thread.sleep(pauseMillis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.exception.RefreshTokenExpiredException;
+import com.exodus.dome.exception.RefreshTokenRevokedException;
+import com.exodus.dome.security.RefreshTokenCodec;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+//**
+// Issues and rotates RefreshTokenCodec tokens. Nothing is stored per token: the only state
+// is one sorted set, refresh:revocations, holding a "not before" time (epoch millis) per
+// family (f:<familyId>) and per user (u:<userId>). A token issued before either is dead.
+// Rotation moves its family's "not before" to the new token, so the old one is single use.
+// The issue time plays the generation: presenting an older one than the family's newest
+// is reuse, and the script moves the family's "not before" past every token it ever had.
+// Every node keeps a copy of the set in memory, synced incrementally, so forged, expired and
+// known revoked tokens are rejected with zero I/O. The rotate script re-checks in redis,
+// a copy that is a few seconds behind never lets an old token through.
+// Entries are dropped once refresh-token-validity has passed, every token they could
+// reject has expired by then, so the set stays at roughly one entry per live session.
+//**
+@Service
+public class StatelessRefreshTokenService {
+  private static final Logger log = LoggerFactory.getLogger(StatelessRefreshTokenService.class);
+
+  private static final String REVOCATIONS_KEY = "refresh:revocations";
+  private static final String FAMILY_PREFIX = "f:";
+  private static final String USER_PREFIX = "u:";
+  // Entries are scored by the writer's clock, re-read this far back to cover skew between nodes
+  private static final long SYNC_OVERLAP_MILLIS = 5000;
+
+  // KEYS[1] = revocations
+  // ARGV[1] = family member, ARGV[2] = user member, ARGV[3] = old issued at, ARGV[4] = new issued at,
+  // ARGV[5] = now
+  // Returns 1 if the old token was still live and its family moved on to the new one,
+  // -1 if it was an old generation (family killed), 0 if revoked otherwise.
+  private static final RedisScript<Long> ROTATE_SCRIPT = new DefaultRedisScript<>("""
+      local family = redis.call('ZSCORE', KEYS[1], ARGV[1])
+      if family and tonumber(family) > tonumber(ARGV[3]) then
+        local dead = math.max(tonumber(family), tonumber(ARGV[5])) + 1
+        redis.call('ZADD', KEYS[1], string.format('%d', dead), ARGV[1])
+        return -1
+      end
+      local user = redis.call('ZSCORE', KEYS[1], ARGV[2])
+      if user and tonumber(user) > tonumber(ARGV[3]) then
+        return 0
+      end
+      redis.call('ZADD', KEYS[1], ARGV[4], ARGV[1])
+      return 1
+      """, Long.class);
+
+  // KEYS[1] = revocations
+  // ARGV[1] = member, ARGV[2] = not before
+  // Never moves a not-before back, a rotation that just happened stays in force.
+  private static final RedisScript<Long> REVOKE_SCRIPT = new DefaultRedisScript<>("""
+      local current = redis.call('ZSCORE', KEYS[1], ARGV[1])
+      if not current or tonumber(current) < tonumber(ARGV[2]) then
+        redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+      end
+      return 1
+      """, Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final boolean enabled;
+  private final long refreshTokenValidityMillis;
+  private final RefreshTokenCodec codec;
+
+  // member -> not before (epoch millis)
+  private final Map<String, Long> notBefore = new ConcurrentHashMap<>();
+  private volatile long lastSyncedScore = 0;
+
+  public StatelessRefreshTokenService(StringRedisTemplate redisTemplate,
+                                      @Value("${auth.refresh.stateless.enabled:false}") boolean enabled,
+                                      @Value("${auth.refresh.stateless.secret:}") String secret,
+                                      @Value("${auth.jwt.refresh-token-validity-seconds}")
+                                      long refreshTokenValiditySeconds) {
+    this.redisTemplate = redisTemplate;
+    this.enabled = enabled;
+    this.refreshTokenValidityMillis = refreshTokenValiditySeconds * 1000;
+    this.codec = new RefreshTokenCodec(secret.isBlank() ? randomSecret() : Base64.getDecoder().decode(secret));
+    if (enabled && secret.isBlank()) {
+      log.warn("No auth.refresh.stateless.secret configured, using an in-memory key (single instance only)");
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  // Starts a new family, nothing is written anywhere
+  public String issue(UUID userId, UserRole role) {
+    Instant now = Instant.now();
+    return codec.encode(new RefreshTokenClaims(userId, UUID.randomUUID(), role, now,
+        now.plusMillis(refreshTokenValidityMillis)));
+  }
+
+  // Format and MAC only, for logout where an expired token is not an error
+  public RefreshTokenClaims decode(String token) {
+    return codec.decode(token);
+  }
+
+  // Everything that can be decided in-process: MAC, expiry and revocations seen so far
+  public RefreshTokenClaims verify(String token) {
+    RefreshTokenClaims claims = decode(token);
+    if (claims.isExpired(Instant.now())) {
+      throw new RefreshTokenExpiredException("Refresh token is expired or revoked");
+    }
+    if (isRevoked(claims)) {
+      throw new RefreshTokenRevokedException("Refresh token is expired or revoked");
+    }
+    return claims;
+  }
+
+  // One redis round trip, atomically checks the old token is still the newest of its family
+  public String rotate(RefreshTokenClaims claims) {
+    Instant now = Instant.now();
+    // strictly after the old one at token (millisecond) precision, or the old token would
+    // pass its own family's not-before
+    Instant issuedAt = Instant.ofEpochMilli(
+        Math.max(now.toEpochMilli(), claims.getIssuedAt().toEpochMilli() + 1));
+    String familyMember = FAMILY_PREFIX + claims.getFamilyId();
+
+    Long rotated = redisTemplate.execute(ROTATE_SCRIPT, List.of(REVOCATIONS_KEY),
+        familyMember, USER_PREFIX + claims.getUserId(),
+        String.valueOf(claims.getIssuedAt().toEpochMilli()), String.valueOf(issuedAt.toEpochMilli()),
+        String.valueOf(now.toEpochMilli()));
+    if (rotated != null && rotated < 0) {
+      // other nodes pick the kill up with their next sync
+      log.warn("Stateless refresh token reused, revoked family {} of user {}",
+          claims.getFamilyId(), claims.getUserId());
+      notBefore.merge(familyMember, now.toEpochMilli() + 1, Math::max);
+    }
+    if (rotated == null || rotated != 1) {
+      throw new RefreshTokenRevokedException("Refresh token is expired or revoked");
+    }
+    notBefore.merge(familyMember, issuedAt.toEpochMilli(), Math::max);
+
+    return codec.encode(new RefreshTokenClaims(claims.getUserId(), claims.getFamilyId(),
+        claims.getRole(), issuedAt, issuedAt.plusMillis(refreshTokenValidityMillis)));
+  }
+
+  public void revokeFamily(UUID familyId, Instant revokedAt) {
+    revoke(FAMILY_PREFIX + familyId, revokedAt);
+  }
+
+  public void revokeUser(UUID userId, Instant revokedAt) {
+    revoke(USER_PREFIX + userId, revokedAt);
+  }
+
+  // Tokens issued up to and including revokedAt are dead
+  private void revoke(String member, Instant revokedAt) {
+    long until = revokedAt.toEpochMilli() + 1;
+    redisTemplate.execute(REVOKE_SCRIPT, List.of(REVOCATIONS_KEY), member, String.valueOf(until));
+    notBefore.merge(member, until, Math::max);
+  }
+
+  private boolean isRevoked(RefreshTokenClaims claims) {
+    long issuedAt = claims.getIssuedAt().toEpochMilli();
+    Long family = notBefore.get(FAMILY_PREFIX + claims.getFamilyId());
+    Long user = notBefore.get(USER_PREFIX + claims.getUserId());
+    return (family != null && family > issuedAt) || (user != null && user > issuedAt);
+  }
+
+  @Scheduled(initialDelay = 0, fixedDelayString = "${auth.refresh.stateless.sync-interval-millis:1000}")
+  public void scheduledSync() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      sync();
+    } catch (RuntimeException e) {
+      // verify keeps using the last copy, rotate still checks redis itself
+      log.warn("Could not sync refresh token revocations", e);
+    }
+  }
+
+  // Pulls only entries written since the last sync, and drops the ones no token can hit anymore
+  public void sync() {
+    long cutoff = System.currentTimeMillis() - refreshTokenValidityMillis;
+    redisTemplate.opsForZSet().removeRangeByScore(REVOCATIONS_KEY, Double.NEGATIVE_INFINITY, cutoff);
+    notBefore.values().removeIf(score -> score < cutoff);
+
+    long from = Math.max(cutoff, lastSyncedScore - SYNC_OVERLAP_MILLIS);
+    Set<ZSetOperations.TypedTuple<String>> entries = redisTemplate.opsForZSet()
+        .rangeByScoreWithScores(REVOCATIONS_KEY, from, Double.POSITIVE_INFINITY);
+    if (entries == null) {
+      return;
+    }
+
+    long highest = lastSyncedScore;
+    for (ZSetOperations.TypedTuple<String> entry : entries) {
+      long score = entry.getScore().longValue();
+      notBefore.merge(entry.getValue(), score, Math::max);
+      highest = Math.max(highest, score);
+    }
+    lastSyncedScore = highest;
+  }
+
+  public int revocationCount() {
+    return notBefore.size();
+  }
+
+  private static byte[] randomSecret() {
+    byte[] secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    return secret;
+  }
+}
@@ -0,0 +1,94 @@
+package com.exodus.dome.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//**
+// Plain Bloom filter over strings. No false negatives, false positives at about the
+// rate it was sized for. Lock free: bits are only ever set, with CAS on 64 bit words.
+//**
+public class BloomFilter {
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+  private final AtomicLong insertions = new AtomicLong();
+
+  private BloomFilter(long bitCount, int hashCount) {
+    this.bitCount = bitCount;
+    this.hashCount = hashCount;
+    this.words = new AtomicLongArray((int) ((bitCount + 63) / 64));
+  }
+
+  // m = -n ln p / (ln 2)^2, k = m / n * ln 2
+  public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+    long n = Math.max(1, expectedInsertions);
+    long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+    return new BloomFilter(Math.max(64, bits), hashes);
+  }
+
+  public void put(String value) {
+    long[] hashes = hash(value);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hashes, i);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+      do {
+        current = words.get(word);
+        if ((current & mask) != 0) {
+          break;
+        }
+      } while (!words.compareAndSet(word, current, current | mask));
+    }
+    insertions.incrementAndGet();
+  }
+
+  public boolean mightContain(String value) {
+    long[] hashes = hash(value);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hashes, i);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public long getBitCount() {
+    return bitCount;
+  }
+
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  public long getInsertions() {
+    return insertions.get();
+  }
+
+  // (1 - e^(-kn/m))^k for the current number of insertions
+  public double expectedFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-hashCount * (double) insertions.get() / bitCount), hashCount);
+  }
+
+  // Kirsch-Mitzenmacher: k indexes from two base hashes
+  private long index(long[] hashes, int i) {
+    return Math.floorMod(hashes[0] + i * hashes[1], bitCount);
+  }
+
+  // FNV-1a for the first hash, a splitmix64 finalizer of it for the second
+  private static long[] hash(String value) {
+    long h1 = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      h1 ^= b;
+      h1 *= 0x100000001b3L;
+    }
+    long h2 = h1 + 0x9e3779b97f4a7c15L;
+    h2 = (h2 ^ (h2 >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h2 = (h2 ^ (h2 >>> 27)) * 0x94d049bb133111ebL;
+    h2 = h2 ^ (h2 >>> 31);
+    return new long[] { h1, h2 | 1 };
+  }
+}
@@ -0,0 +1,20 @@
+-- Adds token families: every rotation of one login shares family_id, generation counts them.
+-- Reuse of a revoked generation revokes the whole family through the partial index below.
+-- Rows from before this start their own family (family_id = id, generation 0), the same
+-- thing the write-behind journal replay does for lines written before families.
+-- After db/refresh_tokens_token_hash.sql and before db/refresh_tokens_partitioned.sql.
+
+BEGIN;
+
+ALTER TABLE auth.refresh_tokens ADD COLUMN family_id uuid;
+ALTER TABLE auth.refresh_tokens ADD COLUMN generation integer NOT NULL DEFAULT 0;
+
+UPDATE auth.refresh_tokens SET family_id = id;
+
+ALTER TABLE auth.refresh_tokens ALTER COLUMN family_id SET NOT NULL;
+
+COMMIT;
+
+-- Only live rows are ever looked up by family. CONCURRENTLY, so run outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS refresh_tokens_live_family_idx
+    ON auth.refresh_tokens (family_id) WHERE revoked_at IS NULL;
@@ -0,0 +1,53 @@
+-- Moves auth.refresh_tokens to a table partitioned by day of expires_at.
+-- Expired days are then dropped as whole partitions by RefreshTokenReaperService
+-- (auth.refresh.reaper.partitioned: true), which also creates the upcoming ones.
+--
+-- Expects token_hash from db/refresh_tokens_token_hash.sql and family_id/generation from
+-- db/refresh_tokens_family.sql.
+-- Postgres wants the partition key in every unique constraint, so id and token_hash are
+-- unique per partition only. Tokens are 64 random bytes, a cross-day duplicate is not a concern.
+-- Run in a maintenance window, the copy holds a lock on the old table.
+
+BEGIN;
+
+ALTER TABLE auth.refresh_tokens RENAME TO refresh_tokens_old;
+
+CREATE TABLE auth.refresh_tokens (
+    id          uuid        NOT NULL,
+    user_id     uuid        NOT NULL REFERENCES auth.users (id),
+    token_hash  bytea       NOT NULL,
+    family_id   uuid        NOT NULL,
+    generation  integer     NOT NULL DEFAULT 0,
+    expires_at  timestamptz NOT NULL,
+    created_at  timestamptz NOT NULL,
+    revoked_at  timestamptz,
+    PRIMARY KEY (id, expires_at),
+    UNIQUE (token_hash, expires_at)
+) PARTITION BY RANGE (expires_at);
+
+CREATE INDEX ON auth.refresh_tokens (user_id);
+CREATE INDEX ON auth.refresh_tokens (family_id) WHERE revoked_at IS NULL;
+CREATE INDEX ON auth.refresh_tokens (revoked_at) WHERE revoked_at IS NOT NULL;
+
+-- one partition per day from yesterday (oldest row copied below) to 16 days ahead (14 day tokens + spare)
+DO $$
+DECLARE
+    day date := current_date - 1;
+BEGIN
+    WHILE day <= current_date + 16 LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS auth.refresh_tokens_p%s PARTITION OF auth.refresh_tokens '
+            'FOR VALUES FROM (%L) TO (%L)',
+            to_char(day, 'YYYYMMDD'), day::timestamp AT TIME ZONE 'UTC', (day + 1)::timestamp AT TIME ZONE 'UTC');
+        day := day + 1;
+    END LOOP;
+END $$;
+
+INSERT INTO auth.refresh_tokens (id, user_id, token_hash, family_id, generation, expires_at, created_at, revoked_at)
+SELECT id, user_id, token_hash, family_id, generation, expires_at, created_at, revoked_at
+FROM auth.refresh_tokens_old
+WHERE expires_at > now() - interval '1 day';
+
+DROP TABLE auth.refresh_tokens_old;
+
+COMMIT;
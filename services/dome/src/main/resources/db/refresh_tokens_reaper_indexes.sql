@@ -0,0 +1,8 @@
+-- Indexes the chunked reaper needs on the plain (non partitioned) auth.refresh_tokens,
+-- without them every chunk scans the whole table. CONCURRENTLY, so no write lock; run outside a transaction.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS refresh_tokens_expires_at_idx
+    ON auth.refresh_tokens (expires_at);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS refresh_tokens_revoked_at_idx
+    ON auth.refresh_tokens (revoked_at) WHERE revoked_at IS NOT NULL;
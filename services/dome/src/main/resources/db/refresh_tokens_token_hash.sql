@@ -0,0 +1,17 @@
+-- Replaces the raw refresh token column with its SHA-256 digest.
+-- 32 bytes instead of an 86 char varchar per row and per index entry, and a leaked table
+-- holds no usable tokens. Tokens issued before this keep working: the app hashes what the
+-- client sends and looks the digest up.
+-- Before db/refresh_tokens_partitioned.sql, that script already expects token_hash.
+
+BEGIN;
+
+ALTER TABLE auth.refresh_tokens ADD COLUMN token_hash bytea;
+
+UPDATE auth.refresh_tokens SET token_hash = sha256(convert_to(token, 'UTF8'));
+
+ALTER TABLE auth.refresh_tokens ALTER COLUMN token_hash SET NOT NULL;
+ALTER TABLE auth.refresh_tokens ADD CONSTRAINT refresh_tokens_token_hash_key UNIQUE (token_hash);
+ALTER TABLE auth.refresh_tokens DROP COLUMN token;
+
+COMMIT;
@@ -0,0 +1,50 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.exception.UserNotFoundException;
+import com.exodus.dome.service.AuthService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdminUserControllerTest {
+
+    @Mock
+    private AuthService authService;
+
+    private AdminUserController adminUserController;
+
+    @BeforeEach
+    void setUp() {
+        adminUserController = new AdminUserController(authService);
+    }
+
+    // ==================== Deactivate Tests ====================
+
+    @Test
+    void deactivate_shouldDeactivateAndReturnNoContent() {
+        UUID userId = UUID.randomUUID();
+
+        ResponseEntity<Void> response = adminUserController.deactivate(userId);
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+        verify(authService).deactivateUser(userId);
+    }
+
+    @Test
+    void deactivate_withUnknownUser_shouldPropagateNotFound() {
+        UUID userId = UUID.randomUUID();
+        doThrow(new UserNotFoundException("User with given id not found.")).when(authService).deactivateUser(userId);
+
+        assertThrows(UserNotFoundException.class, () -> adminUserController.deactivate(userId));
+    }
+}
@@ -7,6 +7,7 @@ import com.exodus.dome.entity.dto.RefreshRequest;
 import com.exodus.dome.entity.dto.RegisterRequest;
 import com.exodus.dome.enums.UserRole;
 import com.exodus.dome.service.AuthService;
+import com.exodus.dome.service.RefreshCoalescingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,8 +16,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.util.function.Supplier;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,11 +29,18 @@ class AuthControllerTest {
     @Mock
     private AuthService authService;
 
+    @Mock
+    private RefreshCoalescingService refreshCoalescingService;
+
     private AuthController authController;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
-        authController = new AuthController(authService);
+        authController = new AuthController(authService, refreshCoalescingService);
+
+        lenient().when(refreshCoalescingService.coalesce(any(), any()))
+                .thenAnswer(invocation -> ((Supplier<AuthResponse>) invocation.getArgument(1)).get());
     }
 
     // ==================== Register Tests ====================
@@ -131,6 +142,18 @@ class AuthControllerTest {
         verify(authService, times(1)).refresh(request);
     }
 
+    @Test
+    void refresh_shouldGoThroughCoalescingWithRequestToken() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("shared-refresh-token");
+
+        when(authService.refresh(request)).thenReturn(new AuthResponse("access", "refresh", 60L));
+
+        authController.refresh(request);
+
+        verify(refreshCoalescingService).coalesce(eq("shared-refresh-token"), any());
+    }
+
     // ==================== Logout Tests ====================
 
     @Test
@@ -5,6 +5,7 @@ import com.exodus.dome.entity.valueObject.ResponseMessage;
 import com.exodus.dome.exception.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -258,4 +259,15 @@ class CustomExceptionControllerTest {
         assertTrue(message.contains("User not found"));
         assertTrue(message.contains("email => user@example.com"));
     }
+
+    @Test
+    void serviceOverloadedExceptionHandler_shouldReturnServiceUnavailableWithRetryAfter() {
+        ServiceOverloadedException exception = new ServiceOverloadedException("Too busy", 2L);
+
+        ResponseEntity<Object> response = controller.serviceOverloadedExceptionHandler(exception);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("Too busy", ((ResponseMessage) response.getBody()).getMessage());
+    }
 }
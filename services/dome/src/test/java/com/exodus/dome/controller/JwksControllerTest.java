@@ -0,0 +1,34 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.service.JwtService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwksControllerTest {
+
+    @Mock
+    private JwtService jwtService;
+
+    @Test
+    void jwks_shouldReturnKeySetWithCacheHeaders() {
+        Map<String, Object> keySet = Map.of("keys", List.of(Map.of("kid", "k1")));
+        when(jwtService.jwks()).thenReturn(keySet);
+
+        ResponseEntity<Map<String, Object>> response = new JwksController(jwtService, 300L).jwks();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(keySet, response.getBody());
+        assertEquals("max-age=300, public", response.getHeaders().getCacheControl());
+    }
+}
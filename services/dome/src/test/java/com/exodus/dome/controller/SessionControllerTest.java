@@ -0,0 +1,60 @@
+package com.exodus.dome.controller;
+
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.service.AuthService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionControllerTest {
+
+    @Mock
+    private AuthService authService;
+
+    private SessionController sessionController;
+
+    @BeforeEach
+    void setUp() {
+        sessionController = new SessionController(authService);
+    }
+
+    // ==================== List Tests ====================
+
+    @Test
+    void list_shouldReturnTheCallersSessions() {
+        UUID userId = UUID.randomUUID();
+        List<RefreshSession> sessions = List.of(new RefreshSession("hash-1", Instant.now().plusSeconds(60)),
+                new RefreshSession("hash-2", Instant.now().plusSeconds(120)));
+        when(authService.getActiveSessions(userId)).thenReturn(sessions);
+
+        ResponseEntity<List<RefreshSession>> response = sessionController.list(
+                UsernamePasswordAuthenticationToken.authenticated(userId.toString(), null, List.of()));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(sessions, response.getBody());
+    }
+
+    @Test
+    void list_withNoSessions_shouldReturnEmptyList() {
+        UUID userId = UUID.randomUUID();
+        when(authService.getActiveSessions(userId)).thenReturn(List.of());
+
+        ResponseEntity<List<RefreshSession>> response = sessionController.list(
+                UsernamePasswordAuthenticationToken.authenticated(userId.toString(), null, List.of()));
+
+        assertTrue(response.getBody().isEmpty());
+    }
+}
@@ -1,6 +1,7 @@
 package com.exodus.dome.entity;
 
 import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
@@ -83,7 +84,7 @@ class EntityTests {
 
         assertEquals(id, refreshToken.getId());
         assertEquals(user, refreshToken.getUser());
-        assertEquals(token, refreshToken.getToken());
+        assertArrayEquals(RefreshTokenHasher.hash(token), refreshToken.getTokenHash());
         assertEquals(expiresAt, refreshToken.getExpiresAt());
         assertEquals(createdAt, refreshToken.getCreatedAt());
         assertNull(refreshToken.getRevokedAt());
@@ -106,7 +107,7 @@ class EntityTests {
 
         assertEquals(id, refreshToken.getId());
         assertEquals(user, refreshToken.getUser());
-        assertEquals("new-token", refreshToken.getToken());
+        assertEquals(RefreshTokenHasher.hashKey("new-token"), refreshToken.getTokenHashKey());
         assertNotNull(refreshToken.getExpiresAt());
         assertNotNull(refreshToken.getCreatedAt());
         assertNotNull(refreshToken.getRevokedAt());
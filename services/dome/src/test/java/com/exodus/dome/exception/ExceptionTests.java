@@ -283,4 +283,25 @@ class ExceptionTests {
         AuthenticationRequiredException exception = new AuthenticationRequiredException("Auth required", null);
         assertEquals("Auth required", exception.getMessageWithParameters());
     }
+
+    // ==================== ServiceOverloadedException Tests ====================
+
+    @Test
+    void serviceOverloadedException_withMessage_shouldReturnMessageAndRetryAfter() {
+        ServiceOverloadedException exception = new ServiceOverloadedException("Too busy", 5L);
+        assertEquals("Too busy", exception.getMessage());
+        assertEquals("Too busy", exception.getMessageWithParameters());
+        assertEquals(5L, exception.getRetryAfterSeconds());
+    }
+
+    @Test
+    void serviceOverloadedException_withMessageAndParameters_shouldReturnFormattedMessage() {
+        List<ExceptionMessageParameter> params = Arrays.asList(
+                new ExceptionMessageParameter("queue", "64"));
+        ServiceOverloadedException exception = new ServiceOverloadedException("Too busy", 1L, params);
+
+        String result = exception.getMessageWithParameters();
+        assertTrue(result.contains("Too busy"));
+        assertTrue(result.contains("queue => 64"));
+    }
 }
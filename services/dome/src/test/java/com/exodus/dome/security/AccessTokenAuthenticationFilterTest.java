@@ -0,0 +1,78 @@
+package com.exodus.dome.security;
+
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.service.JwtService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessTokenAuthenticationFilterTest {
+
+    private static final String SECRET = "verysecuresecretkeyforjwttestingpurposes12345";
+
+    private JwtService jwtService;
+    private AccessTokenAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = new JwtService(SECRET, "test-issuer", 900, false, 0, "HS256", null,
+                new SimpleMeterRegistry());
+        filter = new AccessTokenAuthenticationFilter(jwtService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private Authentication filter(String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/admin/users/x/deactivate");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest(), "request should always go on down the chain");
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Test
+    void validToken_shouldAuthenticateWithRole() throws Exception {
+        UUID adminId = UUID.randomUUID();
+
+        Authentication authentication = filter("Bearer " + jwtService.generateAccessToken(adminId, UserRole.ADMIN));
+
+        assertNotNull(authentication);
+        assertEquals(adminId.toString(), authentication.getName());
+        assertEquals("ROLE_ADMIN", authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).findFirst().orElseThrow());
+    }
+
+    @Test
+    void tokenFromAnotherSecret_shouldStayAnonymous() throws Exception {
+        JwtService otherIssuer = new JwtService("anothersecuresecretkeyforjwttestingpurposes999", "test-issuer",
+                900, false, 0, "HS256", null, new SimpleMeterRegistry());
+
+        assertNull(filter("Bearer " + otherIssuer.generateAccessToken(UUID.randomUUID(), UserRole.ADMIN)));
+    }
+
+    @Test
+    void missingOrMalformedHeader_shouldStayAnonymous() throws Exception {
+        assertNull(filter(null));
+        assertNull(filter("Basic dXNlcjpwYXNz"));
+        assertNull(filter("Bearer not-a-jwt"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.exodus.dome.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BCryptWorkFactorCalibratorTest {
+
+    @Test
+    void calibrate_withGenerousTarget_shouldStopAtMaxStrength() {
+        assertEquals(6, BCryptWorkFactorCalibrator.calibrate(10_000L, 4, 6));
+    }
+
+    @Test
+    void calibrate_withUnreachableTarget_shouldFallBackToMinStrength() {
+        assertEquals(5, BCryptWorkFactorCalibrator.calibrate(0L, 5, 8));
+    }
+
+    @Test
+    void medianHashMillis_shouldGrowWithStrength() {
+        long cheap = BCryptWorkFactorCalibrator.medianHashMillis(4);
+        long expensive = BCryptWorkFactorCalibrator.medianHashMillis(10);
+
+        assertTrue(expensive >= cheap);
+    }
+}
@@ -0,0 +1,102 @@
+package com.exodus.dome.security;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshTokenCodecTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private final RefreshTokenCodec codec = new RefreshTokenCodec(SECRET);
+
+    private RefreshTokenClaims claims() {
+        Instant now = Instant.ofEpochMilli(Instant.now().toEpochMilli());
+        return new RefreshTokenClaims(UUID.randomUUID(), UUID.randomUUID(), UserRole.DRIVER,
+                now, now.plusSeconds(3600));
+    }
+
+    // ==================== Encode / Decode Tests ====================
+
+    @Test
+    void decode_ofEncodedToken_shouldReturnSameClaims() {
+        RefreshTokenClaims claims = claims();
+
+        RefreshTokenClaims decoded = codec.decode(codec.encode(claims));
+
+        assertEquals(claims.getUserId(), decoded.getUserId());
+        assertEquals(claims.getFamilyId(), decoded.getFamilyId());
+        assertEquals(UserRole.DRIVER, decoded.getRole());
+        assertEquals(claims.getIssuedAt(), decoded.getIssuedAt());
+        assertEquals(claims.getExpiresAt(), decoded.getExpiresAt());
+    }
+
+    @Test
+    void decode_withTamperedPayload_shouldThrow() {
+        String token = codec.encode(claims());
+        char[] chars = token.toCharArray();
+        chars[5] = chars[5] == 'A' ? 'B' : 'A';
+
+        assertThrows(InvalidRefreshTokenException.class, () -> codec.decode(new String(chars)));
+    }
+
+    @Test
+    void decode_withOtherSecret_shouldThrow() {
+        byte[] otherSecret = Arrays.copyOf(SECRET, SECRET.length);
+        otherSecret[0] ^= 1;
+        String token = new RefreshTokenCodec(otherSecret).encode(claims());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> codec.decode(token));
+    }
+
+    @Test
+    void decode_withMalformedToken_shouldThrow() {
+        assertThrows(InvalidRefreshTokenException.class, () -> codec.decode("no-separator"));
+        assertThrows(InvalidRefreshTokenException.class, () -> codec.decode("!!!.???"));
+        assertThrows(InvalidRefreshTokenException.class, () -> codec.decode("c2hvcnQ.c2hvcnQ"));
+    }
+
+    @Test
+    void decode_fromManyThreadsAtOnce_shouldKeepMacsApart() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> {
+                    RefreshTokenClaims claims = claims();
+                    return claims.getFamilyId().equals(codec.decode(codec.encode(claims)).getFamilyId());
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void isStateless_shouldTellFormatsApart() {
+        assertTrue(RefreshTokenCodec.isStateless(codec.encode(claims())));
+        assertFalse(RefreshTokenCodec.isStateless(RefreshTokenHasher.hashKey("opaque")));
+        assertFalse(RefreshTokenCodec.isStateless(null));
+    }
+
+    @Test
+    void constructor_withShortSecret_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new RefreshTokenCodec(new byte[16]));
+    }
+}
@@ -0,0 +1,36 @@
+package com.exodus.dome.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshTokenHasherTest {
+
+    // ==================== Hash Tests ====================
+
+    @Test
+    void hash_shouldReturnSha256Digest() {
+        byte[] hash = RefreshTokenHasher.hash("refresh-token");
+
+        assertEquals(32, hash.length);
+        assertArrayEquals(hash, RefreshTokenHasher.hash("refresh-token"));
+        assertFalse(Arrays.equals(hash, RefreshTokenHasher.hash("other-token")));
+    }
+
+    @Test
+    void hashKey_shouldBeUrlSafeWithoutPadding() {
+        String key = RefreshTokenHasher.hashKey("refresh-token");
+
+        assertEquals(43, key.length());
+        assertTrue(key.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void fromKey_shouldReverseToKey() {
+        byte[] hash = RefreshTokenHasher.hash("refresh-token");
+
+        assertArrayEquals(hash, RefreshTokenHasher.fromKey(RefreshTokenHasher.toKey(hash)));
+    }
+}
@@ -7,19 +7,30 @@ import com.exodus.dome.entity.dto.LoginRequest;
 import com.exodus.dome.entity.dto.LogoutRequest;
 import com.exodus.dome.entity.dto.RefreshRequest;
 import com.exodus.dome.entity.dto.RegisterRequest;
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.RefreshTokenRotationStatus;
 import com.exodus.dome.enums.UserRole;
 import com.exodus.dome.exception.*;
 import com.exodus.dome.repository.RefreshTokenRepository;
 import com.exodus.dome.repository.UserRepository;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -27,7 +38,10 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -48,6 +62,17 @@ class AuthServiceTest {
     @Mock
     private RefreshTokenCacheService refreshTokenCacheService;
 
+    @Mock
+    private RefreshTokenPersistenceService refreshTokenPersistenceService;
+
+    @Mock
+    private EmailBloomFilterService emailBloomFilterService;
+
+    @Mock
+    private StatelessRefreshTokenService statelessRefreshTokenService;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private AuthService authService;
 
     private UserEntity testUser;
@@ -56,6 +81,7 @@ class AuthServiceTest {
     @BeforeEach
     void setUp() {
         long refreshTokenValiditySeconds = 1209600L; // 14 days
+        meterRegistry = new SimpleMeterRegistry();
 
         authService = new AuthService(
                 userRepository,
@@ -63,7 +89,14 @@ class AuthServiceTest {
                 passwordEncoder,
                 jwtService,
                 refreshTokenValiditySeconds,
-                refreshTokenCacheService);
+                refreshTokenCacheService,
+                refreshTokenPersistenceService,
+                false,
+                emailBloomFilterService,
+                statelessRefreshTokenService,
+                meterRegistry);
+
+        lenient().when(emailBloomFilterService.mightContain(anyString())).thenReturn(true);
 
         testUser = new UserEntity(
                 UUID.randomUUID(),
@@ -158,6 +191,38 @@ class AuthServiceTest {
         assertEquals(UserRole.DRIVER, userCaptor.getValue().getRole());
     }
 
+    @Test
+    void register_withEmailAbsentFromFilter_shouldSkipDuplicateLookupAndAddEmail() {
+        RegisterRequest request = new RegisterRequest();
+        request.setEmail("fresh@example.com");
+        request.setPassword("password123");
+
+        when(emailBloomFilterService.mightContain("fresh@example.com")).thenReturn(false);
+        when(passwordEncoder.encode("password123")).thenReturn("encodedPassword");
+
+        authService.register(request);
+
+        verify(userRepository, never()).findByEmail(anyString());
+        verify(userRepository).save(any(UserEntity.class));
+        verify(emailBloomFilterService).add("fresh@example.com");
+    }
+
+    @Test
+    void register_whenAnotherNodeJustRegisteredTheEmail_shouldThrowDuplicateValue() {
+        RegisterRequest request = new RegisterRequest();
+        request.setEmail("fresh@example.com");
+        request.setPassword("password123");
+
+        // this node's filter has not heard of it yet, the unique constraint has
+        when(emailBloomFilterService.mightContain("fresh@example.com")).thenReturn(false);
+        when(passwordEncoder.encode("password123")).thenReturn("encodedPassword");
+        when(userRepository.save(any(UserEntity.class)))
+                .thenThrow(new DataIntegrityViolationException("users_email_key"));
+
+        assertThrows(DuplicateValueException.class, () -> authService.register(request));
+        verify(emailBloomFilterService, never()).add(anyString());
+    }
+
     // ==================== Login Tests ====================
 
     @Test
@@ -176,7 +241,26 @@ class AuthServiceTest {
         assertEquals("access-token", response.getAccessToken());
         assertNotNull(response.getRefreshToken());
         verify(refreshTokenRepository).save(any(RefreshToken.class));
-        verify(refreshTokenCacheService).storeToken(anyString(), eq(testUser.getId()), anyLong());
+        verify(refreshTokenCacheService).storeToken(anyString(), eq(testUser.getId()), eq(UserRole.RIDER), any(UUID.class), eq(0), anyLong());
+    }
+
+    @Test
+    void login_overSessionCap_shouldRevokeEvictedSessionsInDatabase() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(refreshTokenCacheService.storeToken(anyString(), eq(testUser.getId()), eq(UserRole.RIDER), any(UUID.class), eq(0), anyLong()))
+                .thenReturn(List.of(RefreshTokenHasher.hashKey("oldest-token")));
+
+        authService.login(request);
+
+        verify(refreshTokenRepository).revokeByTokenHashes(
+                argThat(hashes -> hashes.size() == 1
+                        && Arrays.equals(hashes.get(0), RefreshTokenHasher.hash("oldest-token"))),
+                any(Instant.class));
     }
 
     @Test
@@ -221,6 +305,116 @@ class AuthServiceTest {
         });
     }
 
+    @Test
+    void login_withOutdatedHash_shouldRehashPassword() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("hashedPassword")).thenReturn(true);
+        when(passwordEncoder.encode("correctPassword")).thenReturn("{bcrypt}strongerHash");
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        authService.login(request);
+
+        verify(userRepository).updatePasswordHash(testUser.getId(), "hashedPassword", "{bcrypt}strongerHash");
+        assertEquals("{bcrypt}strongerHash", testUser.getPasswordHash());
+    }
+
+    @Test
+    void login_withCurrentHash_shouldNotRehashPassword() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        authService.login(request);
+
+        verify(passwordEncoder, never()).encode(anyString());
+        verify(userRepository, never()).updatePasswordHash(any(), any(), any());
+    }
+
+    @Test
+    void login_whenRehashIsShed_shouldStillSucceed() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("hashedPassword")).thenReturn(true);
+        when(passwordEncoder.encode("correctPassword")).thenThrow(new ServiceOverloadedException("busy", 1L));
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        AuthResponse response = authService.login(request);
+
+        assertEquals("access-token", response.getAccessToken());
+        verify(userRepository, never()).updatePasswordHash(any(), any(), any());
+    }
+
+    @Test
+    void login_withEmailAbsentFromFilter_shouldThrowWithoutQuery() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("unknown@example.com");
+        request.setPassword("password123");
+
+        when(emailBloomFilterService.mightContain("unknown@example.com")).thenReturn(false);
+
+        assertThrows(UserNotFoundException.class, () -> {
+            authService.login(request);
+        });
+
+        verifyNoInteractions(userRepository, passwordEncoder);
+    }
+
+    @Test
+    void login_onAnotherNodeRightAfterRegister_shouldFindTheEmail() {
+        // two dome nodes, each with its own filter, connected by the add channel
+        List<EmailBloomFilterService> nodes = new ArrayList<>();
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.convertAndSend(eq(EmailBloomFilterService.ADD_CHANNEL), anyString()))
+                .thenAnswer(invocation -> {
+                    nodes.forEach(node -> node.onPeerAdd(invocation.getArgument(1)));
+                    return (long) nodes.size();
+                });
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L); // no users yet
+        for (int i = 0; i < 2; i++) {
+            EmailBloomFilterService filter = new EmailBloomFilterService(jdbcTemplate,
+                    mock(PlatformTransactionManager.class), meterRegistry, redisTemplate,
+                    true, 0.01, 1_000L, 1_000, "auth");
+            filter.rebuild();
+            nodes.add(filter);
+        }
+        AuthService registeringNode = new AuthService(userRepository, refreshTokenRepository, passwordEncoder,
+                jwtService, 1209600L, refreshTokenCacheService, refreshTokenPersistenceService, false,
+                nodes.get(0), statelessRefreshTokenService, meterRegistry);
+        AuthService otherNode = new AuthService(userRepository, refreshTokenRepository, passwordEncoder,
+                jwtService, 1209600L, refreshTokenCacheService, refreshTokenPersistenceService, false,
+                nodes.get(1), statelessRefreshTokenService, meterRegistry);
+
+        RegisterRequest register = new RegisterRequest();
+        register.setEmail("test@example.com");
+        register.setPassword("correctPassword");
+        when(passwordEncoder.encode("correctPassword")).thenReturn("hashedPassword");
+        registeringNode.register(register);
+
+        LoginRequest login = new LoginRequest();
+        login.setEmail("test@example.com");
+        login.setPassword("correctPassword");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+        AuthResponse response = otherNode.login(login);
+
+        assertEquals("access-token", response.getAccessToken());
+    }
+
     // ==================== Refresh Tests ====================
 
     @Test
@@ -275,6 +469,49 @@ class AuthServiceTest {
         });
     }
 
+    @Test
+    void refresh_withRotatedAwayGeneration_shouldRevokeWholeFamily() {
+        testRefreshToken.setRevokedAt(Instant.now());
+        byte[] liveHash = RefreshTokenHasher.hash("live-generation");
+
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("revoked-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("revoked-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("revoked-token")).thenReturn(Optional.of(testRefreshToken));
+        when(refreshTokenRepository.revokeFamily(eq(testRefreshToken.getFamilyId()), any(Instant.class)))
+                .thenReturn(List.of(liveHash));
+        when(refreshTokenPersistenceService.revokePendingForFamily(eq(testRefreshToken.getFamilyId()),
+                any(Instant.class))).thenReturn(List.of());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> authService.refresh(request));
+
+        verify(refreshTokenCacheService).revokeFamily(testRefreshToken.getFamilyId(), testUser.getId(),
+                List.of(RefreshTokenHasher.toKey(liveHash)));
+        verify(refreshTokenRepository, never()).findAllByUserId(any());
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void refresh_withValidToken_shouldContinueFamilyWithNextGeneration() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("valid-refresh-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("valid-refresh-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("valid-refresh-token")).thenReturn(Optional.of(testRefreshToken));
+        when(jwtService.generateAccessToken(testUser)).thenReturn("new-access-token");
+
+        authService.refresh(request);
+
+        ArgumentCaptor<RefreshToken> saved = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository, times(2)).save(saved.capture());
+        RefreshToken next = saved.getAllValues().get(1);
+        assertEquals(testRefreshToken.getFamilyId(), next.getFamilyId());
+        assertEquals(testRefreshToken.getGeneration() + 1, next.getGeneration());
+        verify(refreshTokenCacheService).storeToken(anyString(), eq(testUser.getId()), eq(UserRole.RIDER),
+                eq(testRefreshToken.getFamilyId()), eq(1), anyLong());
+    }
+
     @Test
     void refresh_withInactiveUser_shouldThrowUserNotActiveException() {
         testUser.setActive(false);
@@ -292,6 +529,276 @@ class AuthServiceTest {
         });
     }
 
+    // ==================== Cache-Authoritative Refresh Tests ====================
+
+    private AuthService cacheAuthoritativeAuthService() {
+        return new AuthService(
+                userRepository,
+                refreshTokenRepository,
+                passwordEncoder,
+                jwtService,
+                1209600L,
+                refreshTokenCacheService,
+                refreshTokenPersistenceService,
+                true,
+                emailBloomFilterService,
+                statelessRefreshTokenService,
+                meterRegistry);
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_withCacheHit_shouldNotTouchDatabase() {
+        AuthService service = cacheAuthoritativeAuthService();
+
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("cached-token");
+
+        when(refreshTokenCacheService.rotateToken(eq("cached-token"), anyString(), eq(1209600L)))
+                .thenReturn(new RefreshTokenRotation(RefreshTokenRotationStatus.ROTATED,
+                        testUser.getId(), UserRole.DRIVER, testRefreshToken.getFamilyId(), 4));
+        when(jwtService.generateAccessToken(testUser.getId(), UserRole.DRIVER)).thenReturn("new-access-token");
+
+        AuthResponse response = service.refresh(request);
+
+        assertEquals("new-access-token", response.getAccessToken());
+        assertNotNull(response.getRefreshToken());
+        verify(refreshTokenPersistenceService).persistRotation(eq(RefreshTokenHasher.hashKey("cached-token")),
+                eq(RefreshTokenHasher.hashKey(response.getRefreshToken())), eq(testUser.getId()),
+                eq(testRefreshToken.getFamilyId()), eq(4), any(Instant.class), any(Instant.class));
+        verifyNoInteractions(refreshTokenRepository, userRepository);
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_withAlreadyRotatedToken_shouldThrowInvalidRefreshTokenException() {
+        AuthService service = cacheAuthoritativeAuthService();
+
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("replayed-token");
+
+        when(refreshTokenCacheService.rotateToken(eq("replayed-token"), anyString(), anyLong()))
+                .thenReturn(RefreshTokenRotation.alreadyRotated(null, null));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> service.refresh(request));
+
+        verifyNoInteractions(refreshTokenRepository, refreshTokenPersistenceService);
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_withReusedGeneration_shouldRevokeFamilyInDatabase() {
+        AuthService service = cacheAuthoritativeAuthService();
+        UUID familyId = UUID.randomUUID();
+
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("replayed-token");
+
+        when(refreshTokenCacheService.rotateToken(eq("replayed-token"), anyString(), anyLong()))
+                .thenReturn(RefreshTokenRotation.alreadyRotated(testUser.getId(), familyId));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> service.refresh(request));
+
+        verify(refreshTokenRepository).revokeFamily(eq(familyId), any(Instant.class));
+        verify(refreshTokenPersistenceService).revokePendingForFamily(eq(familyId), any(Instant.class));
+        verify(refreshTokenRepository, never()).findAllByUserId(any());
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_withCacheMiss_shouldFallBackToDatabase() {
+        AuthService service = cacheAuthoritativeAuthService();
+
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("db-only-token");
+
+        when(refreshTokenCacheService.rotateToken(eq("db-only-token"), anyString(), anyLong()))
+                .thenReturn(RefreshTokenRotation.notFound());
+        when(refreshTokenCacheService.getUserIdForToken("db-only-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("db-only-token")).thenReturn(Optional.of(testRefreshToken));
+        when(jwtService.generateAccessToken(testUser)).thenReturn("new-access-token");
+
+        AuthResponse response = service.refresh(request);
+
+        assertEquals("new-access-token", response.getAccessToken());
+        assertNotNull(testRefreshToken.getRevokedAt());
+        verify(refreshTokenRepository).save(testRefreshToken);
+        verify(refreshTokenPersistenceService, never()).persistRotation(any(), any(), any(), any(), anyInt(), any(), any());
+    }
+
+    // ==================== Write-Behind Tests ====================
+
+    @Test
+    void login_withWriteBehind_shouldQueueInsertInsteadOfSaving() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(refreshTokenPersistenceService.isWriteBehindEnabled()).thenReturn(true);
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        AuthResponse response = authService.login(request);
+
+        ArgumentCaptor<RefreshToken> tokenCaptor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenPersistenceService).enqueueInsert(tokenCaptor.capture());
+        assertArrayEquals(RefreshTokenHasher.hash(response.getRefreshToken()), tokenCaptor.getValue().getTokenHash());
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void logout_withWriteBehind_shouldQueueRevokeInsteadOfSaving() {
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("valid-logout-token");
+
+        when(refreshTokenPersistenceService.isWriteBehindEnabled()).thenReturn(true);
+        when(refreshTokenRepository.findByToken("valid-logout-token"))
+                .thenReturn(Optional.of(testRefreshToken));
+
+        authService.logout(request);
+
+        verify(refreshTokenPersistenceService).enqueueRevoke(eq(RefreshTokenHasher.hashKey("test-refresh-token")),
+                any(Instant.class));
+        verify(refreshTokenRepository, never()).save(any());
+        verify(refreshTokenCacheService).deleteToken("valid-logout-token");
+    }
+
+    @Test
+    void refresh_rightAfterLoginWithWriteBehind_shouldFindTheStillQueuedToken() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        RefreshTokenPersistenceService writeBehind = new RefreshTokenPersistenceService(jdbcTemplate,
+                mock(PlatformTransactionManager.class), true, 500, 10_000, 3_600_000L, "", false, "auth");
+        writeBehind.start();
+        AuthService service = new AuthService(userRepository, refreshTokenRepository, passwordEncoder,
+                jwtService, 1209600L, refreshTokenCacheService, writeBehind, false,
+                emailBloomFilterService, statelessRefreshTokenService, meterRegistry);
+
+        // DB only knows a token once its queued insert has been written
+        List<byte[]> inserted = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO auth.refresh_tokens"), anyList()))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    rows.forEach(row -> inserted.add((byte[]) row[2]));
+                    return new int[rows.size()];
+                });
+        when(refreshTokenRepository.findByToken(anyString())).thenAnswer(invocation -> {
+            String token = invocation.getArgument(0);
+            byte[] hash = RefreshTokenHasher.hash(token);
+            return inserted.stream().anyMatch(row -> Arrays.equals(row, hash))
+                    ? Optional.of(new RefreshToken(UUID.randomUUID(), testUser, token,
+                            Instant.now().plusSeconds(3600), Instant.now(), null))
+                    : Optional.empty();
+        });
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        try {
+            LoginRequest login = new LoginRequest();
+            login.setEmail("test@example.com");
+            login.setPassword("correctPassword");
+            AuthResponse loggedIn = service.login(login);
+            assertTrue(inserted.isEmpty());
+
+            RefreshRequest refresh = new RefreshRequest();
+            refresh.setRefreshToken(loggedIn.getRefreshToken());
+            AuthResponse refreshed = service.refresh(refresh);
+
+            assertNotEquals(loggedIn.getRefreshToken(), refreshed.getRefreshToken());
+            assertEquals(1, inserted.size());
+        } finally {
+            writeBehind.shutdown();
+        }
+    }
+
+    // ==================== Stateless Refresh Token Tests ====================
+
+    private RefreshTokenClaims statelessClaims() {
+        Instant now = Instant.now();
+        return new RefreshTokenClaims(testUser.getId(), UUID.randomUUID(), UserRole.RIDER,
+                now, now.plusSeconds(1209600L));
+    }
+
+    @Test
+    void login_withStatelessTokens_shouldNotStoreRefreshToken() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(statelessRefreshTokenService.issue(testUser.getId(), UserRole.RIDER)).thenReturn("payload.mac");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+        when(jwtService.generateAccessToken(testUser)).thenReturn("access-token");
+
+        AuthResponse response = authService.login(request);
+
+        assertEquals("payload.mac", response.getRefreshToken());
+        verify(refreshTokenRepository, never()).save(any());
+        verifyNoInteractions(refreshTokenCacheService);
+    }
+
+    @Test
+    void refresh_withStatelessToken_shouldRotateWithoutDatabase() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("payload.mac");
+        RefreshTokenClaims claims = statelessClaims();
+
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(statelessRefreshTokenService.verify("payload.mac")).thenReturn(claims);
+        when(statelessRefreshTokenService.rotate(claims)).thenReturn("rotated.mac");
+        when(jwtService.generateAccessToken(testUser.getId(), UserRole.RIDER)).thenReturn("new-access-token");
+
+        AuthResponse response = authService.refresh(request);
+
+        assertEquals("new-access-token", response.getAccessToken());
+        assertEquals("rotated.mac", response.getRefreshToken());
+        verifyNoInteractions(refreshTokenRepository, userRepository, refreshTokenCacheService);
+    }
+
+    @Test
+    void refresh_withForgedStatelessToken_shouldThrowWithoutRotating() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("payload.forged");
+
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(statelessRefreshTokenService.verify("payload.forged"))
+                .thenThrow(new InvalidRefreshTokenException("Refresh token is malformed or forged"));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> authService.refresh(request));
+        verify(statelessRefreshTokenService, never()).rotate(any());
+    }
+
+    @Test
+    void logout_withStatelessToken_shouldRevokeItsFamily() {
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("payload.mac");
+        RefreshTokenClaims claims = statelessClaims();
+
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(statelessRefreshTokenService.decode("payload.mac")).thenReturn(claims);
+
+        authService.logout(request);
+
+        verify(statelessRefreshTokenService).revokeFamily(eq(claims.getFamilyId()), any(Instant.class));
+        verifyNoInteractions(refreshTokenRepository);
+    }
+
+    @Test
+    void logoutAllSessions_withStatelessToken_shouldRevokeUserEverywhere() {
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("payload.mac");
+
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(statelessRefreshTokenService.decode("payload.mac")).thenReturn(statelessClaims());
+        when(refreshTokenRepository.revokeAllActiveByUserId(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of());
+        when(refreshTokenPersistenceService.revokePendingForUser(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of());
+
+        authService.logoutAllSessions(request);
+
+        verify(statelessRefreshTokenService).revokeUser(eq(testUser.getId()), any(Instant.class));
+        verify(refreshTokenRepository, never()).findByToken(anyString());
+    }
+
     // ==================== Logout Tests ====================
 
     @Test
@@ -343,28 +850,25 @@ class AuthServiceTest {
     // ==================== LogoutAllSessions Tests ====================
 
     @Test
-    void logoutAllSessions_shouldRevokeAllUserTokens() {
-        RefreshToken token1 = new RefreshToken(UUID.randomUUID(), testUser, "token1",
-                Instant.now().plusSeconds(86400), Instant.now(), null);
-        RefreshToken token2 = new RefreshToken(UUID.randomUUID(), testUser, "token2",
-                Instant.now().plusSeconds(86400), Instant.now(), null);
-        List<RefreshToken> allTokens = Arrays.asList(token1, token2);
-
+    void logoutAllSessions_shouldRevokeWithOneUpdateAndOneRedisScript() {
         LogoutRequest request = new LogoutRequest();
-        request.setRefreshToken("token1");
+        request.setRefreshToken("test-refresh-token");
 
-        when(refreshTokenRepository.findByToken("token1"))
-                .thenReturn(Optional.of(token1));
-        when(refreshTokenRepository.findAllByUserId(testUser.getId()))
-                .thenReturn(allTokens);
+        when(refreshTokenRepository.findByToken("test-refresh-token"))
+                .thenReturn(Optional.of(testRefreshToken));
+        when(refreshTokenRepository.revokeAllActiveByUserId(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of(RefreshTokenHasher.hash("token1"), RefreshTokenHasher.hash("token2")));
+        when(refreshTokenPersistenceService.revokePendingForUser(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of(RefreshTokenHasher.hashKey("queued-token")));
 
         authService.logoutAllSessions(request);
 
-        assertNotNull(token1.getRevokedAt());
-        assertNotNull(token2.getRevokedAt());
-        verify(refreshTokenRepository).saveAll(allTokens);
-        verify(refreshTokenCacheService).deleteToken("token1");
-        verify(refreshTokenCacheService).deleteToken("token2");
+        verify(refreshTokenCacheService).revokeAllSessions(testUser.getId(),
+                List.of(RefreshTokenHasher.hashKey("token1"), RefreshTokenHasher.hashKey("token2"),
+                        RefreshTokenHasher.hashKey("queued-token")));
+        verify(refreshTokenCacheService, never()).deleteToken(anyString());
+        verify(refreshTokenRepository, never()).findAllByUserId(any());
+        verify(refreshTokenRepository, never()).saveAll(any());
     }
 
     @Test
@@ -381,26 +885,148 @@ class AuthServiceTest {
     }
 
     @Test
-    void logoutAllSessions_withAlreadyRevokedTokens_shouldNotRevokeAgain() {
-        RefreshToken token1 = new RefreshToken(UUID.randomUUID(), testUser, "token1",
-                Instant.now().plusSeconds(86400), Instant.now(), Instant.now().minusSeconds(100));
-        RefreshToken token2 = new RefreshToken(UUID.randomUUID(), testUser, "token2",
-                Instant.now().plusSeconds(86400), Instant.now(), null);
-        List<RefreshToken> allTokens = Arrays.asList(token1, token2);
-
+    void logoutAllSessions_shouldRevokeWithSameTimestampInDbAndQueue() {
         LogoutRequest request = new LogoutRequest();
-        request.setRefreshToken("token2");
-
-        when(refreshTokenRepository.findByToken("token2"))
-                .thenReturn(Optional.of(token2));
-        when(refreshTokenRepository.findAllByUserId(testUser.getId()))
-                .thenReturn(allTokens);
+        request.setRefreshToken("test-refresh-token");
 
-        Instant originalRevokedAt = token1.getRevokedAt();
+        when(refreshTokenRepository.findByToken("test-refresh-token"))
+                .thenReturn(Optional.of(testRefreshToken));
+        when(refreshTokenRepository.revokeAllActiveByUserId(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of());
+        when(refreshTokenPersistenceService.revokePendingForUser(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of());
 
         authService.logoutAllSessions(request);
 
-        assertEquals(originalRevokedAt, token1.getRevokedAt());
-        assertNotNull(token2.getRevokedAt());
+        ArgumentCaptor<Instant> dbTime = ArgumentCaptor.forClass(Instant.class);
+        ArgumentCaptor<Instant> queueTime = ArgumentCaptor.forClass(Instant.class);
+        verify(refreshTokenRepository).revokeAllActiveByUserId(eq(testUser.getId()), dbTime.capture());
+        verify(refreshTokenPersistenceService).revokePendingForUser(eq(testUser.getId()), queueTime.capture());
+        assertEquals(dbTime.getValue(), queueTime.getValue());
+        verify(refreshTokenCacheService).revokeAllSessions(testUser.getId(), List.of());
+    }
+
+    // ==================== Active Sessions Tests ====================
+
+    @Test
+    void getActiveSessions_shouldReturnTheSessionIndex() {
+        List<RefreshSession> sessions = List.of(
+                new RefreshSession(RefreshTokenHasher.hashKey("token1"), Instant.now().plusSeconds(60)));
+        when(refreshTokenCacheService.getActiveSessions(testUser.getId())).thenReturn(sessions);
+
+        assertEquals(sessions, authService.getActiveSessions(testUser.getId()));
+        verifyNoInteractions(refreshTokenRepository);
+    }
+
+    // ==================== Deactivation Tests ====================
+
+    @Test
+    void deactivateUser_shouldEndEverySessionSoCachedRefreshStops() {
+        when(userRepository.deactivate(testUser.getId())).thenReturn(1);
+        when(statelessRefreshTokenService.isEnabled()).thenReturn(true);
+        when(refreshTokenRepository.revokeAllActiveByUserId(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of(RefreshTokenHasher.hash("token1")));
+        when(refreshTokenPersistenceService.revokePendingForUser(eq(testUser.getId()), any(Instant.class)))
+                .thenReturn(List.of(RefreshTokenHasher.hashKey("queued-token")));
+
+        authService.deactivateUser(testUser.getId());
+
+        verify(statelessRefreshTokenService).revokeUser(eq(testUser.getId()), any(Instant.class));
+        verify(refreshTokenCacheService).revokeAllSessions(testUser.getId(),
+                List.of(RefreshTokenHasher.hashKey("token1"), RefreshTokenHasher.hashKey("queued-token")));
+    }
+
+    @Test
+    void deactivateUser_withUnknownUser_shouldThrowUserNotFoundException() {
+        UUID unknown = UUID.randomUUID();
+        when(userRepository.deactivate(unknown)).thenReturn(0);
+
+        assertThrows(UserNotFoundException.class, () -> authService.deactivateUser(unknown));
+
+        verifyNoInteractions(refreshTokenCacheService);
+        verify(refreshTokenRepository, never()).revokeAllActiveByUserId(any(), any());
+    }
+
+    // ==================== Metrics Tests ====================
+
+    private long refreshCount(String outcome) {
+        return meterRegistry.get("auth.refresh").tag("outcome", outcome).timer().count();
+    }
+
+    @Test
+    void refresh_withCachedUserId_shouldRecordHit() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("valid-refresh-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("valid-refresh-token"))
+                .thenReturn(Optional.of(testUser.getId()));
+        when(refreshTokenRepository.findByToken("valid-refresh-token"))
+                .thenReturn(Optional.of(testRefreshToken));
+
+        authService.refresh(request);
+
+        assertEquals(1, refreshCount("hit"));
+        assertEquals(0, refreshCount("miss"));
+    }
+
+    @Test
+    void refresh_withUnknownToken_shouldRecordNotFound() {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("non-existent-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("non-existent-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("non-existent-token")).thenReturn(Optional.empty());
+
+        assertThrows(RefreshTokenNotFoundException.class, () -> authService.refresh(request));
+
+        assertEquals(1, refreshCount("not-found"));
+    }
+
+    @Test
+    void refresh_withRevokedToken_shouldRecordRevoked() {
+        testRefreshToken.setRevokedAt(Instant.now());
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("revoked-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("revoked-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("revoked-token")).thenReturn(Optional.of(testRefreshToken));
+
+        assertThrows(RefreshTokenRevokedException.class, () -> authService.refresh(request));
+
+        assertEquals(1, refreshCount("revoked"));
+        assertEquals(0, refreshCount("expired"));
+    }
+
+    @Test
+    void refresh_withExpiredToken_shouldRecordExpired() {
+        RefreshToken expired = new RefreshToken(UUID.randomUUID(), testUser, "expired-token",
+                Instant.now().minusSeconds(60), Instant.now().minusSeconds(86400), null);
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken("expired-token");
+
+        when(refreshTokenCacheService.getUserIdForToken("expired-token")).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findByToken("expired-token")).thenReturn(Optional.of(expired));
+
+        assertThrows(RefreshTokenExpiredException.class, () -> authService.refresh(request));
+
+        assertEquals(1, refreshCount("expired"));
+    }
+
+    @Test
+    void login_shouldRecordOutcome() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("wrongPassword");
+
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(passwordEncoder.matches("wrongPassword", "hashedPassword")).thenReturn(false);
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+
+        assertThrows(PasswordNotCorrectException.class, () -> authService.login(request));
+        request.setPassword("correctPassword");
+        authService.login(request);
+
+        assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "bad-password").timer().count());
+        assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "success").timer().count());
     }
 }
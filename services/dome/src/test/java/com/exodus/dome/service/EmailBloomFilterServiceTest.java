@@ -0,0 +1,197 @@
+package com.exodus.dome.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailBloomFilterServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmailBloomFilterService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new EmailBloomFilterService(jdbcTemplate, transactionManager, meterRegistry,
+                redisTemplate, true, 0.01, 1_000L, 1_000, "auth");
+    }
+
+    // Feeds the given emails to the row handler, running extra work in the middle of the scan
+    private void stubScan(List<String> emails, Runnable duringScan) throws Exception {
+        when(jdbcTemplate.queryForObject(eq("SELECT count(*) FROM auth.users"), eq(Long.class)))
+                .thenReturn((long) emails.size());
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            ResultSet resultSet = mock(ResultSet.class);
+            for (String email : emails) {
+                when(resultSet.getString(1)).thenReturn(email);
+                handler.processRow(resultSet);
+            }
+            duringScan.run();
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void mightContain_beforeFirstRebuild_shouldReturnTrue() {
+        assertTrue(service.mightContain("anyone@example.com"));
+    }
+
+    @Test
+    void rebuild_shouldLoadEmailsAndRejectUnknownOnes() throws Exception {
+        stubScan(List.of("a@example.com", "b@example.com"), () -> { });
+
+        service.rebuild();
+
+        assertTrue(service.mightContain("a@example.com"));
+        assertTrue(service.mightContain("b@example.com"));
+        assertFalse(service.mightContain("nobody@example.com"));
+        assertEquals(1.0, meterRegistry.counter("auth.users.email_filter.negative").count());
+        assertEquals(2.0, meterRegistry.get("auth.users.email_filter.size").gauge().value());
+        assertEquals(1, meterRegistry.get("auth.users.email_filter.rebuild").timer().count());
+    }
+
+    @Test
+    void add_duringRebuild_shouldEndUpInNewFilter() throws Exception {
+        stubScan(List.of("a@example.com"), () -> service.add("late@example.com"));
+
+        service.rebuild();
+
+        assertTrue(service.mightContain("late@example.com"));
+    }
+
+    @Test
+    void add_concurrentWithRebuilds_shouldNeverBeLostFromTheFilterInUse() throws Exception {
+        // the users table: register commits the row, then adds to the filter
+        Queue<String> users = new ConcurrentLinkedQueue<>();
+        AtomicReference<String> row = new AtomicReference<>();
+        // a mock would record every getString, this scans a lot of rows
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> row.get());
+        when(jdbcTemplate.queryForObject(eq("SELECT count(*) FROM auth.users"), eq(Long.class)))
+                .thenAnswer(invocation -> (long) users.size());
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (String email : List.copyOf(users)) {
+                row.set(email);
+                handler.processRow(resultSet);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        service.rebuild();
+        AtomicBoolean rebuilding = new AtomicBoolean(true);
+        AtomicInteger registered = new AtomicInteger();
+        Thread registrations = new Thread(() -> {
+            for (int i = 0; rebuilding.get() && i < 10_000; i++) {
+                users.add("user" + i + "@example.com");
+                service.add("user" + i + "@example.com");
+                registered.incrementAndGet();
+            }
+        });
+
+        registrations.start();
+        for (int i = 0; i < 100; i++) {
+            service.rebuild();
+        }
+        rebuilding.set(false);
+        registrations.join();
+
+        for (int i = 0; i < registered.get(); i++) {
+            assertTrue(service.mightContain("user" + i + "@example.com"), "user" + i + " lost");
+        }
+    }
+
+    // ==================== Peer Tests ====================
+
+    @Test
+    void add_shouldPublishTheEmailToOtherNodes() throws Exception {
+        stubScan(List.of(), () -> { });
+        service.rebuild();
+
+        service.add("new@example.com");
+
+        assertTrue(service.mightContain("new@example.com"));
+        verify(redisTemplate).convertAndSend(EmailBloomFilterService.ADD_CHANNEL, "new@example.com");
+    }
+
+    @Test
+    void add_whenPublishFails_shouldStillAddLocally() throws Exception {
+        stubScan(List.of(), () -> { });
+        service.rebuild();
+        when(redisTemplate.convertAndSend(anyString(), anyString()))
+                .thenThrow(new QueryTimeoutException("redis down"));
+
+        service.add("new@example.com");
+
+        assertTrue(service.mightContain("new@example.com"));
+    }
+
+    @Test
+    void onPeerAdd_shouldAddWithoutPublishing() throws Exception {
+        stubScan(List.of(), () -> { });
+        service.rebuild();
+
+        service.onPeerAdd("elsewhere@example.com");
+
+        assertTrue(service.mightContain("elsewhere@example.com"));
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void scheduledRebuild_whenDisabled_shouldNotQuery() {
+        service = new EmailBloomFilterService(jdbcTemplate, transactionManager, new SimpleMeterRegistry(),
+                redisTemplate, false, 0.01, 1_000L, 1_000, "auth");
+
+        service.scheduledRebuild();
+
+        verifyNoInteractions(jdbcTemplate);
+        assertTrue(service.mightContain("anyone@example.com"));
+    }
+
+    @Test
+    void scheduledRebuild_whenQueryFails_shouldKeepPreviousFilter() throws Exception {
+        stubScan(List.of("a@example.com"), () -> { });
+        service.rebuild();
+        when(jdbcTemplate.queryForObject(eq("SELECT count(*) FROM auth.users"), eq(Long.class)))
+                .thenThrow(new RuntimeException("db down"));
+
+        service.scheduledRebuild();
+
+        assertTrue(service.mightContain("a@example.com"));
+        assertFalse(service.mightContain("nobody@example.com"));
+    }
+}
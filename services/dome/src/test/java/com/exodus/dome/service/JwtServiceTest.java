@@ -2,12 +2,16 @@ package com.exodus.dome.service;
 
 import com.exodus.dome.entity.UserEntity;
 import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.JwtKeyRing;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,7 +28,8 @@ class JwtServiceTest {
         String issuer = "test-issuer";
         long accessTokenValiditySeconds = 3600L; // 1 hour
 
-        jwtService = new JwtService(secret, issuer, accessTokenValiditySeconds);
+        jwtService = new JwtService(secret, issuer, accessTokenValiditySeconds, false, 0L, "HS256", null,
+                new SimpleMeterRegistry());
 
         testUser = new UserEntity(
                 UUID.randomUUID(),
@@ -113,7 +118,7 @@ class JwtServiceTest {
         JwtService differentJwtService = new JwtService(
                 "differentsecretkeythatisatleast32characters",
                 "test-issuer",
-                3600L);
+                3600L, false, 0L, "HS256", null, new SimpleMeterRegistry());
 
         assertThrows(IllegalArgumentException.class, () -> {
             differentJwtService.validate(token);
@@ -154,4 +159,112 @@ class JwtServiceTest {
 
         assertNotEquals(token1, token2);
     }
+
+    // ==================== Verified Token Cache Tests ====================
+
+    @Test
+    void validate_withCacheEnabled_shouldReturnCachedClaimsForSameToken() {
+        JwtService cachingJwtService = new JwtService(
+                "verysecuresecretkeyforjwttestingpurposes12345", "test-issuer", 3600L, true, 100L, "HS256", null,
+                new SimpleMeterRegistry());
+        String token = cachingJwtService.generateAccessToken(testUser);
+
+        Jws<Claims> first = cachingJwtService.validate(token);
+        Jws<Claims> second = cachingJwtService.validate(token);
+
+        assertSame(first, second);
+        assertEquals(testUser.getId().toString(), second.getBody().getSubject());
+    }
+
+    @Test
+    void validate_withCacheEnabled_shouldStillRejectTamperedToken() {
+        JwtService cachingJwtService = new JwtService(
+                "verysecuresecretkeyforjwttestingpurposes12345", "test-issuer", 3600L, true, 100L, "HS256", null,
+                new SimpleMeterRegistry());
+        String token = cachingJwtService.generateAccessToken(testUser);
+        cachingJwtService.validate(token);
+
+        String tamperedToken = token.substring(0, token.length() - 5) + "XXXXX";
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            cachingJwtService.validate(tamperedToken);
+        });
+    }
+
+    @Test
+    void validate_withCacheEnabled_shouldRejectTokenOnceExpired() throws InterruptedException {
+        JwtService cachingJwtService = new JwtService(
+                "verysecuresecretkeyforjwttestingpurposes12345", "test-issuer", 1L, true, 100L, "HS256", null,
+                new SimpleMeterRegistry());
+        String token = cachingJwtService.generateAccessToken(testUser);
+        cachingJwtService.validate(token);
+
+        Thread.sleep(1100);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            cachingJwtService.validate(token);
+        });
+    }
+
+    // ==================== ES256 Tests ====================
+
+    private JwtService es256JwtService(JwtKeyRing keyRing) {
+        return new JwtService("verysecuresecretkeyforjwttestingpurposes12345", "test-issuer",
+                3600L, false, 0L, "ES256", keyRing, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void generateAccessToken_withEs256_shouldCarryKidAndValidate() {
+        JwtKeyRing keyRing = JwtKeyRing.generate();
+        JwtService es256Service = es256JwtService(keyRing);
+
+        String token = es256Service.generateAccessToken(testUser);
+        Jws<Claims> claims = es256Service.validate(token);
+
+        assertEquals("ES256", claims.getHeader().getAlgorithm());
+        assertEquals(keyRing.getActiveKid(), ((JwsHeader<?>) claims.getHeader()).getKeyId());
+        assertEquals(testUser.getId().toString(), claims.getBody().getSubject());
+    }
+
+    @Test
+    void validate_withEs256_shouldRejectTokenFromUnknownKey() {
+        String token = es256JwtService(JwtKeyRing.generate()).generateAccessToken(testUser);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            es256JwtService(JwtKeyRing.generate()).validate(token);
+        });
+    }
+
+    @Test
+    void validate_withEs256_shouldRejectHs256Token() {
+        String hs256Token = jwtService.generateAccessToken(testUser);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            es256JwtService(JwtKeyRing.generate()).validate(hs256Token);
+        });
+    }
+
+    @Test
+    void jwks_withHs256_shouldBeEmpty() {
+        assertEquals(List.of(), jwtService.jwks().get("keys"));
+    }
+
+    // ==================== Metrics Tests ====================
+
+    @Test
+    void validate_shouldRecordOutcomePerCall() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JwtService meteredJwtService = new JwtService("verysecuresecretkeyforjwttestingpurposes12345",
+                "test-issuer", 3600L, true, 100L, "HS256", null, meterRegistry);
+        String token = meteredJwtService.generateAccessToken(testUser);
+
+        meteredJwtService.validate(token);
+        meteredJwtService.validate(token);
+        assertThrows(IllegalArgumentException.class, () -> meteredJwtService.validate(token + "X"));
+
+        assertEquals(1, meterRegistry.get("auth.jwt.sign").tag("algorithm", "HS256").timer().count());
+        assertEquals(1, meterRegistry.get("auth.jwt.verify").tag("outcome", "valid").timer().count());
+        assertEquals(1, meterRegistry.get("auth.jwt.verify").tag("outcome", "cached").timer().count());
+        assertEquals(1, meterRegistry.get("auth.jwt.verify").tag("outcome", "invalid").timer().count());
+    }
 }
@@ -0,0 +1,408 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.RefreshToken;
+import com.exodus.dome.entity.UserEntity;
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.entity.dto.LoginRequest;
+import com.exodus.dome.entity.dto.LogoutRequest;
+import com.exodus.dome.entity.dto.RefreshRequest;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.RefreshTokenRotationStatus;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import com.exodus.dome.exception.PasswordNotCorrectException;
+import com.exodus.dome.exception.RefreshTokenNotFoundException;
+import com.exodus.dome.exception.UserNotFoundException;
+import com.exodus.dome.repository.ReactiveRefreshTokenRepository;
+import com.exodus.dome.repository.ReactiveUserRepository;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveAuthServiceTest {
+
+    @Mock
+    private ReactiveUserRepository userRepository;
+
+    @Mock
+    private ReactiveRefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private ReactiveRefreshTokenCacheService refreshTokenCacheService;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private RefreshTokenPersistenceService refreshTokenPersistenceService;
+
+    @Mock
+    private EmailBloomFilterService emailBloomFilterService;
+
+    @Mock
+    private StatelessRefreshTokenService statelessRefreshTokenService;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private UserEntity testUser;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        testUser = new UserEntity(UUID.randomUUID(), "test@example.com", "hashedPassword", UserRole.RIDER,
+                true, Instant.now(), null);
+
+        lenient().when(emailBloomFilterService.mightContain(anyString())).thenReturn(true);
+        lenient().when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(refreshTokenCacheService.deleteToken(anyString())).thenReturn(Mono.empty());
+        lenient().when(refreshTokenCacheService.storeToken(anyString(), any(), any(), any(), anyInt(), anyLong()))
+                .thenReturn(Mono.just(List.of()));
+        lenient().when(refreshTokenRepository.insert(any())).thenReturn(Mono.empty());
+        lenient().when(jwtService.generateAccessToken(any(UserEntity.class))).thenReturn("access-token");
+    }
+
+    private ReactiveAuthService service(boolean cacheAuthoritative) {
+        return new ReactiveAuthService(userRepository, refreshTokenRepository, refreshTokenCacheService,
+                passwordEncoder, jwtService, 1209600L, refreshTokenPersistenceService, cacheAuthoritative,
+                emailBloomFilterService, statelessRefreshTokenService, transactionalOperator, meterRegistry);
+    }
+
+    private RefreshToken storedToken(String token, Instant revokedAt) {
+        UUID id = UUID.randomUUID();
+        return new RefreshToken(id, testUser, token, id, 2, Instant.now().plusSeconds(3600),
+                Instant.now(), revokedAt);
+    }
+
+    private RefreshRequest refreshRequest(String token) {
+        RefreshRequest request = new RefreshRequest();
+        request.setRefreshToken(token);
+        return request;
+    }
+
+    // ==================== Login Tests ====================
+
+    @Test
+    void login_withValidCredentials_shouldStoreNewFamily() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("correctPassword");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Mono.just(testUser));
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+
+        AuthResponse response = service(false).login(request).block();
+
+        assertEquals("access-token", response.getAccessToken());
+        ArgumentCaptor<RefreshToken> inserted = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).insert(inserted.capture());
+        assertArrayEquals(RefreshTokenHasher.hash(response.getRefreshToken()), inserted.getValue().getTokenHash());
+        assertEquals(0, inserted.getValue().getGeneration());
+        verify(refreshTokenCacheService).storeToken(eq(response.getRefreshToken()), eq(testUser.getId()),
+                eq(UserRole.RIDER), eq(inserted.getValue().getFamilyId()), eq(0), eq(1209600L));
+    }
+
+    @Test
+    void login_withWrongPassword_shouldFail() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("wrongPassword");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Mono.just(testUser));
+        when(passwordEncoder.matches("wrongPassword", "hashedPassword")).thenReturn(false);
+
+        assertThrows(PasswordNotCorrectException.class, () -> service(false).login(request).block());
+        verify(refreshTokenRepository, never()).insert(any());
+    }
+
+    @Test
+    void login_withEmailOutsideFilter_shouldNotQueryDatabase() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("unknown@example.com");
+        request.setPassword("password");
+        when(emailBloomFilterService.mightContain("unknown@example.com")).thenReturn(false);
+
+        assertThrows(UserNotFoundException.class, () -> service(false).login(request).block());
+        verifyNoInteractions(userRepository);
+    }
+
+    // ==================== Refresh Tests ====================
+
+    @Test
+    void refresh_withLiveToken_shouldRevokeOldAndInsertNextGeneration() {
+        RefreshToken stored = storedToken("old-token", null);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(1L));
+
+        AuthResponse response = service(false).refresh(refreshRequest("old-token")).block();
+
+        assertNotEquals("old-token", response.getRefreshToken());
+        ArgumentCaptor<RefreshToken> inserted = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).insert(inserted.capture());
+        assertEquals(stored.getFamilyId(), inserted.getValue().getFamilyId());
+        assertEquals(3, inserted.getValue().getGeneration());
+        verify(refreshTokenCacheService).deleteToken("old-token");
+        verify(transactionalOperator).transactional(any(Mono.class));
+    }
+
+    @Test
+    void refresh_whenConcurrentRefreshWonTheRevoke_shouldRejectWithoutNewToken() {
+        RefreshToken stored = storedToken("old-token", null);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(0L));
+
+        assertThrows(InvalidRefreshTokenException.class,
+                () -> service(false).refresh(refreshRequest("old-token")).block());
+        verify(refreshTokenRepository, never()).insert(any());
+    }
+
+    @Test
+    void refresh_withRevokedToken_shouldRevokeWholeFamily() {
+        RefreshToken stored = storedToken("old-token", Instant.now().minusSeconds(10));
+        byte[] liveHash = RefreshTokenHasher.hash("newest-token");
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revokeFamily(eq(stored.getFamilyId()), any())).thenReturn(Flux.just(liveHash));
+        when(refreshTokenPersistenceService.revokePendingForFamily(eq(stored.getFamilyId()), any()))
+                .thenReturn(List.of());
+        when(refreshTokenCacheService.revokeFamily(any(), any(), any())).thenReturn(Mono.empty());
+
+        assertThrows(InvalidRefreshTokenException.class,
+                () -> service(false).refresh(refreshRequest("old-token")).block());
+        verify(refreshTokenCacheService).revokeFamily(stored.getFamilyId(), testUser.getId(),
+                List.of(RefreshTokenHasher.toKey(liveHash)));
+        verify(refreshTokenRepository, never()).insert(any());
+    }
+
+    @Test
+    void refresh_withUnknownToken_shouldFailWithNotFound() {
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.empty());
+
+        assertThrows(RefreshTokenNotFoundException.class,
+                () -> service(false).refresh(refreshRequest("unknown")).block());
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_shouldRotateInRedisAndQueueDbWrites() {
+        UUID familyId = UUID.randomUUID();
+        when(refreshTokenCacheService.rotateToken(eq("old-token"), anyString(), eq(1209600L)))
+                .thenReturn(Mono.just(new RefreshTokenRotation(RefreshTokenRotationStatus.ROTATED,
+                        testUser.getId(), UserRole.RIDER, familyId, 4)));
+        when(jwtService.generateAccessToken(testUser.getId(), UserRole.RIDER)).thenReturn("cached-access");
+
+        AuthResponse response = service(true).refresh(refreshRequest("old-token")).block();
+
+        assertEquals("cached-access", response.getAccessToken());
+        verify(refreshTokenPersistenceService).persistRotation(eq(RefreshTokenHasher.hashKey("old-token")),
+                eq(RefreshTokenHasher.hashKey(response.getRefreshToken())), eq(testUser.getId()), eq(familyId),
+                eq(4), any(), any());
+        verifyNoInteractions(refreshTokenRepository);
+    }
+
+    // ==================== Write-Behind Tests ====================
+
+    @Test
+    void refresh_withWriteBehind_rightAfterLogin_shouldWriteTheQueuedTokenBeforeLookingItUp() {
+        RefreshToken stored = storedToken("fresh-token", null);
+        String tokenHash = RefreshTokenHasher.hashKey("fresh-token");
+        when(refreshTokenPersistenceService.isWriteBehindEnabled()).thenReturn(true);
+        when(refreshTokenPersistenceService.isPending(tokenHash)).thenReturn(true);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(1L));
+
+        AuthResponse response = service(false).refresh(refreshRequest("fresh-token")).block();
+
+        assertNotNull(response.getRefreshToken());
+        InOrder inOrder = inOrder(refreshTokenPersistenceService, refreshTokenRepository);
+        inOrder.verify(refreshTokenPersistenceService).flushPending(tokenHash);
+        inOrder.verify(refreshTokenRepository).findByTokenHash(any());
+        inOrder.verify(refreshTokenRepository).revoke(eq(stored.getTokenHash()), any());
+        inOrder.verify(refreshTokenPersistenceService).enqueueInsert(any(RefreshToken.class));
+        verify(refreshTokenRepository, never()).insert(any());
+        verify(refreshTokenPersistenceService, never()).enqueueRevoke(anyString(), any());
+    }
+
+    @Test
+    void refresh_withWriteBehind_whenConcurrentRefreshWonTheRevoke_shouldRejectWithoutNewToken() {
+        RefreshToken stored = storedToken("old-token", null);
+        when(refreshTokenPersistenceService.isWriteBehindEnabled()).thenReturn(true);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(0L));
+
+        assertThrows(InvalidRefreshTokenException.class,
+                () -> service(false).refresh(refreshRequest("old-token")).block());
+        verify(refreshTokenPersistenceService, never()).enqueueInsert(any());
+        verify(refreshTokenRepository, never()).insert(any());
+    }
+
+    @Test
+    void refresh_withNothingQueued_shouldNotFlush() {
+        RefreshToken stored = storedToken("old-token", null);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(1L));
+
+        service(false).refresh(refreshRequest("old-token")).block();
+
+        verify(refreshTokenPersistenceService, never()).flushPending(anyString());
+    }
+
+    @Test
+    void logout_withWriteBehind_rightAfterLogin_shouldWriteTheQueuedTokenBeforeLookingItUp() {
+        RefreshToken stored = storedToken("fresh-token", null);
+        String tokenHash = RefreshTokenHasher.hashKey("fresh-token");
+        when(refreshTokenPersistenceService.isWriteBehindEnabled()).thenReturn(true);
+        when(refreshTokenPersistenceService.isPending(tokenHash)).thenReturn(true);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("fresh-token");
+
+        service(false).logout(request).block();
+
+        InOrder inOrder = inOrder(refreshTokenPersistenceService, refreshTokenRepository);
+        inOrder.verify(refreshTokenPersistenceService).flushPending(tokenHash);
+        inOrder.verify(refreshTokenRepository).findByTokenHash(any());
+        inOrder.verify(refreshTokenPersistenceService).enqueueRevoke(eq(tokenHash), any());
+        verify(refreshTokenCacheService).deleteToken("fresh-token");
+    }
+
+    // ==================== Logout Tests ====================
+
+    @Test
+    void logout_withLiveToken_shouldRevokeAndDropFromCache() {
+        RefreshToken stored = storedToken("token", null);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(1L));
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("token");
+
+        service(false).logout(request).block();
+
+        verify(refreshTokenRepository).revoke(eq(stored.getTokenHash()), any());
+        verify(refreshTokenCacheService).deleteToken("token");
+    }
+
+    @Test
+    void logout_withRevokedToken_shouldDoNothing() {
+        RefreshToken stored = storedToken("token", Instant.now());
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        LogoutRequest request = new LogoutRequest();
+        request.setRefreshToken("token");
+
+        service(false).logout(request).block();
+
+        verify(refreshTokenRepository, never()).revoke(any(), any());
+        verify(refreshTokenCacheService, never()).deleteToken(anyString());
+    }
+
+    // ==================== Metrics Tests ====================
+
+    private long refreshCount(String outcome) {
+        return meterRegistry.get("auth.refresh").tag("outcome", outcome).timer().count();
+    }
+
+    @Test
+    void refresh_fromDatabase_shouldRecordMiss() {
+        RefreshToken stored = storedToken("old-token", null);
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revoke(eq(stored.getTokenHash()), any())).thenReturn(Mono.just(1L));
+
+        Mono<AuthResponse> refresh = service(false).refresh(refreshRequest("old-token"));
+        assertEquals(0, refreshCount("miss"));
+        refresh.block();
+
+        assertEquals(1, refreshCount("miss"));
+        assertEquals(0, refreshCount("hit"));
+    }
+
+    @Test
+    void refresh_cacheAuthoritative_shouldRecordHit() {
+        when(refreshTokenCacheService.rotateToken(eq("old-token"), anyString(), eq(1209600L)))
+                .thenReturn(Mono.just(new RefreshTokenRotation(RefreshTokenRotationStatus.ROTATED,
+                        testUser.getId(), UserRole.RIDER, UUID.randomUUID(), 4)));
+
+        service(true).refresh(refreshRequest("old-token")).block();
+
+        assertEquals(1, refreshCount("hit"));
+    }
+
+    @Test
+    void refresh_withRevokedToken_shouldRecordRevoked() {
+        RefreshToken stored = storedToken("old-token", Instant.now().minusSeconds(10));
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.just(stored));
+        when(refreshTokenRepository.revokeFamily(eq(stored.getFamilyId()), any())).thenReturn(Flux.empty());
+        when(refreshTokenPersistenceService.revokePendingForFamily(eq(stored.getFamilyId()), any()))
+                .thenReturn(List.of());
+        when(refreshTokenCacheService.revokeFamily(any(), any(), any())).thenReturn(Mono.empty());
+
+        assertThrows(InvalidRefreshTokenException.class,
+                () -> service(false).refresh(refreshRequest("old-token")).block());
+
+        assertEquals(1, refreshCount("revoked"));
+    }
+
+    @Test
+    void refresh_withUnknownToken_shouldRecordNotFound() {
+        when(refreshTokenRepository.findByTokenHash(any())).thenReturn(Mono.empty());
+
+        assertThrows(RefreshTokenNotFoundException.class,
+                () -> service(false).refresh(refreshRequest("unknown")).block());
+
+        assertEquals(1, refreshCount("not-found"));
+    }
+
+    @Test
+    void login_shouldRecordOutcome() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("wrongPassword");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Mono.just(testUser));
+        when(passwordEncoder.matches("wrongPassword", "hashedPassword")).thenReturn(false);
+        when(passwordEncoder.matches("correctPassword", "hashedPassword")).thenReturn(true);
+
+        ReactiveAuthService service = service(false);
+        assertThrows(PasswordNotCorrectException.class, () -> service.login(request).block());
+        request.setPassword("correctPassword");
+        service.login(request).block();
+
+        assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "bad-password").timer().count());
+        assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void login_withEmailOutsideFilter_shouldRecordUnknownEmail() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("unknown@example.com");
+        request.setPassword("password");
+        when(emailBloomFilterService.mightContain("unknown@example.com")).thenReturn(false);
+
+        assertThrows(UserNotFoundException.class, () -> service(false).login(request).block());
+
+        assertEquals(1, meterRegistry.get("auth.login").tag("outcome", "unknown-email").timer().count());
+    }
+}
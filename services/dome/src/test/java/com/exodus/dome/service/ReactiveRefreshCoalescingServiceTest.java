@@ -0,0 +1,161 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import com.exodus.dome.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveRefreshCoalescingServiceTest {
+
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private ReactiveRefreshCoalescingService service;
+
+    @BeforeEach
+    void setUp() {
+        service = newService(redisTemplate, 3000);
+        lenient().doReturn(Flux.just(1L)).when(redisTemplate)
+                .execute(eq(RefreshCoalescingService.RELEASE_SCRIPT), anyList(), anyList());
+    }
+
+    private ReactiveRefreshCoalescingService newService(ReactiveStringRedisTemplate template, long waitMillis) {
+        return new ReactiveRefreshCoalescingService(template, new SimpleMeterRegistry(), true,
+                5000, 10000, waitMillis, 5, 1);
+    }
+
+    private void acquireReturns(Flux<String> result) {
+        doReturn(result).when(redisTemplate)
+                .execute(eq(RefreshCoalescingService.ACQUIRE_SCRIPT), anyList(), anyList());
+    }
+
+    // ==================== Local Coalescing Tests ====================
+
+    @Test
+    void coalesce_whenDisabled_shouldRefreshWithoutRedis() {
+        ReactiveRefreshCoalescingService disabled = new ReactiveRefreshCoalescingService(redisTemplate,
+                new SimpleMeterRegistry(), false, 5000, 10000, 3000, 5, 1);
+
+        AuthResponse response = disabled.coalesce("token", () -> Mono.just(new AuthResponse("a", "r", 60L)))
+                .block();
+
+        assertEquals("a", response.getAccessToken());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void coalesce_withConcurrentCallers_shouldRefreshOnce() {
+        acquireReturns(Flux.just(""));
+        AtomicInteger refreshes = new AtomicInteger();
+        Sinks.One<AuthResponse> leaderResult = Sinks.one();
+
+        Mono<AuthResponse> leader = service.coalesce("shared", () -> {
+            refreshes.incrementAndGet();
+            return leaderResult.asMono();
+        }).cache();
+        leader.subscribe();
+        Mono<AuthResponse> follower = service.coalesce("shared", () -> {
+            refreshes.incrementAndGet();
+            return Mono.just(new AuthResponse("other", "other", 60L));
+        }).cache();
+        follower.subscribe();
+
+        leaderResult.tryEmitValue(new AuthResponse("access", "rotated", 60L));
+
+        assertEquals("rotated", leader.block(Duration.ofSeconds(5)).getRefreshToken());
+        assertEquals("rotated", follower.block(Duration.ofSeconds(5)).getRefreshToken());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    void coalesce_whenLeaderFails_shouldGiveFollowersSameErrorAndDropTheLease() {
+        acquireReturns(Flux.just(""));
+        Sinks.One<AuthResponse> leaderResult = Sinks.one();
+
+        Mono<AuthResponse> leader = service.coalesce("reused", leaderResult::asMono).cache();
+        leader.subscribe(response -> { }, error -> { });
+        Mono<AuthResponse> follower = service.coalesce("reused",
+                () -> Mono.just(new AuthResponse("a", "r", 60L))).cache();
+        follower.subscribe(response -> { }, error -> { });
+
+        leaderResult.tryEmitError(new InvalidRefreshTokenException("Refresh token is expired or revoked"));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> leader.block(Duration.ofSeconds(5)));
+        assertThrows(InvalidRefreshTokenException.class, () -> follower.block(Duration.ofSeconds(5)));
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate).execute(eq(RefreshCoalescingService.RELEASE_SCRIPT), anyList(), args.capture());
+        assertEquals(2, args.getValue().size()); // no result published
+    }
+
+    // ==================== Cross-Node Tests ====================
+
+    @Test
+    void coalesce_withLease_shouldPublishResultTheBlockingServiceCanRead() {
+        acquireReturns(Flux.just(""));
+
+        service.coalesce("shared", () -> Mono.just(new AuthResponse("access", "rotated", 60L))).block();
+
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate).execute(eq(RefreshCoalescingService.RELEASE_SCRIPT), anyList(), args.capture());
+        String sealed = args.getValue().get(2);
+        assertFalse(sealed.contains("rotated"));
+        assertEquals("rotated", RefreshCoalescingService.decrypt("shared", sealed).getRefreshToken());
+    }
+
+    @Test
+    void coalesce_whenResultPublishedWhileWaiting_shouldReturnItWithoutRefreshing() {
+        String sealed = RefreshCoalescingService.encrypt("shared", new AuthResponse("access", "rotated", 60L));
+        AtomicInteger polls = new AtomicInteger();
+        doAnswer(invocation -> polls.incrementAndGet() < 3 ? Flux.empty() : Flux.just(sealed))
+                .when(redisTemplate).execute(eq(RefreshCoalescingService.ACQUIRE_SCRIPT), anyList(), anyList());
+
+        AuthResponse joined = service.coalesce("shared",
+                () -> Mono.error(new AssertionError("should not refresh again"))).block(Duration.ofSeconds(5));
+
+        assertEquals("access", joined.getAccessToken());
+        assertEquals("rotated", joined.getRefreshToken());
+        assertEquals(60L, joined.getExpiresIn());
+        assertEquals(3, polls.get());
+    }
+
+    @Test
+    void coalesce_whenLeaseHeldElsewhereTooLong_shouldFailWithServiceOverloaded() {
+        ReactiveRefreshCoalescingService impatient = newService(redisTemplate, 50);
+        acquireReturns(Flux.empty());
+
+        assertThrows(ServiceOverloadedException.class, () -> impatient.coalesce("shared",
+                () -> Mono.just(new AuthResponse("a", "r", 60L))).block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void coalesce_whenRedisDown_shouldRefreshAnyway() {
+        acquireReturns(Flux.error(new RedisConnectionFailureException("down")));
+
+        AuthResponse response = service.coalesce("shared",
+                () -> Mono.just(new AuthResponse("a", "r", 60L))).block();
+
+        assertEquals("r", response.getRefreshToken());
+        verify(redisTemplate, never()).execute(eq(RefreshCoalescingService.RELEASE_SCRIPT), anyList(), anyList());
+    }
+}
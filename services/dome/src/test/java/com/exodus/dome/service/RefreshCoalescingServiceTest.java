@@ -0,0 +1,189 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.dto.AuthResponse;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import com.exodus.dome.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshCoalescingServiceTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private RefreshCoalescingService service;
+
+    @BeforeEach
+    void setUp() {
+        service = newService(redisTemplate, 3000);
+    }
+
+    private RefreshCoalescingService newService(StringRedisTemplate template, long waitMillis) {
+        return new RefreshCoalescingService(template, new SimpleMeterRegistry(), true,
+                5000, 10000, waitMillis, 5, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void leaseAlwaysGranted() {
+        lenient().when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString()))
+                .thenReturn("");
+    }
+
+    // ==================== Local Coalescing Tests ====================
+
+    @Test
+    void coalesce_whenDisabled_shouldRefreshWithoutRedis() {
+        RefreshCoalescingService disabled = new RefreshCoalescingService(redisTemplate,
+                new SimpleMeterRegistry(), false, 5000, 10000, 3000, 5, 1);
+
+        AuthResponse response = disabled.coalesce("token", () -> new AuthResponse("a", "r", 60L));
+
+        assertEquals("a", response.getAccessToken());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void coalesce_withConcurrentCallers_shouldRefreshOnce() throws Exception {
+        leaseAlwaysGranted();
+        AtomicInteger refreshes = new AtomicInteger();
+        CountDownLatch leaderInside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<AuthResponse> leader = executor.submit(() -> service.coalesce("shared", () -> {
+                refreshes.incrementAndGet();
+                leaderInside.countDown();
+                await(release);
+                return new AuthResponse("access", "rotated", 60L);
+            }));
+            assertTrue(leaderInside.await(5, TimeUnit.SECONDS));
+
+            Future<AuthResponse> follower1 = executor.submit(() -> service.coalesce("shared", () -> {
+                refreshes.incrementAndGet();
+                return new AuthResponse("other", "other", 60L);
+            }));
+            Future<AuthResponse> follower2 = executor.submit(() -> service.coalesce("shared", () -> {
+                refreshes.incrementAndGet();
+                return new AuthResponse("other", "other", 60L);
+            }));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals("rotated", leader.get(5, TimeUnit.SECONDS).getRefreshToken());
+            assertEquals("rotated", follower1.get(5, TimeUnit.SECONDS).getRefreshToken());
+            assertEquals("rotated", follower2.get(5, TimeUnit.SECONDS).getRefreshToken());
+            assertEquals(1, refreshes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void coalesce_whenLeaderFails_shouldGiveFollowersSameException() throws Exception {
+        leaseAlwaysGranted();
+        CountDownLatch leaderInside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<AuthResponse> leader = executor.submit(() -> service.coalesce("reused", () -> {
+                leaderInside.countDown();
+                await(release);
+                throw new InvalidRefreshTokenException("Refresh token is expired or revoked");
+            }));
+            assertTrue(leaderInside.await(5, TimeUnit.SECONDS));
+            Future<AuthResponse> follower = executor.submit(() -> service.coalesce("reused",
+                    () -> new AuthResponse("a", "r", 60L)));
+            Thread.sleep(100);
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(InvalidRefreshTokenException.class, leaderError.getCause());
+            assertInstanceOf(InvalidRefreshTokenException.class, followerError.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // ==================== Cross-Node Tests ====================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalesce_withLease_shouldPublishEncryptedResultOtherNodesCanRead() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString()))
+                .thenReturn("");
+
+        service.coalesce("shared", () -> new AuthResponse("access", "rotated", 60L));
+
+        ArgumentCaptor<Object> published = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate).execute(any(RedisScript.class), anyList(), anyString(), anyString(),
+                (String) published.capture());
+        String sealed = (String) published.getValue();
+        assertFalse(sealed.contains("rotated"));
+
+        StringRedisTemplate otherNodeRedis = mock(StringRedisTemplate.class);
+        when(otherNodeRedis.execute(any(RedisScript.class), anyList(), anyString(), anyString()))
+                .thenReturn(sealed);
+        AuthResponse joined = newService(otherNodeRedis, 3000).coalesce("shared", () -> {
+            throw new AssertionError("should not refresh again");
+        });
+
+        assertEquals("access", joined.getAccessToken());
+        assertEquals("rotated", joined.getRefreshToken());
+        assertEquals(60L, joined.getExpiresIn());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalesce_whenLeaseHeldElsewhereTooLong_shouldThrowServiceOverloaded() {
+        RefreshCoalescingService impatient = newService(redisTemplate, 50);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString()))
+                .thenReturn(null);
+
+        assertThrows(ServiceOverloadedException.class,
+                () -> impatient.coalesce("shared", () -> new AuthResponse("a", "r", 60L)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalesce_whenRedisDown_shouldRefreshAnyway() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        AuthResponse response = service.coalesce("shared", () -> new AuthResponse("a", "r", 60L));
+
+        assertEquals("r", response.getRefreshToken());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
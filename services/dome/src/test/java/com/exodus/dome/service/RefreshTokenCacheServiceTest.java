@@ -1,19 +1,30 @@
 package com.exodus.dome.service;
 
+import com.exodus.dome.entity.valueObject.RefreshSession;
+import com.exodus.dome.entity.valueObject.RefreshTokenRotation;
+import com.exodus.dome.enums.RefreshTokenRotationStatus;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 
-import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -26,28 +37,32 @@ class RefreshTokenCacheServiceTest {
     @Mock
     private ValueOperations<String, String> valueOperations;
 
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
     private RefreshTokenCacheService refreshTokenCacheService;
 
     @BeforeEach
     void setUp() {
-        refreshTokenCacheService = new RefreshTokenCacheService(redisTemplate);
+        refreshTokenCacheService = new RefreshTokenCacheService(redisTemplate, 300L, 0, new SimpleMeterRegistry());
     }
 
     @Test
-    void storeToken_shouldStoreTokenWithTTL() {
+    @SuppressWarnings("unchecked")
+    void storeToken_shouldStoreTokenAndIndexItForUser() {
         String token = "test-refresh-token";
         UUID userId = UUID.randomUUID();
         long ttlInSeconds = 1209600L; // 14 days
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-
         refreshTokenCacheService.storeToken(token, userId, ttlInSeconds);
 
-        verify(redisTemplate).opsForValue();
-        verify(valueOperations).set(
-                eq("refresh:token:" + token),
-                eq(userId.toString()),
-                eq(Duration.ofSeconds(ttlInSeconds)));
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("refresh:token:" + RefreshTokenHasher.hashKey(token), "refresh:user:" + userId)), args.capture());
+        assertEquals(userId.toString(), args.getValue()[0]);
+        assertEquals(String.valueOf(ttlInSeconds), args.getValue()[1]);
+        assertEquals(RefreshTokenHasher.hashKey(token), args.getValue()[2]);
+        assertEquals("0", args.getValue()[5]);
     }
 
     @Test
@@ -56,7 +71,7 @@ class RefreshTokenCacheServiceTest {
         UUID expectedUserId = UUID.randomUUID();
 
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get("refresh:token:" + token)).thenReturn(expectedUserId.toString());
+        when(valueOperations.get("refresh:token:" + RefreshTokenHasher.hashKey(token))).thenReturn(expectedUserId.toString());
 
         Optional<UUID> result = refreshTokenCacheService.getUserIdForToken(token);
 
@@ -69,7 +84,7 @@ class RefreshTokenCacheServiceTest {
         String token = "non-existing-token";
 
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get("refresh:token:" + token)).thenReturn(null);
+        when(valueOperations.get("refresh:token:" + RefreshTokenHasher.hashKey(token))).thenReturn(null);
 
         Optional<UUID> result = refreshTokenCacheService.getUserIdForToken(token);
 
@@ -81,7 +96,7 @@ class RefreshTokenCacheServiceTest {
         String token = "invalid-uuid-token";
 
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get("refresh:token:" + token)).thenReturn("not-a-valid-uuid");
+        when(valueOperations.get("refresh:token:" + RefreshTokenHasher.hashKey(token))).thenReturn("not-a-valid-uuid");
 
         Optional<UUID> result = refreshTokenCacheService.getUserIdForToken(token);
 
@@ -89,29 +104,55 @@ class RefreshTokenCacheServiceTest {
     }
 
     @Test
-    void deleteToken_shouldDeleteFromRedis() {
+    @SuppressWarnings("unchecked")
+    void deleteToken_shouldDeleteTokenAndIndexEntryInOneScript() {
         String token = "token-to-delete";
 
         refreshTokenCacheService.deleteToken(token);
 
-        verify(redisTemplate).delete("refresh:token:" + token);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("refresh:token:" + RefreshTokenHasher.hashKey(token))),
+                eq(RefreshTokenHasher.hashKey(token)), eq("refresh:user:"), eq("rotated"));
     }
 
     @Test
-    void storeToken_multipleTokens_shouldStoreAll() {
-        String token1 = "token-1";
-        String token2 = "token-2";
-        UUID userId1 = UUID.randomUUID();
-        UUID userId2 = UUID.randomUUID();
-        long ttl = 3600L;
+    @SuppressWarnings("unchecked")
+    void revokeAllSessions_shouldDropIndexAndKnownTokensInOneScript() {
+        UUID userId = UUID.randomUUID();
 
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        refreshTokenCacheService.revokeAllSessions(userId, List.of("token-1", "token-2"));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("refresh:user:" + userId)),
+                eq("refresh:token:"), eq("token-1"), eq("token-2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getActiveSessions_shouldReadUserIndexFromNow() {
+        UUID userId = UUID.randomUUID();
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.rangeByScoreWithScores(eq("refresh:user:" + userId), anyDouble(),
+                eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(new LinkedHashSet<>(List.of(ZSetOperations.TypedTuple.of("token-1", (double) expiresAt))));
+
+        List<RefreshSession> sessions = refreshTokenCacheService.getActiveSessions(userId);
+
+        assertEquals(1, sessions.size());
+        assertEquals("token-1", sessions.get(0).getTokenHash());
+        assertEquals(expiresAt, sessions.get(0).getExpiresAt().toEpochMilli());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storeToken_overSessionCap_shouldReturnEvictedTokens() {
+        RefreshTokenCacheService capped = new RefreshTokenCacheService(redisTemplate, 300L, 2, new SimpleMeterRegistry());
+        UUID userId = UUID.randomUUID();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of("oldest"));
 
-        refreshTokenCacheService.storeToken(token1, userId1, ttl);
-        refreshTokenCacheService.storeToken(token2, userId2, ttl);
+        List<String> evicted = capped.storeToken("newest", userId, UserRole.RIDER, UUID.randomUUID(), 0, 3600L);
 
-        verify(valueOperations).set(eq("refresh:token:" + token1), eq(userId1.toString()), any(Duration.class));
-        verify(valueOperations).set(eq("refresh:token:" + token2), eq(userId2.toString()), any(Duration.class));
+        assertEquals(List.of("oldest"), evicted);
     }
 
     @Test
@@ -119,10 +160,131 @@ class RefreshTokenCacheServiceTest {
         String token = "";
 
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(valueOperations.get("refresh:token:")).thenReturn(null);
+        when(valueOperations.get("refresh:token:" + RefreshTokenHasher.hashKey(token))).thenReturn(null);
 
         Optional<UUID> result = refreshTokenCacheService.getUserIdForToken(token);
 
         assertTrue(result.isEmpty());
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storeToken_withRole_shouldStoreUserIdRoleAndFamily() {
+        String token = "role-token";
+        UUID userId = UUID.randomUUID();
+        UUID familyId = UUID.randomUUID();
+
+        refreshTokenCacheService.storeToken(token, userId, UserRole.DRIVER, familyId, 3, 3600L);
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("refresh:token:" + RefreshTokenHasher.hashKey(token), "refresh:user:" + userId,
+                        "refresh:family:" + familyId)), args.capture());
+        assertEquals(userId + "|DRIVER|" + familyId + "|3", args.getValue()[0]);
+    }
+
+    @Test
+    void getUserIdForToken_whenValueHasRole_shouldReturnUserId() {
+        String token = "role-token";
+        UUID expectedUserId = UUID.randomUUID();
+
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("refresh:token:" + RefreshTokenHasher.hashKey(token))).thenReturn(expectedUserId + "|RIDER");
+
+        Optional<UUID> result = refreshTokenCacheService.getUserIdForToken(token);
+
+        assertEquals(Optional.of(expectedUserId), result);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenTokenCached_shouldReturnRotatedUser() {
+        UUID userId = UUID.randomUUID();
+        UUID familyId = UUID.randomUUID();
+
+        String oldHash = RefreshTokenHasher.hashKey("old");
+        String newHash = RefreshTokenHasher.hashKey("new");
+        when(redisTemplate.execute(any(RedisScript.class),
+                eq(List.of("refresh:token:" + oldHash, "refresh:token:" + newHash)),
+                eq("3600"), eq("rotated"), eq("300"), eq("refresh:user:"), eq(oldHash), eq(newHash), anyString(),
+                eq("refresh:family:"), eq("refresh:token:")))
+                .thenReturn(userId + "|RIDER|" + familyId + "|2");
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.ROTATED, rotation.getStatus());
+        assertEquals(userId, rotation.getUserId());
+        assertEquals(UserRole.RIDER, rotation.getRole());
+        assertEquals(familyId, rotation.getFamilyId());
+        assertEquals(2, rotation.getGeneration());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenValueHasNoFamily_shouldReturnNotFound() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(UUID.randomUUID() + "|RIDER");
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.NOT_FOUND, rotation.getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenOldGenerationReused_shouldReturnFamily() {
+        UUID userId = UUID.randomUUID();
+        UUID familyId = UUID.randomUUID();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn("rotated|" + userId + "|" + familyId);
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.ALREADY_ROTATED, rotation.getStatus());
+        assertEquals(userId, rotation.getUserId());
+        assertEquals(familyId, rotation.getFamilyId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokeFamily_shouldRunOneScriptKeyedByFamily() {
+        UUID userId = UUID.randomUUID();
+        UUID familyId = UUID.randomUUID();
+
+        refreshTokenCacheService.revokeFamily(familyId, userId, List.of("hash-1"));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("refresh:family:" + familyId)),
+                eq("refresh:user:" + userId), eq("refresh:token:"), eq("hash-1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenTokenMissing_shouldReturnNotFound() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(null);
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.NOT_FOUND, rotation.getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenTokenAlreadyRotated_shouldReturnAlreadyRotated() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn("rotated");
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.ALREADY_ROTATED, rotation.getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotateToken_whenValueHasNoRole_shouldReturnNotFound() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(UUID.randomUUID().toString());
+
+        RefreshTokenRotation rotation = refreshTokenCacheService.rotateToken("old", "new", 3600L);
+
+        assertEquals(RefreshTokenRotationStatus.NOT_FOUND, rotation.getStatus());
+    }
 }
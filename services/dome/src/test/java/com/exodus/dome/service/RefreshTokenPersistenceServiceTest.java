@@ -0,0 +1,261 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.RefreshToken;
+import com.exodus.dome.entity.UserEntity;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.security.RefreshTokenHasher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenPersistenceServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path tempDir;
+
+    private RefreshTokenPersistenceService service;
+
+    // Long flush interval, tests flush by hand
+    private RefreshTokenPersistenceService newService(Path journal, int maxPending) {
+        RefreshTokenPersistenceService created = new RefreshTokenPersistenceService(
+                jdbcTemplate, transactionManager, true, 500, maxPending, 3_600_000L,
+                journal != null ? journal.toString() : "", false, "auth");
+        created.start();
+        return created;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private RefreshToken newToken(String value) {
+        UserEntity user = new UserEntity(UUID.randomUUID(), "test@example.com", "hash",
+                UserRole.RIDER, true, Instant.now(), null);
+        return new RefreshToken(UUID.randomUUID(), user, value,
+                Instant.now().plusSeconds(3600), Instant.now(), null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldBatchInsertsAndRevokes() {
+        service = newService(null, 100);
+
+        service.enqueueInsert(newToken("token-1"));
+        service.enqueueInsert(newToken("token-2"));
+        service.enqueueRevoke(RefreshTokenHasher.hashKey("token-3"), Instant.now());
+        service.flush();
+
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO auth.refresh_tokens"), inserts.capture());
+        assertEquals(2, inserts.getValue().size());
+
+        ArgumentCaptor<List<Object[]>> revokes = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE auth.refresh_tokens"), revokes.capture());
+        assertArrayEquals(RefreshTokenHasher.hash("token-3"), (byte[]) revokes.getValue().get(0)[1]);
+        assertEquals(0, service.pendingCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void enqueueRevoke_forQueuedInsert_shouldInsertRevokedRow() {
+        service = newService(null, 100);
+
+        service.enqueueInsert(newToken("token-1"));
+        service.enqueueRevoke(RefreshTokenHasher.hashKey("token-1"), Instant.now());
+        service.flush();
+
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), inserts.capture());
+        assertEquals(1, inserts.getValue().size());
+        assertNotNull(inserts.getValue().get(0)[7]);
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("UPDATE"), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokePendingForUser_shouldRevokeOnlyThatUsersQueuedInserts() {
+        service = newService(null, 100);
+        RefreshToken mine = newToken("mine");
+        RefreshToken other = newToken("other");
+        service.enqueueInsert(mine);
+        service.enqueueInsert(other);
+
+        List<String> revoked = service.revokePendingForUser(mine.getUser().getId(), Instant.now());
+        service.flush();
+
+        assertEquals(List.of(RefreshTokenHasher.hashKey("mine")), revoked);
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), inserts.capture());
+        assertNotNull(inserts.getValue().get(0)[7]);
+        assertNull(inserts.getValue().get(1)[7]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokePendingForFamily_shouldRevokeOnlyThatFamilysQueuedInserts() {
+        service = newService(null, 100);
+        RefreshToken family = newToken("family");
+        RefreshToken other = newToken("other");
+        service.enqueueInsert(family);
+        service.enqueueInsert(other);
+
+        List<String> revoked = service.revokePendingForFamily(family.getFamilyId(), Instant.now());
+        service.flush();
+
+        assertEquals(List.of(RefreshTokenHasher.hashKey("family")), revoked);
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), inserts.capture());
+        assertEquals(family.getFamilyId(), inserts.getValue().get(0)[3]);
+        assertNotNull(inserts.getValue().get(0)[7]);
+        assertNull(inserts.getValue().get(1)[7]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushPending_shouldWriteOnlyThatTokenRightAway() {
+        service = newService(null, 100);
+        service.enqueueInsert(newToken("token-1"));
+        service.enqueueInsert(newToken("token-2"));
+
+        service.flushPending(RefreshTokenHasher.hashKey("token-1"));
+
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO auth.refresh_tokens"), inserts.capture());
+        assertEquals(1, inserts.getValue().size());
+        assertArrayEquals(RefreshTokenHasher.hash("token-1"), (byte[]) inserts.getValue().get(0)[2]);
+        assertEquals(1, service.pendingCount());
+    }
+
+    @Test
+    void flushPending_insideTransactionThatRollsBack_shouldKeepTheWriteQueued() {
+        service = newService(null, 100);
+        service.enqueueInsert(newToken("token-1"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.flushPending(RefreshTokenHasher.hashKey("token-1"));
+            assertEquals(1, service.pendingCount(), "must stay queued until the caller commits");
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // the insert went down with the caller's transaction, the next flush writes it again
+        assertEquals(1, service.pendingCount());
+        service.flush();
+        verify(jdbcTemplate, times(2)).batchUpdate(startsWith("INSERT INTO auth.refresh_tokens"), anyList());
+        assertEquals(0, service.pendingCount());
+    }
+
+    @Test
+    void flushPending_insideTransactionThatCommits_shouldSettleAfterCommit() {
+        service = newService(null, 100);
+        service.enqueueInsert(newToken("token-1"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.flushPending(RefreshTokenHasher.hashKey("token-1"));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, service.pendingCount());
+    }
+
+    @Test
+    void flushPending_withNothingQueued_shouldNotTouchDatabase() {
+        service = newService(null, 100);
+
+        service.flushPending(RefreshTokenHasher.hashKey("token-1"));
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void flush_whenDatabaseFails_shouldKeepWritesQueued() {
+        service = newService(null, 100);
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT"), anyList()))
+                .thenThrow(new IllegalStateException("db down"));
+
+        service.enqueueInsert(newToken("token-1"));
+
+        assertThrows(IllegalStateException.class, () -> service.flush());
+        assertEquals(1, service.pendingCount());
+    }
+
+    @Test
+    void enqueue_whenQueueFull_shouldWriteSynchronously() {
+        service = newService(null, 1);
+
+        service.enqueueInsert(newToken("token-1"));
+        service.enqueueInsert(newToken("token-2"));
+
+        assertEquals(1, service.pendingCount());
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), anyList());
+    }
+
+    @Test
+    void start_shouldReplayJournalLeftByPreviousRun() throws Exception {
+        Path journal = tempDir.resolve("journal.log");
+
+        RefreshTokenPersistenceService crashed = newService(journal, 100);
+        crashed.enqueueInsert(newToken("token-1"));
+        crashed.enqueueRevoke(RefreshTokenHasher.hashKey("token-2"), Instant.now());
+        assertTrue(Files.exists(journal));
+
+        service = newService(journal, 100);
+
+        assertEquals(2, service.pendingCount());
+        service.flush();
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), anyList());
+        verify(jdbcTemplate).batchUpdate(eq(
+                "UPDATE auth.refresh_tokens SET revoked_at = ? WHERE token_hash = ? AND revoked_at IS NULL"),
+                anyList());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void journal_shouldNeverContainRawTokens() throws Exception {
+        Path journal = tempDir.resolve("journal.log");
+        service = newService(journal, 100);
+
+        service.enqueueInsert(newToken("raw-refresh-token"));
+
+        String content = Files.readString(journal);
+        assertFalse(content.contains("raw-refresh-token"));
+        assertTrue(content.contains(RefreshTokenHasher.hashKey("raw-refresh-token")));
+    }
+}
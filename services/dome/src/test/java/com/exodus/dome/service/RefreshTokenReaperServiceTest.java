@@ -0,0 +1,124 @@
+package com.exodus.dome.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenReaperServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 14 day tokens, one day retention, no pause between chunks
+    private RefreshTokenReaperService newReaper(boolean enabled, int batchSize, int maxBatches) {
+        return new RefreshTokenReaperService(jdbcTemplate, transactionManager, meterRegistry,
+                enabled, batchSize, 0L, maxBatches, 86400L, false, 1209600L, "auth");
+    }
+
+    // ==================== Reap Tests ====================
+
+    @Test
+    void reap_shouldDeleteChunksUntilOneComesBackShort() {
+        RefreshTokenReaperService reaper = newReaper(true, 100, 10);
+        when(jdbcTemplate.update(startsWith("DELETE FROM auth.refresh_tokens"),
+                any(OffsetDateTime.class), any(OffsetDateTime.class), eq(100)))
+                .thenReturn(100, 100, 42);
+
+        int deleted = reaper.reap();
+
+        assertEquals(242, deleted);
+        verify(jdbcTemplate, times(3)).update(anyString(), any(), any(), any());
+        assertEquals(242.0, meterRegistry.counter("auth.refresh.reaper.deleted").count());
+    }
+
+    @Test
+    void reap_shouldStopAfterMaxBatchesPerRun() {
+        RefreshTokenReaperService reaper = newReaper(true, 100, 2);
+        when(jdbcTemplate.update(anyString(), any(), any(), any())).thenReturn(100);
+
+        int deleted = reaper.reap();
+
+        assertEquals(200, deleted);
+        verify(jdbcTemplate, times(2)).update(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void scheduledRun_whenDisabled_shouldNotTouchDatabase() {
+        newReaper(false, 100, 10).scheduledRun();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    // ==================== Partition Tests ====================
+
+    @Test
+    void maintainPartitions_shouldCreateUpcomingDaysAndDropExpiredOnes() {
+        RefreshTokenReaperService reaper = newReaper(true, 100, 10);
+        LocalDate today = LocalDate.of(2025, 3, 10);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("auth")))
+                .thenReturn(List.of("refresh_tokens_p20250307", "refresh_tokens_p20250308",
+                        "refresh_tokens_p20250309", "refresh_tokens_p20250310", "refresh_tokens_default"));
+
+        reaper.maintainPartitions(today);
+
+        // today plus 15 days ahead for 14 day tokens
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS auth.refresh_tokens_p20250310 "
+                + "PARTITION OF auth.refresh_tokens FOR VALUES FROM ('2025-03-10 00:00:00+00') "
+                + "TO ('2025-03-11 00:00:00+00')");
+        verify(jdbcTemplate).execute(startsWith("CREATE TABLE IF NOT EXISTS auth.refresh_tokens_p20250325 "));
+        verify(jdbcTemplate, never()).execute(startsWith("CREATE TABLE IF NOT EXISTS auth.refresh_tokens_p20250326 "));
+
+        // rows of the 8th expired before the 9th 00:00, one day retention keeps them until the 10th
+        verify(jdbcTemplate).execute("ALTER TABLE auth.refresh_tokens DETACH PARTITION auth.refresh_tokens_p20250307");
+        verify(jdbcTemplate).execute("DROP TABLE auth.refresh_tokens_p20250307");
+        verify(jdbcTemplate).execute("DROP TABLE auth.refresh_tokens_p20250308");
+        verify(jdbcTemplate, never()).execute("DROP TABLE auth.refresh_tokens_p20250309");
+        verify(jdbcTemplate, never()).execute("DROP TABLE auth.refresh_tokens_default");
+        assertEquals(2.0, meterRegistry.counter("auth.refresh.reaper.partitions.dropped").count());
+    }
+
+    @Test
+    void maintainPartitions_shouldRunEveryStatementInsideATransaction() {
+        RefreshTokenReaperService reaper = newReaper(true, 100, 10);
+        TransactionStatus status = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("auth")))
+                .thenReturn(List.of("refresh_tokens_p20250301"));
+
+        reaper.maintainPartitions(LocalDate.of(2025, 3, 10));
+
+        InOrder inOrder = inOrder(transactionManager, jdbcTemplate);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).execute(startsWith("CREATE TABLE IF NOT EXISTS auth.refresh_tokens_p20250310 "));
+        inOrder.verify(transactionManager).commit(status);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE auth.refresh_tokens DETACH PARTITION auth.refresh_tokens_p20250301");
+        inOrder.verify(jdbcTemplate).execute("DROP TABLE auth.refresh_tokens_p20250301");
+        inOrder.verify(transactionManager).commit(status);
+        // 16 creates and one detach and drop, each committed
+        verify(transactionManager, times(17)).commit(status);
+    }
+}
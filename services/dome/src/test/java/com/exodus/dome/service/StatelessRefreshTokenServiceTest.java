@@ -0,0 +1,132 @@
+package com.exodus.dome.service;
+
+import com.exodus.dome.entity.valueObject.RefreshTokenClaims;
+import com.exodus.dome.enums.UserRole;
+import com.exodus.dome.exception.InvalidRefreshTokenException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StatelessRefreshTokenServiceTest {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    private StatelessRefreshTokenService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StatelessRefreshTokenService(redisTemplate, true, SECRET, 3600L);
+    }
+
+    // ==================== Verify Tests ====================
+
+    @Test
+    void verify_ofIssuedToken_shouldReturnClaimsWithoutRedis() {
+        UUID userId = UUID.randomUUID();
+
+        RefreshTokenClaims claims = service.verify(service.issue(userId, UserRole.RIDER));
+
+        assertEquals(userId, claims.getUserId());
+        assertEquals(UserRole.RIDER, claims.getRole());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void verify_ofExpiredToken_shouldThrow() {
+        StatelessRefreshTokenService expiring = new StatelessRefreshTokenService(redisTemplate, true, SECRET, 0L);
+        String token = expiring.issue(UUID.randomUUID(), UserRole.RIDER);
+
+        assertThrows(InvalidRefreshTokenException.class, () -> expiring.verify(token));
+    }
+
+    @Test
+    void verify_afterFamilyRevoked_shouldThrow() {
+        String token = service.issue(UUID.randomUUID(), UserRole.RIDER);
+        RefreshTokenClaims claims = service.verify(token);
+
+        service.revokeFamily(claims.getFamilyId(), Instant.now());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> service.verify(token));
+    }
+
+    @Test
+    void verify_afterUserRevoked_shouldThrowForEveryFamily() {
+        UUID userId = UUID.randomUUID();
+        String first = service.issue(userId, UserRole.RIDER);
+        String second = service.issue(userId, UserRole.RIDER);
+
+        service.revokeUser(userId, Instant.now());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> service.verify(first));
+        assertThrows(InvalidRefreshTokenException.class, () -> service.verify(second));
+    }
+
+    // ==================== Rotate Tests ====================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotate_whenRedisAccepts_shouldKeepFamilyAndRejectOldTokenLocally() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+        String oldToken = service.issue(UUID.randomUUID(), UserRole.DRIVER);
+        RefreshTokenClaims oldClaims = service.verify(oldToken);
+
+        String newToken = service.rotate(oldClaims);
+
+        RefreshTokenClaims newClaims = service.verify(newToken);
+        assertEquals(oldClaims.getFamilyId(), newClaims.getFamilyId());
+        assertTrue(newClaims.getIssuedAt().isAfter(oldClaims.getIssuedAt()));
+        assertThrows(InvalidRefreshTokenException.class, () -> service.verify(oldToken));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rotate_whenAlreadyRotatedElsewhere_shouldThrow() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+        RefreshTokenClaims claims = service.verify(service.issue(UUID.randomUUID(), UserRole.RIDER));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> service.rotate(claims));
+    }
+
+    // ==================== Sync Tests ====================
+
+    @Test
+    void sync_shouldApplyRevocationsWrittenByOtherNodes() {
+        UUID userId = UUID.randomUUID();
+        String token = service.issue(userId, UserRole.RIDER);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.rangeByScoreWithScores(eq("refresh:revocations"), anyDouble(),
+                eq(Double.POSITIVE_INFINITY)))
+                .thenReturn(new LinkedHashSet<>(List.of(ZSetOperations.TypedTuple.of("u:" + userId,
+                        (double) System.currentTimeMillis() + 1000))));
+
+        service.sync();
+
+        assertEquals(1, service.revocationCount());
+        assertThrows(InvalidRefreshTokenException.class, () -> service.verify(token));
+        verify(zSetOperations).removeRangeByScore(eq("refresh:revocations"), eq(Double.NEGATIVE_INFINITY), anyDouble());
+    }
+}
@@ -0,0 +1,70 @@
+package com.exodus.wall.config;
+
+import com.exodus.wall.entity.dto.DriverProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import com.exodus.wall.service.ProfileCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import tools.jackson.databind.json.JsonMapper;
+
+//**
+// GET /me of riders and drivers through ProfileCache. With profile.cache.enabled false (default)
+// both caches pass straight through to the database and nothing touches redis.
+//**
+@Configuration
+public class ProfileCacheConfig {
+  private final boolean enabled;
+  private final long nearMaxSize;
+  private final Duration nearTtl;
+  private final Duration redisTtl;
+
+  public ProfileCacheConfig(@Value("${profile.cache.enabled:false}") boolean enabled,
+                            @Value("${profile.cache.near.max-size:10000}") long nearMaxSize,
+                            @Value("${profile.cache.near.ttl-seconds:30}") long nearTtlSeconds,
+                            @Value("${profile.cache.redis.ttl-seconds:600}") long redisTtlSeconds) {
+    this.enabled = enabled;
+    this.nearMaxSize = nearMaxSize;
+    this.nearTtl = Duration.ofSeconds(nearTtlSeconds);
+    this.redisTtl = Duration.ofSeconds(redisTtlSeconds);
+  }
+
+  @Bean
+  public ProfileCache<RiderProfileResponse> riderProfileCache(StringRedisTemplate redisTemplate,
+                                                              JsonMapper jsonMapper,
+                                                              MeterRegistry meterRegistry) {
+    return new ProfileCache<>("rider", RiderProfileResponse.class, RiderProfileResponse::getVersion, enabled,
+        nearMaxSize, nearTtl, redisTtl, redisTemplate, jsonMapper, meterRegistry);
+  }
+
+  @Bean
+  public ProfileCache<DriverProfileResponse> driverProfileCache(StringRedisTemplate redisTemplate,
+                                                                JsonMapper jsonMapper,
+                                                                MeterRegistry meterRegistry) {
+    return new ProfileCache<>("driver", DriverProfileResponse.class, DriverProfileResponse::getVersion, enabled,
+        nearMaxSize, nearTtl, redisTtl, redisTemplate, jsonMapper, meterRegistry);
+  }
+
+  // Near entries dropped by peers' profile updates
+  @Bean
+  @ConditionalOnProperty(name = "profile.cache.enabled", havingValue = "true")
+  public RedisMessageListenerContainer profileInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                   List<ProfileCache<?>> caches) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener((message, pattern) -> {
+      String body = new String(message.getBody(), StandardCharsets.UTF_8);
+      caches.forEach(cache -> cache.onInvalidation(body));
+    }, new ChannelTopic(ProfileCache.INVALIDATION_CHANNEL));
+    return container;
+  }
+}
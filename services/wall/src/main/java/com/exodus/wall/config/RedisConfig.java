@@ -0,0 +1,25 @@
+package com.exodus.wall.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class RedisConfig {
+
+  // Same redis as dome, only used by the profile cache. Lettuce connects on first use,
+  // so with the cache off wall starts and runs without redis.
+  @Bean
+  public LettuceConnectionFactory redisConnectionFactory(@Value("${spring.data.redis.host}") String host,
+                                                        @Value("${spring.data.redis.port}") int port) {
+    return new LettuceConnectionFactory(host, port);
+  }
+
+  @Bean
+  public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    return new StringRedisTemplate(redisConnectionFactory);
+  }
+}
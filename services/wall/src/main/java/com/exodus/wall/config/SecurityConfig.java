@@ -0,0 +1,58 @@
+package com.exodus.wall.config;
+
+import com.exodus.wall.security.AccessTokenVerifier;
+import com.exodus.wall.security.JwksKeyProvider;
+import com.exodus.wall.security.JwtAuthenticationFilter;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+@Configuration
+public class SecurityConfig {
+
+  // HS256 (default, matches dome): dome signs with the shared secret, so wall needs it too.
+  // ES256: keys come from dome's JWKS, no secret shared with wall.
+  @Bean
+  public AccessTokenVerifier accessTokenVerifier(
+      @Value("${auth.jwt.algorithm:HS256}") String algorithm,
+      @Value("${auth.jwt.issuer:exodus-auth}") String issuer,
+      @Value("${auth.jwt.secret:}") String secret,
+      @Value("${auth.jwt.verified-cache.max-size:10000}") long verifiedCacheMaxSize,
+      ObjectProvider<JwksKeyProvider> keyProvider) {
+    if ("HS256".equals(algorithm)) {
+      return AccessTokenVerifier.hs256(secret, issuer, verifiedCacheMaxSize);
+    }
+    return AccessTokenVerifier.es256(keyProvider.getObject(), issuer, verifiedCacheMaxSize);
+  }
+
+  // A token with an unknown kid waits for this fetch, so dome being slow must not hang requests
+  @Bean
+  @ConditionalOnProperty(name = "auth.jwt.algorithm", havingValue = "ES256")
+  public JwksKeyProvider jwksKeyProvider(
+      @Value("${auth.jwt.jwks-uri:http://localhost:8761/.well-known/jwks.json}") String jwksUri,
+      @Value("${auth.jwt.jwks-refresh-interval-millis:300000}") long jwksRefreshIntervalMillis,
+      @Value("${auth.jwt.jwks-min-refetch-millis:10000}") long jwksMinRefetchMillis,
+      @Value("${auth.jwt.jwks-connect-timeout-millis:1000}") long connectTimeoutMillis,
+      @Value("${auth.jwt.jwks-read-timeout-millis:2000}") long readTimeoutMillis) {
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(Duration.ofMillis(connectTimeoutMillis));
+    requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+    RestClient restClient = RestClient.builder().requestFactory(requestFactory).build();
+    return new JwksKeyProvider(restClient, jwksUri, jwksRefreshIntervalMillis, jwksMinRefetchMillis);
+  }
+
+  @Bean
+  public FilterRegistrationBean<JwtAuthenticationFilter> jwtAuthenticationFilter(
+      AccessTokenVerifier accessTokenVerifier) {
+    FilterRegistrationBean<JwtAuthenticationFilter> registration =
+        new FilterRegistrationBean<>(new JwtAuthenticationFilter(accessTokenVerifier));
+    registration.addUrlPatterns("/api/*");
+    return registration;
+  }
+}
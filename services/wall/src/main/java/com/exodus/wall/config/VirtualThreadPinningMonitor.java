@@ -0,0 +1,88 @@
+package com.exodus.wall.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//**
+// Watches for virtual threads that block while pinned to their carrier (inside synchronized
+// or a native frame) through JFR's jdk.VirtualThreadPinned event, in-process so nothing has to
+// be attached. A pinned wait holds a carrier, enough of them and every request waits, so
+// each one is counted in jvm.threads.virtual.pinned and every distinct stack is logged once.
+// Only runs with spring.threads.virtual.enabled, on older JDKs the event just never fires.
+//**
+@Component
+public class VirtualThreadPinningMonitor {
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+  private static final int LOGGED_FRAMES = 12;
+  private static final int MAX_LOGGED_STACKS = 200;
+
+  private final boolean enabled;
+  private final long thresholdMillis;
+  private final Counter pinned;
+  private final Set<String> loggedStacks = ConcurrentHashMap.newKeySet();
+  private RecordingStream stream;
+
+  public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                     @Value("${diagnostics.pinning.enabled:true}") boolean enabled,
+                                     @Value("${diagnostics.pinning.threshold-millis:20}") long thresholdMillis) {
+    this.enabled = virtualThreads && enabled;
+    this.thresholdMillis = thresholdMillis;
+    this.pinned = Counter.builder("jvm.threads.virtual.pinned")
+        .description("Virtual threads that blocked while pinned longer than the threshold")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    stream = new RecordingStream();
+    stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMillis)).withStackTrace();
+    stream.onEvent(PINNED_EVENT, this::onPinned);
+    stream.startAsync();
+    log.info("Watching for virtual thread pinning above {} ms", thresholdMillis);
+  }
+
+  private void onPinned(RecordedEvent event) {
+    pinned.increment();
+    if (event.getStackTrace() == null) {
+      return;
+    }
+    List<RecordedFrame> frames = event.getStackTrace().getFrames();
+    String stack = frames.stream()
+        .limit(LOGGED_FRAMES)
+        .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+            + ":" + frame.getLineNumber())
+        .collect(Collectors.joining("\n\tat "));
+    // the same few call sites pin over and over, once each is enough to find them
+    if (loggedStacks.size() < MAX_LOGGED_STACKS && loggedStacks.add(stack)) {
+      log.warn("Virtual thread pinned for {} ms on {}\n\tat {}", event.getDuration().toMillis(),
+          event.getThread() != null ? event.getThread().getJavaName() : "?", stack);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package com.exodus.wall.contract;
+
+public interface CustomException {
+  String getMessageWithParameters();
+
+  String getMessage();
+
+  StackTraceElement[] getStackTrace();
+}
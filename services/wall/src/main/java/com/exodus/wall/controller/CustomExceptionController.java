@@ -0,0 +1,46 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.contract.CustomException;
+import com.exodus.wall.entity.valueObject.ResponseMessage;
+import com.exodus.wall.exception.DuplicateValueException;
+import com.exodus.wall.exception.NotFoundException;
+import com.exodus.wall.exception.PreconditionFailedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+public class CustomExceptionController {
+
+  @ExceptionHandler({ NotFoundException.class })
+  public ResponseEntity<Object> notFoundExceptionHandler(
+      NotFoundException exception) {
+    return handleException(exception, HttpStatus.NOT_FOUND);
+  }
+
+  @ExceptionHandler({ PreconditionFailedException.class })
+  public ResponseEntity<Object> preconditionFailedExceptionHandler(
+      PreconditionFailedException exception) {
+    return handleException(exception, HttpStatus.PRECONDITION_FAILED);
+  }
+
+  @ExceptionHandler({ DuplicateValueException.class })
+  public ResponseEntity<Object> duplicateValueExceptionHandler(
+      DuplicateValueException exception) {
+    return handleException(exception, HttpStatus.CONFLICT);
+  }
+
+  // Another update committed between our read and our write, same answer as a stale If-Match
+  @ExceptionHandler({ ObjectOptimisticLockingFailureException.class })
+  public ResponseEntity<Object> optimisticLockingFailureExceptionHandler(
+      ObjectOptimisticLockingFailureException exception) {
+    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+        .body(new ResponseMessage("Profile was modified concurrently, fetch it again"));
+  }
+
+  private ResponseEntity<Object> handleException(CustomException exception, HttpStatus httpStatus) {
+    return ResponseEntity.status(httpStatus).body(new ResponseMessage(exception.getMessageWithParameters()));
+  }
+}
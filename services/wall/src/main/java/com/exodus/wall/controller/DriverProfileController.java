@@ -2,10 +2,15 @@ package com.exodus.wall.controller;
 
 import com.exodus.wall.entity.dto.DriverProfileResponse;
 import com.exodus.wall.entity.dto.DriverProfileUpdateRequest;
+import com.exodus.wall.entity.dto.ProfileBatchRequest;
+import com.exodus.wall.security.JwtAuthenticationFilter;
 import com.exodus.wall.service.DriverProfileService;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.UUID;
 
@@ -14,27 +19,47 @@ import java.util.UUID;
 public class DriverProfileController {
 
   private final DriverProfileService driverProfileService;
+  private final ProfileSummaryWriter summaryWriter;
 
-  public DriverProfileController(DriverProfileService driverProfileService) {
+  public DriverProfileController(DriverProfileService driverProfileService, ProfileSummaryWriter summaryWriter) {
     this.driverProfileService = driverProfileService;
+    this.summaryWriter = summaryWriter;
   }
 
   // GET /api/profile/driver/me
   @GetMapping("/me")
   public ResponseEntity<DriverProfileResponse> getMyProfile(
-      @RequestHeader("X-User-Id") UUID authUserId
+      @RequestAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE) UUID authUserId,
+      WebRequest webRequest
   ) {
+    // Polling clients send back the ETag, an unchanged profile is a 304 from its version alone
+    if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+        && webRequest.checkNotModified(ProfileETag.of(driverProfileService.getMyProfileVersion(authUserId)))) {
+      return null;
+    }
     DriverProfileResponse response = driverProfileService.getMyProfile(authUserId);
-    return ResponseEntity.ok(response);
+    return ResponseEntity.ok().eTag(ProfileETag.of(response.getVersion())).body(response);
   }
 
   // PUT /api/profile/driver/me
   @PutMapping("/me")
   public ResponseEntity<DriverProfileResponse> updateMyProfile(
-      @RequestHeader("X-User-Id") UUID authUserId,
+      @RequestAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE) UUID authUserId,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
       @Valid @RequestBody DriverProfileUpdateRequest request
   ) {
-    DriverProfileResponse response = driverProfileService.updateMyProfile(authUserId, request);
-    return ResponseEntity.ok(response);
+    DriverProfileResponse response = driverProfileService.updateMyProfile(authUserId, request,
+        ProfileETag.parseIfMatch(ifMatch));
+    return ResponseEntity.ok().eTag(ProfileETag.of(response.getVersion())).body(response);
+  }
+
+  //**
+  // POST /api/profile/driver/batch {"authUserIds": [...]} -> {"<authUserId>": {summary}, ...}
+  // One round trip for a whole trip list, cache hits are written first. Ids without a profile
+  // are left out.
+  //**
+  @PostMapping("/batch")
+  public ResponseEntity<StreamingResponseBody> getSummaries(@Valid @RequestBody ProfileBatchRequest request) {
+    return summaryWriter.write(request.getAuthUserIds(), driverProfileService::findSummaries);
   }
 }
@@ -0,0 +1,37 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.exception.PreconditionFailedException;
+
+//**
+// Strong ETags of the profile endpoints: the row's @Version in quotes. Every update that
+// changes the profile bumps it, so the same ETag always means the same body.
+//**
+final class ProfileETag {
+
+  private ProfileETag() {
+  }
+
+  static String of(long version) {
+    return "\"" + version + "\"";
+  }
+
+  //**
+  // If-Match to the version the update expects, null when there is none or it is "*".
+  // If-Match compares strongly, so weak tags, lists and anything we never handed out
+  // cannot match and fail the update.
+  //**
+  static Long parseIfMatch(String ifMatch) {
+    if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    String tag = ifMatch.trim();
+    if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+      try {
+        return Long.parseLong(tag.substring(1, tag.length() - 1));
+      } catch (NumberFormatException e) {
+        // falls through
+      }
+    }
+    throw new PreconditionFailedException("If-Match does not match the current profile");
+  }
+}
@@ -0,0 +1,48 @@
+package com.exodus.wall.controller;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+//**
+// Response of the profile batch endpoints: {"<authUserId>": {summary}, ...}, written while the
+// service finds the summaries, so a large batch never sits in memory as one response.
+// Duplicate ids are asked for once.
+//**
+@Component
+class ProfileSummaryWriter {
+  private final ObjectWriter writer;
+
+  ProfileSummaryWriter(JsonMapper jsonMapper) {
+    // the generator must not close the response, see write
+    this.writer = jsonMapper.writer().without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+  }
+
+  <S> ResponseEntity<StreamingResponseBody> write(Collection<UUID> authUserIds,
+                                                  BiConsumer<Collection<UUID>, BiConsumer<UUID, S>> finder) {
+    Collection<UUID> distinct = new LinkedHashSet<>(authUserIds);
+    StreamingResponseBody body = out -> {
+      // Not closed on failure: closing would complete a half written map into valid JSON.
+      // Before the first flush the failure still becomes an error response, after it the
+      // connection is cut and the client sees a truncated body.
+      JsonGenerator json = writer.createGenerator(out);
+      json.writeStartObject();
+      finder.accept(distinct, (authUserId, summary) -> {
+        json.writeName(authUserId.toString());
+        json.writePOJO(summary);
+      });
+      json.writeEndObject();
+      json.close();
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+}
@@ -1,42 +1,70 @@
 package com.exodus.wall.controller;
 
+import com.exodus.wall.entity.dto.ProfileBatchRequest;
 import com.exodus.wall.entity.dto.RiderProfileResponse;
 import com.exodus.wall.entity.dto.RiderProfileUpdateRequest;
+import com.exodus.wall.security.JwtAuthenticationFilter;
 import com.exodus.wall.service.RiderProfileService;
 import jakarta.validation.Valid;
 import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/rider/profile")
 public class RiderProfileController {
   private final RiderProfileService riderProfileService;
+  private final ProfileSummaryWriter summaryWriter;
 
   @Autowired
-  public RiderProfileController(RiderProfileService riderProfileService) {
+  public RiderProfileController(RiderProfileService riderProfileService, ProfileSummaryWriter summaryWriter) {
     this.riderProfileService = riderProfileService;
+    this.summaryWriter = summaryWriter;
   }
 
   @GetMapping("/me")
-  public ResponseEntity<RiderProfileResponse> getMyProfile(@RequestHeader("X-User-Id")
-                                                           UUID authUserId) {
+  public ResponseEntity<RiderProfileResponse> getMyProfile(
+      @RequestAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE) UUID authUserId,
+      WebRequest webRequest
+  ) {
+    // Polling clients send back the ETag, an unchanged profile is a 304 from its version alone
+    if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+        && webRequest.checkNotModified(ProfileETag.of(riderProfileService.getMyProfileVersion(authUserId)))) {
+      return null;
+    }
     RiderProfileResponse profile = riderProfileService.getMyProfile(authUserId);
-    return ResponseEntity.ok(profile);
+    return ResponseEntity.ok().eTag(ProfileETag.of(profile.getVersion())).body(profile);
   }
 
   @PutMapping("/me")
   public ResponseEntity<RiderProfileResponse> updateMyProfile(
-      @RequestHeader("X-User-Id") UUID authUserId,
+      @RequestAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE) UUID authUserId,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
       @Valid @RequestBody RiderProfileUpdateRequest request
   ) {
-    RiderProfileResponse response = riderProfileService.updateMyProfile(authUserId, request);
-    return ResponseEntity.ok(response);
+    RiderProfileResponse response = riderProfileService.updateMyProfile(authUserId, request,
+        ProfileETag.parseIfMatch(ifMatch));
+    return ResponseEntity.ok().eTag(ProfileETag.of(response.getVersion())).body(response);
+  }
+
+  //**
+  // POST /api/rider/profile/batch {"authUserIds": [...]} -> {"<authUserId>": {summary}, ...}
+  // One round trip for a whole trip list, cache hits are written first. Ids without a profile
+  // are left out.
+  //**
+  @PostMapping("/batch")
+  public ResponseEntity<StreamingResponseBody> getSummaries(@Valid @RequestBody ProfileBatchRequest request) {
+    return summaryWriter.write(request.getAuthUserIds(), riderProfileService::findSummaries);
   }
 }
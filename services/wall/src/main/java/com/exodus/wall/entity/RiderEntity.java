@@ -4,6 +4,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import java.time.OffsetDateTime;
 import java.util.UUID;
 import lombok.AllArgsConstructor;
@@ -36,4 +37,9 @@ public class RiderEntity {
 
   @Column(name = "created_at", nullable = false)
   private OffsetDateTime createdAt;
+
+  // Bumped by every update, the profile's ETag. See db/profile_version.sql
+  @Version
+  @Column(name = "version", nullable = false)
+  private long version;
 }
@@ -2,11 +2,16 @@ package com.exodus.wall.entity.dto;
 
 import java.time.OffsetDateTime;
 import java.util.UUID;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+// All-args constructor order is the select list of findProfileByAuthUserId, keep them in step
 @Getter
 @Setter
+@NoArgsConstructor
+@AllArgsConstructor
 public class DriverProfileResponse {
   private UUID id;
   private String fullName;
@@ -14,5 +19,6 @@ public class DriverProfileResponse {
   private Double ratingAverage;
   private boolean verified;
   private OffsetDateTime createdAt;
+  private long version;
 
 }
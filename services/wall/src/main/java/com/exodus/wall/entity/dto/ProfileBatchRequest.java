@@ -0,0 +1,20 @@
+package com.exodus.wall.entity.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ProfileBatchRequest {
+  public static final int MAX_SIZE = 1000;
+
+  @NotEmpty
+  @Size(max = MAX_SIZE, message = "At most " + MAX_SIZE + " authUserIds per request")
+  private List<@NotNull UUID> authUserIds;
+
+}
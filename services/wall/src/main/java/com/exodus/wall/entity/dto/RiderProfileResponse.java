@@ -2,16 +2,22 @@ package com.exodus.wall.entity.dto;
 
 import java.time.OffsetDateTime;
 import java.util.UUID;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+// All-args constructor order is the select list of findProfileByAuthUserId, keep them in step
 @Getter
 @Setter
+@NoArgsConstructor
+@AllArgsConstructor
 public class RiderProfileResponse {
   private UUID id;
   private String fullName;
   private String phoneNumber;
   private Double ratingAverage;
   private OffsetDateTime createdAt;
+  private long version;
 
 }
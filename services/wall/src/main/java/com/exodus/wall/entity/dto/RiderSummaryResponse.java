@@ -0,0 +1,17 @@
+package com.exodus.wall.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// What other users see of a rider, e.g. in a trip list. No phone number.
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RiderSummaryResponse {
+  private String fullName;
+  private Double ratingAverage;
+
+}
@@ -0,0 +1,14 @@
+package com.exodus.wall.entity.valueObject;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResponseMessage {
+  private String message;
+}
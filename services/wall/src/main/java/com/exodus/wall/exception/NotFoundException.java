@@ -0,0 +1,21 @@
+package com.exodus.wall.exception;
+
+import com.exodus.wall.contract.CustomException;
+
+public class NotFoundException extends RuntimeException implements CustomException {
+
+  private final String message;
+
+  public NotFoundException(String message) {
+    super(message);
+    this.message = message;
+  }
+
+  public String getMessageWithParameters() {
+    return message;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,7 @@
+package com.exodus.wall.exception;
+
+public class ProfileNotFoundException extends NotFoundException {
+  public ProfileNotFoundException(String message) {
+    super(message);
+  }
+}
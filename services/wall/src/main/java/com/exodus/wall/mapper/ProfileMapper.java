@@ -0,0 +1,21 @@
+package com.exodus.wall.mapper;
+
+import com.exodus.wall.entity.DriverEntity;
+import com.exodus.wall.entity.RiderEntity;
+import com.exodus.wall.entity.dto.DriverProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import org.mapstruct.Mapper;
+import org.mapstruct.ReportingPolicy;
+
+//**
+// Entity to /me response, implementation generated by mapstruct at compile time.
+// Reads go through the repositories' projection queries and never load an entity, this is for
+// the update path that already holds one. A response field without an entity field of the same
+// name fails the build.
+//**
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface ProfileMapper {
+  RiderProfileResponse toResponse(RiderEntity rider);
+
+  DriverProfileResponse toResponse(DriverEntity driver);
+}
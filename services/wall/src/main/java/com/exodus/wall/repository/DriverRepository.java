@@ -1,10 +1,23 @@
 package com.exodus.wall.repository;
 
 import com.exodus.wall.entity.DriverEntity;
+import com.exodus.wall.entity.dto.DriverProfileResponse;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface DriverRepository extends JpaRepository<DriverEntity, UUID> {
   Optional<DriverEntity> findByAuthUserId(UUID authUserId);
+
+  // Straight into the response: selects only its columns, nothing enters the persistence context
+  @Query("select new com.exodus.wall.entity.dto.DriverProfileResponse("
+      + "d.id, d.fullName, d.phoneNumber, d.ratingAverage, d.verified, d.createdAt, d.version)"
+      + " from DriverEntity d where d.authUserId = :authUserId")
+  Optional<DriverProfileResponse> findProfileByAuthUserId(@Param("authUserId") UUID authUserId);
+
+  // Index-only scan on the (auth_user_id) INCLUDE (version) index, the row itself is not read
+  @Query("select d.version from DriverEntity d where d.authUserId = :authUserId")
+  Optional<Long> findVersionByAuthUserId(@Param("authUserId") UUID authUserId);
 }
@@ -1,10 +1,23 @@
 package com.exodus.wall.repository;
 
 import com.exodus.wall.entity.RiderEntity;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface RiderRepository extends JpaRepository<RiderEntity, UUID> {
   Optional<RiderEntity> findByAuthUserId(UUID authUserId);
+
+  // Straight into the response: selects only its columns, nothing enters the persistence context
+  @Query("select new com.exodus.wall.entity.dto.RiderProfileResponse("
+      + "r.id, r.fullName, r.phoneNumber, r.ratingAverage, r.createdAt, r.version)"
+      + " from RiderEntity r where r.authUserId = :authUserId")
+  Optional<RiderProfileResponse> findProfileByAuthUserId(@Param("authUserId") UUID authUserId);
+
+  // Index-only scan on the (auth_user_id) INCLUDE (version) index, the row itself is not read
+  @Query("select r.version from RiderEntity r where r.authUserId = :authUserId")
+  Optional<Long> findVersionByAuthUserId(@Param("authUserId") UUID authUserId);
 }
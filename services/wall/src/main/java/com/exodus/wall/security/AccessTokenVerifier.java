@@ -0,0 +1,118 @@
+package com.exodus.wall.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//**
+// Verifies dome access tokens in process. ES256 tokens are checked against the JWKS keys,
+// HS256 (dome's legacy mode) against the shared secret. Verified tokens are remembered by
+// digest until their exp, so a client reusing its token costs one SHA-256 and a map lookup.
+//**
+public class AccessTokenVerifier {
+  private final JwtParser parser;
+  private final Cache<ByteBuffer, CachedUser> verifiedTokens;
+
+  private AccessTokenVerifier(JwtParser parser, long cacheMaxSize) {
+    this.parser = parser;
+    this.verifiedTokens = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfter(new UntilTokenExpiry())
+        .build();
+  }
+
+  public static AccessTokenVerifier es256(JwksKeyProvider keyProvider, String issuer,
+                                          long cacheMaxSize) {
+    JwtParser parser = Jwts.parserBuilder()
+        .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+          @Override
+          public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            return keyProvider.findKey(header.getKeyId())
+                .orElseThrow(() -> new JwtException("Unknown key id " + header.getKeyId()));
+          }
+        })
+        .requireIssuer(issuer)
+        .build();
+    return new AccessTokenVerifier(parser, cacheMaxSize);
+  }
+
+  public static AccessTokenVerifier hs256(String secret, String issuer, long cacheMaxSize) {
+    JwtParser parser = Jwts.parserBuilder()
+        .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes()))
+        .requireIssuer(issuer)
+        .build();
+    return new AccessTokenVerifier(parser, cacheMaxSize);
+  }
+
+  // Throws IllegalArgumentException for anything that is not a valid, unexpired token
+  public AuthenticatedUser verify(String token) {
+    ByteBuffer key = digest(token);
+    CachedUser cached = verifiedTokens.getIfPresent(key);
+    if (cached != null) {
+      return cached.user();
+    }
+
+    Claims claims;
+    AuthenticatedUser user;
+    try {
+      claims = parser.parseClaimsJws(token).getBody();
+      user = new AuthenticatedUser(UUID.fromString(claims.getSubject()),
+          claims.get("role", String.class));
+    } catch (JwtException | IllegalArgumentException | NullPointerException e) {
+      throw new IllegalArgumentException("Invalid access token", e);
+    }
+
+    Date expiration = claims.getExpiration();
+    if (expiration != null) {
+      verifiedTokens.put(key, new CachedUser(user, expiration.getTime()));
+    }
+    return user;
+  }
+
+  private static ByteBuffer digest(String token) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      return ByteBuffer.wrap(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private record CachedUser(AuthenticatedUser user, long expiresAtMillis) {
+  }
+
+  private static class UntilTokenExpiry implements Expiry<ByteBuffer, CachedUser> {
+    @Override
+    public long expireAfterCreate(ByteBuffer key, CachedUser value, long currentTime) {
+      return TimeUnit.MILLISECONDS.toNanos(
+          Math.max(0, value.expiresAtMillis() - System.currentTimeMillis()));
+    }
+
+    @Override
+    public long expireAfterUpdate(ByteBuffer key, CachedUser value, long currentTime,
+                                  long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(ByteBuffer key, CachedUser value, long currentTime,
+                                long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package com.exodus.wall.security;
+
+import java.util.UUID;
+
+// Caller identity taken from a verified access token
+public record AuthenticatedUser(UUID userId, String role) {
+}
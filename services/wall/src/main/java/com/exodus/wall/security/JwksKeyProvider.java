@@ -0,0 +1,147 @@
+package com.exodus.wall.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.client.RestClient;
+
+//**
+// dome's public keys by kid, fetched from its /.well-known/jwks.json and kept in memory.
+// A background thread refetches every refreshIntervalMillis, so the only request that waits
+// on dome is one carrying a kid we do not know (dome rotated). That fetch is never done more
+// than once per minRefetchMillis so junk kids cannot make us hammer dome. If a fetch fails
+// the keys we already have keep working.
+//**
+public class JwksKeyProvider {
+  private static final Logger log = LoggerFactory.getLogger(JwksKeyProvider.class);
+
+  private final Supplier<Map<String, Object>> fetcher;
+  private final String jwksUri;
+  private final long refreshIntervalMillis;
+  private final long minRefetchMillis;
+  private final ScheduledExecutorService refresher;
+
+  private volatile Map<String, ECPublicKey> keys = Map.of();
+  private long lastAttemptAt; // guarded by refreshLock
+  // Not synchronized: the fetch is HTTP, which would pin a virtual thread's carrier while it waits
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  // restClient should have connect and read timeouts, an unknown kid waits for this fetch
+  public JwksKeyProvider(RestClient restClient, String jwksUri, long refreshIntervalMillis,
+                         long minRefetchMillis) {
+    this(() -> restClient.get()
+        .uri(jwksUri)
+        .retrieve()
+        .body(new ParameterizedTypeReference<Map<String, Object>>() { }),
+        jwksUri, refreshIntervalMillis, minRefetchMillis);
+  }
+
+  JwksKeyProvider(Supplier<Map<String, Object>> fetcher, String jwksUri,
+                  long refreshIntervalMillis, long minRefetchMillis) {
+    this.fetcher = fetcher;
+    this.jwksUri = jwksUri;
+    this.refreshIntervalMillis = refreshIntervalMillis;
+    this.minRefetchMillis = minRefetchMillis;
+    this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "jwks-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  // First fetch right away, off the startup thread so wall comes up even when dome is down
+  @PostConstruct
+  public void start() {
+    refresher.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  public Optional<ECPublicKey> findKey(String kid) {
+    if (kid == null) {
+      return Optional.empty();
+    }
+    ECPublicKey key = keys.get(kid);
+    if (key == null) {
+      refresh();
+      key = keys.get(kid);
+    }
+    return Optional.ofNullable(key);
+  }
+
+  private void refresh() {
+    refreshLock.lock();
+    try {
+      long now = System.currentTimeMillis();
+      if (now - lastAttemptAt < minRefetchMillis) {
+        return; // someone else just fetched, or dome is down and we wait a bit
+      }
+      lastAttemptAt = now;
+
+      try {
+        keys = parse(fetcher.get());
+      } catch (RuntimeException e) {
+        log.warn("Could not fetch JWKS from {}, keeping {} cached keys", jwksUri, keys.size(), e);
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String, ECPublicKey> parse(Map<String, Object> jwks) {
+    Map<String, ECPublicKey> parsed = new HashMap<>();
+    Object keyList = jwks != null ? jwks.get("keys") : null;
+    if (!(keyList instanceof List<?> list)) {
+      return parsed;
+    }
+    for (Object entry : list) {
+      Map<String, Object> jwk = (Map<String, Object>) entry;
+      // only what dome issues: EC P-256 signing keys
+      if (!"EC".equals(jwk.get("kty")) || !"P-256".equals(jwk.get("crv"))
+          || jwk.get("kid") == null) {
+        continue;
+      }
+      parsed.put((String) jwk.get("kid"), toPublicKey((String) jwk.get("x"), (String) jwk.get("y")));
+    }
+    return parsed;
+  }
+
+  private static ECPublicKey toPublicKey(String x, String y) {
+    try {
+      AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+      parameters.init(new ECGenParameterSpec("secp256r1"));
+      ECParameterSpec curve = parameters.getParameterSpec(ECParameterSpec.class);
+      ECPoint point = new ECPoint(new BigInteger(1, Base64.getUrlDecoder().decode(x)),
+          new BigInteger(1, Base64.getUrlDecoder().decode(y)));
+      return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, curve));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("Invalid EC key in JWKS", e);
+    }
+  }
+}
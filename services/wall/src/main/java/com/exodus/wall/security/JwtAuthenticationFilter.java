@@ -0,0 +1,58 @@
+package com.exodus.wall.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+//**
+// Authenticates /api requests with the dome access token in the Authorization header.
+// Controllers read the caller from request attributes instead of trusting an X-User-Id header.
+//**
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+  public static final String USER_ID_ATTRIBUTE = "authUserId";
+  public static final String ROLE_ATTRIBUTE = "authRole";
+  private static final String BEARER_PREFIX = "Bearer ";
+
+  private final AccessTokenVerifier verifier;
+
+  public JwtAuthenticationFilter(AccessTokenVerifier verifier) {
+    this.verifier = verifier;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                  FilterChain filterChain) throws ServletException, IOException {
+    // CORS preflight has no token
+    if ("OPTIONS".equals(request.getMethod())) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+    if (header == null || !header.startsWith(BEARER_PREFIX)) {
+      reject(response, "Bearer");
+      return;
+    }
+
+    AuthenticatedUser user;
+    try {
+      user = verifier.verify(header.substring(BEARER_PREFIX.length()).trim());
+    } catch (IllegalArgumentException e) {
+      reject(response, "Bearer error=\"invalid_token\"");
+      return;
+    }
+
+    request.setAttribute(USER_ID_ATTRIBUTE, user.userId());
+    request.setAttribute(ROLE_ATTRIBUTE, user.role());
+    filterChain.doFilter(request, response);
+  }
+
+  private void reject(HttpServletResponse response, String challenge) {
+    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+    response.setHeader(HttpHeaders.WWW_AUTHENTICATE, challenge);
+  }
+}
@@ -2,54 +2,125 @@ package com.exodus.wall.service;
 
 import com.exodus.wall.entity.dto.DriverProfileResponse;
 import com.exodus.wall.entity.dto.DriverProfileUpdateRequest;
+import com.exodus.wall.entity.dto.DriverSummaryResponse;
 import com.exodus.wall.entity.DriverEntity;
+import com.exodus.wall.exception.DuplicateValueException;
+import com.exodus.wall.mapper.ProfileMapper;
 import com.exodus.wall.repository.DriverRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 @Service
 public class DriverProfileService {
 
   private final DriverRepository driverRepository;
+  private final ProfileCache<DriverProfileResponse> driverProfileCache;
+  private final ProfileMapper profileMapper;
+  private final ProfileJdbc<DriverProfileResponse> profileJdbc;
+  private final boolean singleStatementUpdate;
 
-  public DriverProfileService(DriverRepository driverRepository) {
+  public DriverProfileService(DriverRepository driverRepository,
+                              ProfileCache<DriverProfileResponse> driverProfileCache,
+                              ProfileMapper profileMapper,
+                              JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${profile.batch.fetch-size:200}") int batchFetchSize,
+                              @Value("${profile.update.single-statement:false}") boolean singleStatementUpdate,
+                              @Value("${spring.jpa.properties.hibernate.default_schema:profile}") String schema) {
     this.driverRepository = driverRepository;
+    this.driverProfileCache = driverProfileCache;
+    this.profileMapper = profileMapper;
+    this.profileJdbc = new ProfileJdbc<>("Driver", "drivers",
+        "id, full_name, phone_number, rating_avg, is_verified, created_at, version",
+        (rs, rowNum) -> toResponse(rs), driverRepository::findVersionByAuthUserId, jdbcTemplate,
+        transactionManager, batchFetchSize, schema);
+    this.singleStatementUpdate = singleStatementUpdate;
   }
 
-  @Transactional(readOnly = true)
+  // Not @Transactional: a cache hit should not open a transaction or take a connection
   public DriverProfileResponse getMyProfile(UUID authUserId) {
-    DriverEntity driver = driverRepository.findByAuthUserId(authUserId)
-        .orElseThrow(() -> new RuntimeException("Driver profile not found"));
+    return driverProfileCache.get(authUserId, this::loadProfile);
+  }
+
+  //**
+  // Public summaries for a trip list, sent to sink as they are found. Cache tiers first, then one
+  // ANY(?) query for all misses, whatever the batch size. Unknown ids are left out.
+  //**
+  public void findSummaries(Collection<UUID> authUserIds, BiConsumer<UUID, DriverSummaryResponse> sink) {
+    driverProfileCache.getAll(authUserIds, profileJdbc::loadAll,
+        (authUserId, profile) -> sink.accept(authUserId, new DriverSummaryResponse(profile.getFullName(), profile.getRatingAverage(),
+            profile.isVerified())));
+  }
+
+  private static DriverProfileResponse toResponse(ResultSet rs) throws SQLException {
+    return new DriverProfileResponse(rs.getObject("id", UUID.class), rs.getString("full_name"),
+        rs.getString("phone_number"), rs.getObject("rating_avg", Double.class), rs.getBoolean("is_verified"),
+        rs.getObject("created_at", OffsetDateTime.class), rs.getLong("version"));
+  }
+
+  // Current ETag version: from the cache if either tier has the profile, else from the index
+  public long getMyProfileVersion(UUID authUserId) {
+    DriverProfileResponse cached = driverProfileCache.peek(authUserId);
+    if (cached != null) {
+      return cached.getVersion();
+    }
+    return driverRepository.findVersionByAuthUserId(authUserId)
+        .orElseThrow(profileJdbc::notFound);
+  }
 
-    DriverProfileResponse resp = new DriverProfileResponse();
-    resp.setId(driver.getId());
-    resp.setFullName(driver.getFullName());
-    resp.setPhoneNumber(driver.getPhoneNumber());
-    resp.setRatingAverage(driver.getRatingAverage());
-    resp.setVerified(driver.isVerified());
-    resp.setCreatedAt(driver.getCreatedAt());
-    return resp;
+  private DriverProfileResponse loadProfile(UUID authUserId) {
+    return driverRepository.findProfileByAuthUserId(authUserId)
+        .orElseThrow(profileJdbc::notFound);
   }
 
+  //**
+  // expectedVersion comes from If-Match, null updates whatever is there (no If-Match, or "*").
+  // A phone number another profile already has is a 409.
+  //**
   @Transactional
-  public DriverProfileResponse updateMyProfile(UUID authUserId, DriverProfileUpdateRequest request) {
+  public DriverProfileResponse updateMyProfile(UUID authUserId, DriverProfileUpdateRequest request,
+                                               Long expectedVersion) {
+    DriverProfileResponse response;
+    try {
+      response = singleStatementUpdate
+          ? profileJdbc.update(authUserId, request.getFullName(), request.getPhoneNumber(), expectedVersion)
+          : updateEntity(authUserId, request, expectedVersion);
+    } catch (DataIntegrityViolationException e) {
+      if (ProfileJdbc.isUniqueViolation(e)) {
+        throw new DuplicateValueException("Phone number already in use by another profile.");
+      }
+      throw e;
+    }
+    driverProfileCache.invalidateAfterCommit(authUserId, response);
+    return response;
+  }
+
+  // A version that moved between our read and our write is caught by @Version on flush
+  private DriverProfileResponse updateEntity(UUID authUserId, DriverProfileUpdateRequest request,
+                                             Long expectedVersion) {
     DriverEntity driver = driverRepository.findByAuthUserId(authUserId)
-        .orElseThrow(() -> new RuntimeException("Driver profile not found"));
+        .orElseThrow(profileJdbc::notFound);
+    if (expectedVersion != null && expectedVersion != driver.getVersion()) {
+      throw profileJdbc.changed();
+    }
 
     driver.setFullName(request.getFullName());
     driver.setPhoneNumber(request.getPhoneNumber());
 
-    DriverEntity saved = driverRepository.save(driver);
+    // flushed here so the response carries the bumped version
+    DriverEntity saved = driverRepository.saveAndFlush(driver);
 
-    DriverProfileResponse resp = new DriverProfileResponse();
-    resp.setId(saved.getId());
-    resp.setFullName(saved.getFullName());
-    resp.setPhoneNumber(saved.getPhoneNumber());
-    resp.setRatingAverage(saved.getRatingAverage());
-    resp.setVerified(saved.isVerified());
-    resp.setCreatedAt(saved.getCreatedAt());
-    return resp;
+    return profileMapper.toResponse(saved);
   }
 }
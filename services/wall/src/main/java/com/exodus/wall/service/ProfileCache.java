@@ -0,0 +1,333 @@
+package com.exodus.wall.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+//**
+// Read-through cache for the /me responses, keyed by authUserId. Two tiers in front of the
+// database: a bounded in-process map per node (size and ttl evicted), then redis, shared by
+// every wall node under profile:<name>:<authUserId>.
+// A profile update puts the new response into redis once it has committed and publishes
+// <name>:<authUserId> on profile:invalidate, every node (this one too) then drops its near entry.
+// A node that misses the message serves its copy until near ttl runs out, so keep that short.
+// Every redis write carries the response's version and is refused when redis already holds a
+// newer one: a peer that read the old row just before the commit and writes it a moment later
+// (before the message reached it) cannot put it back over the new one. Only a key that expired
+// or was evicted in exactly that moment lets the old row in, until redis ttl.
+// Redis is best effort: when it is down reads go to the database and invalidation is local only.
+// Cached responses are shared between callers, do not modify them.
+//**
+public class ProfileCache<V> {
+  private static final Logger log = LoggerFactory.getLogger(ProfileCache.class);
+
+  public static final String INVALIDATION_CHANNEL = "profile:invalidate";
+  private static final String KEY_PREFIX = "profile:";
+  // SET key json PX ttl, unless the json already there has a higher version
+  private static final byte[] SET_IF_NOT_OLDER = bytes("""
+      local current = redis.call('GET', KEYS[1])
+      if current and tonumber(cjson.decode(current)['version']) > tonumber(ARGV[2]) then
+        return 0
+      end
+      redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+      return 1
+      """);
+
+  private final String name;
+  private final Class<V> type;
+  private final ToLongFunction<V> version;
+  private final boolean enabled;
+  private final Cache<UUID, V> near;
+  private final StringRedisTemplate redisTemplate;
+  private final JsonMapper jsonMapper;
+  private final Duration redisTtl;
+  private final Counter nearHits;
+  private final Counter redisHits;
+  private final Counter misses;
+
+  //**
+  // Bumped on every invalidation this node sees. A load that started before a bump may have read
+  // the old row, its result then does not go into the near tier (redis has the version check for
+  // that). Not per key: profile writes are rare, skipping an unrelated put now and then costs one
+  // more query.
+  //**
+  private final AtomicLong invalidations = new AtomicLong();
+
+  // version: what the cached value's ETag is built from, bumped by every update of the row
+  public ProfileCache(String name, Class<V> type, ToLongFunction<V> version, boolean enabled,
+                      long nearMaxSize, Duration nearTtl, Duration redisTtl,
+                      StringRedisTemplate redisTemplate, JsonMapper jsonMapper,
+                      MeterRegistry meterRegistry) {
+    this.name = name;
+    this.type = type;
+    this.version = version;
+    this.enabled = enabled;
+    this.near = Caffeine.newBuilder()
+        .maximumSize(nearMaxSize)
+        .expireAfterWrite(nearTtl)
+        .build();
+    this.redisTemplate = redisTemplate;
+    this.jsonMapper = jsonMapper;
+    this.redisTtl = redisTtl;
+    this.nearHits = lookups("near", meterRegistry);
+    this.redisHits = lookups("redis", meterRegistry);
+    this.misses = lookups("miss", meterRegistry);
+  }
+
+  private Counter lookups(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("profile.cache").tag("cache", name).tag("result", result)
+        .register(meterRegistry);
+  }
+
+  //**
+  // Not Caffeine's get(key, loader): that runs the load inside the map's lock, which would hold
+  // other keys of the bin during a query and pin a virtual thread's carrier. Two concurrent misses
+  // both query, the rows are the same.
+  //**
+  public V get(UUID authUserId, Function<UUID, V> loader) {
+    if (!enabled) {
+      return loader.apply(authUserId);
+    }
+
+    long seen = invalidations.get();
+    V cached = peek(authUserId);
+    if (cached != null) {
+      return cached;
+    }
+
+    misses.increment();
+    V loaded = loader.apply(authUserId);
+    writeShared(authUserId, loaded);
+    putNear(authUserId, loaded, seen);
+    return loaded;
+  }
+
+  // What get would return without going to the database, null if neither tier has it
+  public V peek(UUID authUserId) {
+    if (!enabled) {
+      return null;
+    }
+
+    V cached = near.getIfPresent(authUserId);
+    if (cached != null) {
+      nearHits.increment();
+      return cached;
+    }
+
+    long seen = invalidations.get();
+    V shared = readShared(authUserId);
+    if (shared != null) {
+      redisHits.increment();
+      putNear(authUserId, shared, seen);
+    }
+    return shared;
+  }
+
+  //**
+  // Batch get: what the near tier has, then one MGET for the rest, goes to sink right away.
+  // The remaining ids go to loader in one call; whatever it emits goes to sink as it comes and
+  // into both tiers afterwards (one pipeline). Ids nobody has are simply not emitted.
+  //**
+  public void getAll(Collection<UUID> authUserIds, BiConsumer<Collection<UUID>, BiConsumer<UUID, V>> loader,
+                     BiConsumer<UUID, V> sink) {
+    if (!enabled) {
+      loader.accept(authUserIds, sink);
+      return;
+    }
+
+    long seen = invalidations.get();
+    List<UUID> notNear = new ArrayList<>();
+    for (UUID authUserId : authUserIds) {
+      V cached = near.getIfPresent(authUserId);
+      if (cached != null) {
+        nearHits.increment();
+        sink.accept(authUserId, cached);
+      } else {
+        notNear.add(authUserId);
+      }
+    }
+    if (notNear.isEmpty()) {
+      return;
+    }
+
+    List<UUID> missing = new ArrayList<>();
+    List<V> shared = readAllShared(notNear);
+    for (int i = 0; i < notNear.size(); i++) {
+      UUID authUserId = notNear.get(i);
+      V value = shared.get(i);
+      if (value != null) {
+        redisHits.increment();
+        putNear(authUserId, value, seen);
+        sink.accept(authUserId, value);
+      } else {
+        missing.add(authUserId);
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    misses.increment(missing.size());
+    Map<UUID, V> loaded = new LinkedHashMap<>();
+    loader.accept(missing, (authUserId, value) -> {
+      loaded.put(authUserId, value);
+      sink.accept(authUserId, value);
+    });
+    writeAllShared(loaded);
+    loaded.forEach((authUserId, value) -> putNear(authUserId, value, seen));
+  }
+
+  //**
+  // Call inside the transaction that changes the profile with the updated response, it replaces
+  // the cached one once the transaction has committed. Any earlier and a concurrent read of the
+  // old row could still win. Redis gets the new response rather than a DEL: an empty key would
+  // take whatever a peer still writes, a newer version refuses the older one.
+  //**
+  public void invalidateAfterCommit(UUID authUserId, V updated) {
+    if (!enabled) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      invalidate(authUserId, updated);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        invalidate(authUserId, updated);
+      }
+    });
+  }
+
+  public void invalidate(UUID authUserId, V updated) {
+    evictNear(authUserId);
+    try {
+      redisTemplate.execute((RedisCallback<Object>) connection ->
+          setIfNotOlder(connection, authUserId, updated));
+      redisTemplate.convertAndSend(INVALIDATION_CHANNEL, name + ":" + authUserId);
+    } catch (DataAccessException | JacksonException e) {
+      log.warn("Could not invalidate {} profile {} in redis, peers keep it up to their near ttl",
+          name, authUserId, e);
+    }
+  }
+
+  // Message from profile:invalidate, possibly for another cache
+  public void onInvalidation(String message) {
+    int separator = message.indexOf(':');
+    if (separator < 0 || !name.equals(message.substring(0, separator))) {
+      return;
+    }
+    try {
+      evictNear(UUID.fromString(message.substring(separator + 1)));
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring malformed profile invalidation '{}'", message);
+    }
+  }
+
+  private void evictNear(UUID authUserId) {
+    invalidations.incrementAndGet();
+    near.invalidate(authUserId);
+  }
+
+  private void putNear(UUID authUserId, V value, long seen) {
+    if (invalidations.get() == seen) {
+      near.put(authUserId, value);
+    }
+  }
+
+  private V readShared(UUID authUserId) {
+    try {
+      String json = redisTemplate.opsForValue().get(buildKey(authUserId));
+      return json != null ? jsonMapper.readValue(json, type) : null;
+    } catch (DataAccessException | JacksonException e) {
+      log.warn("Could not read {} profile {} from redis, reading the database", name, authUserId, e);
+      return null;
+    }
+  }
+
+  private void writeShared(UUID authUserId, V value) {
+    try {
+      redisTemplate.execute((RedisCallback<Object>) connection ->
+          setIfNotOlder(connection, authUserId, value));
+    } catch (DataAccessException | JacksonException e) {
+      log.warn("Could not write {} profile {} to redis", name, authUserId, e);
+    }
+  }
+
+  // Same order as authUserIds, null where redis has nothing (or is down)
+  private List<V> readAllShared(List<UUID> authUserIds) {
+    List<V> values = new ArrayList<>(authUserIds.size());
+    List<String> json = null;
+    try {
+      json = redisTemplate.opsForValue().multiGet(authUserIds.stream().map(this::buildKey).toList());
+    } catch (DataAccessException e) {
+      log.warn("Could not read {} {} profiles from redis, reading the database", authUserIds.size(), name, e);
+    }
+    for (int i = 0; i < authUserIds.size(); i++) {
+      String value = json != null ? json.get(i) : null;
+      try {
+        values.add(value != null ? jsonMapper.readValue(value, type) : null);
+      } catch (JacksonException e) {
+        log.warn("Could not read {} profile {} from redis", name, authUserIds.get(i), e);
+        values.add(null);
+      }
+    }
+    return values;
+  }
+
+  private void writeAllShared(Map<UUID, V> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    try {
+      redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        values.forEach((authUserId, value) -> setIfNotOlder(connection, authUserId, value));
+        return null;
+      });
+    } catch (DataAccessException | JacksonException e) {
+      log.warn("Could not write {} {} profiles to redis", values.size(), name, e);
+    }
+  }
+
+  //**
+  // EVAL rather than EVALSHA: inside a pipeline there is no way to fall back when redis does not
+  // know the sha yet, and the script is a few hundred bytes next to the value we send anyway.
+  //**
+  private Object setIfNotOlder(RedisConnection connection, UUID authUserId, V value) {
+    return connection.scriptingCommands().eval(SET_IF_NOT_OLDER, ReturnType.INTEGER, 1,
+        bytes(buildKey(authUserId)), bytes(jsonMapper.writeValueAsString(value)),
+        bytes(Long.toString(version.applyAsLong(value))), bytes(Long.toString(redisTtl.toMillis())));
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String buildKey(UUID authUserId) {
+    return KEY_PREFIX + name + ":" + authUserId;
+  }
+}
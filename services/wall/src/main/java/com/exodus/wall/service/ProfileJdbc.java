@@ -0,0 +1,98 @@
+package com.exodus.wall.service;
+
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.exception.ProfileNotFoundException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//**
+// The plain JDBC side of a profile table (riders, drivers): the batch read behind ProfileCache.getAll
+// and the single statement update. Both tables share auth_user_id, full_name, phone_number and
+// version, columns is the response's select list and rowMapper builds the response from it.
+//**
+class ProfileJdbc<V> {
+  private final String label;
+  private final RowMapper<V> rowMapper;
+  private final Function<UUID, Optional<Long>> versionLookup;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate readOnlyTransaction;
+  private final int batchFetchSize;
+  private final String batchSql;
+  private final String updateSql;
+
+  // label names the profile in error messages, versionLookup is the repository's index-only version read
+  ProfileJdbc(String label, String table, String columns, RowMapper<V> rowMapper,
+              Function<UUID, Optional<Long>> versionLookup, JdbcTemplate jdbcTemplate,
+              PlatformTransactionManager transactionManager, int batchFetchSize, String schema) {
+    this.label = label;
+    this.rowMapper = rowMapper;
+    this.versionLookup = versionLookup;
+    this.jdbcTemplate = jdbcTemplate;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.batchFetchSize = batchFetchSize;
+    this.batchSql = "SELECT auth_user_id, " + columns + " FROM " + schema + "." + table
+        + " WHERE auth_user_id = ANY(?)";
+    // version bumped by hand here, @Version only does it for entity writes
+    this.updateSql = "UPDATE " + schema + "." + table + " SET full_name = ?, phone_number = ?, version = version + 1"
+        + " WHERE auth_user_id = ? AND (CAST(? AS bigint) IS NULL OR version = ?)"
+        + " RETURNING " + columns;
+  }
+
+  // Rows come through a cursor (fetch size) so a large batch is never held in memory at once
+  void loadAll(Collection<UUID> authUserIds, BiConsumer<UUID, V> sink) {
+    readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+      PreparedStatement statement = connection.prepareStatement(batchSql);
+      statement.setArray(1, connection.createArrayOf("uuid", authUserIds.toArray()));
+      statement.setFetchSize(batchFetchSize);
+      return statement;
+    }, (ResultSet rs) -> {
+      sink.accept(rs.getObject("auth_user_id", UUID.class), rowMapper.mapRow(rs, 0));
+    }));
+  }
+
+  //**
+  // One round trip: the version check is part of the WHERE and the response is the RETURNING row.
+  // No row back means no profile or a stale If-Match, only then do we look at which one it was.
+  //**
+  V update(UUID authUserId, String fullName, String phoneNumber, Long expectedVersion) {
+    SqlParameterValue version = new SqlParameterValue(Types.BIGINT, expectedVersion);
+    List<V> updated = jdbcTemplate.query(updateSql, rowMapper, fullName, phoneNumber, authUserId, version, version);
+    if (!updated.isEmpty()) {
+      return updated.get(0);
+    }
+    versionLookup.apply(authUserId).orElseThrow(this::notFound);
+    throw changed();
+  }
+
+  ProfileNotFoundException notFound() {
+    return new ProfileNotFoundException(label + " profile not found");
+  }
+
+  PreconditionFailedException changed() {
+    return new PreconditionFailedException(label + " profile has changed, fetch it again");
+  }
+
+  // phone_number is the only unique column an update writes. JdbcTemplate says DuplicateKeyException,
+  // hibernate's flush a DataIntegrityViolationException around its own ConstraintViolationException
+  static boolean isUniqueViolation(DataIntegrityViolationException e) {
+    return e instanceof DuplicateKeyException
+        || e.getCause() instanceof ConstraintViolationException violation
+        && violation.getKind() == ConstraintViolationException.ConstraintKind.UNIQUE;
+  }
+}
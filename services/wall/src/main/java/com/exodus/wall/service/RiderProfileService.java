@@ -3,54 +3,124 @@ package com.exodus.wall.service;
 import com.exodus.wall.entity.RiderEntity;
 import com.exodus.wall.entity.dto.RiderProfileResponse;
 import com.exodus.wall.entity.dto.RiderProfileUpdateRequest;
+import com.exodus.wall.entity.dto.RiderSummaryResponse;
+import com.exodus.wall.exception.DuplicateValueException;
+import com.exodus.wall.mapper.ProfileMapper;
 import com.exodus.wall.repository.RiderRepository;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class RiderProfileService {
   private final RiderRepository riderRepository;
+  private final ProfileCache<RiderProfileResponse> riderProfileCache;
+  private final ProfileMapper profileMapper;
+  private final ProfileJdbc<RiderProfileResponse> profileJdbc;
+  private final boolean singleStatementUpdate;
 
   @Autowired
-  public RiderProfileService(RiderRepository riderRepository) {
+  public RiderProfileService(RiderRepository riderRepository,
+                             ProfileCache<RiderProfileResponse> riderProfileCache,
+                             ProfileMapper profileMapper,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${profile.batch.fetch-size:200}") int batchFetchSize,
+                             @Value("${profile.update.single-statement:false}") boolean singleStatementUpdate,
+                             @Value("${spring.jpa.properties.hibernate.default_schema:profile}") String schema) {
     this.riderRepository = riderRepository;
+    this.riderProfileCache = riderProfileCache;
+    this.profileMapper = profileMapper;
+    this.profileJdbc = new ProfileJdbc<>("Rider", "riders",
+        "id, full_name, phone_number, rating_avg, created_at, version",
+        (rs, rowNum) -> toResponse(rs), riderRepository::findVersionByAuthUserId, jdbcTemplate,
+        transactionManager, batchFetchSize, schema);
+    this.singleStatementUpdate = singleStatementUpdate;
   }
 
-  @Transactional(readOnly = true)
+  // Not @Transactional: a cache hit should not open a transaction or take a connection
   public RiderProfileResponse getMyProfile(UUID authUserId) {
-    RiderEntity rider = riderRepository.findByAuthUserId(authUserId)
-        .orElseThrow(() -> new RuntimeException("Rider not found")); // This is temporary, until we have proper exception handling
+    return riderProfileCache.get(authUserId, this::loadProfile);
+  }
 
-    RiderProfileResponse response = new RiderProfileResponse();
-    response.setId(rider.getId());
-    response.setFullName(rider.getFullName());
-    response.setPhoneNumber(rider.getPhoneNumber());
-    response.setRatingAverage(rider.getRatingAverage());
-    response.setCreatedAt(rider.getCreatedAt());
+  //**
+  // Public summaries for a trip list, sent to sink as they are found. Cache tiers first, then one
+  // ANY(?) query for all misses, whatever the batch size. Unknown ids are left out.
+  //**
+  public void findSummaries(Collection<UUID> authUserIds, BiConsumer<UUID, RiderSummaryResponse> sink) {
+    riderProfileCache.getAll(authUserIds, profileJdbc::loadAll,
+        (authUserId, profile) -> sink.accept(authUserId, new RiderSummaryResponse(profile.getFullName(), profile.getRatingAverage())));
+  }
 
-    return response;
+  private static RiderProfileResponse toResponse(ResultSet rs) throws SQLException {
+    return new RiderProfileResponse(rs.getObject("id", UUID.class), rs.getString("full_name"),
+        rs.getString("phone_number"), rs.getObject("rating_avg", Double.class),
+        rs.getObject("created_at", OffsetDateTime.class), rs.getLong("version"));
   }
 
+  // Current ETag version: from the cache if either tier has the profile, else from the index
+  public long getMyProfileVersion(UUID authUserId) {
+    RiderProfileResponse cached = riderProfileCache.peek(authUserId);
+    if (cached != null) {
+      return cached.getVersion();
+    }
+    return riderRepository.findVersionByAuthUserId(authUserId)
+        .orElseThrow(profileJdbc::notFound);
+  }
+
+  private RiderProfileResponse loadProfile(UUID authUserId) {
+    return riderRepository.findProfileByAuthUserId(authUserId)
+        .orElseThrow(profileJdbc::notFound);
+  }
+
+  //**
+  // expectedVersion comes from If-Match, null updates whatever is there (no If-Match, or "*").
+  // A phone number another profile already has is a 409.
+  //**
   @Transactional
-  public RiderProfileResponse updateMyProfile(UUID authUserId, RiderProfileUpdateRequest updateRequest) {
+  public RiderProfileResponse updateMyProfile(UUID authUserId, RiderProfileUpdateRequest updateRequest,
+                                              Long expectedVersion) {
+    RiderProfileResponse response;
+    try {
+      response = singleStatementUpdate
+          ? profileJdbc.update(authUserId, updateRequest.getFullName(), updateRequest.getPhoneNumber(), expectedVersion)
+          : updateEntity(authUserId, updateRequest, expectedVersion);
+    } catch (DataIntegrityViolationException e) {
+      if (ProfileJdbc.isUniqueViolation(e)) {
+        throw new DuplicateValueException("Phone number already in use by another profile.");
+      }
+      throw e;
+    }
+    riderProfileCache.invalidateAfterCommit(authUserId, response);
+    return response;
+  }
+
+  // A version that moved between our read and our write is caught by @Version on flush
+  private RiderProfileResponse updateEntity(UUID authUserId, RiderProfileUpdateRequest updateRequest,
+                                            Long expectedVersion) {
     RiderEntity rider = riderRepository.findByAuthUserId(authUserId)
-        .orElseThrow(() -> new RuntimeException("Rider not found")); // This is temporary, until we have proper exception handling
+        .orElseThrow(profileJdbc::notFound);
+    if (expectedVersion != null && expectedVersion != rider.getVersion()) {
+      throw profileJdbc.changed();
+    }
 
     rider.setFullName(updateRequest.getFullName());
     rider.setPhoneNumber(updateRequest.getPhoneNumber());
     // Note: We typically wouldn't allow updating ratingAverage or createdAt through profile update
 
-    RiderEntity updatedRider = riderRepository.save(rider);
-
-    RiderProfileResponse response = new RiderProfileResponse();
-    response.setId(updatedRider.getId());
-    response.setFullName(updatedRider.getFullName());
-    response.setPhoneNumber(updatedRider.getPhoneNumber());
-    response.setRatingAverage(updatedRider.getRatingAverage());
-    response.setCreatedAt(updatedRider.getCreatedAt());
+    // flushed here so the response carries the bumped version
+    RiderEntity updatedRider = riderRepository.saveAndFlush(rider);
 
-    return response;
+    return profileMapper.toResponse(updatedRider);
   }
 }
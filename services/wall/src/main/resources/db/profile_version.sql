@@ -0,0 +1,16 @@
+-- Adds the revision behind the profile ETags: @Version on RiderEntity and DriverEntity,
+-- bumped by every update. Existing rows start at 0.
+
+BEGIN;
+
+ALTER TABLE profile.riders ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE profile.drivers ADD COLUMN version bigint NOT NULL DEFAULT 0;
+
+COMMIT;
+
+-- If-None-Match only needs the version, these make that an index-only scan.
+-- CONCURRENTLY, so run outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS riders_auth_user_id_version_idx
+    ON profile.riders (auth_user_id) INCLUDE (version);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS drivers_auth_user_id_version_idx
+    ON profile.drivers (auth_user_id) INCLUDE (version);
@@ -0,0 +1,45 @@
+package com.exodus.wall;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// One embedded postgres with the profile schema for every test class that needs real SQL
+public final class ProfileTestDatabase {
+
+    private static EmbeddedPostgres postgres;
+
+    private ProfileTestDatabase() {
+    }
+
+    public static synchronized DataSource dataSource() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            new ResourceDatabasePopulator(new ClassPathResource("profile-schema.sql"))
+                    .execute(postgres.getPostgresDatabase());
+            Runtime.getRuntime().addShutdownHook(new Thread(ProfileTestDatabase::stop));
+        }
+        return postgres.getPostgresDatabase();
+    }
+
+    public static String jdbcUrl() {
+        dataSource();
+        return postgres.getJdbcUrl("postgres", "postgres");
+    }
+
+    private static void stop() {
+        try {
+            postgres.close();
+        } catch (IOException e) {
+            // the JVM is going away anyway
+        }
+    }
+}
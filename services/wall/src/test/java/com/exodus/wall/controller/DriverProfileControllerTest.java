@@ -0,0 +1,102 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.entity.dto.DriverProfileResponse;
+import com.exodus.wall.entity.dto.DriverProfileUpdateRequest;
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.security.JwtAuthenticationFilter;
+import com.exodus.wall.service.DriverProfileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class DriverProfileControllerTest {
+
+    @Mock
+    private DriverProfileService driverProfileService;
+
+    private MockMvc mockMvc;
+    private UUID authUserId;
+
+    @BeforeEach
+    void setUp() {
+        JsonMapper jsonMapper = JsonMapper.builder().build();
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new DriverProfileController(driverProfileService, new ProfileSummaryWriter(jsonMapper)))
+                .setControllerAdvice(new CustomExceptionController())
+                .build();
+        authUserId = UUID.randomUUID();
+    }
+
+    private static DriverProfileResponse profile(long version) {
+        return new DriverProfileResponse(UUID.randomUUID(), "John Roe", "+905551112244", 4.8, true, null, version);
+    }
+
+    private MockHttpServletRequestBuilder update() {
+        return put("/api/profile/driver/me")
+                .requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"fullName\":\"John Roe\",\"phoneNumber\":\"+905551112244\"}");
+    }
+
+    @Test
+    void getMyProfile_withMatchingIfNoneMatch_shouldReturn304WithoutLoadingTheProfile() throws Exception {
+        when(driverProfileService.getMyProfileVersion(authUserId)).thenReturn(5L);
+
+        mockMvc.perform(get("/api/profile/driver/me").requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5\""))
+                .andExpect(status().isNotModified());
+
+        verify(driverProfileService, never()).getMyProfile(any());
+    }
+
+    @Test
+    void updateMyProfile_withCurrentIfMatch_shouldReturnTheBumpedVersionAsETag() throws Exception {
+        when(driverProfileService.updateMyProfile(eq(authUserId), any(DriverProfileUpdateRequest.class), eq(5L)))
+                .thenReturn(profile(6));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "\"5\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+    }
+
+    @Test
+    void updateMyProfile_withStaleIfMatch_shouldReturn412() throws Exception {
+        when(driverProfileService.updateMyProfile(eq(authUserId), any(DriverProfileUpdateRequest.class), eq(4L)))
+                .thenThrow(new PreconditionFailedException("Driver profile has changed, fetch it again"));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "\"4\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void updateMyProfile_withStarOrWithoutIfMatch_shouldUpdateWhateverIsThere() throws Exception {
+        when(driverProfileService.updateMyProfile(eq(authUserId), any(DriverProfileUpdateRequest.class), isNull()))
+                .thenReturn(profile(9));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isOk());
+        mockMvc.perform(update())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"9\""));
+    }
+}
@@ -0,0 +1,36 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.exception.PreconditionFailedException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileETagTest {
+
+    @Test
+    void of_shouldQuoteTheVersion() {
+        assertEquals("\"7\"", ProfileETag.of(7));
+    }
+
+    @Test
+    void parseIfMatch_withOurETag_shouldReturnItsVersion() {
+        assertEquals(7L, ProfileETag.parseIfMatch("\"7\""));
+        assertEquals(7L, ProfileETag.parseIfMatch(" \"7\" "));
+    }
+
+    @Test
+    void parseIfMatch_withoutHeaderOrWithStar_shouldNotCheckTheVersion() {
+        assertNull(ProfileETag.parseIfMatch(null));
+        assertNull(ProfileETag.parseIfMatch(""));
+        assertNull(ProfileETag.parseIfMatch("*"));
+    }
+
+    @Test
+    void parseIfMatch_withAnythingWeNeverHandedOut_shouldFail() {
+        assertThrows(PreconditionFailedException.class, () -> ProfileETag.parseIfMatch("W/\"7\""));
+        assertThrows(PreconditionFailedException.class, () -> ProfileETag.parseIfMatch("\"7\", \"8\""));
+        assertThrows(PreconditionFailedException.class, () -> ProfileETag.parseIfMatch("7"));
+        assertThrows(PreconditionFailedException.class, () -> ProfileETag.parseIfMatch("\"abc\""));
+        assertThrows(PreconditionFailedException.class, () -> ProfileETag.parseIfMatch("\"\""));
+    }
+}
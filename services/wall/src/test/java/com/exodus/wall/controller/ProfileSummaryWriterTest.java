@@ -0,0 +1,57 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.entity.dto.RiderSummaryResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileSummaryWriterTest {
+
+    private final ProfileSummaryWriter writer = new ProfileSummaryWriter(JsonMapper.builder().build());
+
+    @Test
+    void write_shouldStreamSummariesAsMapByAuthUserId() throws Exception {
+        UUID found = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        List<Collection<UUID>> asked = new ArrayList<>();
+
+        ResponseEntity<StreamingResponseBody> response = writer.<RiderSummaryResponse>write(
+                List.of(found, missing, found), (ids, sink) -> {
+                    asked.add(ids);
+                    sink.accept(found, new RiderSummaryResponse("Jane", 4.5));
+                });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals(List.of(List.of(found, missing)), asked.stream().map(List::copyOf).toList());
+        assertEquals("{\"" + found + "\":{\"fullName\":\"Jane\",\"ratingAverage\":4.5}}",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void write_whenFinderFails_shouldLeaveTheMapUnfinished() {
+        UUID first = UUID.randomUUID();
+        ResponseEntity<StreamingResponseBody> response = writer.<RiderSummaryResponse>write(
+                List.of(first, UUID.randomUUID()), (ids, sink) -> {
+                    sink.accept(first, new RiderSummaryResponse("Jane", 4.5));
+                    throw new IllegalStateException("database went away");
+                });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(IllegalStateException.class, () -> response.getBody().writeTo(out));
+        assertFalse(out.toString(StandardCharsets.UTF_8).endsWith("}}"),
+                "a failed batch must not look like a complete response");
+    }
+}
@@ -0,0 +1,153 @@
+package com.exodus.wall.controller;
+
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileUpdateRequest;
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.security.JwtAuthenticationFilter;
+import com.exodus.wall.service.RiderProfileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class RiderProfileControllerTest {
+
+    @Mock
+    private RiderProfileService riderProfileService;
+
+    private MockMvc mockMvc;
+    private UUID authUserId;
+
+    @BeforeEach
+    void setUp() {
+        JsonMapper jsonMapper = JsonMapper.builder().build();
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new RiderProfileController(riderProfileService, new ProfileSummaryWriter(jsonMapper)))
+                .setControllerAdvice(new CustomExceptionController())
+                .build();
+        authUserId = UUID.randomUUID();
+    }
+
+    private static RiderProfileResponse profile(long version) {
+        return new RiderProfileResponse(UUID.randomUUID(), "Jane Doe", "+905551112233", 4.5, null, version);
+    }
+
+    private MockHttpServletRequestBuilder update() {
+        return put("/api/rider/profile/me")
+                .requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"fullName\":\"Jane Doe\",\"phoneNumber\":\"+905551112233\"}");
+    }
+
+    // ==================== GET /me Tests ====================
+
+    @Test
+    void getMyProfile_shouldReturnTheVersionAsETag() throws Exception {
+        when(riderProfileService.getMyProfile(authUserId)).thenReturn(profile(3));
+
+        mockMvc.perform(get("/api/rider/profile/me").requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(jsonPath("$.fullName").value("Jane Doe"));
+    }
+
+    @Test
+    void getMyProfile_withMatchingIfNoneMatch_shouldReturn304WithoutLoadingTheProfile() throws Exception {
+        when(riderProfileService.getMyProfileVersion(authUserId)).thenReturn(3L);
+
+        mockMvc.perform(get("/api/rider/profile/me").requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+        verify(riderProfileService, never()).getMyProfile(any());
+    }
+
+    @Test
+    void getMyProfile_withOutdatedIfNoneMatch_shouldReturnTheProfile() throws Exception {
+        when(riderProfileService.getMyProfileVersion(authUserId)).thenReturn(4L);
+        when(riderProfileService.getMyProfile(authUserId)).thenReturn(profile(4));
+
+        mockMvc.perform(get("/api/rider/profile/me").requestAttr(JwtAuthenticationFilter.USER_ID_ATTRIBUTE, authUserId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    // ==================== PUT /me Tests ====================
+
+    @Test
+    void updateMyProfile_withCurrentIfMatch_shouldReturnTheBumpedVersionAsETag() throws Exception {
+        when(riderProfileService.updateMyProfile(eq(authUserId), any(RiderProfileUpdateRequest.class), eq(3L)))
+                .thenReturn(profile(4));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.version").value(4));
+    }
+
+    @Test
+    void updateMyProfile_withStaleIfMatch_shouldReturn412() throws Exception {
+        when(riderProfileService.updateMyProfile(eq(authUserId), any(RiderProfileUpdateRequest.class), eq(2L)))
+                .thenThrow(new PreconditionFailedException("Rider profile has changed, fetch it again"));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "\"2\""))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void updateMyProfile_withWeakIfMatch_shouldReturn412WithoutUpdating() throws Exception {
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "W/\"3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verifyNoInteractions(riderProfileService);
+    }
+
+    @Test
+    void updateMyProfile_withStarOrWithoutIfMatch_shouldUpdateWhateverIsThere() throws Exception {
+        when(riderProfileService.updateMyProfile(eq(authUserId), any(RiderProfileUpdateRequest.class), isNull()))
+                .thenReturn(profile(8));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"8\""));
+        mockMvc.perform(update())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"8\""));
+
+        verify(riderProfileService, times(2)).updateMyProfile(eq(authUserId), any(), isNull());
+    }
+
+    @Test
+    void updateMyProfile_whenAnotherUpdateCommittedFirst_shouldReturn412() throws Exception {
+        when(riderProfileService.updateMyProfile(eq(authUserId), any(RiderProfileUpdateRequest.class), eq(3L)))
+                .thenThrow(new ObjectOptimisticLockingFailureException("RiderEntity", UUID.randomUUID()));
+
+        mockMvc.perform(update().header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.message").value("Profile was modified concurrently, fetch it again"));
+    }
+}
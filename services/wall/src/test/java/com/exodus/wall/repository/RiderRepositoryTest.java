@@ -0,0 +1,101 @@
+package com.exodus.wall.repository;
+
+import com.exodus.wall.ProfileTestDatabase;
+import com.exodus.wall.entity.RiderEntity;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The JPQL constructor projection against the real schema, every test rolls back
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class RiderRepositoryTest {
+
+    private static final OffsetDateTime CREATED_AT = OffsetDateTime.of(2024, 5, 1, 10, 30, 0, 0, ZoneOffset.UTC);
+
+    @Autowired
+    private RiderRepository riderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private UUID id;
+    private UUID authUserId;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", ProfileTestDatabase::jdbcUrl);
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @BeforeEach
+    void setUp() {
+        id = UUID.randomUUID();
+        authUserId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO profile.riders (id, auth_user_id, full_name, phone_number, rating_avg, created_at, version) VALUES (?, ?, 'Jane Doe', '+905551112233', 4.5, ?, 3)", id, authUserId, CREATED_AT);
+    }
+
+    // ==================== Projection Tests ====================
+
+    @Test
+    void findProfileByAuthUserId_shouldFillEveryField() {
+        RiderProfileResponse profile = riderRepository.findProfileByAuthUserId(authUserId).orElseThrow();
+
+        assertEquals(id, profile.getId());
+        assertEquals("Jane Doe", profile.getFullName());
+        assertEquals("+905551112233", profile.getPhoneNumber());
+        assertEquals(4.5, profile.getRatingAverage());
+        assertEquals(CREATED_AT.toInstant(), profile.getCreatedAt().toInstant());
+        assertEquals(3, profile.getVersion());
+    }
+
+    @Test
+    void findProfileByAuthUserId_shouldNotLoadTheEntity() {
+        riderRepository.findProfileByAuthUserId(authUserId);
+
+        assertEquals(0, entityManager.unwrap(SessionImplementor.class).getPersistenceContext()
+                .getNumberOfManagedEntities());
+    }
+
+    @Test
+    void findProfileByAuthUserId_withUnknownUser_shouldBeEmpty() {
+        assertTrue(riderRepository.findProfileByAuthUserId(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void findVersionByAuthUserId_shouldFollowEntityUpdates() {
+        assertEquals(Optional.of(3L), riderRepository.findVersionByAuthUserId(authUserId));
+
+        RiderEntity entity = riderRepository.findByAuthUserId(authUserId).orElseThrow();
+        entity.setFullName("Changed");
+        riderRepository.saveAndFlush(entity);
+        entityManager.clear();
+
+        assertEquals(Optional.of(4L), riderRepository.findVersionByAuthUserId(authUserId));
+        assertEquals(4, riderRepository.findProfileByAuthUserId(authUserId).orElseThrow().getVersion());
+    }
+
+    @Test
+    void findVersionByAuthUserId_withUnknownUser_shouldBeEmpty() {
+        assertTrue(riderRepository.findVersionByAuthUserId(UUID.randomUUID()).isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package com.exodus.wall.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessTokenVerifierTest {
+
+    // ==================== HS256 Tests ====================
+
+    @Test
+    void hs256_validToken_shouldReturnCaller() {
+        AccessTokenVerifier verifier =
+                AccessTokenVerifier.hs256(JwtTestTokens.SECRET, JwtTestTokens.ISSUER, 100);
+        UUID userId = UUID.randomUUID();
+
+        AuthenticatedUser user = verifier.verify(JwtTestTokens.hs256(JwtTestTokens.SECRET, userId, 60_000));
+
+        assertEquals(userId, user.userId());
+        assertEquals("RIDER", user.role());
+    }
+
+    @Test
+    void hs256_shouldRejectEs256Token() throws Exception {
+        AccessTokenVerifier verifier =
+                AccessTokenVerifier.hs256(JwtTestTokens.SECRET, JwtTestTokens.ISSUER, 100);
+        String token = JwtTestTokens.es256(JwtTestTokens.ecKeyPair(), "k1", UUID.randomUUID(), 60_000);
+
+        assertThrows(IllegalArgumentException.class, () -> verifier.verify(token));
+    }
+
+    // ==================== ES256 Tests ====================
+
+    @Test
+    void es256_tokenFromPublishedKey_shouldReturnCaller() throws Exception {
+        KeyPair keyPair = JwtTestTokens.ecKeyPair();
+        JwksKeyProvider keyProvider = new JwksKeyProvider(
+                () -> JwtTestTokens.jwks(JwtTestTokens.jwk("k1", keyPair)), "jwks", 300_000, 0);
+        AccessTokenVerifier verifier = AccessTokenVerifier.es256(keyProvider, JwtTestTokens.ISSUER, 100);
+        UUID userId = UUID.randomUUID();
+
+        AuthenticatedUser user = verifier.verify(JwtTestTokens.es256(keyPair, "k1", userId, 60_000));
+
+        assertEquals(userId, user.userId());
+    }
+
+    @Test
+    void es256_tokenFromUnpublishedKey_shouldBeRejected() throws Exception {
+        KeyPair published = JwtTestTokens.ecKeyPair();
+        JwksKeyProvider keyProvider = new JwksKeyProvider(
+                () -> JwtTestTokens.jwks(JwtTestTokens.jwk("k1", published)), "jwks", 300_000, 0);
+        AccessTokenVerifier verifier = AccessTokenVerifier.es256(keyProvider, JwtTestTokens.ISSUER, 100);
+        String forged = JwtTestTokens.es256(JwtTestTokens.ecKeyPair(), "k1", UUID.randomUUID(), 60_000);
+
+        assertThrows(IllegalArgumentException.class, () -> verifier.verify(forged));
+    }
+
+    // ==================== Cache Tests ====================
+
+    @Test
+    void verify_sameTokenTwice_shouldResolveKeyOnce() throws Exception {
+        KeyPair keyPair = JwtTestTokens.ecKeyPair();
+        AtomicInteger fetches = new AtomicInteger();
+        JwksKeyProvider keyProvider = new JwksKeyProvider(() -> {
+            fetches.incrementAndGet();
+            return JwtTestTokens.jwks(JwtTestTokens.jwk("k1", keyPair));
+        }, "jwks", 300_000, 0);
+        AccessTokenVerifier verifier = AccessTokenVerifier.es256(keyProvider, JwtTestTokens.ISSUER, 100);
+        String token = JwtTestTokens.es256(keyPair, "k1", UUID.randomUUID(), 60_000);
+
+        AuthenticatedUser first = verifier.verify(token);
+        AuthenticatedUser second = verifier.verify(token);
+
+        assertEquals(first, second);
+        assertEquals(1, fetches.get());
+    }
+}
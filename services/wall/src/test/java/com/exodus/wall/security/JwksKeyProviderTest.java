@@ -0,0 +1,140 @@
+package com.exodus.wall.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksKeyProviderTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicReference<Map<String, Object>> published = new AtomicReference<>(Map.of("keys", List.of()));
+
+    private JwksKeyProvider provider(long minRefetchMillis) {
+        return new JwksKeyProvider(() -> {
+            fetches.incrementAndGet();
+            Map<String, Object> body = published.get();
+            if (body == null) {
+                throw new IllegalStateException("dome is down");
+            }
+            return body;
+        }, "http://dome/.well-known/jwks.json", 300_000, minRefetchMillis);
+    }
+
+    // ==================== Parse Tests ====================
+
+    @Test
+    void parse_shouldReadEcP256KeysByKid() throws Exception {
+        KeyPair keyPair = JwtTestTokens.ecKeyPair();
+
+        Map<String, ECPublicKey> keys = JwksKeyProvider.parse(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", keyPair)));
+
+        assertEquals(1, keys.size());
+        assertArrayEquals(keyPair.getPublic().getEncoded(), keys.get("k1").getEncoded());
+    }
+
+    @Test
+    void parse_shouldSkipOtherKeyTypesAndKeysWithoutKid() throws Exception {
+        Map<String, Object> rsa = Map.of("kty", "RSA", "kid", "rsa", "n", "AQAB", "e", "AQAB");
+        Map<String, Object> otherCurve = new HashMap<>(JwtTestTokens.jwk("p384", JwtTestTokens.ecKeyPair()));
+        otherCurve.put("crv", "P-384");
+        Map<String, Object> noKid = new HashMap<>(JwtTestTokens.jwk("ignored", JwtTestTokens.ecKeyPair()));
+        noKid.remove("kid");
+
+        Map<String, ECPublicKey> keys = JwksKeyProvider.parse(JwtTestTokens.jwks(rsa, otherCurve, noKid));
+
+        assertTrue(keys.isEmpty());
+    }
+
+    @Test
+    void parse_withoutKeyList_shouldReturnEmpty() {
+        assertTrue(JwksKeyProvider.parse(null).isEmpty());
+        assertTrue(JwksKeyProvider.parse(Map.of()).isEmpty());
+        assertTrue(JwksKeyProvider.parse(Map.of("keys", "nope")).isEmpty());
+    }
+
+    // ==================== Refetch Tests ====================
+
+    @Test
+    void findKey_unknownKid_shouldRefetchOnce() throws Exception {
+        JwksKeyProvider provider = provider(0);
+        published.set(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", JwtTestTokens.ecKeyPair())));
+
+        assertTrue(provider.findKey("k1").isPresent());
+        assertTrue(provider.findKey("k1").isPresent());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void findKey_unknownKids_shouldRefetchAtMostOncePerMinInterval() {
+        JwksKeyProvider provider = provider(60_000);
+
+        assertTrue(provider.findKey("junk-1").isEmpty());
+        assertTrue(provider.findKey("junk-2").isEmpty());
+        assertTrue(provider.findKey("junk-3").isEmpty());
+
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void findKey_afterRotation_shouldFindNewKid() throws Exception {
+        JwksKeyProvider provider = provider(0);
+        published.set(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", JwtTestTokens.ecKeyPair())));
+        assertTrue(provider.findKey("k1").isPresent());
+
+        published.set(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", JwtTestTokens.ecKeyPair()),
+                JwtTestTokens.jwk("k2", JwtTestTokens.ecKeyPair())));
+
+        assertTrue(provider.findKey("k2").isPresent());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void findKey_whenFetchFails_shouldKeepCachedKeys() throws Exception {
+        JwksKeyProvider provider = provider(0);
+        published.set(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", JwtTestTokens.ecKeyPair())));
+        assertTrue(provider.findKey("k1").isPresent());
+
+        published.set(null);
+
+        assertTrue(provider.findKey("k2").isEmpty());
+        assertTrue(provider.findKey("k1").isPresent());
+    }
+
+    @Test
+    void findKey_nullKid_shouldNotFetch() {
+        JwksKeyProvider provider = provider(0);
+
+        assertTrue(provider.findKey(null).isEmpty());
+        assertEquals(0, fetches.get());
+    }
+
+    // ==================== Background Refresh Tests ====================
+
+    @Test
+    void start_shouldFetchInBackgroundSoKnownKidsNeverWait() throws Exception {
+        // a findKey racing the background fetch waits for it on the lock, then must not fetch again
+        JwksKeyProvider provider = provider(60_000);
+        published.set(JwtTestTokens.jwks(JwtTestTokens.jwk("k1", JwtTestTokens.ecKeyPair())));
+
+        provider.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (fetches.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, fetches.get());
+            assertTrue(provider.findKey("k1").isPresent());
+            assertEquals(1, fetches.get(), "a known kid must not trigger a fetch");
+        } finally {
+            provider.shutdown();
+        }
+    }
+}
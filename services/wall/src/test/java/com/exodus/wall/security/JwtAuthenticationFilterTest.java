@@ -0,0 +1,119 @@
+package com.exodus.wall.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String INVALID_TOKEN = "Bearer error=\"invalid_token\"";
+
+    private JwtAuthenticationFilter filter;
+    private MockHttpServletResponse response;
+    private MockFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        filter = new JwtAuthenticationFilter(
+                AccessTokenVerifier.hs256(JwtTestTokens.SECRET, JwtTestTokens.ISSUER, 100));
+        response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+    }
+
+    private MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/riders/me");
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return request;
+    }
+
+    private void assertRejected(String challenge) {
+        assertEquals(401, response.getStatus());
+        assertEquals(challenge, response.getHeader(HttpHeaders.WWW_AUTHENTICATE));
+        assertNull(chain.getRequest(), "request must not reach the controller");
+    }
+
+    // ==================== Accepted Tests ====================
+
+    @Test
+    void validToken_shouldSetCallerAttributesAndContinue() throws Exception {
+        UUID userId = UUID.randomUUID();
+        MockHttpServletRequest request =
+                request("Bearer " + JwtTestTokens.hs256(JwtTestTokens.SECRET, userId, 60_000));
+
+        filter.doFilter(request, response, chain);
+
+        assertSame(request, chain.getRequest());
+        assertEquals(userId, request.getAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE));
+        assertEquals("RIDER", request.getAttribute(JwtAuthenticationFilter.ROLE_ATTRIBUTE));
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void preflight_shouldPassWithoutToken() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("OPTIONS", "/api/riders/me");
+
+        filter.doFilter(request, response, chain);
+
+        assertSame(request, chain.getRequest());
+    }
+
+    // ==================== Rejected Tests ====================
+
+    @Test
+    void missingHeader_shouldReturn401WithBearerChallenge() throws Exception {
+        filter.doFilter(request(null), response, chain);
+
+        assertRejected("Bearer");
+    }
+
+    @Test
+    void nonBearerScheme_shouldReturn401WithBearerChallenge() throws Exception {
+        filter.doFilter(request("Basic dXNlcjpwYXNz"), response, chain);
+
+        assertRejected("Bearer");
+    }
+
+    @Test
+    void malformedToken_shouldReturn401InvalidToken() throws Exception {
+        filter.doFilter(request("Bearer not.a.jwt"), response, chain);
+
+        assertRejected(INVALID_TOKEN);
+    }
+
+    @Test
+    void expiredToken_shouldReturn401InvalidToken() throws Exception {
+        String expired = JwtTestTokens.hs256(JwtTestTokens.SECRET, UUID.randomUUID(), -60_000);
+
+        filter.doFilter(request("Bearer " + expired), response, chain);
+
+        assertRejected(INVALID_TOKEN);
+    }
+
+    @Test
+    void tokenSignedWithAnotherSecret_shouldReturn401InvalidToken() throws Exception {
+        String forged = JwtTestTokens.hs256("anothersecretkeythatisalsolongenough123456",
+                UUID.randomUUID(), 60_000);
+
+        filter.doFilter(request("Bearer " + forged), response, chain);
+
+        assertRejected(INVALID_TOKEN);
+    }
+
+    @Test
+    void tokenWithWrongIssuer_shouldReturn401InvalidToken() throws Exception {
+        String token = JwtTestTokens.hs256(JwtTestTokens.SECRET, "someone-else", UUID.randomUUID(), 60_000);
+
+        filter.doFilter(request("Bearer " + token), response, chain);
+
+        assertRejected(INVALID_TOKEN);
+    }
+}
@@ -0,0 +1,87 @@
+package com.exodus.wall.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Tokens shaped like the ones dome issues
+final class JwtTestTokens {
+    static final String SECRET = "verysecuresecretkeyforjwttestingpurposes12345";
+    static final String ISSUER = "exodus-auth";
+
+    private JwtTestTokens() {
+    }
+
+    static String hs256(String secret, UUID userId, long validityMillis) {
+        return hs256(secret, ISSUER, userId, validityMillis);
+    }
+
+    static String hs256(String secret, String issuer, UUID userId, long validityMillis) {
+        return token(Keys.hmacShaKeyFor(secret.getBytes()), SignatureAlgorithm.HS256, null, issuer,
+                userId, validityMillis);
+    }
+
+    static String es256(KeyPair keyPair, String kid, UUID userId, long validityMillis) {
+        return token(keyPair.getPrivate(), SignatureAlgorithm.ES256, kid, ISSUER, userId, validityMillis);
+    }
+
+    private static String token(Key key, SignatureAlgorithm algorithm, String kid, String issuer,
+                                UUID userId, long validityMillis) {
+        long now = System.currentTimeMillis();
+        var builder = Jwts.builder()
+                .setSubject(userId.toString())
+                .claim("role", "RIDER")
+                .setIssuer(issuer)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + validityMillis));
+        if (kid != null) {
+            builder.setHeaderParam("kid", kid);
+        }
+        return builder.signWith(key, algorithm).compact();
+    }
+
+    static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    // Same fields dome's JwtKeyRing.toJwks publishes
+    static Map<String, Object> jwk(String kid, KeyPair keyPair) {
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        Map<String, Object> jwk = new HashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", "ES256");
+        jwk.put("x", coordinate(publicKey.getW().getAffineX().toByteArray()));
+        jwk.put("y", coordinate(publicKey.getW().getAffineY().toByteArray()));
+        return jwk;
+    }
+
+    @SafeVarargs
+    static Map<String, Object> jwks(Map<String, Object>... keys) {
+        return Map.of("keys", List.of(keys));
+    }
+
+    // BigInteger bytes are signed and variable length, a JWK coordinate is exactly 32 bytes
+    private static String coordinate(byte[] bytes) {
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+}
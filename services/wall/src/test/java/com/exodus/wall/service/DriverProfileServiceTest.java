@@ -0,0 +1,132 @@
+package com.exodus.wall.service;
+
+import com.exodus.wall.entity.DriverEntity;
+import com.exodus.wall.entity.dto.DriverProfileResponse;
+import com.exodus.wall.entity.dto.DriverProfileUpdateRequest;
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.exception.ProfileNotFoundException;
+import com.exodus.wall.mapper.ProfileMapper;
+import com.exodus.wall.repository.DriverRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DriverProfileServiceTest {
+
+    @Mock
+    private DriverRepository driverRepository;
+
+    @Mock
+    private ProfileCache<DriverProfileResponse> driverProfileCache;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UUID authUserId;
+    private DriverEntity driver;
+
+    @BeforeEach
+    void setUp() {
+        authUserId = UUID.randomUUID();
+        driver = new DriverEntity(UUID.randomUUID(), authUserId, "Jane Doe", "+905551112233", 4.5, true,
+                OffsetDateTime.now(), 3);
+        // what @Version does on flush
+        lenient().when(driverRepository.saveAndFlush(any(DriverEntity.class))).thenAnswer(invocation -> {
+            DriverEntity saved = invocation.getArgument(0);
+            saved.setVersion(saved.getVersion() + 1);
+            return saved;
+        });
+    }
+
+    private DriverProfileService service() {
+        return new DriverProfileService(driverRepository, driverProfileCache, Mappers.getMapper(ProfileMapper.class),
+                jdbcTemplate, transactionManager, 200, false, "profile");
+    }
+
+    private static DriverProfileUpdateRequest updateRequest(String fullName, String phoneNumber) {
+        DriverProfileUpdateRequest request = new DriverProfileUpdateRequest();
+        request.setFullName(fullName);
+        request.setPhoneNumber(phoneNumber);
+        return request;
+    }
+
+    // ==================== Update Tests ====================
+
+    @Test
+    void updateMyProfile_withCurrentVersion_shouldReturnTheBumpedVersion() {
+        when(driverRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(driver));
+
+        DriverProfileResponse response = service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 3L);
+
+        assertEquals(4, response.getVersion());
+        assertEquals("Jane Roe", response.getFullName());
+        assertEquals("+905551112299", response.getPhoneNumber());
+        verify(driverProfileCache).invalidateAfterCommit(authUserId, response);
+    }
+
+    @Test
+    void updateMyProfile_withoutExpectedVersion_shouldUpdateWhateverIsThere() {
+        when(driverRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(driver));
+
+        DriverProfileResponse response = service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), null);
+
+        assertEquals(4, response.getVersion());
+    }
+
+    @Test
+    void updateMyProfile_withStaleVersion_shouldFailWithoutWriting() {
+        when(driverRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(driver));
+
+        assertThrows(PreconditionFailedException.class, () -> service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 2L));
+
+        verify(driverRepository, never()).saveAndFlush(any());
+        verifyNoInteractions(driverProfileCache);
+        assertEquals("Jane Doe", driver.getFullName());
+    }
+
+    @Test
+    void updateMyProfile_withoutProfile_shouldFailWithNotFound() {
+        when(driverRepository.findByAuthUserId(authUserId)).thenReturn(Optional.empty());
+
+        assertThrows(ProfileNotFoundException.class, () -> service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 3L));
+    }
+
+    // ==================== Version Tests ====================
+
+    @Test
+    void getMyProfileVersion_whenCached_shouldNotQueryTheDatabase() {
+        when(driverProfileCache.peek(authUserId)).thenReturn(new DriverProfileResponse(driver.getId(), "Jane Doe",
+                "+905551112233", 4.5, true, null, 7));
+
+        assertEquals(7, service().getMyProfileVersion(authUserId));
+        verifyNoInteractions(driverRepository);
+    }
+
+    @Test
+    void getMyProfileVersion_whenNotCached_shouldReadTheIndex() {
+        when(driverRepository.findVersionByAuthUserId(authUserId)).thenReturn(Optional.of(3L));
+
+        assertEquals(3, service().getMyProfileVersion(authUserId));
+    }
+}
@@ -0,0 +1,280 @@
+package com.exodus.wall.service;
+
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProfileCacheTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private RedisConnection connection;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // arguments of every EVAL: script, return type, key count, key, json, version, ttl
+    private final List<Object[]> evals = new ArrayList<>();
+
+    private ProfileCache<RiderProfileResponse> cache;
+    private UUID authUserId;
+
+    @BeforeEach
+    void setUp() {
+        cache = newCache(true);
+        authUserId = UUID.randomUUID();
+
+        RedisScriptingCommands scripting = mock(RedisScriptingCommands.class, invocation -> {
+            evals.add(invocation.getArguments());
+            return 1L;
+        });
+        lenient().when(connection.scriptingCommands()).thenReturn(scripting);
+        lenient().when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection));
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private ProfileCache<RiderProfileResponse> newCache(boolean enabled) {
+        return new ProfileCache<>("rider", RiderProfileResponse.class, RiderProfileResponse::getVersion, enabled,
+                100, Duration.ofMinutes(1), Duration.ofMinutes(10), redisTemplate, jsonMapper, meterRegistry);
+    }
+
+    private static RiderProfileResponse profile(String fullName, long version) {
+        return new RiderProfileResponse(UUID.randomUUID(), fullName, "+905551112233", 4.5, null, version);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("profile.cache").tag("cache", "rider").tag("result", result).counter().count();
+    }
+
+    private static String text(Object bytes) {
+        return new String((byte[]) bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==================== Get Tests ====================
+
+    @Test
+    void get_withNothingCached_shouldLoadOnceThenHitNear() {
+        AtomicInteger loads = new AtomicInteger();
+        RiderProfileResponse loaded = profile("Jane", 3);
+
+        RiderProfileResponse first = cache.get(authUserId, id -> {
+            loads.incrementAndGet();
+            return loaded;
+        });
+        RiderProfileResponse second = cache.get(authUserId, id -> {
+            loads.incrementAndGet();
+            return profile("Other", 9);
+        });
+
+        assertSame(loaded, first);
+        assertSame(loaded, second);
+        assertEquals(1, loads.get());
+        verify(valueOperations, times(1)).get("profile:rider:" + authUserId);
+        assertEquals(1, lookups("miss"));
+        assertEquals(1, lookups("near"));
+        assertEquals(0, lookups("redis"));
+    }
+
+    @Test
+    void get_withNothingCached_shouldWriteTheLoadedVersionToRedis() {
+        cache.get(authUserId, id -> profile("Jane", 3));
+
+        assertEquals(1, evals.size());
+        Object[] eval = evals.get(0);
+        assertEquals("profile:rider:" + authUserId, text(eval[3]));
+        assertTrue(text(eval[4]).contains("\"fullName\":\"Jane\""));
+        assertEquals("3", text(eval[5]));
+        assertEquals("600000", text(eval[6]));
+    }
+
+    @Test
+    void get_withValueInRedis_shouldNotLoad() {
+        when(valueOperations.get("profile:rider:" + authUserId))
+                .thenReturn(jsonMapper.writeValueAsString(profile("Jane", 3)));
+
+        RiderProfileResponse cached = cache.get(authUserId, id -> fail("should not query the database"));
+
+        assertEquals("Jane", cached.getFullName());
+        assertEquals(3, cached.getVersion());
+        assertEquals(1, lookups("redis"));
+        assertEquals(0, lookups("miss"));
+        assertTrue(evals.isEmpty());
+    }
+
+    @Test
+    void get_whenInvalidationArrivesDuringLoad_shouldNotKeepTheLoadInNear() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(authUserId, id -> {
+            loads.incrementAndGet();
+            RiderProfileResponse old = profile("Old", 3);
+            cache.onInvalidation("rider:" + authUserId); // a peer committed while we were reading
+            return old;
+        });
+        RiderProfileResponse next = cache.get(authUserId, id -> {
+            loads.incrementAndGet();
+            return profile("New", 4);
+        });
+
+        assertEquals("New", next.getFullName());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_whenRedisIsDown_shouldReadTheDatabase() {
+        when(valueOperations.get(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("down"));
+
+        RiderProfileResponse loaded = cache.get(authUserId, id -> profile("Jane", 3));
+
+        assertEquals("Jane", loaded.getFullName());
+        assertEquals(1, lookups("miss"));
+    }
+
+    @Test
+    void get_whenDisabled_shouldAlwaysLoadWithoutRedis() {
+        ProfileCache<RiderProfileResponse> disabled = newCache(false);
+        AtomicInteger loads = new AtomicInteger();
+
+        disabled.get(authUserId, id -> profile("Jane", loads.incrementAndGet()));
+        disabled.get(authUserId, id -> profile("Jane", loads.incrementAndGet()));
+
+        assertEquals(2, loads.get());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void getAll_shouldServeNearThenRedisThenLoadTheRest() {
+        UUID inNear = UUID.randomUUID();
+        UUID inRedis = UUID.randomUUID();
+        UUID inDatabase = UUID.randomUUID();
+        cache.get(inNear, id -> profile("Near", 1));
+        when(valueOperations.multiGet(anyList())).thenReturn(
+                Arrays.asList(jsonMapper.writeValueAsString(profile("Redis", 2)), null));
+        List<List<UUID>> loaded = new ArrayList<>();
+
+        Map<UUID, String> names = new LinkedHashMap<>();
+        cache.getAll(List.of(inNear, inRedis, inDatabase), (ids, sink) -> {
+            loaded.add(List.copyOf(ids));
+            sink.accept(inDatabase, profile("Database", 5));
+        }, (id, value) -> names.put(id, value.getFullName()));
+
+        assertEquals(Map.of(inNear, "Near", inRedis, "Redis", inDatabase, "Database"), names);
+        assertEquals(List.of(List.of(inDatabase)), loaded);
+        verify(valueOperations).multiGet(List.of("profile:rider:" + inRedis, "profile:rider:" + inDatabase));
+        verify(redisTemplate).executePipelined(any(RedisCallback.class));
+    }
+
+    // ==================== Invalidation Tests ====================
+
+    @Test
+    void invalidateAfterCommit_shouldDoNothingBeforeTheCommit() {
+        RiderProfileResponse old = profile("Old", 3);
+        RiderProfileResponse updated = profile("New", 4);
+        cache.get(authUserId, id -> old);
+        evals.clear();
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidateAfterCommit(authUserId, updated);
+
+        assertSame(old, cache.peek(authUserId));
+        assertTrue(evals.isEmpty());
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(1, evals.size());
+        assertEquals("4", text(evals.get(0)[5]));
+        verify(redisTemplate).convertAndSend(ProfileCache.INVALIDATION_CHANNEL, "rider:" + authUserId);
+        assertNull(cache.peek(authUserId));
+    }
+
+    @Test
+    void invalidateAfterCommit_whenTheTransactionRollsBack_shouldKeepTheCachedValue() {
+        RiderProfileResponse old = profile("Old", 3);
+        cache.get(authUserId, id -> old);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidateAfterCommit(authUserId, profile("New", 4));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertSame(old, cache.peek(authUserId));
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+    }
+
+    @Test
+    void onInvalidation_forThisCache_shouldDropTheNearEntry() {
+        cache.get(authUserId, id -> profile("Jane", 3));
+
+        cache.onInvalidation("rider:" + authUserId);
+
+        assertNull(cache.peek(authUserId));
+    }
+
+    @Test
+    void onInvalidation_forAnotherCacheOrMalformed_shouldKeepTheNearEntry() {
+        RiderProfileResponse cached = profile("Jane", 3);
+        cache.get(authUserId, id -> cached);
+
+        cache.onInvalidation("driver:" + authUserId);
+        cache.onInvalidation("rider:not-a-uuid");
+        cache.onInvalidation("garbage");
+
+        assertSame(cached, cache.peek(authUserId));
+    }
+
+    @Test
+    void invalidate_whenRedisIsDown_shouldStillDropTheNearEntry() {
+        cache.get(authUserId, id -> profile("Jane", 3));
+        when(redisTemplate.execute(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("down"));
+
+        cache.invalidate(authUserId, profile("Jane", 4));
+
+        assertNull(cache.peek(authUserId));
+    }
+}
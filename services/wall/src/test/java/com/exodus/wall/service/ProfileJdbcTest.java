@@ -0,0 +1,206 @@
+package com.exodus.wall.service;
+
+import com.exodus.wall.ProfileTestDatabase;
+import com.exodus.wall.entity.dto.DriverProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileUpdateRequest;
+import com.exodus.wall.exception.DuplicateValueException;
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.exception.ProfileNotFoundException;
+import com.exodus.wall.mapper.ProfileMapper;
+import com.exodus.wall.repository.RiderRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProfileJdbcTest {
+
+    private static final OffsetDateTime CREATED_AT = OffsetDateTime.of(2024, 5, 1, 10, 30, 0, 0, ZoneOffset.UTC);
+
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private ProfileJdbc<RiderProfileResponse> riders;
+    private ProfileJdbc<DriverProfileResponse> drivers;
+    private UUID authUserId;
+    private UUID riderId;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = ProfileTestDatabase.dataSource();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate.update("TRUNCATE profile.riders, profile.drivers");
+
+        riders = new ProfileJdbc<>("Rider", "riders", "id, full_name, phone_number, rating_avg, created_at, version",
+                (rs, rowNum) -> new RiderProfileResponse(rs.getObject("id", UUID.class), rs.getString("full_name"),
+                        rs.getString("phone_number"), rs.getObject("rating_avg", Double.class),
+                        rs.getObject("created_at", OffsetDateTime.class), rs.getLong("version")),
+                id -> version("riders", id), jdbcTemplate, transactionManager, 2, "profile");
+        drivers = new ProfileJdbc<>("Driver", "drivers",
+                "id, full_name, phone_number, rating_avg, is_verified, created_at, version",
+                (rs, rowNum) -> new DriverProfileResponse(rs.getObject("id", UUID.class), rs.getString("full_name"),
+                        rs.getString("phone_number"), rs.getObject("rating_avg", Double.class),
+                        rs.getBoolean("is_verified"), rs.getObject("created_at", OffsetDateTime.class),
+                        rs.getLong("version")),
+                id -> version("drivers", id), jdbcTemplate, transactionManager, 2, "profile");
+
+        authUserId = UUID.randomUUID();
+        riderId = insertRider(authUserId, "+905551112233", 3);
+    }
+
+    // stands in for the repositories' findVersionByAuthUserId
+    private Optional<Long> version(String table, UUID authUserId) {
+        return jdbcTemplate.queryForList("SELECT version FROM profile." + table + " WHERE auth_user_id = ?",
+                Long.class, authUserId).stream().findFirst();
+    }
+
+    private UUID insertRider(UUID authUserId, String phoneNumber, long version) {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO profile.riders (id, auth_user_id, full_name, phone_number, rating_avg,"
+                + " created_at, version) VALUES (?, ?, 'Jane Doe', ?, 4.5, ?, ?)",
+                id, authUserId, phoneNumber, CREATED_AT, version);
+        return id;
+    }
+
+    private static void assertSameInstant(OffsetDateTime expected, OffsetDateTime actual) {
+        assertEquals(expected.toInstant().truncatedTo(ChronoUnit.MICROS), actual.toInstant());
+    }
+
+    // ==================== Update Tests ====================
+
+    @Test
+    void update_withCurrentVersion_shouldReturnTheWholeUpdatedRow() {
+        RiderProfileResponse updated = riders.update(authUserId, "Jane Roe", "+905551112299", 3L);
+
+        assertEquals(riderId, updated.getId());
+        assertEquals("Jane Roe", updated.getFullName());
+        assertEquals("+905551112299", updated.getPhoneNumber());
+        assertEquals(4.5, updated.getRatingAverage());
+        assertSameInstant(CREATED_AT, updated.getCreatedAt());
+        assertEquals(4, updated.getVersion());
+        assertEquals(Optional.of(4L), version("riders", authUserId));
+    }
+
+    @Test
+    void update_withoutExpectedVersion_shouldUpdateWhateverIsThere() {
+        RiderProfileResponse updated = riders.update(authUserId, "Jane Roe", "+905551112299", null);
+
+        assertEquals(4, updated.getVersion());
+    }
+
+    @Test
+    void update_withStaleVersion_shouldFailWithPreconditionAndLeaveTheRow() {
+        PreconditionFailedException e = assertThrows(PreconditionFailedException.class,
+                () -> riders.update(authUserId, "Jane Roe", "+905551112299", 2L));
+
+        assertEquals("Rider profile has changed, fetch it again", e.getMessage());
+        assertEquals(Optional.of(3L), version("riders", authUserId));
+        assertEquals("Jane Doe", jdbcTemplate.queryForObject(
+                "SELECT full_name FROM profile.riders WHERE auth_user_id = ?", String.class, authUserId));
+    }
+
+    @Test
+    void update_withoutProfile_shouldFailWithNotFoundWhateverTheVersion() {
+        UUID unknown = UUID.randomUUID();
+
+        assertThrows(ProfileNotFoundException.class, () -> riders.update(unknown, "Jane Roe", "+905551112299", 3L));
+        assertThrows(ProfileNotFoundException.class, () -> riders.update(unknown, "Jane Roe", "+905551112299", null));
+    }
+
+    @Test
+    void update_withAnotherProfilesPhoneNumber_shouldFailWithAUniqueViolation() {
+        insertRider(UUID.randomUUID(), "+905551114444", 0);
+
+        DuplicateKeyException e = assertThrows(DuplicateKeyException.class,
+                () -> riders.update(authUserId, "Jane Roe", "+905551114444", 3L));
+
+        assertTrue(ProfileJdbc.isUniqueViolation(e));
+        assertEquals(Optional.of(3L), version("riders", authUserId));
+    }
+
+    @Test
+    void update_ofADriver_shouldReturnEveryColumn() {
+        UUID driverAuthUserId = UUID.randomUUID();
+        UUID driverId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO profile.drivers (id, auth_user_id, full_name, phone_number, rating_avg,"
+                + " is_verified, created_at, version) VALUES (?, ?, 'John Roe', '+905551115555', 4.9, true, ?, 7)",
+                driverId, driverAuthUserId, CREATED_AT);
+
+        DriverProfileResponse updated = drivers.update(driverAuthUserId, "John Doe", "+905551116666", 7L);
+
+        assertEquals(driverId, updated.getId());
+        assertEquals("John Doe", updated.getFullName());
+        assertEquals("+905551116666", updated.getPhoneNumber());
+        assertEquals(4.9, updated.getRatingAverage());
+        assertTrue(updated.isVerified());
+        assertSameInstant(CREATED_AT, updated.getCreatedAt());
+        assertEquals(8, updated.getVersion());
+    }
+
+    @Test
+    void isUniqueViolation_shouldOnlyAcceptUniqueConstraints() {
+        SQLException sql = new SQLException("duplicate key", "23505");
+
+        assertTrue(ProfileJdbc.isUniqueViolation(new DataIntegrityViolationException("flush",
+                new ConstraintViolationException("dup", sql, ConstraintViolationException.ConstraintKind.UNIQUE,
+                        "riders_phone_number_key"))));
+        assertFalse(ProfileJdbc.isUniqueViolation(new DataIntegrityViolationException("flush",
+                new ConstraintViolationException("null", sql, ConstraintViolationException.ConstraintKind.NOT_NULL,
+                        "riders_full_name"))));
+        assertFalse(ProfileJdbc.isUniqueViolation(new DataIntegrityViolationException("other")));
+    }
+
+    // ==================== Service Tests ====================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void updateMyProfile_singleStatement_withAnotherProfilesPhoneNumber_shouldBeADuplicateValue() {
+        insertRider(UUID.randomUUID(), "+905551114444", 0);
+        RiderRepository riderRepository = mock(RiderRepository.class);
+        RiderProfileService service = new RiderProfileService(riderRepository, mock(ProfileCache.class),
+                Mappers.getMapper(ProfileMapper.class), jdbcTemplate, transactionManager, 200, true, "profile");
+        RiderProfileUpdateRequest request = new RiderProfileUpdateRequest();
+        request.setFullName("Jane Roe");
+        request.setPhoneNumber("+905551114444");
+
+        assertThrows(DuplicateValueException.class, () -> service.updateMyProfile(authUserId, request, 3L));
+        verifyNoInteractions(riderRepository);
+    }
+
+    // ==================== Batch Tests ====================
+
+    @Test
+    void loadAll_shouldEmitFoundProfilesByAuthUserIdOnly() {
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        insertRider(second, "+905551114444", 0);
+        insertRider(third, "+905551115555", 1);
+
+        Map<UUID, RiderProfileResponse> loaded = new LinkedHashMap<>();
+        riders.loadAll(List.of(authUserId, second, third, UUID.randomUUID()), loaded::put);
+
+        assertEquals(3, loaded.size());
+        assertEquals(riderId, loaded.get(authUserId).getId());
+        assertEquals("+905551114444", loaded.get(second).getPhoneNumber());
+        assertEquals(1, loaded.get(third).getVersion());
+    }
+}
@@ -0,0 +1,132 @@
+package com.exodus.wall.service;
+
+import com.exodus.wall.entity.RiderEntity;
+import com.exodus.wall.entity.dto.RiderProfileResponse;
+import com.exodus.wall.entity.dto.RiderProfileUpdateRequest;
+import com.exodus.wall.exception.PreconditionFailedException;
+import com.exodus.wall.exception.ProfileNotFoundException;
+import com.exodus.wall.mapper.ProfileMapper;
+import com.exodus.wall.repository.RiderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RiderProfileServiceTest {
+
+    @Mock
+    private RiderRepository riderRepository;
+
+    @Mock
+    private ProfileCache<RiderProfileResponse> riderProfileCache;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UUID authUserId;
+    private RiderEntity rider;
+
+    @BeforeEach
+    void setUp() {
+        authUserId = UUID.randomUUID();
+        rider = new RiderEntity(UUID.randomUUID(), authUserId, "Jane Doe", "+905551112233", 4.5,
+                OffsetDateTime.now(), 3);
+        // what @Version does on flush
+        lenient().when(riderRepository.saveAndFlush(any(RiderEntity.class))).thenAnswer(invocation -> {
+            RiderEntity saved = invocation.getArgument(0);
+            saved.setVersion(saved.getVersion() + 1);
+            return saved;
+        });
+    }
+
+    private RiderProfileService service() {
+        return new RiderProfileService(riderRepository, riderProfileCache, Mappers.getMapper(ProfileMapper.class),
+                jdbcTemplate, transactionManager, 200, false, "profile");
+    }
+
+    private static RiderProfileUpdateRequest updateRequest(String fullName, String phoneNumber) {
+        RiderProfileUpdateRequest request = new RiderProfileUpdateRequest();
+        request.setFullName(fullName);
+        request.setPhoneNumber(phoneNumber);
+        return request;
+    }
+
+    // ==================== Update Tests ====================
+
+    @Test
+    void updateMyProfile_withCurrentVersion_shouldReturnTheBumpedVersion() {
+        when(riderRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(rider));
+
+        RiderProfileResponse response = service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 3L);
+
+        assertEquals(4, response.getVersion());
+        assertEquals("Jane Roe", response.getFullName());
+        assertEquals("+905551112299", response.getPhoneNumber());
+        verify(riderProfileCache).invalidateAfterCommit(authUserId, response);
+    }
+
+    @Test
+    void updateMyProfile_withoutExpectedVersion_shouldUpdateWhateverIsThere() {
+        when(riderRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(rider));
+
+        RiderProfileResponse response = service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), null);
+
+        assertEquals(4, response.getVersion());
+    }
+
+    @Test
+    void updateMyProfile_withStaleVersion_shouldFailWithoutWriting() {
+        when(riderRepository.findByAuthUserId(authUserId)).thenReturn(Optional.of(rider));
+
+        assertThrows(PreconditionFailedException.class, () -> service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 2L));
+
+        verify(riderRepository, never()).saveAndFlush(any());
+        verifyNoInteractions(riderProfileCache);
+        assertEquals("Jane Doe", rider.getFullName());
+    }
+
+    @Test
+    void updateMyProfile_withoutProfile_shouldFailWithNotFound() {
+        when(riderRepository.findByAuthUserId(authUserId)).thenReturn(Optional.empty());
+
+        assertThrows(ProfileNotFoundException.class, () -> service().updateMyProfile(authUserId,
+                updateRequest("Jane Roe", "+905551112299"), 3L));
+    }
+
+    // ==================== Version Tests ====================
+
+    @Test
+    void getMyProfileVersion_whenCached_shouldNotQueryTheDatabase() {
+        when(riderProfileCache.peek(authUserId)).thenReturn(new RiderProfileResponse(rider.getId(), "Jane Doe",
+                "+905551112233", 4.5, null, 7));
+
+        assertEquals(7, service().getMyProfileVersion(authUserId));
+        verifyNoInteractions(riderRepository);
+    }
+
+    @Test
+    void getMyProfileVersion_whenNotCached_shouldReadTheIndex() {
+        when(riderRepository.findVersionByAuthUserId(authUserId)).thenReturn(Optional.of(3L));
+
+        assertEquals(3, service().getMyProfileVersion(authUserId));
+    }
+}
@@ -0,0 +1,27 @@
+-- profile tables as the services expect them, including db/profile_version.sql
+CREATE SCHEMA profile;
+
+CREATE TABLE profile.riders (
+    id           uuid         PRIMARY KEY,
+    auth_user_id uuid         NOT NULL UNIQUE,
+    full_name    varchar(255) NOT NULL,
+    phone_number varchar(32)  NOT NULL UNIQUE,
+    rating_avg   double precision,
+    created_at   timestamptz  NOT NULL,
+    version      bigint       NOT NULL DEFAULT 0
+);
+
+CREATE INDEX ON profile.riders (auth_user_id) INCLUDE (version);
+
+CREATE TABLE profile.drivers (
+    id           uuid         PRIMARY KEY,
+    auth_user_id uuid         NOT NULL UNIQUE,
+    full_name    varchar(255) NOT NULL,
+    phone_number varchar(32)  NOT NULL UNIQUE,
+    rating_avg   double precision,
+    is_verified  boolean      NOT NULL DEFAULT false,
+    created_at   timestamptz  NOT NULL,
+    version      bigint       NOT NULL DEFAULT 0
+);
+
+CREATE INDEX ON profile.drivers (auth_user_id) INCLUDE (version);